@@ -1,2 +0,0 @@
-public class Pago {
-}
@@ -0,0 +1,190 @@
+package org.example;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Near-cache y GET condicional para los recursos del menu
+ * ({@code ProductoResource}, {@code TipoProductoResource},
+ * {@code ComboResource} y {@code ProductoPrecioResource}).
+ * <p>
+ * Cada region del catalogo tiene una version que suben los {@code create},
+ * {@code update} y {@code delete} correspondientes ({@link #invalidar}). El
+ * ETag de una respuesta es la version de su region, asi un
+ * {@code If-None-Match} vigente se contesta con 304 sin tocar JPA ni la
+ * cache. Las versiones viven en memoria y empiezan en 1 en cada arranque, por
+ * eso el ETag lleva tambien un identificador de arranque: un ETag de otro
+ * nodo o de antes de un reinicio nunca coincide. Las entradas guardan la
+ * version con la que se cargaron y dejan de servir en cuanto la region
+ * cambia; ademas hay limite de tamano (LRU) y TTL.
+ */
+public class CacheCatalogo {
+
+    public static final String ETAG = "ETag";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String CACHE_CONTROL = "Cache-Control";
+
+    public enum Region {
+        PRODUCTO, TIPO_PRODUCTO, COMBO, PRODUCTO_PRECIO
+    }
+
+    public record Respuesta(int status, String etag, String cuerpo, String cacheControl) {
+    }
+
+    private record Entrada(long version, long expira, String cuerpo) {
+    }
+
+    private final Map<Region, AtomicLong> versiones = new EnumMap<>(Region.class);
+    private final String arranque;
+    private final LinkedHashMap<String, Entrada> entradas;
+    private final int maximo;
+    private final long ttlNanos;
+    private final String cacheControl;
+    private final LongSupplier reloj;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder noModificados = new LongAdder();
+
+    public CacheCatalogo(int maximo, long ttlSegundos, int maxAgeSegundos) {
+        this(maximo, ttlSegundos, maxAgeSegundos, System::nanoTime);
+    }
+
+    public CacheCatalogo(int maximo, long ttlSegundos, int maxAgeSegundos, LongSupplier reloj) {
+        if (maximo <= 0 || ttlSegundos <= 0 || maxAgeSegundos < 0) {
+            throw new IllegalArgumentException("maximo y ttl deben ser mayores a cero");
+        }
+        this.maximo = maximo;
+        this.ttlNanos = ttlSegundos * 1_000_000_000L;
+        // el cliente puede reutilizar la copia max-age segundos y luego revalida con If-None-Match
+        this.cacheControl = "public, max-age=" + maxAgeSegundos + ", must-revalidate";
+        this.reloj = reloj;
+        this.arranque = Long.toString(System.currentTimeMillis(), 36) + Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+        this.entradas = new LinkedHashMap<>(Math.min(maximo, 1024), 0.75f, true);
+        for (Region region : Region.values()) {
+            versiones.put(region, new AtomicLong(1));
+        }
+    }
+
+    /**
+     * Respuesta para un GET. {@code clave} identifica la representacion (ruta
+     * mas parametros); {@code cargar} es la consulta JPA + serializacion y
+     * solo se ejecuta si no hay copia vigente.
+     */
+    public Respuesta obtener(Region region, String clave, String ifNoneMatch, Supplier<String> cargar) {
+        long version = versiones.get(region).get();
+        String etag = etag(region, version);
+        if (coincide(ifNoneMatch, etag)) {
+            noModificados.increment();
+            return new Respuesta(304, etag, null, cacheControl);
+        }
+        String llave = region.name() + ' ' + clave;
+        long ahora = reloj.getAsLong();
+        synchronized (entradas) {
+            Entrada entrada = entradas.get(llave);
+            if (entrada != null && entrada.version() == version && entrada.expira() - ahora > 0) {
+                aciertos.increment();
+                return new Respuesta(200, etag, entrada.cuerpo(), cacheControl);
+            }
+        }
+        fallos.increment();
+        String cuerpo = cargar.get();
+        synchronized (entradas) {
+            // si hubo una escritura mientras se cargaba, la entrada nace vencida por version
+            entradas.put(llave, new Entrada(version, ahora + ttlNanos, cuerpo));
+            if (entradas.size() > maximo) {
+                var it = entradas.entrySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        return new Respuesta(200, etag, cuerpo, cacheControl);
+    }
+
+    /**
+     * Llamar desde {@code create}/{@code update}/{@code delete} despues de que
+     * la transaccion hizo commit, no antes ni dentro: si se invalida antes,
+     * un GET concurrente puede volver a cargar la fila vieja con la version
+     * nueva y esa copia se serviria hasta el siguiente cambio. Un cambio de
+     * producto o de precio tambien invalida combos porque su precio se calcula
+     * de {@code combo_detalle} x {@code producto_precio}.
+     */
+    public void invalidar(Region region) {
+        versiones.get(region).incrementAndGet();
+        if (region == Region.PRODUCTO || region == Region.PRODUCTO_PRECIO) {
+            versiones.get(Region.COMBO).incrementAndGet();
+        }
+    }
+
+    public long version(Region region) {
+        return versiones.get(region).get();
+    }
+
+    public String etag(Region region) {
+        return etag(region, version(region));
+    }
+
+    private String etag(Region region, long version) {
+        return "\"" + region.name().toLowerCase() + "-" + arranque + "-" + version + "\"";
+    }
+
+    /**
+     * {@code If-None-Match} admite una lista separada por comas, {@code *} y
+     * ETags debiles ({@code W/"..."}), que en GET se comparan igual que los fuertes.
+     */
+    public static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidato : ifNoneMatch.split(",")) {
+            String valor = candidato.trim();
+            if (valor.equals("*")) {
+                return true;
+            }
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    public Set<Region> regiones() {
+        return versiones.keySet();
+    }
+
+    public long aciertos() {
+        return aciertos.sum();
+    }
+
+    public long fallos() {
+        return fallos.sum();
+    }
+
+    public long noModificados() {
+        return noModificados.sum();
+    }
+
+    /**
+     * Fraccion de GET servidos sin ir a la base (cache o 304).
+     */
+    public double tasaAciertos() {
+        long total = aciertos.sum() + fallos.sum() + noModificados.sum();
+        return total == 0 ? 0 : (double) (aciertos.sum() + noModificados.sum()) / total;
+    }
+}
@@ -0,0 +1,492 @@
+package org.example;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.example.CacheCatalogo.Region;
+
+/**
+ * Catalogo activo completo (tipos, productos, precio vigente y combos con
+ * sus miembros y su precio calculado) en un solo documento versionado, para
+ * que el menu cargue con una peticion en lugar de un
+ * {@code ProductoResource.findRange} por tipo, los combos y los precios.
+ * <p>
+ * Cada escritura del catalogo ({@code create}/{@code update}/{@code delete}
+ * de los recursos) pasa por aqui, sube la version global y marca la fila con
+ * ella. {@link #delta} devuelve solo lo que cambio desde la version que ya
+ * tiene el cliente, mas los ids que salieron del catalogo activo. La version
+ * que ve el cliente ({@link #token()}) lleva un identificador de arranque,
+ * como el ETag de {@link CacheCatalogo}: un token de otro nodo o de antes de un
+ * reinicio no coincide y recibe el catalogo completo aunque su numero caiga
+ * dentro del rango de este catalogo.
+ * <p>
+ * Formato compacto, una fila por arreglo:
+ * <pre>
+ * {"version":"token","desde":"token","completo":true|false,
+ *  "tipos":[[idTipoProducto,"nombre"]],
+ *  "productos":[[idProducto,"nombre","url",[idTipoProducto...]]],
+ *  "precios":[[idProducto,idProductoPrecio,precio]],
+ *  "combos":[[idCombo,"nombre","descripcionPublica","url",precio|null,[[idProducto,cantidad]...]]],
+ *  "eliminados":{"tipos":[...],"productos":[...],"precios":[idProducto...],"combos":[...]}}
+ * </pre>
+ */
+public class CatalogoVersionado {
+
+    private static final JsonGeneratorFactory GENERADORES = Json.createGeneratorFactory(Map.of());
+
+    static final String CONSULTA_TIPOS = "SELECT id_tipo_producto, nombre, activo FROM tipo_producto";
+    static final String CONSULTA_PRODUCTOS = "SELECT id_producto, nombre, activo, url FROM producto";
+    static final String CONSULTA_PRODUCTO_DETALLE = "SELECT id_tipo_producto, id_producto FROM producto_detalle WHERE activo IS NOT FALSE";
+    static final String CONSULTA_COMBOS = "SELECT id_combo, nombre, activo, descripcion_publica, url FROM combo";
+
+    private record Tipo(long id, String nombre, boolean activo) {
+    }
+
+    private record Producto(long id, String nombre, boolean activo, String url, long[] tipos) {
+    }
+
+    private record Combo(long id, String nombre, boolean activo, String descripcion, String url) {
+    }
+
+    private final ProductoPrecio precios;
+    private final PrecioCombo precioCombo;
+    private LocalDate fecha;
+
+    private final TreeMap<Long, Tipo> tipos = new TreeMap<>();
+    private final TreeMap<Long, Producto> productos = new TreeMap<>();
+    private final TreeMap<Long, Combo> combos = new TreeMap<>();
+    private final Map<Long, TreeMap<Long, Integer>> miembros = new HashMap<>();
+    private final Map<Long, Set<Long>> combosPorProducto = new HashMap<>();
+    private final Map<Long, ProductoPrecio.Vigente> vigentes = new HashMap<>();
+
+    // region -> id -> version del ultimo cambio; una fila borrada queda aqui hasta compactar
+    private final Map<Region, HashMap<Long, Long>> cambios = new EnumMap<>(Region.class);
+    private final String arranque;
+    private long version;
+    private long horizonte;
+    private byte[] completo;
+
+    public CatalogoVersionado(ProductoPrecio precios, LocalDate fecha) {
+        if (precios == null || fecha == null) {
+            throw new IllegalArgumentException("precios y fecha no pueden ser nulos");
+        }
+        this.precios = precios;
+        this.precioCombo = new PrecioCombo(precios, fecha);
+        this.fecha = fecha;
+        this.arranque = Long.toString(System.currentTimeMillis(), 36) + Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+        for (Region region : Region.values()) {
+            cambios.put(region, new HashMap<>());
+        }
+    }
+
+    /**
+     * Carga el catalogo con cinco consultas. Lo cargado queda en la version
+     * inicial: un cliente sin version recibe todo con {@link #completo()}.
+     */
+    public static CatalogoVersionado cargar(Connection conexion, LocalDate fecha) throws SQLException {
+        CatalogoVersionado catalogo = new CatalogoVersionado(ProductoPrecio.cargar(conexion), fecha);
+        Map<Long, List<Long>> tiposPorProducto = new HashMap<>();
+        try (Statement st = conexion.createStatement()) {
+            try (ResultSet rs = st.executeQuery(CONSULTA_TIPOS)) {
+                while (rs.next()) {
+                    catalogo.tipos.put(rs.getLong(1), new Tipo(rs.getLong(1), rs.getString(2), rs.getBoolean(3)));
+                }
+            }
+            try (ResultSet rs = st.executeQuery(CONSULTA_PRODUCTO_DETALLE)) {
+                while (rs.next()) {
+                    tiposPorProducto.computeIfAbsent(rs.getLong(2), k -> new ArrayList<>()).add(rs.getLong(1));
+                }
+            }
+            try (ResultSet rs = st.executeQuery(CONSULTA_PRODUCTOS)) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    long[] suyos = tiposPorProducto.getOrDefault(id, List.of()).stream().mapToLong(Long::longValue).sorted().toArray();
+                    // activo nulo cuenta como activo, igual que el DEFAULT true de la columna
+                    catalogo.productos.put(id, new Producto(id, rs.getString(2), rs.getObject(3) == null || rs.getBoolean(3), rs.getString(4), suyos));
+                    catalogo.actualizarVigente(id);
+                }
+            }
+            try (ResultSet rs = st.executeQuery(CONSULTA_COMBOS)) {
+                while (rs.next()) {
+                    catalogo.combos.put(rs.getLong(1), new Combo(rs.getLong(1), rs.getString(2), rs.getBoolean(3), rs.getString(4), rs.getString(5)));
+                }
+            }
+        }
+        OrdenIngesta.cargarCombos(conexion).forEach((idCombo, plano) -> {
+            for (int i = 0; i < plano.length; i += 2) {
+                catalogo.detalle(idCombo, plano[i], (int) plano[i + 1]);
+            }
+        });
+        return catalogo;
+    }
+
+    public synchronized long guardarTipo(long idTipoProducto, String nombre, boolean activo) {
+        validar(idTipoProducto);
+        tipos.put(idTipoProducto, new Tipo(idTipoProducto, nombre, activo));
+        return marcar(Region.TIPO_PRODUCTO, idTipoProducto);
+    }
+
+    /**
+     * Alta o cambio de un producto con los tipos de su {@code producto_detalle}.
+     */
+    public synchronized long guardarProducto(long idProducto, String nombre, boolean activo, String url, long... idsTipoProducto) {
+        validar(idProducto);
+        Producto anterior = productos.put(idProducto, new Producto(idProducto, nombre, activo, url, idsTipoProducto.clone()));
+        // el precio se publica solo para productos activos
+        if (actualizarVigente(idProducto) || anterior == null || anterior.activo() != activo) {
+            marcar(Region.PRODUCTO_PRECIO, idProducto);
+        }
+        return marcar(Region.PRODUCTO, idProducto);
+    }
+
+    public synchronized long guardarCombo(long idCombo, String nombre, boolean activo, String descripcionPublica, String url) {
+        validar(idCombo);
+        combos.put(idCombo, new Combo(idCombo, nombre, activo, descripcionPublica, url));
+        return marcar(Region.COMBO, idCombo);
+    }
+
+    /**
+     * Alta o cambio de cantidad de un miembro de combo; el combo cambia de
+     * version aunque su precio no cambie porque sus miembros si.
+     */
+    public synchronized long guardarDetalle(long idCombo, long idProducto, int cantidad) {
+        detalle(idCombo, idProducto, cantidad);
+        return marcar(Region.COMBO, idCombo);
+    }
+
+    public synchronized long eliminarDetalle(long idCombo, long idProducto) {
+        TreeMap<Long, Integer> suyos = miembros.get(idCombo);
+        if (suyos == null || suyos.remove(idProducto) == null) {
+            return version;
+        }
+        if (suyos.isEmpty()) {
+            miembros.remove(idCombo);
+        }
+        Set<Long> contienen = combosPorProducto.get(idProducto);
+        contienen.remove(idCombo);
+        if (contienen.isEmpty()) {
+            combosPorProducto.remove(idProducto);
+        }
+        precioCombo.eliminarDetalle(idCombo, idProducto);
+        return marcar(Region.COMBO, idCombo);
+    }
+
+    /**
+     * Alta de un {@code producto_precio}. Si cambia el precio vigente del
+     * producto cambian de version su precio y los combos que lo contienen.
+     */
+    public synchronized long registrarPrecio(long idProductoPrecio, long idProducto, LocalDate fechaDesde, LocalDate fechaHasta, BigDecimal precioSugerido) {
+        precioCombo.registrarPrecio(idProductoPrecio, idProducto, fechaDesde, fechaHasta, precioSugerido);
+        if (actualizarVigente(idProducto)) {
+            marcar(Region.PRODUCTO_PRECIO, idProducto);
+            for (long idCombo : combosPorProducto.getOrDefault(idProducto, Set.of())) {
+                marcar(Region.COMBO, idCombo);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Baja de un tipo, producto o combo. El id queda como eliminado en los
+     * deltas hasta que se compacte.
+     */
+    public synchronized long eliminar(Region region, long id) {
+        boolean estaba = switch (region) {
+            case TIPO_PRODUCTO -> tipos.remove(id) != null;
+            case PRODUCTO -> {
+                boolean quitado = productos.remove(id) != null;
+                if (vigentes.remove(id) != null) {
+                    marcar(Region.PRODUCTO_PRECIO, id);
+                }
+                yield quitado;
+            }
+            case COMBO -> {
+                for (long idProducto : new ArrayList<>(miembros.getOrDefault(id, new TreeMap<>()).keySet())) {
+                    eliminarDetalle(id, idProducto);
+                }
+                yield combos.remove(id) != null;
+            }
+            case PRODUCTO_PRECIO -> throw new IllegalArgumentException("Los precios se dan de baja con un nuevo rango");
+        };
+        return estaba ? marcar(region, id) : version;
+    }
+
+    /**
+     * Cambio de dia: los precios cuyo rango empieza o termina cambian de
+     * version y con ellos los combos que los contienen.
+     */
+    public synchronized long cambiarFecha(LocalDate nueva) {
+        if (nueva.equals(fecha)) {
+            return version;
+        }
+        fecha = nueva;
+        precioCombo.cambiarFecha(nueva);
+        for (long idProducto : productos.keySet()) {
+            if (actualizarVigente(idProducto)) {
+                marcar(Region.PRODUCTO_PRECIO, idProducto);
+                for (long idCombo : combosPorProducto.getOrDefault(idProducto, Set.of())) {
+                    marcar(Region.COMBO, idCombo);
+                }
+            }
+        }
+        return version;
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Version para el cliente: identificador de arranque y version. Es lo que
+     * va en {@code "version"} y lo que se devuelve a {@link #delta}.
+     */
+    public synchronized String token() {
+        return token(version);
+    }
+
+    /**
+     * Version mas vieja desde la que se puede pedir un delta.
+     */
+    public synchronized long horizonte() {
+        return horizonte;
+    }
+
+    /**
+     * Olvida los eliminados hasta {@code hasta}; quien tenga una version
+     * anterior recibe el catalogo completo. Devuelve cuantos se olvidaron.
+     */
+    public synchronized int compactar(long hasta) {
+        if (hasta > version) {
+            throw new IllegalArgumentException("hasta no puede ser mayor a la version actual");
+        }
+        int olvidados = 0;
+        for (Map.Entry<Region, HashMap<Long, Long>> region : cambios.entrySet()) {
+            var it = region.getValue().entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Long> cambio = it.next();
+                if (cambio.getValue() <= hasta && !existe(region.getKey(), cambio.getKey())) {
+                    it.remove();
+                    olvidados++;
+                }
+            }
+        }
+        horizonte = Math.max(horizonte, hasta);
+        return olvidados;
+    }
+
+    /**
+     * Catalogo activo completo; se serializa una vez por version.
+     */
+    public synchronized byte[] completo() {
+        if (completo == null) {
+            completo = escribir(Long.MIN_VALUE);
+        }
+        return completo;
+    }
+
+    /**
+     * Lo que cambio despues del token {@code desde}. Si el token es de otro
+     * arranque, esta mal formado o su version es anterior al horizonte o
+     * posterior a la actual se devuelve el completo.
+     */
+    public synchronized byte[] delta(String desde) {
+        int separador = desde == null ? -1 : desde.lastIndexOf('-');
+        if (separador < 0 || !arranque.equals(desde.substring(0, separador))) {
+            return completo();
+        }
+        long numero;
+        try {
+            numero = Long.parseLong(desde.substring(separador + 1));
+        } catch (NumberFormatException e) {
+            return completo();
+        }
+        if (numero < horizonte || numero > version) {
+            return completo();
+        }
+        return escribir(numero);
+    }
+
+    private String token(long numero) {
+        return arranque + "-" + numero;
+    }
+
+    private byte[] escribir(long desde) {
+        boolean todo = desde == Long.MIN_VALUE;
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(todo ? 1 << 16 : 256);
+        try (JsonGenerator g = GENERADORES.createGenerator(salida)) {
+            g.writeStartObject().write("version", token(version));
+            if (!todo) {
+                g.write("desde", token(desde));
+            }
+            g.write("completo", todo);
+
+            List<Long> tiposFuera = new ArrayList<>();
+            g.writeStartArray("tipos");
+            for (Tipo t : tipos.values()) {
+                if (todo || cambio(Region.TIPO_PRODUCTO, t.id(), desde)) {
+                    if (t.activo()) {
+                        g.writeStartArray().write(t.id()).write(texto(t.nombre())).writeEnd();
+                    } else if (!todo) {
+                        tiposFuera.add(t.id());
+                    }
+                }
+            }
+            g.writeEnd();
+
+            List<Long> productosFuera = new ArrayList<>();
+            g.writeStartArray("productos");
+            for (Producto p : productos.values()) {
+                if (todo || cambio(Region.PRODUCTO, p.id(), desde)) {
+                    if (p.activo()) {
+                        g.writeStartArray().write(p.id()).write(texto(p.nombre())).write(texto(p.url())).writeStartArray();
+                        for (long tipo : p.tipos()) {
+                            g.write(tipo);
+                        }
+                        g.writeEnd().writeEnd();
+                    } else if (!todo) {
+                        productosFuera.add(p.id());
+                    }
+                }
+            }
+            g.writeEnd();
+
+            List<Long> preciosFuera = new ArrayList<>();
+            g.writeStartArray("precios");
+            for (Producto p : productos.values()) {
+                if (todo || cambio(Region.PRODUCTO_PRECIO, p.id(), desde)) {
+                    ProductoPrecio.Vigente vigente = vigentes.get(p.id());
+                    if (vigente != null && p.activo()) {
+                        g.writeStartArray().write(p.id()).write(vigente.idProductoPrecio()).write(BigDecimal.valueOf(vigente.centavos(), Pago.ESCALA)).writeEnd();
+                    } else if (!todo) {
+                        preciosFuera.add(p.id());
+                    }
+                }
+            }
+            g.writeEnd();
+
+            List<Long> combosFuera = new ArrayList<>();
+            g.writeStartArray("combos");
+            for (Combo c : combos.values()) {
+                if (todo || cambio(Region.COMBO, c.id(), desde)) {
+                    if (c.activo()) {
+                        g.writeStartArray().write(c.id()).write(texto(c.nombre())).write(texto(c.descripcion())).write(texto(c.url()));
+                        long centavos = precioCombo.centavos(c.id());
+                        if (centavos < 0) {
+                            g.writeNull();
+                        } else {
+                            g.write(BigDecimal.valueOf(centavos, Pago.ESCALA));
+                        }
+                        g.writeStartArray();
+                        for (Map.Entry<Long, Integer> m : miembros.getOrDefault(c.id(), new TreeMap<>()).entrySet()) {
+                            g.writeStartArray().write(m.getKey()).write(m.getValue()).writeEnd();
+                        }
+                        g.writeEnd().writeEnd();
+                    } else if (!todo) {
+                        combosFuera.add(c.id());
+                    }
+                }
+            }
+            g.writeEnd();
+
+            if (!todo) {
+                // borrados de verdad: siguen en cambios pero ya no en el catalogo
+                agregarBorrados(Region.TIPO_PRODUCTO, desde, tiposFuera);
+                agregarBorrados(Region.PRODUCTO, desde, productosFuera);
+                agregarBorrados(Region.PRODUCTO_PRECIO, desde, preciosFuera);
+                agregarBorrados(Region.COMBO, desde, combosFuera);
+                g.writeStartObject("eliminados");
+                ids(g, "tipos", tiposFuera);
+                ids(g, "productos", productosFuera);
+                ids(g, "precios", preciosFuera);
+                ids(g, "combos", combosFuera);
+                g.writeEnd();
+            }
+            g.writeEnd();
+        }
+        return salida.toByteArray();
+    }
+
+    private static String texto(String valor) {
+        return valor == null ? "" : valor;
+    }
+
+    private static void ids(JsonGenerator g, String nombre, List<Long> ids) {
+        g.writeStartArray(nombre);
+        for (long id : ids) {
+            g.write(id);
+        }
+        g.writeEnd();
+    }
+
+    private void agregarBorrados(Region region, long desde, List<Long> fuera) {
+        Set<Long> ya = new HashSet<>(fuera);
+        for (Map.Entry<Long, Long> cambio : cambios.get(region).entrySet()) {
+            long id = cambio.getKey();
+            if (cambio.getValue() > desde && !ya.contains(id) && !existe(region, id)) {
+                fuera.add(id);
+            }
+        }
+        fuera.sort(null);
+    }
+
+    private boolean existe(Region region, long id) {
+        return switch (region) {
+            case TIPO_PRODUCTO -> tipos.containsKey(id);
+            case PRODUCTO -> productos.containsKey(id);
+            // un precio sin producto ya no se publica
+            case PRODUCTO_PRECIO -> productos.containsKey(id);
+            case COMBO -> combos.containsKey(id);
+        };
+    }
+
+    private boolean cambio(Region region, long id, long desde) {
+        Long cuando = cambios.get(region).get(id);
+        return cuando != null && cuando > desde;
+    }
+
+    private long marcar(Region region, long id) {
+        version++;
+        cambios.get(region).put(id, version);
+        completo = null;
+        return version;
+    }
+
+    private void detalle(long idCombo, long idProducto, int cantidad) {
+        precioCombo.guardarDetalle(idCombo, idProducto, cantidad);
+        miembros.computeIfAbsent(idCombo, k -> new TreeMap<>()).put(idProducto, cantidad);
+        combosPorProducto.computeIfAbsent(idProducto, k -> new HashSet<>()).add(idCombo);
+    }
+
+    /**
+     * Devuelve true si el precio vigente del producto cambio.
+     */
+    private boolean actualizarVigente(long idProducto) {
+        ProductoPrecio.Vigente vigente = precios.vigente(idProducto, fecha);
+        ProductoPrecio.Vigente anterior = vigente == null ? vigentes.remove(idProducto) : vigentes.put(idProducto, vigente);
+        return vigente == null ? anterior != null : !vigente.equals(anterior);
+    }
+
+    private static void validar(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("El id no puede ser nulo o menor a cero");
+        }
+    }
+}
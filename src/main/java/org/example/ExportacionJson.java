@@ -0,0 +1,264 @@
+package org.example;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Listados en streaming para {@code AbstracDataResource.findRange} y los
+ * {@code findRange*} de los recursos: en lugar de cargar entidades completas
+ * (con {@code productoDetalleList}, {@code productoPrecioList}...) y pasarle
+ * la lista a Yasson, el bean proyecta solo las columnas planas y el recurso
+ * las escribe con el {@link JsonGenerator} de JSON-P conforme llegan. No hay
+ * {@code List} intermedia, asi la memoria no crece con el tamano de la pagina.
+ * <p>
+ * Con JPA el bean pide la tupla de {@link Proyeccion#jpql()} con
+ * {@code getResultStream()} y las {@link #SUGERENCIAS} (sin ellas EclipseLink
+ * arma la lista completa antes de devolver el stream) y el recurso devuelve
+ * {@code StreamingOutput salida -> ExportacionJson.escribir(proyeccion, filas, salida)}.
+ * Para exportaciones grandes {@link #exportar} va directo por JDBC con
+ * {@code fetchSize}.
+ */
+public class ExportacionJson {
+
+    public static final String TIPO_CONTENIDO = "application/json";
+
+    // filas que trae el driver por viaje; con autocommit Postgres ignora el fetchSize
+    public static final int FETCH = Integer.getInteger("exportacion.fetch", 500);
+
+    /**
+     * Hints de EclipseLink para que {@code getResultStream()} recorra un
+     * cursor de base de datos en lugar de la lista ya materializada.
+     */
+    public static final Map<String, Object> SUGERENCIAS = Map.of(
+            "eclipselink.cursor", "true",
+            "eclipselink.jdbc.fetch-size", FETCH,
+            "eclipselink.read-only", "true");
+
+    // buscar el proveedor de JSON-P en cada peticion cuesta mas que escribir una pagina chica
+    private static final JsonGeneratorFactory GENERADORES = Json.createGeneratorFactory(Map.of());
+
+    public enum Tipo {
+        ENTERO, DECIMAL, TEXTO, BOOLEANO, FECHA
+    }
+
+    /**
+     * Propiedad del JSON, atributo JPQL y columna SQL de donde sale. Las
+     * relaciones se proyectan como su id ({@code idOrden.idOrden}).
+     */
+    public record Campo(String json, String atributo, String columna, Tipo tipo) {
+    }
+
+    public record Proyeccion(Paginacion.Llave llave, List<Campo> campos) {
+
+        public Proyeccion {
+            if (campos.isEmpty()) {
+                throw new IllegalArgumentException("La proyeccion necesita al menos un campo");
+            }
+        }
+
+        /**
+         * Consulta de tupla ({@code Object[]}) ordenada por la PK, igual que
+         * {@link Paginacion} (en las entidades de PK compuesta no es el orden
+         * de {@code orderParameterQuery()}); el rango va con
+         * {@code setFirstResult}/{@code setMaxResults}.
+         */
+        public String jpql() {
+            StringBuilder sb = new StringBuilder("SELECT ");
+            for (int i = 0; i < campos.size(); i++) {
+                sb.append(i == 0 ? "e." : ", e.").append(campos.get(i).atributo());
+            }
+            sb.append(" FROM ").append(llave.entidad()).append(" e ORDER BY ");
+            for (int i = 0; i < llave.atributos().size(); i++) {
+                sb.append(i == 0 ? "e." : ", e.").append(llave.atributos().get(i));
+            }
+            return sb.toString();
+        }
+
+        public String sql(boolean conCursor) {
+            StringBuilder columnas = new StringBuilder();
+            for (int i = 0; i < campos.size(); i++) {
+                columnas.append(i == 0 ? "" : ", ").append(campos.get(i).columna());
+            }
+            return Paginacion.sql(llave, columnas.toString(), conCursor);
+        }
+    }
+
+    static Campo entero(String json, String columna) {
+        return new Campo(json, json, columna, Tipo.ENTERO);
+    }
+
+    static Campo campo(String json, String columna, Tipo tipo) {
+        return new Campo(json, json, columna, tipo);
+    }
+
+    public static final Map<String, Proyeccion> PROYECCIONES = Map.of(
+            "Combo", new Proyeccion(Paginacion.llave("Combo"), List.of(entero("idCombo", "id_combo"), campo("nombre", "nombre", Tipo.TEXTO),
+                    campo("activo", "activo", Tipo.BOOLEANO), campo("descripcionPublica", "descripcion_publica", Tipo.TEXTO), campo("url", "url", Tipo.TEXTO))),
+            "Orden", new Proyeccion(Paginacion.llave("Orden"), List.of(entero("idOrden", "id_orden"), campo("fecha", "fecha", Tipo.FECHA),
+                    campo("sucursal", "sucursal", Tipo.TEXTO), campo("anulada", "anulada", Tipo.BOOLEANO))),
+            "OrdenDetalle", new Proyeccion(Paginacion.llave("OrdenDetalle"), List.of(
+                    new Campo("idOrden", "ordenDetallePK.idOrden", "id_orden", Tipo.ENTERO),
+                    new Campo("idProductoPrecio", "ordenDetallePK.idProductoPrecio", "id_producto_precio", Tipo.ENTERO),
+                    campo("cantidad", "cantidad", Tipo.ENTERO), campo("precio", "precio", Tipo.DECIMAL), campo("observaciones", "observaciones", Tipo.TEXTO))),
+            "Pago", new Proyeccion(Paginacion.llave("Pago"), List.of(entero("idPago", "id_pago"), new Campo("idOrden", "idOrden.idOrden", "id_orden", Tipo.ENTERO),
+                    campo("fecha", "fecha", Tipo.FECHA), campo("metodoPago", "metodo_pago", Tipo.TEXTO), campo("referencia", "referencia", Tipo.TEXTO))),
+            "PagoDetalle", new Proyeccion(Paginacion.llave("PagoDetalle"), List.of(entero("idPagoDetalle", "id_pago_detalle"),
+                    new Campo("idPago", "idPago.idPago", "id_pago", Tipo.ENTERO), campo("monto", "monto", Tipo.DECIMAL), campo("observaciones", "observaciones", Tipo.TEXTO))),
+            "Producto", new Proyeccion(Paginacion.llave("Producto"), List.of(entero("idProducto", "id_producto"), campo("nombre", "nombre", Tipo.TEXTO),
+                    campo("activo", "activo", Tipo.BOOLEANO), campo("observaciones", "observaciones", Tipo.TEXTO), campo("url", "url", Tipo.TEXTO))),
+            "ProductoPrecio", new Proyeccion(Paginacion.llave("ProductoPrecio"), List.of(entero("idProductoPrecio", "id_producto_precio"),
+                    new Campo("idProducto", "idProducto.idProducto", "id_producto", Tipo.ENTERO), campo("fechaDesde", "fecha_desde", Tipo.FECHA),
+                    campo("fechaHasta", "fecha_hasta", Tipo.FECHA), campo("precioSugerido", "precio_sugerido", Tipo.DECIMAL))),
+            "TipoProducto", new Proyeccion(Paginacion.llave("TipoProducto"), List.of(entero("idTipoProducto", "id_tipo_producto"), campo("nombre", "nombre", Tipo.TEXTO),
+                    campo("activo", "activo", Tipo.BOOLEANO), campo("observaciones", "observaciones", Tipo.TEXTO))));
+
+    public static Proyeccion proyeccion(String entidad) {
+        Proyeccion proyeccion = PROYECCIONES.get(entidad);
+        if (proyeccion == null) {
+            throw new IllegalArgumentException("No hay proyeccion para " + entidad);
+        }
+        return proyeccion;
+    }
+
+    /**
+     * Escribe las tuplas de {@link Proyeccion#jpql()} como un arreglo JSON
+     * conforme el stream las entrega y lo cierra. Devuelve cuantas filas
+     * escribio.
+     */
+    public static long escribir(Proyeccion proyeccion, Stream<Object[]> filas, OutputStream salida) {
+        List<Campo> campos = proyeccion.campos();
+        long escritas = 0;
+        try (filas; JsonGenerator g = GENERADORES.createGenerator(new SinCerrar(salida))) {
+            g.writeStartArray();
+            for (var it = filas.iterator(); it.hasNext(); ) {
+                Object[] fila = it.next();
+                if (fila.length != campos.size()) {
+                    throw new IllegalArgumentException("La fila trae " + fila.length + " valores y la proyeccion " + campos.size());
+                }
+                g.writeStartObject();
+                for (int i = 0; i < fila.length; i++) {
+                    valor(g, campos.get(i).json(), fila[i]);
+                }
+                g.writeEnd();
+                escritas++;
+            }
+            g.writeEnd();
+        }
+        return escritas;
+    }
+
+    /**
+     * Exportacion por JDBC en el orden de la llave, hasta {@code max} filas
+     * ({@code <= 0} sin limite) despues de {@code cursor} (uno de
+     * {@link Paginacion}, o {@code null} para empezar). Los valores se leen
+     * de la columna y se escriben sin armar objetos por fila. La conexion
+     * debe venir sin autocommit para que el driver use el {@code fetchSize}.
+     */
+    public static long exportar(Connection conexion, Proyeccion proyeccion, String cursor, long max, OutputStream salida) throws SQLException {
+        long[] desde = Paginacion.decodificar(proyeccion.llave(), cursor);
+        List<Campo> campos = proyeccion.campos();
+        long escritas = 0;
+        try (PreparedStatement ps = conexion.prepareStatement(proyeccion.sql(desde != null), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(FETCH);
+            int p = 1;
+            if (desde != null) {
+                for (long v : desde) {
+                    ps.setLong(p++, v);
+                }
+            }
+            ps.setLong(p, max <= 0 ? Long.MAX_VALUE : max);
+            try (ResultSet rs = ps.executeQuery(); JsonGenerator g = GENERADORES.createGenerator(new SinCerrar(salida))) {
+                g.writeStartArray();
+                while (rs.next()) {
+                    g.writeStartObject();
+                    for (int i = 0; i < campos.size(); i++) {
+                        columna(g, campos.get(i), rs, i + 1);
+                    }
+                    g.writeEnd();
+                    escritas++;
+                }
+                g.writeEnd();
+            }
+        }
+        return escritas;
+    }
+
+    static void valor(JsonGenerator g, String nombre, Object valor) {
+        switch (valor) {
+            case null -> g.writeNull(nombre);
+            case Long l -> g.write(nombre, l);
+            case Integer i -> g.write(nombre, i);
+            case BigDecimal d -> g.write(nombre, d);
+            case Boolean b -> g.write(nombre, b);
+            case String s -> g.write(nombre, s);
+            case LocalDate f -> g.write(nombre, f.toString());
+            case java.sql.Date f -> g.write(nombre, f.toLocalDate().toString());
+            // las columnas date mapeadas como java.util.Date (Orden.fecha, Pago.fecha)
+            case Date f -> g.write(nombre, f.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toString());
+            default -> throw new IllegalArgumentException("Tipo no soportado en " + nombre + ": " + valor.getClass().getName());
+        }
+    }
+
+    static void columna(JsonGenerator g, Campo campo, ResultSet rs, int i) throws SQLException {
+        String nombre = campo.json();
+        switch (campo.tipo()) {
+            case ENTERO -> {
+                long v = rs.getLong(i);
+                if (rs.wasNull()) {
+                    g.writeNull(nombre);
+                } else {
+                    g.write(nombre, v);
+                }
+            }
+            case BOOLEANO -> {
+                boolean v = rs.getBoolean(i);
+                if (rs.wasNull()) {
+                    g.writeNull(nombre);
+                } else {
+                    g.write(nombre, v);
+                }
+            }
+            case DECIMAL -> valor(g, nombre, rs.getBigDecimal(i));
+            case TEXTO -> valor(g, nombre, rs.getString(i));
+            // la fecha ya viene como yyyy-mm-dd en el protocolo de texto
+            case FECHA -> valor(g, nombre, rs.getString(i));
+        }
+    }
+
+    /**
+     * El generador cierra su salida al terminar; la del contenedor la cierra
+     * el contenedor.
+     */
+    private static final class SinCerrar extends FilterOutputStream {
+
+        SinCerrar(OutputStream salida) {
+            super(salida);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
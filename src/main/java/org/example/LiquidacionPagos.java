@@ -0,0 +1,513 @@
+package org.example;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Liquidacion asincrona de pagos.
+ * <p>
+ * Hoy {@code PagoResouce.create} llama {@code PagoDetalleBean.createDetalles},
+ * que recalcula {@code calculoPorOrden} y crea el {@code pago_detalle} dentro
+ * de la misma transaccion JTA mientras la caja espera. Aqui
+ * {@link #aceptar} solo anota la solicitud en un diario en disco, la pone en
+ * una cola acotada y responde 202 con la ruta de {@link #estado}. Varios
+ * hilos virtuales toman lotes de la cola, calculan los totales de todas sus
+ * ordenes con una consulta y escriben los {@code pago_detalle} en una sola
+ * transaccion (group commit).
+ * <ul>
+ * <li>Contrapresion: con {@code capacidad} solicitudes en cola la respuesta es 503 con
+ * {@code Retry-After}.</li>
+ * <li>Idempotencia: la misma {@code Idempotency-Key} devuelve el seguimiento
+ * existente; en la base el {@code pago_detalle} lleva la llave en
+ * {@code observaciones}. El {@code NOT EXISTS} evita el duplicado al
+ * reprocesar, y {@code uq_pago_detalle_liquidacion} de
+ * {@code indices_tpi135_2025.sql} lo evita cuando dos transacciones insertan
+ * la misma llave a la vez; sin ese indice esa carrera puede duplicar.</li>
+ * <li>Errores: los transitorios (conexion, serializacion, bloqueo, servidor
+ * reiniciando, la llave que otra transaccion acaba de insertar) se reintentan
+ * con espera creciente y el pago sigue pendiente; si no se resuelven vuelve a
+ * la cola, o queda en el diario si se esta cerrando. Solo lo que volveria a
+ * fallar igual (orden sin detalle, monto fuera de {@code numeric(6,2)}, llave
+ * foranea, dato invalido) termina en {@link Estado#FALLIDO}.</li>
+ * <li>Reinicio: {@link #abrir} vuelve a encolar todo lo aceptado que no
+ * alcanzo a liquidarse, aunque pase de {@code capacidad} (lo que estaba en
+ * vuelo al caer), y compacta el diario.</li>
+ * </ul>
+ */
+public class LiquidacionPagos implements AutoCloseable {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String RUTA = "liquidacion/";
+
+    // seguimientos terminados que se recuerdan para contestar reintentos
+    static final int TERMINADOS = Integer.getInteger("liquidacion.terminados", 100_000);
+    // intentos por lote ante un error transitorio y espera antes del primero (se duplica hasta ESPERA_MAXIMA_MS)
+    static final int REINTENTOS = Integer.getInteger("liquidacion.reintentos", 5);
+    static final long ESPERA_MS = Long.getLong("liquidacion.espera", 100);
+    static final long ESPERA_MAXIMA_MS = 5_000;
+
+    private static final System.Logger LOG = System.getLogger(LiquidacionPagos.class.getName());
+
+    static final String PREFIJO = "liquidacion:";
+    static final String TOTALES = "SELECT id_orden, SUM(ROUND(precio * 100) * cantidad)::bigint FROM orden_detalle WHERE id_orden = ANY(?) GROUP BY id_orden";
+    static final String INSERTAR = "INSERT INTO pago_detalle (id_pago, monto, observaciones) SELECT ?, ?, ?"
+            + " WHERE NOT EXISTS (SELECT 1 FROM pago_detalle WHERE id_pago = ? AND observaciones = ?)";
+
+    public enum Estado {
+        PENDIENTE, LIQUIDADO, FALLIDO
+    }
+
+    public record Solicitud(String llave, long idPago, long idOrden) {
+
+        public Solicitud {
+            if (llave == null || llave.isBlank() || llave.length() > 100 || llave.chars().anyMatch(Character::isISOControl)) {
+                throw new IllegalArgumentException("La llave de idempotencia es invalida");
+            }
+            if (idPago <= 0 || idOrden <= 0) {
+                throw new IllegalArgumentException("idPago e idOrden no pueden ser nulos o menores a cero");
+            }
+        }
+    }
+
+    public record Seguimiento(Solicitud solicitud, Estado estado, long centavos, String error) {
+    }
+
+    public record Respuesta(int status, String ubicacion, Seguimiento seguimiento) {
+    }
+
+    private final DataSource dataSource;
+    private final Path archivo;
+    private final BlockingQueue<Solicitud> cola;
+    private final int capacidad;
+    private final int lote;
+    private final int trabajadores;
+
+    private final Map<String, Seguimiento> seguimientos = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> terminados = new ConcurrentLinkedQueue<>();
+    private final List<Thread> hilos = new ArrayList<>();
+    private volatile boolean activo;
+    private volatile boolean abortar;
+
+    // diario: se escribe bajo "escritura" y un solo hilo hace fsync por grupo de escrituras
+    private final FileChannel diario;
+    private final Object escritura = new Object();
+    private final Object sincronizacion = new Object();
+    private long escritos;
+    private long sincronizados;
+
+    private final LongAdder liquidados = new LongAdder();
+    private final LongAdder fallidos = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder rechazados = new LongAdder();
+    private final LongAdder reintentos = new LongAdder();
+
+    private LiquidacionPagos(DataSource dataSource, Path archivo, int capacidad, int trabajadores, int lote) throws IOException {
+        if (capacidad <= 0 || trabajadores <= 0 || lote <= 0) {
+            throw new IllegalArgumentException("capacidad, trabajadores y lote deben ser mayores a cero");
+        }
+        this.dataSource = dataSource;
+        this.archivo = archivo;
+        this.capacidad = capacidad;
+        this.trabajadores = trabajadores;
+        this.lote = lote;
+        List<Solicitud> pendientes = compactar(archivo);
+        // capacidad es el limite para aceptar; por encima cabe lo que estaba en vuelo al caer
+        // (hasta trabajadores * lote) y lo que vuelve a la cola despues de un error transitorio
+        this.cola = new ArrayBlockingQueue<>(Math.max(capacidad, pendientes.size()) + trabajadores * lote);
+        for (Solicitud s : pendientes) {
+            cola.add(s);
+            seguimientos.put(s.llave(), new Seguimiento(s, Estado.PENDIENTE, -1, null));
+        }
+        this.diario = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Abre el diario y vuelve a encolar lo pendiente; los hilos arrancan con
+     * {@link #iniciar}.
+     */
+    public static LiquidacionPagos abrir(DataSource dataSource, Path archivo, int capacidad, int trabajadores, int lote) throws IOException {
+        return new LiquidacionPagos(dataSource, archivo, capacidad, trabajadores, lote);
+    }
+
+    public synchronized void iniciar() {
+        if (activo) {
+            return;
+        }
+        activo = true;
+        for (int i = 0; i < trabajadores; i++) {
+            hilos.add(Thread.ofVirtual().name("liquidacion-" + i).start(this::trabajar));
+        }
+    }
+
+    /**
+     * 202 si la solicitud quedo en cola (o ya estaba pendiente), 200 si esa
+     * llave ya termino y 503 si la cola esta llena. La solicitud ya esta en
+     * disco cuando se devuelve 202.
+     */
+    public Respuesta aceptar(Solicitud solicitud) throws IOException {
+        String ubicacion = RUTA + solicitud.llave();
+        Seguimiento nuevo = new Seguimiento(solicitud, Estado.PENDIENTE, -1, null);
+        Seguimiento existente = seguimientos.putIfAbsent(solicitud.llave(), nuevo);
+        if (existente != null) {
+            if (existente.solicitud().idPago() != solicitud.idPago() || existente.solicitud().idOrden() != solicitud.idOrden()) {
+                throw new IllegalArgumentException("La llave " + solicitud.llave() + " ya se uso con otro pago");
+            }
+            return new Respuesta(existente.estado() == Estado.PENDIENTE ? 202 : 200, ubicacion, existente);
+        }
+        if (cola.size() >= capacidad) {
+            seguimientos.remove(solicitud.llave(), nuevo);
+            rechazados.increment();
+            return new Respuesta(503, null, null);
+        }
+        try {
+            anotar("A\t" + solicitud.llave() + '\t' + solicitud.idPago() + '\t' + solicitud.idOrden() + '\n', true);
+        } catch (IOException e) {
+            seguimientos.remove(solicitud.llave(), nuevo);
+            throw e;
+        }
+        if (!cola.offer(solicitud)) {
+            // se lleno entre la revision y el offer; el reinicio lo vuelve a tomar del diario
+            seguimientos.remove(solicitud.llave(), nuevo);
+            anotar("X\t" + solicitud.llave() + '\n', false);
+            rechazados.increment();
+            return new Respuesta(503, null, null);
+        }
+        return new Respuesta(202, ubicacion, nuevo);
+    }
+
+    /**
+     * Seguimiento de una llave o {@code null} si no se conoce.
+     */
+    public Seguimiento estado(String llave) {
+        return seguimientos.get(llave);
+    }
+
+    public static String aJson(Seguimiento seguimiento) {
+        JsonObjectBuilder builder = Json.createObjectBuilder().add("llave", seguimiento.solicitud().llave())
+                .add("idPago", seguimiento.solicitud().idPago()).add("idOrden", seguimiento.solicitud().idOrden())
+                .add("estado", seguimiento.estado().name());
+        if (seguimiento.centavos() >= 0) {
+            builder.add("monto", Pago.aMonto(seguimiento.centavos()));
+        }
+        if (seguimiento.error() != null) {
+            builder.add("error", seguimiento.error());
+        }
+        return builder.build().toString();
+    }
+
+    private void trabajar() {
+        List<Solicitud> tomadas = new ArrayList<>(lote);
+        while (!abortar && (activo || !cola.isEmpty())) {
+            try {
+                Solicitud primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                tomadas.add(primera);
+                cola.drainTo(tomadas, lote - 1);
+                liquidar(tomadas);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // lo tomado sigue pendiente en el diario y se vuelve a liquidar al reiniciar
+                LOG.log(System.Logger.Level.ERROR, "no se pudo liquidar un lote de " + tomadas.size() + " pagos", e);
+            } finally {
+                tomadas.clear();
+            }
+        }
+    }
+
+    private void liquidar(List<Solicitud> solicitudes) throws InterruptedException {
+        Map<String, Seguimiento> resultado = null;
+        for (int intento = 0; resultado == null; intento++) {
+            if (abortar) {
+                return;
+            }
+            try {
+                resultado = escribir(solicitudes);
+            } catch (SQLException e) {
+                if (transitorio(e)) {
+                    if (intento == REINTENTOS) {
+                        LOG.log(System.Logger.Level.WARNING, solicitudes.size() + " pagos siguen pendientes despues de " + REINTENTOS + " reintentos", e);
+                        reencolar(solicitudes);
+                        return;
+                    }
+                    reintentos.increment();
+                    Thread.sleep(Math.min(ESPERA_MAXIMA_MS, ESPERA_MS << Math.min(intento, 20)));
+                    continue;
+                }
+                if (solicitudes.size() > 1) {
+                    // aislar la que falla
+                    for (Solicitud s : solicitudes) {
+                        liquidar(List.of(s));
+                    }
+                    return;
+                }
+                Solicitud s = solicitudes.get(0);
+                resultado = Map.of(s.llave(), new Seguimiento(s, Estado.FALLIDO, -1, "Error en la base de datos: " + OrdenIngesta.mensaje(e)));
+            }
+        }
+        lotes.increment();
+        StringBuilder lineas = new StringBuilder();
+        for (Seguimiento s : resultado.values()) {
+            lineas.append(s.estado() == Estado.LIQUIDADO ? "L\t" : "F\t").append(s.solicitud().llave()).append('\n');
+            (s.estado() == Estado.LIQUIDADO ? liquidados : fallidos).increment();
+            seguimientos.put(s.solicitud().llave(), s);
+            terminados.add(s.solicitud().llave());
+        }
+        while (terminados.size() > TERMINADOS) {
+            String viejo = terminados.poll();
+            if (viejo != null) {
+                seguimientos.computeIfPresent(viejo, (k, s) -> s.estado() == Estado.PENDIENTE ? s : null);
+            }
+        }
+        try {
+            // sin fsync: si se pierde, el reinicio vuelve a liquidar y la base lo ignora
+            anotar(lineas.toString(), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * De vuelta a la cola para otro intento; la cola tiene lugar para todo lo
+     * que los trabajadores tienen en vuelo. Cerrando se queda solo en el
+     * diario y sigue pendiente hasta el siguiente {@link #abrir}.
+     */
+    private void reencolar(List<Solicitud> solicitudes) {
+        for (Solicitud s : solicitudes) {
+            if (!activo || !cola.offer(s)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Errores que pueden salir bien al repetir la misma transaccion: clases
+     * SQLSTATE 08 (conexion), 40 (serializacion, deadlock), 53 (recursos),
+     * 57P (servidor apagandose), 55P03 (bloqueo no disponible) y 23505 (otra
+     * transaccion inserto la misma llave; al repetir, el {@code NOT EXISTS}
+     * ya la ve). Se revisa la cadena completa porque el driver envuelve el
+     * error real de un batch en {@code getNextException()}.
+     */
+    static boolean transitorio(SQLException e) {
+        for (Throwable t = e; t != null; t = t instanceof SQLException s && s.getNextException() != null ? s.getNextException() : t.getCause()) {
+            if (t instanceof SQLTransientException || t instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (t instanceof SQLException s && s.getSQLState() != null) {
+                String estado = s.getSQLState();
+                if (estado.startsWith("08") || estado.startsWith("40") || estado.startsWith("53") || estado.startsWith("57P")
+                        || estado.equals("55P03") || estado.equals("23505")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Una transaccion para todo el lote: los totales de sus ordenes en una
+     * consulta y los {@code pago_detalle} en un batch.
+     */
+    private Map<String, Seguimiento> escribir(List<Solicitud> solicitudes) throws SQLException {
+        Map<String, Seguimiento> resultado = new LinkedHashMap<>();
+        try (Connection conexion = dataSource.getConnection()) {
+            conexion.setAutoCommit(false);
+            try {
+                Map<Long, Long> totales = new HashMap<>();
+                Long[] ordenes = solicitudes.stream().map(Solicitud::idOrden).distinct().toArray(Long[]::new);
+                try (PreparedStatement ps = conexion.prepareStatement(TOTALES)) {
+                    Array arreglo = conexion.createArrayOf("bigint", ordenes);
+                    ps.setArray(1, arreglo);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            totales.put(rs.getLong(1), rs.getLong(2));
+                        }
+                    }
+                }
+                try (PreparedStatement ps = conexion.prepareStatement(INSERTAR)) {
+                    for (Solicitud s : solicitudes) {
+                        Long centavos = totales.get(s.idOrden());
+                        if (centavos == null) {
+                            resultado.put(s.llave(), new Seguimiento(s, Estado.FALLIDO, -1, "La orden " + s.idOrden() + " no tiene detalle"));
+                            continue;
+                        }
+                        if (centavos > Pago.MAXIMO_CENTAVOS) {
+                            resultado.put(s.llave(), new Seguimiento(s, Estado.FALLIDO, centavos, "El monto excede numeric(6,2)"));
+                            continue;
+                        }
+                        ps.setLong(1, s.idPago());
+                        ps.setBigDecimal(2, Pago.aMonto(centavos));
+                        ps.setString(3, PREFIJO + s.llave());
+                        ps.setLong(4, s.idPago());
+                        ps.setString(5, PREFIJO + s.llave());
+                        ps.addBatch();
+                        resultado.put(s.llave(), new Seguimiento(s, Estado.LIQUIDADO, centavos, null));
+                    }
+                    ps.executeBatch();
+                }
+                conexion.commit();
+                return resultado;
+            } catch (SQLException | RuntimeException e) {
+                conexion.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void anotar(String lineas, boolean sincronizar) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(lineas.getBytes(StandardCharsets.UTF_8));
+        long mia;
+        synchronized (escritura) {
+            while (bytes.hasRemaining()) {
+                diario.write(bytes);
+            }
+            mia = ++escritos;
+        }
+        if (!sincronizar) {
+            return;
+        }
+        synchronized (sincronizacion) {
+            // quien llega mientras otro hace fsync queda cubierto por el siguiente
+            if (sincronizados < mia) {
+                long hasta;
+                synchronized (escritura) {
+                    hasta = escritos;
+                }
+                diario.force(false);
+                sincronizados = hasta;
+            }
+        }
+    }
+
+    /**
+     * Lee el diario, deja en el archivo solo lo aceptado sin liquidar y lo
+     * devuelve en orden de llegada. Una ultima linea cortada por una caida se
+     * descarta: su 202 nunca se envio.
+     */
+    static List<Solicitud> compactar(Path archivo) throws IOException {
+        if (!Files.exists(archivo)) {
+            return List.of();
+        }
+        Map<String, Solicitud> pendientes = new LinkedHashMap<>();
+        String contenido = Files.readString(archivo, StandardCharsets.UTF_8);
+        int fin = contenido.lastIndexOf('\n');
+        for (String linea : contenido.substring(0, fin + 1).split("\n")) {
+            String[] campos = linea.split("\t");
+            switch (campos[0]) {
+                case "A" -> pendientes.putIfAbsent(campos[1], new Solicitud(campos[1], Long.parseLong(campos[2]), Long.parseLong(campos[3])));
+                case "L", "F", "X" -> pendientes.remove(campos[1]);
+                default -> {
+                }
+            }
+        }
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+            for (Solicitud s : pendientes.values()) {
+                out.write("A\t" + s.llave() + '\t' + s.idPago() + '\t' + s.idOrden() + '\n');
+            }
+        }
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.WRITE)) {
+            canal.force(true);
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new ArrayList<>(pendientes.values());
+    }
+
+    /**
+     * Deja de aceptar trabajo nuevo de la cola y espera a que los hilos
+     * terminen lo que ya esta en ella.
+     */
+    @Override
+    public void close() throws IOException {
+        activo = false;
+        esperarHilos();
+        diario.close();
+    }
+
+    /**
+     * Corta sin vaciar la cola, como una caida: lo pendiente queda en el
+     * diario para el siguiente {@link #abrir}.
+     */
+    public void detener() throws IOException {
+        abortar = true;
+        activo = false;
+        esperarHilos();
+        diario.close();
+    }
+
+    private void esperarHilos() {
+        for (Thread hilo : hilos) {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int pendientes() {
+        return cola.size();
+    }
+
+    public long liquidados() {
+        return liquidados.sum();
+    }
+
+    public long fallidos() {
+        return fallidos.sum();
+    }
+
+    public long rechazados() {
+        return rechazados.sum();
+    }
+
+    /**
+     * Intentos repetidos por errores transitorios de la base.
+     */
+    public long reintentos() {
+        return reintentos.sum();
+    }
+
+    /**
+     * Pagos por transaccion en promedio.
+     */
+    public double promedioLote() {
+        long n = lotes.sum();
+        return n == 0 ? 0 : (double) (liquidados.sum() + fallidos.sum()) / n;
+    }
+}
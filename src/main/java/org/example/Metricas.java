@@ -0,0 +1,208 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de metricas de los recursos REST y de las consultas de
+ * {@code AbstractDataAccess}, exportado en formato de texto de Prometheus.
+ * <p>
+ * Cada metodo obtiene una vez su {@link Temporizador} ({@link #recurso} o
+ * {@link #consulta}) y lo guarda en un campo; registrar una duracion solo
+ * incrementa contadores atomicos en un {@link Histograma}, sin reservar
+ * memoria. El filtro de peticiones llama {@link #iniciar} con el
+ * {@code X-Request-ID} recibido (o genera uno) y {@link #terminar} al
+ * responder; entre ambas llamadas cada consulta se cuenta para la peticion
+ * del hilo y si pasan de {@code umbralConsultas} se reporta un N+1.
+ */
+public class Metricas {
+
+    public static final String X_REQUEST_ID = "X-Request-ID";
+    public static final String TIPO_CONTENIDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    // limites de las cubetas exportadas, en microsegundos
+    static final long[] LIMITES = {500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+    private static final System.Logger LOG = System.getLogger(Metricas.class.getName());
+
+    public static final class Temporizador {
+        private final String metodo;
+        private final Histograma latencias = new Histograma();
+        private final LongAdder nMasUno = new LongAdder();
+
+        private Temporizador(String metodo) {
+            this.metodo = metodo;
+        }
+
+        public void registrar(long nanos) {
+            latencias.registrar(nanos / 1000);
+        }
+
+        public String getMetodo() {
+            return metodo;
+        }
+
+        public Histograma getLatencias() {
+            return latencias;
+        }
+
+        public long getNMasUno() {
+            return nMasUno.sum();
+        }
+    }
+
+    // estado por hilo reutilizado entre peticiones
+    private static final class Peticion {
+        String id;
+        int consultas;
+        boolean activa;
+    }
+
+    private final int umbralConsultas;
+    private final String prefijoIds;
+    private final AtomicLong secuencia = new AtomicLong();
+    private final Map<String, Temporizador> recursos = new ConcurrentSkipListMap<>();
+    private final Map<String, Temporizador> consultas = new ConcurrentSkipListMap<>();
+    private final ThreadLocal<Peticion> peticion = ThreadLocal.withInitial(Peticion::new);
+
+    public Metricas(int umbralConsultas) {
+        if (umbralConsultas <= 0) {
+            throw new IllegalArgumentException("umbralConsultas debe ser mayor a cero");
+        }
+        this.umbralConsultas = umbralConsultas;
+        this.prefijoIds = Long.toHexString(System.currentTimeMillis()) + "-";
+    }
+
+    /**
+     * Temporizador de un metodo de recurso, por ejemplo
+     * {@code "ProductoResource.findRange"}.
+     */
+    public Temporizador recurso(String metodo) {
+        return recursos.computeIfAbsent(metodo, Temporizador::new);
+    }
+
+    /**
+     * Temporizador de un metodo de {@code AbstractDataAccess}, por ejemplo
+     * {@code "ProductoBean.findRange"}.
+     */
+    public Temporizador consulta(String metodo) {
+        return consultas.computeIfAbsent(metodo, Temporizador::new);
+    }
+
+    /**
+     * Inicio de una peticion en el hilo actual. Devuelve el id que se debe
+     * reenviar en la respuesta y en las llamadas salientes.
+     */
+    public String iniciar(String idRecibido) {
+        Peticion p = peticion.get();
+        p.id = idRecibido == null || idRecibido.isBlank() ? prefijoIds + secuencia.incrementAndGet() : idRecibido;
+        p.consultas = 0;
+        p.activa = true;
+        return p.id;
+    }
+
+    /**
+     * Id de la peticion en curso en este hilo o {@code null} fuera de una.
+     */
+    public String idPeticion() {
+        Peticion p = peticion.get();
+        return p.activa ? p.id : null;
+    }
+
+    public void consultaEjecutada(Temporizador consulta, long nanos) {
+        consulta.registrar(nanos);
+        Peticion p = peticion.get();
+        if (p.activa) {
+            p.consultas++;
+        }
+    }
+
+    /**
+     * Fin de la peticion: registra la latencia del recurso y devuelve cuantas
+     * consultas hizo.
+     */
+    public int terminar(Temporizador recurso, long nanos) {
+        recurso.registrar(nanos);
+        Peticion p = peticion.get();
+        int total = p.consultas;
+        if (p.activa && total > umbralConsultas) {
+            recurso.nMasUno.increment();
+            LOG.log(System.Logger.Level.WARNING, "posible N+1 en {0}: {1} consultas, " + X_REQUEST_ID + "={2}", recurso.metodo, total, p.id);
+        }
+        p.activa = false;
+        p.consultas = 0;
+        p.id = null;
+        return total;
+    }
+
+    /**
+     * Exposicion en formato de texto de Prometheus 0.0.4.
+     */
+    public String exportar() {
+        StringBuilder sb = new StringBuilder(4096);
+        histogramas(sb, "pupasv_recurso_segundos", "Latencia por metodo de recurso REST", recursos);
+        histogramas(sb, "pupasv_consulta_segundos", "Latencia y cantidad de consultas por metodo de AbstractDataAccess", consultas);
+        sb.append("# HELP pupasv_n_mas_uno_total Peticiones con mas de ").append(umbralConsultas).append(" consultas\n");
+        sb.append("# TYPE pupasv_n_mas_uno_total counter\n");
+        for (Temporizador t : recursos.values()) {
+            sb.append("pupasv_n_mas_uno_total{metodo=\"").append(escapar(t.metodo)).append("\"} ").append(t.getNMasUno()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Manejador para publicar {@link #exportar()} en un
+     * {@code com.sun.net.httpserver.HttpServer} bajo {@code /metrics}.
+     */
+    public HttpHandler manejador() {
+        return intercambio -> {
+            try (intercambio) {
+                if (!"GET".equals(intercambio.getRequestMethod())) {
+                    intercambio.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] cuerpo = exportar().getBytes(StandardCharsets.UTF_8);
+                intercambio.getResponseHeaders().set("Content-Type", TIPO_CONTENIDO);
+                intercambio.sendResponseHeaders(200, cuerpo.length);
+                try (OutputStream out = intercambio.getResponseBody()) {
+                    out.write(cuerpo);
+                }
+            } catch (IOException e) {
+                LOG.log(System.Logger.Level.DEBUG, "no se pudo responder /metrics", e);
+            }
+        };
+    }
+
+    private static void histogramas(StringBuilder sb, String nombre, String ayuda, Map<String, Temporizador> temporizadores) {
+        sb.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        sb.append("# TYPE ").append(nombre).append(" histogram\n");
+        for (Temporizador t : temporizadores.values()) {
+            String metodo = escapar(t.metodo);
+            Histograma h = t.latencias;
+            // las cubetas se recortan a la cantidad leida para que ninguna supere a +Inf
+            long cantidad = h.cantidad();
+            for (long limite : LIMITES) {
+                sb.append(nombre).append("_bucket{metodo=\"").append(metodo).append("\",le=\"")
+                        .append(String.format(Locale.ROOT, "%s", limite / 1e6)).append("\"} ")
+                        .append(Math.min(cantidad, h.cantidadHasta(limite))).append('\n');
+            }
+            sb.append(nombre).append("_bucket{metodo=\"").append(metodo).append("\",le=\"+Inf\"} ").append(cantidad).append('\n');
+            sb.append(nombre).append("_sum{metodo=\"").append(metodo).append("\"} ")
+                    .append(String.format(Locale.ROOT, "%.6f", h.suma() / 1e6)).append('\n');
+            sb.append(nombre).append("_count{metodo=\"").append(metodo).append("\"} ").append(cantidad).append('\n');
+        }
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
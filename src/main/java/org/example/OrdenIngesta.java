@@ -0,0 +1,408 @@
+package org.example;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Ingesta masiva de ordenes del agregador de delivery.
+ * <p>
+ * Hoy cada orden es un {@code OrdenResource.create} mas una llamada
+ * {@code generarOrdenDetalleProducto}/{@code generarOrdenDetalleDesdeCombo}
+ * por linea, cada una en su propia transaccion. Aqui las ordenes llegan como
+ * NDJSON o como un arreglo JSON con la forma de {@code DatosMixtosDTO}
+ * (mas {@code sucursal}, {@code fecha} y {@code referencia}), los precios se
+ * resuelven en memoria con {@link ProductoPrecio} y se guardan en lotes con
+ * batching JDBC: una transaccion y dos {@code executeBatch} por lote. Si un
+ * lote falla se reintenta orden por orden para reportar exactamente cuales
+ * fallaron. Conviene usar {@code reWriteBatchedInserts=true} en la URL.
+ */
+public class OrdenIngesta {
+
+    public static final int LOTE_DEFECTO = 500;
+
+    static final String SIGUIENTES_IDS = "SELECT nextval('orden_id_orden_seq') FROM generate_series(1, ?)";
+    static final String INSERTAR_ORDEN = "INSERT INTO orden (id_orden, fecha, sucursal, anulada) VALUES (?, ?, ?, false)";
+    static final String INSERTAR_DETALLE = "INSERT INTO orden_detalle (id_orden, id_producto_precio, cantidad, precio) VALUES (?, ?, ?, ?)";
+    // una sola sentencia: si la linea ya existe se suma la cantidad y se conserva el precio con el que entro
+    static final String ACUMULAR_DETALLE = "INSERT INTO orden_detalle (id_orden, id_producto_precio, cantidad, precio) VALUES (?, ?, ?, ?)"
+            + " ON CONFLICT (id_orden, id_producto_precio) DO UPDATE SET cantidad = orden_detalle.cantidad + EXCLUDED.cantidad";
+    static final String CONSULTA_COMBOS = "SELECT id_combo, id_producto, cantidad FROM combo_detalle ORDER BY id_combo";
+
+    public record Linea(long id, int cantidad) {
+    }
+
+    public record OrdenEntrante(String referencia, String sucursal, LocalDate fecha, List<Linea> productos, List<Linea> combos) {
+    }
+
+    public record Resultado(long posicion, String referencia, Long idOrden, String error) {
+
+        public Resultado {
+            if ((idOrden == null) == (error == null)) {
+                throw new IllegalArgumentException("Un resultado lleva idOrden o error, no ambos ni ninguno");
+            }
+        }
+
+        public boolean exitoso() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Orden validada con sus lineas de {@code orden_detalle} ya resueltas.
+     */
+    record Pendiente(long posicion, OrdenEntrante orden, long[] idsProductoPrecio, int[] cantidades, long[] centavos) {
+    }
+
+    private final DataSource dataSource;
+    private final ProductoPrecio precios;
+    private final Map<Long, long[]> combos;
+    private final int lote;
+
+    public OrdenIngesta(DataSource dataSource, ProductoPrecio precios, Map<Long, long[]> combos, int lote) {
+        if (lote <= 0) {
+            throw new IllegalArgumentException("lote no puede ser menor o igual a cero");
+        }
+        this.dataSource = dataSource;
+        this.precios = precios;
+        this.combos = combos;
+        this.lote = lote;
+    }
+
+    /**
+     * Carga precios y combos con dos consultas y deja lista la ingesta.
+     */
+    public static OrdenIngesta crear(DataSource dataSource, int lote) throws SQLException {
+        try (Connection conexion = dataSource.getConnection()) {
+            return new OrdenIngesta(dataSource, ProductoPrecio.cargar(conexion), cargarCombos(conexion), lote);
+        }
+    }
+
+    /**
+     * {@code combo_detalle} por combo como pares {idProducto, cantidad}
+     * aplanados en un {@code long[]}.
+     */
+    public static Map<Long, long[]> cargarCombos(Connection conexion) throws SQLException {
+        Map<Long, List<long[]>> porCombo = new HashMap<>();
+        try (Statement st = conexion.createStatement(); ResultSet rs = st.executeQuery(CONSULTA_COMBOS)) {
+            while (rs.next()) {
+                porCombo.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>()).add(new long[]{rs.getLong(2), rs.getInt(3)});
+            }
+        }
+        Map<Long, long[]> combos = new HashMap<>();
+        porCombo.forEach((idCombo, miembros) -> {
+            long[] plano = new long[miembros.size() * 2];
+            for (int i = 0; i < miembros.size(); i++) {
+                plano[i * 2] = miembros.get(i)[0];
+                plano[i * 2 + 1] = miembros.get(i)[1];
+            }
+            combos.put(idCombo, plano);
+        });
+        return combos;
+    }
+
+    /**
+     * Lee ordenes de {@code entrada} (NDJSON o arreglo JSON), las persiste por
+     * lotes y entrega un {@link Resultado} por orden, en orden de llegada
+     * dentro de cada lote. Devuelve cuantas ordenes se procesaron.
+     */
+    public long ingerir(Reader entrada, Consumer<Resultado> salida) throws IOException {
+        BufferedReader lector = entrada instanceof BufferedReader b ? b : new BufferedReader(entrada, 1 << 16);
+        List<Pendiente> pendientes = new ArrayList<>(lote);
+        long[] posicion = {0};
+        Consumer<JsonObject> recibir = json -> {
+            long pos = posicion[0]++;
+            String referencia = json.getString("referencia", null);
+            try {
+                pendientes.add(resolver(pos, leer(json)));
+            } catch (RuntimeException e) {
+                salida.accept(new Resultado(pos, referencia, null, mensaje(e)));
+            }
+            if (pendientes.size() >= lote) {
+                persistir(pendientes, salida);
+                pendientes.clear();
+            }
+        };
+
+        lector.mark(1);
+        int c = lector.read();
+        while (c != -1 && Character.isWhitespace(c)) {
+            lector.mark(1);
+            c = lector.read();
+        }
+        if (c == '[') {
+            lector.reset();
+            try (JsonParser parser = Json.createParser(lector)) {
+                parser.next();
+                while (parser.hasNext()) {
+                    JsonParser.Event evento = parser.next();
+                    if (evento == JsonParser.Event.START_OBJECT) {
+                        recibir.accept(parser.getObject());
+                    } else if (evento == JsonParser.Event.END_ARRAY) {
+                        break;
+                    }
+                }
+            } catch (JsonException e) {
+                salida.accept(new Resultado(posicion[0], null, null, "JSON invalido: " + mensaje(e)));
+            }
+        } else if (c != -1) {
+            lector.reset();
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (linea.isBlank()) {
+                    continue;
+                }
+                try {
+                    recibir.accept(Json.createReader(new StringReader(linea)).readObject());
+                } catch (JsonException e) {
+                    salida.accept(new Resultado(posicion[0]++, null, null, "JSON invalido: " + mensaje(e)));
+                }
+            }
+        }
+        if (!pendientes.isEmpty()) {
+            persistir(pendientes, salida);
+        }
+        return posicion[0];
+    }
+
+    static OrdenEntrante leer(JsonObject json) {
+        String sucursal = json.getString("sucursal", null);
+        if (sucursal == null || sucursal.isBlank() || sucursal.length() > 5) {
+            throw new IllegalArgumentException("sucursal es obligatoria y de maximo 5 caracteres");
+        }
+        String fecha = json.getString("fecha", null);
+        return new OrdenEntrante(json.getString("referencia", null), sucursal,
+                fecha == null ? LocalDate.now() : LocalDate.parse(fecha.length() > 10 ? fecha.substring(0, 10) : fecha),
+                lineas(json, "productoList", "idProducto"), lineas(json, "comboList", "idCombo"));
+    }
+
+    private static List<Linea> lineas(JsonObject json, String lista, String campoId) {
+        if (!json.containsKey(lista) || json.isNull(lista)) {
+            return List.of();
+        }
+        JsonArray arreglo = json.getJsonArray(lista);
+        List<Linea> lineas = new ArrayList<>(arreglo.size());
+        for (JsonValue valor : arreglo) {
+            JsonObject item = valor.asJsonObject();
+            long id = item.getJsonNumber(campoId).longValueExact();
+            int cantidad = item.getInt("cantidad", 1);
+            if (id <= 0 || cantidad <= 0) {
+                throw new IllegalArgumentException(campoId + " y cantidad no pueden ser nulos o menores a cero");
+            }
+            lineas.add(new Linea(id, cantidad));
+        }
+        return lineas;
+    }
+
+    /**
+     * Expande combos y resuelve el precio vigente de cada producto. Las lineas
+     * con el mismo {@code id_producto_precio} se suman porque es parte de la
+     * llave de {@code orden_detalle}.
+     */
+    Pendiente resolver(long posicion, OrdenEntrante orden) {
+        int n = orden.productos().size();
+        for (Linea combo : orden.combos()) {
+            long[] miembros = combos.get(combo.id());
+            if (miembros == null) {
+                throw new IllegalArgumentException("El combo es invalido o no tiene ID: " + combo.id());
+            }
+            n += miembros.length / 2;
+        }
+        if (n == 0) {
+            throw new IllegalArgumentException("La orden no tiene productos ni combos");
+        }
+        long[] productos = new long[n];
+        int[] cantidades = new int[n];
+        int i = 0;
+        for (Linea p : orden.productos()) {
+            productos[i] = p.id();
+            cantidades[i++] = p.cantidad();
+        }
+        for (Linea combo : orden.combos()) {
+            long[] miembros = combos.get(combo.id());
+            for (int m = 0; m < miembros.length; m += 2) {
+                productos[i] = miembros[m];
+                cantidades[i++] = Math.multiplyExact((int) miembros[m + 1], combo.cantidad());
+            }
+        }
+        long[] idsProductoPrecio = new long[n];
+        long[] centavos = new long[n];
+        precios.resolver(productos, n, orden.fecha(), idsProductoPrecio, centavos);
+
+        // agrupar por id_producto_precio
+        int unicos = 0;
+        for (int a = 0; a < n; a++) {
+            int existente = -1;
+            for (int b = 0; b < unicos; b++) {
+                if (idsProductoPrecio[b] == idsProductoPrecio[a]) {
+                    existente = b;
+                    break;
+                }
+            }
+            if (existente >= 0) {
+                cantidades[existente] += cantidades[a];
+            } else {
+                idsProductoPrecio[unicos] = idsProductoPrecio[a];
+                cantidades[unicos] = cantidades[a];
+                centavos[unicos] = centavos[a];
+                unicos++;
+            }
+        }
+        return new Pendiente(posicion, orden, Arrays.copyOf(idsProductoPrecio, unicos),
+                Arrays.copyOf(cantidades, unicos), Arrays.copyOf(centavos, unicos));
+    }
+
+    /**
+     * Agrega productos y combos a una orden existente, como
+     * {@code generarOrdenDetalleProducto}/{@code generarOrdenDetalleDesdeCombo}
+     * pero sin el {@code findByIdOrdenAndIdPrecioProducto} previo: cada linea
+     * es un upsert atomico que acumula {@code cantidad}, asi dos cajas que
+     * agregan lo mismo a la misma mesa no chocan en {@code pk_orden_detalle}
+     * ni pierden incrementos. Las lineas van en orden de
+     * {@code id_producto_precio} para que dos transacciones sobre la misma
+     * orden bloqueen las filas en el mismo orden y no haya deadlocks.
+     * Devuelve cuantas lineas de {@code orden_detalle} toco.
+     */
+    public int agregar(long idOrden, LocalDate fecha, List<Linea> productos, List<Linea> combos) throws SQLException {
+        if (idOrden <= 0) {
+            throw new IllegalArgumentException("La orden es invalida o no tiene ID");
+        }
+        Pendiente p = resolver(0, new OrdenEntrante(null, null, fecha, productos, combos));
+        int n = p.idsProductoPrecio().length;
+        Integer[] orden = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, (a, b) -> Long.compare(p.idsProductoPrecio()[a], p.idsProductoPrecio()[b]));
+        try (Connection conexion = dataSource.getConnection()) {
+            conexion.setAutoCommit(n == 1);
+            try (PreparedStatement ps = conexion.prepareStatement(ACUMULAR_DETALLE)) {
+                for (int i : orden) {
+                    ps.setLong(1, idOrden);
+                    ps.setLong(2, p.idsProductoPrecio()[i]);
+                    ps.setInt(3, p.cantidades()[i]);
+                    ps.setBigDecimal(4, Pago.aMonto(p.centavos()[i]));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                if (n > 1) {
+                    conexion.commit();
+                }
+                return n;
+            } catch (SQLException | RuntimeException e) {
+                if (n > 1) {
+                    conexion.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void persistir(List<Pendiente> pendientes, Consumer<Resultado> salida) {
+        try {
+            long[] ids = insertar(pendientes);
+            for (int i = 0; i < pendientes.size(); i++) {
+                Pendiente p = pendientes.get(i);
+                salida.accept(new Resultado(p.posicion(), p.orden().referencia(), ids[i], null));
+            }
+        } catch (SQLException e) {
+            if (pendientes.size() == 1) {
+                Pendiente p = pendientes.get(0);
+                salida.accept(new Resultado(p.posicion(), p.orden().referencia(), null, "Error en la base de datos: " + mensaje(e)));
+                return;
+            }
+            // aislar las ordenes que fallan
+            for (Pendiente p : pendientes) {
+                persistir(List.of(p), salida);
+            }
+        }
+    }
+
+    private long[] insertar(List<Pendiente> pendientes) throws SQLException {
+        try (Connection conexion = dataSource.getConnection()) {
+            conexion.setAutoCommit(false);
+            try {
+                long[] ids = new long[pendientes.size()];
+                try (PreparedStatement ps = conexion.prepareStatement(SIGUIENTES_IDS)) {
+                    ps.setInt(1, ids.length);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        for (int i = 0; rs.next(); i++) {
+                            ids[i] = rs.getLong(1);
+                        }
+                    }
+                }
+                try (PreparedStatement orden = conexion.prepareStatement(INSERTAR_ORDEN);
+                     PreparedStatement detalle = conexion.prepareStatement(INSERTAR_DETALLE)) {
+                    for (int i = 0; i < ids.length; i++) {
+                        Pendiente p = pendientes.get(i);
+                        orden.setLong(1, ids[i]);
+                        orden.setDate(2, Date.valueOf(p.orden().fecha()));
+                        orden.setString(3, p.orden().sucursal());
+                        orden.addBatch();
+                        for (int l = 0; l < p.idsProductoPrecio().length; l++) {
+                            detalle.setLong(1, ids[i]);
+                            detalle.setLong(2, p.idsProductoPrecio()[l]);
+                            detalle.setInt(3, p.cantidades()[l]);
+                            detalle.setBigDecimal(4, Pago.aMonto(p.centavos()[l]));
+                            detalle.addBatch();
+                        }
+                    }
+                    orden.executeBatch();
+                    detalle.executeBatch();
+                }
+                conexion.commit();
+                return ids;
+            } catch (SQLException | RuntimeException e) {
+                conexion.rollback();
+                throw e instanceof SQLException s ? s : new SQLException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Mensaje de la excepcion o, si no trae, su clase: un {@code error}
+     * nulo se leeria como exito.
+     */
+    static String mensaje(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+    }
+
+    /**
+     * Una linea NDJSON de respuesta para el resultado de una orden.
+     */
+    public static String aJson(Resultado resultado) {
+        JsonObjectBuilder builder = Json.createObjectBuilder().add("posicion", resultado.posicion());
+        if (resultado.referencia() != null) {
+            builder.add("referencia", resultado.referencia());
+        }
+        if (resultado.exitoso()) {
+            builder.add("idOrden", resultado.idOrden());
+        } else {
+            builder.add("error", resultado.error());
+        }
+        return builder.build().toString();
+    }
+}
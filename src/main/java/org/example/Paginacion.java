@@ -0,0 +1,239 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paginacion por llave (seek) para reemplazar el {@code OFFSET} de
+ * {@code AbstractDataAccess.findRange} y el {@code count()} que
+ * {@code AbstracDataResource.findRange} ejecuta en cada pagina.
+ * <p>
+ * La pagina siguiente se pide con un cursor opaco que guarda el ultimo valor
+ * de la llave; la consulta usa {@code WHERE llave > ? ORDER BY llave LIMIT ?}
+ * sobre el indice de la PK, asi la pagina 5000 cuesta lo mismo que la
+ * primera. El total es opcional: exacto, estimado con
+ * {@code pg_class.reltuples} o ninguno.
+ * <p>
+ * La llave es siempre la PK, que coincide con {@code orderParameterQuery()}
+ * en las entidades de llave simple. En las de PK compuesta el orden cambia:
+ * {@code ComboDetalleBean} ordena por {@code cantidad}, que no es unica y no
+ * sirve de cursor; {@code OrdenDetalleBean} y {@code ProductoDetalleBean}
+ * ordenan por {@code idOrdenDetalle} e {@code idProductoDetalle}, que no
+ * existen como atributos. Aqui se pagina por las columnas de la PK compuesta.
+ */
+public class Paginacion {
+
+    public static final String SIGUIENTE = "Next-cursor";
+    public static final String TOTAL_ESTIMADO = "Total-records-estimated";
+
+    // debajo de este numero de filas estimadas se cuenta exacto
+    public static final long UMBRAL_ESTIMACION = 10_000;
+
+    public enum Total {
+        EXACTO, ESTIMADO, NINGUNO
+    }
+
+    /**
+     * Llave de orden de una entidad: tabla y columnas en SQL, entidad y
+     * atributos en JPQL. Son las columnas de la PK (ver arriba las
+     * diferencias con {@code orderParameterQuery()}).
+     */
+    public record Llave(String entidad, String tabla, List<String> atributos, List<String> columnas) {
+
+        public Llave {
+            if (atributos.size() != columnas.size() || columnas.isEmpty()) {
+                throw new IllegalArgumentException("atributos y columnas deben coincidir");
+            }
+        }
+    }
+
+    public record Pagina<T>(List<T> filas, String siguiente, Long total, boolean totalEstimado) {
+    }
+
+    @FunctionalInterface
+    public interface Fila<T> {
+        T leer(ResultSet rs) throws SQLException;
+    }
+
+    public static final Map<String, Llave> LLAVES = Map.of(
+            "Combo", new Llave("Combo", "combo", List.of("idCombo"), List.of("id_combo")),
+            "ComboDetalle", new Llave("ComboDetalle", "combo_detalle", List.of("comboDetallePK.idCombo", "comboDetallePK.idProducto"), List.of("id_combo", "id_producto")),
+            "Orden", new Llave("Orden", "orden", List.of("idOrden"), List.of("id_orden")),
+            "OrdenDetalle", new Llave("OrdenDetalle", "orden_detalle", List.of("ordenDetallePK.idOrden", "ordenDetallePK.idProductoPrecio"), List.of("id_orden", "id_producto_precio")),
+            "Pago", new Llave("Pago", "pago", List.of("idPago"), List.of("id_pago")),
+            "PagoDetalle", new Llave("PagoDetalle", "pago_detalle", List.of("idPagoDetalle"), List.of("id_pago_detalle")),
+            "Producto", new Llave("Producto", "producto", List.of("idProducto"), List.of("id_producto")),
+            "ProductoDetalle", new Llave("ProductoDetalle", "producto_detalle", List.of("productoDetallePK.idTipoProducto", "productoDetallePK.idProducto"), List.of("id_tipo_producto", "id_producto")),
+            "ProductoPrecio", new Llave("ProductoPrecio", "producto_precio", List.of("idProductoPrecio"), List.of("id_producto_precio")),
+            "TipoProducto", new Llave("TipoProducto", "tipo_producto", List.of("idTipoProducto"), List.of("id_tipo_producto")));
+
+    public static Llave llave(String entidad) {
+        Llave llave = LLAVES.get(entidad);
+        if (llave == null) {
+            throw new IllegalArgumentException("No hay llave de paginacion para " + entidad);
+        }
+        return llave;
+    }
+
+    public static String codificar(Llave llave, long... valores) {
+        if (valores.length != llave.columnas().size()) {
+            throw new IllegalArgumentException("El cursor necesita " + llave.columnas().size() + " valores");
+        }
+        StringBuilder sb = new StringBuilder(llave.tabla()).append(':');
+        for (int i = 0; i < valores.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(valores[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Valores de la llave guardados en el cursor. Un cursor nulo o vacio es
+     * la primera pagina y devuelve {@code null}.
+     */
+    public static long[] decodificar(Llave llave, String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String texto;
+        try {
+            texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("cursor invalido");
+        }
+        String prefijo = llave.tabla() + ':';
+        if (!texto.startsWith(prefijo)) {
+            throw new IllegalArgumentException("cursor invalido para " + llave.entidad());
+        }
+        String[] partes = texto.substring(prefijo.length()).split(",");
+        if (partes.length != llave.columnas().size()) {
+            throw new IllegalArgumentException("cursor invalido para " + llave.entidad());
+        }
+        long[] valores = new long[partes.length];
+        try {
+            for (int i = 0; i < partes.length; i++) {
+                valores[i] = Long.parseLong(partes[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("cursor invalido para " + llave.entidad());
+        }
+        return valores;
+    }
+
+    /**
+     * SQL nativo con comparacion de filas {@code (a, b) > (?, ?)}, que Postgres
+     * resuelve con un solo rango sobre el indice de la PK.
+     */
+    public static String sql(Llave llave, String columnasSelect, boolean conCursor) {
+        String columnas = String.join(", ", llave.columnas());
+        StringBuilder sb = new StringBuilder("SELECT ").append(columnasSelect).append(" FROM ").append(llave.tabla());
+        if (conCursor) {
+            sb.append(" WHERE (").append(columnas).append(") > (");
+            for (int i = 0; i < llave.columnas().size(); i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+            }
+            sb.append(')');
+        }
+        return sb.append(" ORDER BY ").append(columnas).append(" LIMIT ?").toString();
+    }
+
+    /**
+     * JPQL para {@code AbstractDataAccess}: como JPQL no compara filas, una
+     * llave compuesta se expande a {@code a > :k0 OR (a = :k0 AND b > :k1)}.
+     * Los parametros se llaman {@code k0, k1...} y el limite va con
+     * {@code setMaxResults}.
+     */
+    public static String jpql(Llave llave, boolean conCursor) {
+        StringBuilder sb = new StringBuilder("SELECT e FROM ").append(llave.entidad()).append(" e");
+        List<String> atributos = llave.atributos();
+        if (conCursor) {
+            sb.append(" WHERE ");
+            for (int i = 0; i < atributos.size(); i++) {
+                sb.append(i == 0 ? "(" : " OR (");
+                for (int j = 0; j < i; j++) {
+                    sb.append("e.").append(atributos.get(j)).append(" = :k").append(j).append(" AND ");
+                }
+                sb.append("e.").append(atributos.get(i)).append(" > :k").append(i).append(')');
+            }
+        }
+        sb.append(" ORDER BY ");
+        for (int i = 0; i < atributos.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append("e.").append(atributos.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Una pagina por llave. Pide {@code max + 1} filas para saber si hay
+     * siguiente sin contar; el cursor sale de las columnas de la llave, que
+     * deben venir en {@code columnasSelect}.
+     */
+    public static <T> Pagina<T> pagina(Connection conexion, Llave llave, String columnasSelect, String cursor,
+                                       int max, Total total, Fila<T> fila) throws SQLException {
+        if (max <= 0) {
+            throw new IllegalArgumentException("max no puede ser menor o igual a cero");
+        }
+        long[] desde = decodificar(llave, cursor);
+        List<T> filas = new ArrayList<>(max);
+        long[] ultima = new long[llave.columnas().size()];
+        boolean haySiguiente = false;
+        try (PreparedStatement ps = conexion.prepareStatement(sql(llave, columnasSelect, desde != null))) {
+            int p = 1;
+            if (desde != null) {
+                for (long v : desde) {
+                    ps.setLong(p++, v);
+                }
+            }
+            ps.setInt(p, max + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (filas.size() == max) {
+                        haySiguiente = true;
+                        break;
+                    }
+                    filas.add(fila.leer(rs));
+                    for (int i = 0; i < ultima.length; i++) {
+                        ultima[i] = rs.getLong(llave.columnas().get(i));
+                    }
+                }
+            }
+        }
+        String siguiente = haySiguiente ? codificar(llave, ultima) : null;
+        return switch (total) {
+            case NINGUNO -> new Pagina<>(filas, siguiente, null, false);
+            case EXACTO -> new Pagina<>(filas, siguiente, contar(conexion, llave.tabla()), false);
+            case ESTIMADO -> {
+                long estimado = estimar(conexion, llave.tabla());
+                yield estimado >= UMBRAL_ESTIMACION
+                        ? new Pagina<>(filas, siguiente, estimado, true)
+                        : new Pagina<>(filas, siguiente, contar(conexion, llave.tabla()), false);
+            }
+        };
+    }
+
+    /**
+     * Filas estimadas por el planificador; -1 si la tabla nunca se analizo.
+     */
+    public static long estimar(Connection conexion, String tabla) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement("SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)")) {
+            ps.setString(1, tabla);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    static long contar(Connection conexion, String tabla) throws SQLException {
+        try (Statement st = conexion.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + tabla)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Motor de calculo de montos para ordenes y pagos.
+ * <p>
+ * Reemplaza el recorrido con {@link BigDecimal} y mapas de entidades de
+ * {@code PagoDetalleBean.calculoPorOrden}, {@code calculoProductos} y
+ * {@code calculoProducto}: los precios se guardan como centavos en arreglos
+ * primitivos ordenados por id y los totales se acumulan en {@code long}.
+ * Como {@code producto_precio.precio_sugerido} ya tiene dos decimales, la suma
+ * en centavos es exacta y coincide con el valor que Postgres guarda en
+ * {@code pago_detalle.monto numeric(6,2)}.
+ */
+public class Pago {
+
+    public static final int ESCALA = 2;
+    // numeric(6,2): 4 digitos enteros y 2 decimales
+    public static final long MAXIMO_CENTAVOS = 999_999L;
+
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    // precios: idProducto ordenado -> centavos
+    private long[] idsProducto = new long[CAPACIDAD_INICIAL];
+    private long[] preciosCentavos = new long[CAPACIDAD_INICIAL];
+    private int totalProductos;
+
+    // combos: idCombo ordenado -> precio unitario en centavos (suma de combo_detalle.cantidad * precio)
+    private long[] idsCombo = new long[CAPACIDAD_INICIAL];
+    private long[] preciosCombo = new long[CAPACIDAD_INICIAL];
+    private long[][] miembrosCombo = new long[CAPACIDAD_INICIAL][];
+    private int[][] cantidadesCombo = new int[CAPACIDAD_INICIAL][];
+    private int totalCombos;
+
+    /**
+     * Registra o actualiza el precio vigente de un producto. Los combos que lo
+     * contienen se recalculan.
+     */
+    public void registrarPrecio(long idProducto, BigDecimal precioSugerido) {
+        if (idProducto <= 0) {
+            throw new IllegalArgumentException("idProducto no puede ser nulo o menor a cero");
+        }
+        if (precioSugerido == null || precioSugerido.signum() < 0) {
+            throw new IllegalArgumentException("precio no puede ser nulo o menor a cero");
+        }
+        registrarPrecio(idProducto, aCentavos(precioSugerido));
+    }
+
+    public void registrarPrecio(long idProducto, long centavos) {
+        int pos = Arrays.binarySearch(idsProducto, 0, totalProductos, idProducto);
+        if (pos >= 0) {
+            preciosCentavos[pos] = centavos;
+            for (int i = 0; i < totalCombos; i++) {
+                if (contiene(miembrosCombo[i], idProducto)) {
+                    preciosCombo[i] = sumarMiembros(miembrosCombo[i], cantidadesCombo[i]);
+                }
+            }
+            return;
+        }
+        int ins = -pos - 1;
+        if (totalProductos == idsProducto.length) {
+            idsProducto = Arrays.copyOf(idsProducto, totalProductos * 2);
+            preciosCentavos = Arrays.copyOf(preciosCentavos, totalProductos * 2);
+        }
+        System.arraycopy(idsProducto, ins, idsProducto, ins + 1, totalProductos - ins);
+        System.arraycopy(preciosCentavos, ins, preciosCentavos, ins + 1, totalProductos - ins);
+        idsProducto[ins] = idProducto;
+        preciosCentavos[ins] = centavos;
+        totalProductos++;
+    }
+
+    /**
+     * Registra un combo con sus productos y la cantidad de cada uno
+     * ({@code combo_detalle.cantidad}). Todos los productos deben tener precio.
+     */
+    public void registrarCombo(long idCombo, long[] idsProductoMiembro, int[] cantidades) {
+        if (idCombo <= 0) {
+            throw new IllegalArgumentException("El idCombo no puede ser nulo");
+        }
+        if (idsProductoMiembro == null || cantidades == null || idsProductoMiembro.length != cantidades.length) {
+            throw new IllegalArgumentException("El combo es invalido o no tiene detalle");
+        }
+        long[] miembros = idsProductoMiembro.clone();
+        int[] cant = cantidades.clone();
+        long precio = sumarMiembros(miembros, cant);
+
+        int pos = Arrays.binarySearch(idsCombo, 0, totalCombos, idCombo);
+        if (pos >= 0) {
+            miembrosCombo[pos] = miembros;
+            cantidadesCombo[pos] = cant;
+            preciosCombo[pos] = precio;
+            return;
+        }
+        int ins = -pos - 1;
+        if (totalCombos == idsCombo.length) {
+            int nueva = totalCombos * 2;
+            idsCombo = Arrays.copyOf(idsCombo, nueva);
+            preciosCombo = Arrays.copyOf(preciosCombo, nueva);
+            miembrosCombo = Arrays.copyOf(miembrosCombo, nueva);
+            cantidadesCombo = Arrays.copyOf(cantidadesCombo, nueva);
+        }
+        System.arraycopy(idsCombo, ins, idsCombo, ins + 1, totalCombos - ins);
+        System.arraycopy(preciosCombo, ins, preciosCombo, ins + 1, totalCombos - ins);
+        System.arraycopy(miembrosCombo, ins, miembrosCombo, ins + 1, totalCombos - ins);
+        System.arraycopy(cantidadesCombo, ins, cantidadesCombo, ins + 1, totalCombos - ins);
+        idsCombo[ins] = idCombo;
+        preciosCombo[ins] = precio;
+        miembrosCombo[ins] = miembros;
+        cantidadesCombo[ins] = cant;
+        totalCombos++;
+    }
+
+    /**
+     * Equivalente a {@code calculoProducto(Producto, Integer)}.
+     */
+    public long calculoProducto(long idProducto, int cantidad) {
+        if (cantidad < 0) {
+            throw new IllegalArgumentException("cantidad no puede ser menor a cero");
+        }
+        return Math.multiplyExact(precioProducto(idProducto), (long) cantidad);
+    }
+
+    /**
+     * Equivalente a {@code calculoProductos(Map<Producto,Integer>)} sobre
+     * arreglos paralelos de ids y cantidades.
+     */
+    public long calculoProductos(long[] idsProductoLinea, int[] cantidades, int lineas) {
+        long total = 0;
+        for (int i = 0; i < lineas; i++) {
+            total = Math.addExact(total, calculoProducto(idsProductoLinea[i], cantidades[i]));
+        }
+        return total;
+    }
+
+    /**
+     * Total de {@code cantidad} combos: cada producto del combo entra con
+     * {@code combo_detalle.cantidad * cantidad}, igual que
+     * {@code generarOrdenDetalleDesdeCombo}.
+     */
+    public long calculoCombo(long idCombo, int cantidad) {
+        if (cantidad < 0) {
+            throw new IllegalArgumentException("cantidad no puede ser menor a cero");
+        }
+        int pos = Arrays.binarySearch(idsCombo, 0, totalCombos, idCombo);
+        if (pos < 0) {
+            throw new IllegalArgumentException("El combo es invalido o no tiene ID: " + idCombo);
+        }
+        return Math.multiplyExact(preciosCombo[pos], (long) cantidad);
+    }
+
+    /**
+     * Total de una orden mixta (productos sueltos y combos) en centavos.
+     */
+    public long calculoOrden(long[] idsProductoLinea, int[] cantidadesProducto, int lineasProducto,
+                             long[] idsComboLinea, int[] cantidadesComboLinea, int lineasCombo) {
+        long total = calculoProductos(idsProductoLinea, cantidadesProducto, lineasProducto);
+        for (int i = 0; i < lineasCombo; i++) {
+            total = Math.addExact(total, calculoCombo(idsComboLinea[i], cantidadesComboLinea[i]));
+        }
+        return total;
+    }
+
+    /**
+     * Equivalente a {@code calculoPorOrden(Long)} sobre las filas de
+     * {@code orden_detalle} ya cargadas: suma de {@code precio * cantidad}.
+     */
+    public static long calculoPorOrden(long[] preciosLineaCentavos, int[] cantidades, int lineas) {
+        long total = 0;
+        for (int i = 0; i < lineas; i++) {
+            if (cantidades[i] < 0) {
+                throw new IllegalArgumentException("cantidad no puede ser menor a cero");
+            }
+            total = Math.addExact(total, Math.multiplyExact(preciosLineaCentavos[i], (long) cantidades[i]));
+        }
+        return total;
+    }
+
+    public long precioProducto(long idProducto) {
+        int pos = Arrays.binarySearch(idsProducto, 0, totalProductos, idProducto);
+        if (pos < 0) {
+            throw new IllegalArgumentException("productos o su id no puede ser nulo o menor a cero: " + idProducto);
+        }
+        return preciosCentavos[pos];
+    }
+
+    public int getTotalProductos() {
+        return totalProductos;
+    }
+
+    public int getTotalCombos() {
+        return totalCombos;
+    }
+
+    /**
+     * Convierte un precio a centavos con el mismo redondeo que aplica Postgres
+     * al guardar en una columna {@code numeric(p,2)} (mitad lejos de cero).
+     */
+    public static long aCentavos(BigDecimal valor) {
+        return valor.setScale(ESCALA, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Convierte centavos al {@link BigDecimal} que se persiste en
+     * {@code pago_detalle.monto}. Falla igual que Postgres cuando el valor no
+     * cabe en {@code numeric(6,2)}.
+     */
+    public static BigDecimal aMonto(long centavos) {
+        if (Math.abs(centavos) > MAXIMO_CENTAVOS) {
+            throw new ArithmeticException("numeric field overflow: " + BigDecimal.valueOf(centavos, ESCALA) + " no cabe en numeric(6,2)");
+        }
+        return BigDecimal.valueOf(centavos, ESCALA);
+    }
+
+    private long sumarMiembros(long[] miembros, int[] cantidades) {
+        long total = 0;
+        for (int i = 0; i < miembros.length; i++) {
+            if (cantidades[i] < 0) {
+                throw new IllegalArgumentException("cantidad no puede ser menor a cero");
+            }
+            total = Math.addExact(total, Math.multiplyExact(precioProducto(miembros[i]), (long) cantidades[i]));
+        }
+        return total;
+    }
+
+    private static boolean contiene(long[] valores, long buscado) {
+        for (long v : valores) {
+            if (v == buscado) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
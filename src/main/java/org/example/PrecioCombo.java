@@ -0,0 +1,234 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Precio de cada combo materializado en memoria.
+ * <p>
+ * Reemplaza la agregacion {@code SUM(pp.precioSugerido * cd.cantidad)} de
+ * {@code ComboBean.findRangeWithPrice} y de
+ * {@code ComboDetalleBean.calcularPrecioTotalPorIdCombo}, que se repite en
+ * cada listado y en cada linea de combo de una orden. El precio se recalcula
+ * solo para los combos afectados cuando cambia una entrada:
+ * {@link #guardarDetalle} desde {@code ComboDetalleBean.create} y
+ * {@code updateByComboDetallePK}, {@link #eliminarDetalle} desde
+ * {@code deleteByComboDetallePK} y {@link #registrarPrecio} desde
+ * {@code ProductoPrecioBean.create}. Las lecturas son un acceso por combo.
+ * <p>
+ * Igual que el {@code JOIN} de la consulta, un combo sin detalle o con algun
+ * producto sin precio vigente no tiene precio.
+ */
+public class PrecioCombo {
+
+    private final ProductoPrecio precios;
+    private volatile LocalDate fecha;
+
+    // combo_detalle: idCombo -> (idProducto -> cantidad) y el indice inverso idProducto -> combos
+    private final Map<Long, Map<Long, Integer>> detalle = new HashMap<>();
+    private final Map<Long, Set<Long>> combosPorProducto = new HashMap<>();
+
+    // vista materializada, ordenada por idCombo para leer paginas por llave
+    private final ConcurrentSkipListMap<Long, Long> centavosPorCombo = new ConcurrentSkipListMap<>();
+    // precio vigente de los productos que forman parte de algun combo
+    private final ConcurrentHashMap<Long, Long> vigentes = new ConcurrentHashMap<>();
+
+    public PrecioCombo(ProductoPrecio precios, LocalDate fecha) {
+        if (precios == null || fecha == null) {
+            throw new IllegalArgumentException("precios y fecha no pueden ser nulos");
+        }
+        this.precios = precios;
+        this.fecha = fecha;
+    }
+
+    /**
+     * Carga {@code producto_precio} y {@code combo_detalle} y calcula todos
+     * los combos una sola vez.
+     */
+    public static PrecioCombo cargar(Connection conexion, LocalDate fecha) throws SQLException {
+        PrecioCombo combos = new PrecioCombo(ProductoPrecio.cargar(conexion), fecha);
+        OrdenIngesta.cargarCombos(conexion).forEach((idCombo, plano) -> {
+            for (int i = 0; i < plano.length; i += 2) {
+                combos.guardarDetalle(idCombo, plano[i], (int) plano[i + 1]);
+            }
+        });
+        return combos;
+    }
+
+    /**
+     * Alta o cambio de cantidad de un producto en un combo.
+     */
+    public synchronized void guardarDetalle(long idCombo, long idProducto, int cantidad) {
+        if (idCombo <= 0 || idProducto <= 0) {
+            throw new IllegalArgumentException("idCombo e idProducto no pueden ser nulos o menores a cero");
+        }
+        if (cantidad < 0) {
+            throw new IllegalArgumentException("cantidad no puede ser menor a cero");
+        }
+        detalle.computeIfAbsent(idCombo, k -> new HashMap<>()).put(idProducto, cantidad);
+        if (combosPorProducto.computeIfAbsent(idProducto, k -> new HashSet<>()).add(idCombo) && !vigentes.containsKey(idProducto)) {
+            actualizarVigente(idProducto);
+        }
+        recalcular(idCombo);
+    }
+
+    public synchronized void eliminarDetalle(long idCombo, long idProducto) {
+        Map<Long, Integer> miembros = detalle.get(idCombo);
+        if (miembros == null || miembros.remove(idProducto) == null) {
+            return;
+        }
+        if (miembros.isEmpty()) {
+            detalle.remove(idCombo);
+        }
+        Set<Long> combos = combosPorProducto.get(idProducto);
+        combos.remove(idCombo);
+        if (combos.isEmpty()) {
+            combosPorProducto.remove(idProducto);
+            vigentes.remove(idProducto);
+        }
+        recalcular(idCombo);
+    }
+
+    /**
+     * Alta de un {@code producto_precio}. Si cambia el precio vigente del
+     * producto se recalculan solo los combos que lo contienen.
+     */
+    public synchronized void registrarPrecio(long idProductoPrecio, long idProducto, LocalDate fechaDesde, LocalDate fechaHasta, BigDecimal precioSugerido) {
+        precios.registrar(idProductoPrecio, idProducto, fechaDesde, fechaHasta, precioSugerido);
+        Set<Long> combos = combosPorProducto.get(idProducto);
+        if (combos != null && actualizarVigente(idProducto)) {
+            for (long idCombo : combos) {
+                recalcular(idCombo);
+            }
+        }
+    }
+
+    /**
+     * Cambio de dia: un rango de precio puede empezar o terminar, asi que se
+     * revisa cada producto de combo y se recalculan los combos cuyo precio
+     * vigente cambio.
+     */
+    public synchronized void cambiarFecha(LocalDate nueva) {
+        if (nueva.equals(fecha)) {
+            return;
+        }
+        fecha = nueva;
+        Set<Long> afectados = new HashSet<>();
+        for (Map.Entry<Long, Set<Long>> e : combosPorProducto.entrySet()) {
+            if (actualizarVigente(e.getKey())) {
+                afectados.addAll(e.getValue());
+            }
+        }
+        for (long idCombo : afectados) {
+            recalcular(idCombo);
+        }
+    }
+
+    /**
+     * Precio unitario del combo en centavos o -1 si no tiene precio.
+     */
+    public long centavos(long idCombo) {
+        Long centavos = centavosPorCombo.get(idCombo);
+        return centavos == null ? -1 : centavos;
+    }
+
+    /**
+     * Precios de una pagina de combos ya leida, en la misma posicion.
+     */
+    public void centavos(long[] idsCombo, int cantidad, long[] salida) {
+        for (int i = 0; i < cantidad; i++) {
+            salida[i] = centavos(idsCombo[i]);
+        }
+    }
+
+    /**
+     * Hasta {@code max} combos con precio cuyo id es mayor que
+     * {@code despuesDe}, en orden de id (como {@code ORDER BY c.idCombo}).
+     */
+    public List<Map.Entry<Long, Long>> pagina(long despuesDe, int max) {
+        if (max <= 0) {
+            throw new IllegalArgumentException("max no puede ser menor o igual a cero");
+        }
+        List<Map.Entry<Long, Long>> filas = new ArrayList<>(max);
+        for (Map.Entry<Long, Long> e : centavosPorCombo.tailMap(despuesDe, false).entrySet()) {
+            if (filas.size() == max) {
+                break;
+            }
+            filas.add(e);
+        }
+        return filas;
+    }
+
+    public int size() {
+        return centavosPorCombo.size();
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    /**
+     * Calculo completo desde cero con los datos actuales, sin tocar la vista.
+     * Sirve para verificar que el mantenimiento incremental no se desvia.
+     */
+    public synchronized Map<Long, Long> recalcularTodo() {
+        Map<Long, Long> completo = new HashMap<>();
+        for (Map.Entry<Long, Map<Long, Integer>> combo : detalle.entrySet()) {
+            long total = 0;
+            boolean conPrecio = true;
+            for (Map.Entry<Long, Integer> miembro : combo.getValue().entrySet()) {
+                ProductoPrecio.Vigente vigente = precios.vigente(miembro.getKey(), fecha);
+                if (vigente == null) {
+                    conPrecio = false;
+                    break;
+                }
+                total = Math.addExact(total, Math.multiplyExact(vigente.centavos(), (long) miembro.getValue()));
+            }
+            if (conPrecio) {
+                completo.put(combo.getKey(), total);
+            }
+        }
+        return completo;
+    }
+
+    public Map<Long, Long> vista() {
+        return Map.copyOf(centavosPorCombo);
+    }
+
+    /**
+     * Devuelve true si el precio vigente del producto cambio.
+     */
+    private boolean actualizarVigente(long idProducto) {
+        ProductoPrecio.Vigente vigente = precios.vigente(idProducto, fecha);
+        Long anterior = vigente == null ? vigentes.remove(idProducto) : vigentes.put(idProducto, vigente.centavos());
+        return vigente == null ? anterior != null : anterior == null || anterior != vigente.centavos();
+    }
+
+    private void recalcular(long idCombo) {
+        Map<Long, Integer> miembros = detalle.get(idCombo);
+        if (miembros == null) {
+            centavosPorCombo.remove(idCombo);
+            return;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Integer> miembro : miembros.entrySet()) {
+            Long precio = vigentes.get(miembro.getKey());
+            if (precio == null) {
+                centavosPorCombo.remove(idCombo);
+                return;
+            }
+            total = Math.addExact(total, Math.multiplyExact(precio, (long) miembro.getValue()));
+        }
+        centavosPorCombo.put(idCombo, total);
+    }
+}
@@ -0,0 +1,255 @@
+package org.example;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Indice en memoria del catalogo para la caja de busqueda del menu.
+ * <p>
+ * Sustituye el par {@code findByNombre} + {@code countProductoByName} de
+ * {@code ProductoBean} y {@code ComboBean} (un {@code LIKE} y un {@code COUNT}
+ * por tecla). Los nombres se guardan normalizados (sin tildes y en minusculas)
+ * y se indexan por trigramas; una busqueda recorre una sola vez la lista de
+ * candidatos mas corta, verifica la coincidencia y devuelve la pagina junto
+ * con el total. El orden es por id, igual que {@code ORDER BY c.idCombo}.
+ */
+public class Producto {
+
+    public enum Catalogo {
+        PRODUCTO, COMBO
+    }
+
+    public enum Modo {
+        PREFIJO, CONTIENE
+    }
+
+    public record Pagina(long[] ids, String[] nombres, long total) {
+    }
+
+    private final Map<Catalogo, Indice> indices = new EnumMap<>(Catalogo.class);
+
+    public Producto() {
+        for (Catalogo catalogo : Catalogo.values()) {
+            indices.put(catalogo, new Indice());
+        }
+    }
+
+    /**
+     * Alta o actualizacion de un producto o combo. {@code descripcion} es
+     * opcional; para combos se busca tambien en {@code descripcion_publica}
+     * como hace {@code Combo.findByNombre}.
+     */
+    public void guardar(Catalogo catalogo, long id, String nombre, String descripcion) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("id no puede ser nulo o menor a cero");
+        }
+        if (nombre == null) {
+            throw new IllegalArgumentException("nombre no puede ser nulo");
+        }
+        indices.get(catalogo).guardar(id, nombre, descripcion);
+    }
+
+    public void guardar(Catalogo catalogo, long id, String nombre) {
+        guardar(catalogo, id, nombre, null);
+    }
+
+    public boolean eliminar(Catalogo catalogo, long id) {
+        return indices.get(catalogo).eliminar(id);
+    }
+
+    public Pagina buscar(Catalogo catalogo, String texto, Modo modo, int first, int max) {
+        if (first < 0 || max < 0) {
+            throw new IllegalArgumentException("first y max no pueden ser menores a cero");
+        }
+        return indices.get(catalogo).buscar(normalizar(texto == null ? "" : texto), modo, first, max);
+    }
+
+    public Pagina buscar(Catalogo catalogo, String texto, int first, int max) {
+        return buscar(catalogo, texto, Modo.CONTIENE, first, max);
+    }
+
+    public int size(Catalogo catalogo) {
+        return indices.get(catalogo).size();
+    }
+
+    /**
+     * Quita tildes y pasa a minusculas: "Café" y "CAFE" quedan como "cafe".
+     */
+    public static String normalizar(String texto) {
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(descompuesto.length());
+        for (int i = 0; i < descompuesto.length(); i++) {
+            char c = descompuesto.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ROOT).trim();
+    }
+
+    static long trigrama(String texto, int pos) {
+        return ((long) texto.charAt(pos) << 32) | ((long) texto.charAt(pos + 1) << 16) | texto.charAt(pos + 2);
+    }
+
+    private static final class Indice {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, String> nombres = new HashMap<>();
+        private final Map<Long, String> normalizados = new HashMap<>();
+        private final Map<Long, String> nombreNormalizado = new HashMap<>();
+        private final Map<Long, Ids> trigramas = new HashMap<>();
+        private final Ids todos = new Ids();
+
+        void guardar(long id, String nombre, String descripcion) {
+            String soloNombre = normalizar(nombre);
+            String texto = descripcion == null || descripcion.isBlank()
+                    ? soloNombre
+                    : soloNombre + '\n' + normalizar(descripcion);
+            lock.writeLock().lock();
+            try {
+                String anterior = normalizados.get(id);
+                if (anterior != null) {
+                    for (long t : trigramasDe(anterior)) {
+                        Ids ids = trigramas.get(t);
+                        ids.eliminar(id);
+                        if (ids.size == 0) {
+                            trigramas.remove(t);
+                        }
+                    }
+                } else {
+                    todos.agregar(id);
+                }
+                for (long t : trigramasDe(texto)) {
+                    trigramas.computeIfAbsent(t, k -> new Ids()).agregar(id);
+                }
+                nombres.put(id, nombre);
+                normalizados.put(id, texto);
+                nombreNormalizado.put(id, soloNombre);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean eliminar(long id) {
+            lock.writeLock().lock();
+            try {
+                String anterior = normalizados.remove(id);
+                if (anterior == null) {
+                    return false;
+                }
+                for (long t : trigramasDe(anterior)) {
+                    Ids ids = trigramas.get(t);
+                    ids.eliminar(id);
+                    if (ids.size == 0) {
+                        trigramas.remove(t);
+                    }
+                }
+                todos.eliminar(id);
+                nombres.remove(id);
+                nombreNormalizado.remove(id);
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Pagina buscar(String consulta, Modo modo, int first, int max) {
+            lock.readLock().lock();
+            try {
+                Ids candidatos = todos;
+                if (consulta.length() >= 3) {
+                    for (int i = 0; i + 3 <= consulta.length(); i++) {
+                        Ids ids = trigramas.get(trigrama(consulta, i));
+                        if (ids == null) {
+                            return new Pagina(new long[0], new String[0], 0);
+                        }
+                        if (ids.size < candidatos.size) {
+                            candidatos = ids;
+                        }
+                    }
+                }
+                int capacidad = Math.min(max, candidatos.size);
+                long[] pagina = new long[capacidad];
+                String[] paginaNombres = new String[capacidad];
+                int enPagina = 0;
+                long total = 0;
+                for (int i = 0; i < candidatos.size; i++) {
+                    long id = candidatos.valores[i];
+                    boolean coincide = modo == Modo.PREFIJO
+                            ? nombreNormalizado.get(id).startsWith(consulta)
+                            : consulta.isEmpty() || normalizados.get(id).contains(consulta);
+                    if (!coincide) {
+                        continue;
+                    }
+                    if (total >= first && enPagina < capacidad) {
+                        pagina[enPagina] = id;
+                        paginaNombres[enPagina] = nombres.get(id);
+                        enPagina++;
+                    }
+                    total++;
+                }
+                return new Pagina(Arrays.copyOf(pagina, enPagina), Arrays.copyOf(paginaNombres, enPagina), total);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return todos.size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private static Set<Long> trigramasDe(String texto) {
+            Set<Long> resultado = new HashSet<>();
+            for (int i = 0; i + 3 <= texto.length(); i++) {
+                resultado.add(trigrama(texto, i));
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Lista ordenada de ids sobre un arreglo primitivo. Las altas suelen llegar
+     * con id creciente, asi que insertar casi siempre es agregar al final.
+     */
+    private static final class Ids {
+
+        long[] valores = new long[4];
+        int size;
+
+        void agregar(long id) {
+            int pos = Arrays.binarySearch(valores, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            int ins = -pos - 1;
+            if (size == valores.length) {
+                valores = Arrays.copyOf(valores, size * 2);
+            }
+            System.arraycopy(valores, ins, valores, ins + 1, size - ins);
+            valores[ins] = id;
+            size++;
+        }
+
+        void eliminar(long id) {
+            int pos = Arrays.binarySearch(valores, 0, size, id);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(valores, pos + 1, valores, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
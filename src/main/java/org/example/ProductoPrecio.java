@@ -0,0 +1,209 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precios vigentes por producto en memoria, a partir de los rangos
+ * {@code producto_precio(fecha_desde, fecha_hasta)}.
+ * <p>
+ * Evita la consulta {@code ProductoPrecio.findByIdProducto} que
+ * {@code OrdenDetalleBean.generarOrdenDetalleMixto} hace por cada producto y
+ * por cada miembro de combo. Se carga completo con una sola consulta al
+ * iniciar ({@link #cargar(Connection)}) y se actualiza con
+ * {@link #registrar} cuando {@code ProductoPrecioBean.create} inserta un
+ * precio. Cuando varios rangos se traslapan gana el de {@code fecha_desde}
+ * mas reciente (y ante empate el de mayor {@code id_producto_precio}); un
+ * {@code fecha_hasta} nulo queda abierto.
+ */
+public class ProductoPrecio {
+
+    public static final String CONSULTA_CARGA = "SELECT id_producto_precio, id_producto, fecha_desde, fecha_hasta, precio_sugerido FROM producto_precio WHERE id_producto IS NOT NULL";
+
+    // fecha_hasta nulo
+    static final int ABIERTO = Integer.MAX_VALUE;
+
+    public record Vigente(long idProductoPrecio, long idProducto, long centavos) {
+    }
+
+    private final ConcurrentHashMap<Long, Intervalos> porProducto = new ConcurrentHashMap<>();
+
+    public static ProductoPrecio cargar(Connection conexion) throws SQLException {
+        ProductoPrecio precios = new ProductoPrecio();
+        try (PreparedStatement ps = conexion.prepareStatement(CONSULTA_CARGA)) {
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Date desde = rs.getDate(3);
+                    Date hasta = rs.getDate(4);
+                    BigDecimal precio = rs.getBigDecimal(5);
+                    precios.registrar(rs.getLong(1), rs.getLong(2),
+                            desde == null ? null : desde.toLocalDate(),
+                            hasta == null ? null : hasta.toLocalDate(),
+                            precio == null ? BigDecimal.ZERO : precio);
+                }
+            }
+        }
+        return precios;
+    }
+
+    /**
+     * Alta de un rango de precio. Un {@code fechaDesde} nulo se toma como
+     * vigente desde siempre.
+     */
+    public void registrar(long idProductoPrecio, long idProducto, LocalDate fechaDesde, LocalDate fechaHasta, BigDecimal precioSugerido) {
+        if (idProductoPrecio <= 0 || idProducto <= 0) {
+            throw new IllegalArgumentException("idProducto e idProductoPrecio no pueden ser nulos o menores a cero");
+        }
+        if (precioSugerido == null) {
+            throw new IllegalArgumentException("precioSugerido no puede ser nulo");
+        }
+        int desde = fechaDesde == null ? Integer.MIN_VALUE : (int) fechaDesde.toEpochDay();
+        int hasta = fechaHasta == null ? ABIERTO : (int) fechaHasta.toEpochDay();
+        if (hasta < desde) {
+            throw new IllegalArgumentException("fechaHasta no puede ser menor a fechaDesde");
+        }
+        long centavos = Pago.aCentavos(precioSugerido);
+        porProducto.compute(idProducto, (k, actual) -> (actual == null ? Intervalos.VACIO : actual)
+                .con(idProductoPrecio, desde, hasta, centavos));
+    }
+
+    /**
+     * Precio vigente de un producto en la fecha indicada o {@code null} si
+     * ningun rango la cubre.
+     */
+    public Vigente vigente(long idProducto, LocalDate fecha) {
+        Intervalos intervalos = porProducto.get(idProducto);
+        if (intervalos == null) {
+            return null;
+        }
+        int pos = intervalos.buscar((int) fecha.toEpochDay());
+        return pos < 0 ? null : new Vigente(intervalos.ids[pos], idProducto, intervalos.centavos[pos]);
+    }
+
+    /**
+     * Resuelve todas las lineas de una orden en una sola llamada, sin
+     * consultas ni objetos intermedios. Los resultados quedan en
+     * {@code idsProductoPrecio} y {@code centavos} en la misma posicion que
+     * cada producto.
+     */
+    public void resolver(long[] idsProducto, int lineas, LocalDate fecha, long[] idsProductoPrecio, long[] centavos) {
+        int dia = (int) fecha.toEpochDay();
+        for (int i = 0; i < lineas; i++) {
+            Intervalos intervalos = porProducto.get(idsProducto[i]);
+            int pos = intervalos == null ? -1 : intervalos.buscar(dia);
+            if (pos < 0) {
+                throw new IllegalArgumentException("El producto " + idsProducto[i] + " no tiene precio vigente en " + fecha);
+            }
+            idsProductoPrecio[i] = intervalos.ids[pos];
+            centavos[i] = intervalos.centavos[pos];
+        }
+    }
+
+    public int size() {
+        return porProducto.size();
+    }
+
+    /**
+     * Rangos de un producto ordenados por {@code fecha_desde}. Es inmutable:
+     * cada alta crea una copia, asi las lecturas no necesitan candado.
+     * {@code maxHasta[i]} es el mayor {@code fecha_hasta} entre 0..i y permite
+     * cortar la busqueda hacia atras en cuanto ningun rango anterior alcanza
+     * la fecha.
+     */
+    static final class Intervalos {
+
+        static final Intervalos VACIO = new Intervalos(new long[0], new int[0], new int[0], new long[0]);
+
+        final long[] ids;
+        final int[] desde;
+        final int[] hasta;
+        final long[] centavos;
+        final int[] maxHasta;
+
+        Intervalos(long[] ids, int[] desde, int[] hasta, long[] centavos) {
+            this.ids = ids;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.centavos = centavos;
+            this.maxHasta = new int[ids.length];
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < ids.length; i++) {
+                max = Math.max(max, hasta[i]);
+                maxHasta[i] = max;
+            }
+        }
+
+        Intervalos con(long id, int nuevoDesde, int nuevoHasta, long nuevoCentavos) {
+            int n = ids.length;
+            // si el id ya existe se reemplaza el rango
+            int existente = -1;
+            for (int i = 0; i < n; i++) {
+                if (ids[i] == id) {
+                    existente = i;
+                    break;
+                }
+            }
+            int tam = existente >= 0 ? n : n + 1;
+            long[] nIds = new long[tam];
+            int[] nDesde = new int[tam];
+            int[] nHasta = new int[tam];
+            long[] nCentavos = new long[tam];
+            int j = 0;
+            boolean insertado = false;
+            for (int i = 0; i < n; i++) {
+                if (i == existente) {
+                    continue;
+                }
+                if (!insertado && (desde[i] > nuevoDesde || (desde[i] == nuevoDesde && ids[i] > id))) {
+                    nIds[j] = id;
+                    nDesde[j] = nuevoDesde;
+                    nHasta[j] = nuevoHasta;
+                    nCentavos[j] = nuevoCentavos;
+                    j++;
+                    insertado = true;
+                }
+                nIds[j] = ids[i];
+                nDesde[j] = desde[i];
+                nHasta[j] = hasta[i];
+                nCentavos[j] = centavos[i];
+                j++;
+            }
+            if (!insertado) {
+                nIds[j] = id;
+                nDesde[j] = nuevoDesde;
+                nHasta[j] = nuevoHasta;
+                nCentavos[j] = nuevoCentavos;
+            }
+            return new Intervalos(nIds, nDesde, nHasta, nCentavos);
+        }
+
+        /**
+         * Posicion del rango vigente en {@code dia} o -1.
+         */
+        int buscar(int dia) {
+            // ultimo rango con desde <= dia
+            int pos = Arrays.binarySearch(desde, dia);
+            if (pos >= 0) {
+                while (pos + 1 < desde.length && desde[pos + 1] == dia) {
+                    pos++;
+                }
+            } else {
+                pos = -pos - 2;
+            }
+            for (int i = pos; i >= 0 && maxHasta[i] >= dia; i--) {
+                if (hasta[i] >= dia) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
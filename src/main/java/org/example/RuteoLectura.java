@@ -0,0 +1,270 @@
+package org.example;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Ruteo de lecturas a una replica de streaming para que el menu y los
+ * reportes no compitan con ordenes y pagos en el primario.
+ * <p>
+ * Solo los metodos de {@link #LECTURAS} van a la replica, y solo si:
+ * <ul>
+ * <li>la replica ya aplico la ultima escritura de esa sesion (u orden):
+ * al confirmar una escritura se guarda {@code pg_current_wal_lsn()} del
+ * primario y se compara con {@code pg_last_wal_replay_lsn()} de la replica;</li>
+ * <li>el retraso de la replica no pasa de {@code lagMaximoMs}.</li>
+ * </ul>
+ * Con el receptor de WAL desconectado la replica no sabe que le falta algo
+ * ({@code pg_last_wal_receive_lsn()} se queda donde se corto), asi que si
+ * {@code pg_stat_wal_receiver} no dice {@code streaming} se compara contra
+ * {@code pg_current_wal_lsn()} del primario: si no lo alcanzo, la replica
+ * cuenta como caida. El usuario de la replica necesita
+ * {@code pg_read_all_stats} para ver el estado del receptor; sin el siempre
+ * se hace la comparacion con el primario.
+ * En cualquier otro caso, o si la replica no responde, se lee del primario.
+ * La posicion de la replica se consulta a lo mas una vez por
+ * {@code intervaloMs}, salvo cuando una sesion necesita una posicion mas
+ * nueva que la guardada.
+ * <p>
+ * En el WAR corresponde a un segundo datasource ({@code jdbc/pgdb-replica})
+ * con su propia unidad de persistencia, y a un filtro de peticion que decide
+ * cual {@code EntityManager} usa el bean segun {@link #destino}.
+ */
+public class RuteoLectura {
+
+    public enum Destino {
+        PRIMARIO, REPLICA
+    }
+
+    @FunctionalInterface
+    public interface Trabajo<T> {
+        T ejecutar(Connection conexion) throws SQLException;
+    }
+
+    public static final Set<String> LECTURAS = Set.of("findAll", "findRange", "findById", "count", "findByNombre",
+            "findRangeByIdTipoProductosAndActivo", "findRangeWithPrice");
+
+    static final String POSICION_PRIMARIO = "SELECT pg_current_wal_lsn()::text";
+    // sin nada pendiente de aplicar el retraso es cero aunque la ultima transaccion sea vieja,
+    // pero "nada pendiente" solo vale si el receptor sigue recibiendo
+    static final String POSICION_REPLICA = "SELECT pg_last_wal_replay_lsn()::text, pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn(),"
+            + " COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0),"
+            + " EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming')";
+
+    private record Escritura(long lsn, long cuando) {
+    }
+
+    private record Posicion(long lsn, long lagMs, long leida, boolean disponible) {
+    }
+
+    private final DataSource primario;
+    private final DataSource replica;
+    private final long lagMaximoMs;
+    private final long intervaloNanos;
+    private final long ventanaNanos;
+    private final LongSupplier reloj;
+
+    private static final Posicion SIN_LEER = new Posicion(0, Long.MAX_VALUE, 0, false);
+
+    private final Map<String, Escritura> escrituras = new ConcurrentHashMap<>();
+    private volatile Posicion posicion = SIN_LEER;
+
+    private final LongAdder lecturasReplica = new LongAdder();
+    private final LongAdder lecturasPrimario = new LongAdder();
+    private final LongAdder porLag = new LongAdder();
+    private final LongAdder porSesion = new LongAdder();
+
+    /**
+     * @param ventanaSegundos tiempo que se recuerda la ultima escritura de
+     *                        una sesion; despues de eso se asume replicada
+     */
+    public RuteoLectura(DataSource primario, DataSource replica, long lagMaximoMs, long intervaloMs, long ventanaSegundos) {
+        this(primario, replica, lagMaximoMs, intervaloMs, ventanaSegundos, System::nanoTime);
+    }
+
+    public RuteoLectura(DataSource primario, DataSource replica, long lagMaximoMs, long intervaloMs, long ventanaSegundos, LongSupplier reloj) {
+        if (primario == null || replica == null) {
+            throw new IllegalArgumentException("primario y replica no pueden ser nulos");
+        }
+        if (lagMaximoMs < 0 || intervaloMs < 0 || ventanaSegundos <= 0) {
+            throw new IllegalArgumentException("lagMaximo, intervalo y ventana no pueden ser negativos");
+        }
+        this.primario = primario;
+        this.replica = replica;
+        this.lagMaximoMs = lagMaximoMs;
+        this.intervaloNanos = intervaloMs * 1_000_000L;
+        this.ventanaNanos = ventanaSegundos * 1_000_000_000L;
+        this.reloj = reloj;
+    }
+
+    /**
+     * A donde va una llamada de bean. {@code sesion} es la sesion del
+     * cliente o la orden en curso; puede ser {@code null}.
+     */
+    public Destino destino(String metodo, String sesion) {
+        if (!LECTURAS.contains(metodo)) {
+            return Destino.PRIMARIO;
+        }
+        long ahora = reloj.getAsLong();
+        Posicion actual = posicion(ahora, 0);
+        if (!actual.disponible() || actual.lagMs() > lagMaximoMs) {
+            porLag.increment();
+            return Destino.PRIMARIO;
+        }
+        Escritura escritura = sesion == null ? null : escrituras.get(sesion);
+        if (escritura != null) {
+            if (ahora - escritura.cuando() > ventanaNanos) {
+                escrituras.remove(sesion, escritura);
+            } else if (actual.lsn() < escritura.lsn() && posicion(ahora, escritura.lsn()).lsn() < escritura.lsn()) {
+                porSesion.increment();
+                return Destino.PRIMARIO;
+            }
+        }
+        return Destino.REPLICA;
+    }
+
+    public <T> T leer(String metodo, String sesion, Trabajo<T> trabajo) throws SQLException {
+        Destino destino = destino(metodo, sesion);
+        (destino == Destino.REPLICA ? lecturasReplica : lecturasPrimario).increment();
+        try (Connection conexion = (destino == Destino.REPLICA ? replica : primario).getConnection()) {
+            // la conexion vuelve al pool; las escrituras que la reciban despues no pueden quedar en solo lectura
+            boolean soloLectura = conexion.isReadOnly();
+            conexion.setReadOnly(true);
+            try {
+                return trabajo.ejecutar(conexion);
+            } finally {
+                conexion.setReadOnly(soloLectura);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta {@code trabajo} en una transaccion del primario y, al
+     * confirmar, guarda la posicion del WAL como ultima escritura de la sesion.
+     */
+    public <T> T escribir(String sesion, Trabajo<T> trabajo) throws SQLException {
+        try (Connection conexion = primario.getConnection()) {
+            conexion.setAutoCommit(false);
+            T resultado;
+            try {
+                resultado = trabajo.ejecutar(conexion);
+                conexion.commit();
+            } catch (SQLException | RuntimeException e) {
+                conexion.rollback();
+                throw e;
+            }
+            conexion.setAutoCommit(true);
+            if (sesion != null) {
+                try (Statement st = conexion.createStatement(); ResultSet rs = st.executeQuery(POSICION_PRIMARIO)) {
+                    rs.next();
+                    registrarEscritura(sesion, lsn(rs.getString(1)));
+                }
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Para escrituras que no pasan por {@link #escribir}, p. ej. las de JPA:
+     * el LSN sale de {@code pg_current_wal_lsn()} despues del commit.
+     */
+    public void registrarEscritura(String sesion, long lsn) {
+        long ahora = reloj.getAsLong();
+        escrituras.merge(sesion, new Escritura(lsn, ahora), (a, b) -> a.lsn() > b.lsn() ? new Escritura(a.lsn(), b.cuando()) : b);
+        if (escrituras.size() > 10_000) {
+            escrituras.values().removeIf(e -> ahora - e.cuando() > ventanaNanos);
+        }
+    }
+
+    /**
+     * Posicion de la replica; se vuelve a leer si la guardada es mas vieja
+     * que el intervalo o si no alcanza el {@code lsnNecesario}.
+     */
+    private Posicion posicion(long ahora, long lsnNecesario) {
+        Posicion actual = posicion;
+        if (actual != SIN_LEER && ahora - actual.leida() < intervaloNanos && actual.lsn() >= lsnNecesario) {
+            return actual;
+        }
+        Posicion nueva;
+        try (Connection conexion = replica.getConnection(); Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery(POSICION_REPLICA)) {
+            rs.next();
+            String texto = rs.getString(1);
+            if (texto == null) {
+                // no es una replica (o todavia no aplica nada)
+                nueva = new Posicion(0, Long.MAX_VALUE, ahora, false);
+            } else {
+                long lsn = lsn(texto);
+                boolean recibiendo = rs.getBoolean(4);
+                if (recibiendo && rs.getBoolean(2)) {
+                    nueva = new Posicion(lsn, 0, ahora, true);
+                } else if (!recibiendo && lsn < posicionPrimario()) {
+                    nueva = new Posicion(lsn, Long.MAX_VALUE, ahora, false);
+                } else {
+                    nueva = new Posicion(lsn, recibiendo ? rs.getLong(3) : 0, ahora, true);
+                }
+            }
+        } catch (SQLException e) {
+            nueva = new Posicion(0, Long.MAX_VALUE, ahora, false);
+        }
+        posicion = nueva;
+        return nueva;
+    }
+
+    private long posicionPrimario() throws SQLException {
+        try (Connection conexion = primario.getConnection(); Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery(POSICION_PRIMARIO)) {
+            rs.next();
+            return lsn(rs.getString(1));
+        }
+    }
+
+    /**
+     * {@code pg_lsn} en texto ({@code 16/B374D848}) como numero.
+     */
+    public static long lsn(String texto) {
+        int barra = texto.indexOf('/');
+        if (barra < 0) {
+            throw new IllegalArgumentException("LSN invalido: " + texto);
+        }
+        return Long.parseLong(texto, 0, barra, 16) << 32 | Long.parseLong(texto, barra + 1, texto.length(), 16);
+    }
+
+    public long lecturasReplica() {
+        return lecturasReplica.sum();
+    }
+
+    public long lecturasPrimario() {
+        return lecturasPrimario.sum();
+    }
+
+    /**
+     * Lecturas mandadas al primario por retraso o replica caida.
+     */
+    public long porLag() {
+        return porLag.sum();
+    }
+
+    /**
+     * Lecturas mandadas al primario para ver la escritura de la misma sesion.
+     */
+    public long porSesion() {
+        return porSesion.sum();
+    }
+
+    /**
+     * Fraccion de las lecturas que atendio la replica.
+     */
+    public double fraccionReplica() {
+        long total = lecturasReplica.sum() + lecturasPrimario.sum();
+        return total == 0 ? 0 : (double) lecturasReplica.sum() / total;
+    }
+}
@@ -0,0 +1,562 @@
+package org.example;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Acumulados de ventas por sucursal, producto y hora, mantenidos en memoria a
+ * medida que se escriben ordenes y pagos.
+ * <p>
+ * Evita las consultas ad hoc sobre {@code orden}, {@code orden_detalle} y
+ * {@code pago_detalle} que recorren todas las filas y compiten con la toma de
+ * ordenes. Los beans avisan cada escritura ({@link #registrarOrden},
+ * {@link #registrarDetalle}, {@link #registrarPago}, {@link #anular}); cada
+ * evento suma o resta en una fila {@code (sucursal, producto, hora)}. Las filas
+ * se guardan por columnas en arreglos primitivos con un indice hash, asi un
+ * top-N o un total diario recorre arreglos contiguos sin tocar Postgres. Las
+ * ordenes anuladas se restan completas. El estado se respalda en un archivo
+ * ({@link #guardar}) cada cierto tiempo ({@link #programarRespaldo}) y se
+ * recupera con {@link #cargar}.
+ */
+public class Ventas {
+
+    public record Total(long idProducto, long cantidad, long centavos) {
+    }
+
+    // 2: cantidad de pagos por orden
+    private static final int VERSION_RESPALDO = 2;
+    // producto 0: fila de cobros de la sucursal en esa hora
+    private static final long SIN_PRODUCTO = 0;
+
+    private final ReadWriteLock candado = new ReentrantReadWriteLock();
+
+    private final List<String> sucursales = new ArrayList<>();
+    private final Map<String, Integer> idsSucursal = new HashMap<>();
+
+    // ordenes vivas para poder restar una anulacion; se purgan por fecha
+    private final Map<Long, OrdenVenta> ordenes = new HashMap<>();
+
+    private final Columnas filas = new Columnas();
+
+    /**
+     * Alta de una orden. La hora de venta es la del registro; {@code orden.fecha}
+     * solo guarda el dia.
+     */
+    public void registrarOrden(long idOrden, String sucursal, LocalDateTime momento) {
+        if (idOrden <= 0) {
+            throw new IllegalArgumentException("idOrden no puede ser nulo o menor a cero");
+        }
+        if (momento == null) {
+            throw new IllegalArgumentException("momento no puede ser nulo");
+        }
+        candado.writeLock().lock();
+        try {
+            ordenes.putIfAbsent(idOrden, new OrdenVenta(sucursal(sucursal), hora(momento)));
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Una linea de {@code orden_detalle} ya resuelta a producto; {@code centavos}
+     * es el precio unitario de la linea.
+     */
+    public void registrarDetalle(long idOrden, long idProducto, int cantidad, long centavos) {
+        if (idProducto <= 0) {
+            throw new IllegalArgumentException("idProducto no puede ser nulo o menor a cero");
+        }
+        if (cantidad < 0 || centavos < 0) {
+            throw new IllegalArgumentException("cantidad y precio no pueden ser menores a cero");
+        }
+        candado.writeLock().lock();
+        try {
+            OrdenVenta orden = orden(idOrden);
+            if (orden.anulada) {
+                return;
+            }
+            long monto = Math.multiplyExact(centavos, (long) cantidad);
+            orden.agregar(idProducto, cantidad, monto);
+            filas.sumar(llave(orden.sucursal, idProducto, orden.hora), cantidad, monto);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Un {@code pago_detalle.monto}; se acumula en la hora de la orden.
+     */
+    public void registrarPago(long idOrden, long centavos) {
+        candado.writeLock().lock();
+        try {
+            OrdenVenta orden = orden(idOrden);
+            if (orden.anulada) {
+                return;
+            }
+            orden.pagado = Math.addExact(orden.pagado, centavos);
+            orden.pagos++;
+            filas.sumar(llave(orden.sucursal, SIN_PRODUCTO, orden.hora), 1, centavos);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@code orden.anulada = true}: resta todas sus lineas y pagos. Devuelve
+     * false si la orden no se conoce (ya purgada) o ya estaba anulada.
+     */
+    public boolean anular(long idOrden) {
+        candado.writeLock().lock();
+        try {
+            OrdenVenta orden = ordenes.get(idOrden);
+            if (orden == null || orden.anulada) {
+                return false;
+            }
+            for (int i = 0; i < orden.lineas; i++) {
+                filas.sumar(llave(orden.sucursal, orden.productos[i], orden.hora), -orden.cantidades[i], -orden.montos[i]);
+            }
+            if (orden.pagos != 0) {
+                filas.sumar(llave(orden.sucursal, SIN_PRODUCTO, orden.hora), -orden.pagos, -orden.pagado);
+            }
+            orden.anulada = true;
+            return true;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Olvida las ordenes anteriores a {@code dia}; los acumulados se conservan
+     * pero ya no se pueden anular.
+     */
+    public int purgar(LocalDate dia) {
+        int limite = hora(dia.atStartOfDay());
+        candado.writeLock().lock();
+        try {
+            int antes = ordenes.size();
+            ordenes.values().removeIf(o -> o.hora < limite);
+            return antes - ordenes.size();
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Los {@code n} productos con mas venta en centavos entre {@code desde} y
+     * {@code hasta} (inclusive). {@code sucursal} nula suma todas.
+     */
+    public List<Total> topProductos(String sucursal, LocalDate desde, LocalDate hasta, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n no puede ser menor o igual a cero");
+        }
+        int inicio = hora(desde.atStartOfDay());
+        int fin = hora(hasta.plusDays(1).atStartOfDay());
+        Map<Long, long[]> porProducto = new HashMap<>();
+        candado.readLock().lock();
+        try {
+            int filtro = filtroSucursal(sucursal);
+            if (filtro == -2) {
+                return List.of();
+            }
+            for (int f = 0; f < filas.total; f++) {
+                long llave = filas.llaves[f];
+                int h = horaDe(llave);
+                long producto = productoDe(llave);
+                if (h < inicio || h >= fin || producto == SIN_PRODUCTO || (filtro >= 0 && sucursalDe(llave) != filtro)) {
+                    continue;
+                }
+                long[] acumulado = porProducto.computeIfAbsent(producto, k -> new long[2]);
+                acumulado[0] += filas.cantidades[f];
+                acumulado[1] += filas.centavos[f];
+            }
+        } finally {
+            candado.readLock().unlock();
+        }
+        List<Total> totales = new ArrayList<>(porProducto.size());
+        porProducto.forEach((producto, a) -> {
+            if (a[0] != 0 || a[1] != 0) {
+                totales.add(new Total(producto, a[0], a[1]));
+            }
+        });
+        totales.sort((a, b) -> a.centavos() != b.centavos() ? Long.compare(b.centavos(), a.centavos()) : Long.compare(a.idProducto(), b.idProducto()));
+        return totales.size() > n ? List.copyOf(totales.subList(0, n)) : totales;
+    }
+
+    /**
+     * Ventas en centavos de cada hora (0..23) de un dia.
+     */
+    public long[] porHora(String sucursal, LocalDate dia) {
+        long[] horas = new long[24];
+        acumular(sucursal, dia, dia, false, false, horas, 0);
+        return horas;
+    }
+
+    /**
+     * Ventas en centavos por dia entre {@code desde} y {@code hasta}; la
+     * posicion 0 es {@code desde}.
+     */
+    public long[] porDia(String sucursal, LocalDate desde, LocalDate hasta) {
+        long[] dias = new long[(int) (hasta.toEpochDay() - desde.toEpochDay()) + 1];
+        acumular(sucursal, desde, hasta, false, false, dias, 24);
+        return dias;
+    }
+
+    /**
+     * Cobros ({@code pago_detalle.monto}) en centavos por dia.
+     */
+    public long[] cobradoPorDia(String sucursal, LocalDate desde, LocalDate hasta) {
+        long[] dias = new long[(int) (hasta.toEpochDay() - desde.toEpochDay()) + 1];
+        acumular(sucursal, desde, hasta, true, false, dias, 24);
+        return dias;
+    }
+
+    /**
+     * Cantidad de {@code pago_detalle} por dia.
+     */
+    public long[] pagosPorDia(String sucursal, LocalDate desde, LocalDate hasta) {
+        long[] dias = new long[(int) (hasta.toEpochDay() - desde.toEpochDay()) + 1];
+        acumular(sucursal, desde, hasta, true, true, dias, 24);
+        return dias;
+    }
+
+    public int filas() {
+        candado.readLock().lock();
+        try {
+            return filas.total;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /**
+     * Escribe el respaldo en un temporal y lo mueve encima del anterior, asi
+     * una caida a mitad de escritura no deja un archivo a medias. Bajo el
+     * candado solo se copian las filas y las ordenes; la escritura al disco
+     * no detiene a los beans que registran ventas.
+     */
+    public void guardar(Path archivo) throws IOException {
+        List<String> copiaSucursales;
+        long[] llaves;
+        long[] cantidades;
+        long[] centavos;
+        long[] idsOrden;
+        OrdenVenta[] copiaOrdenes;
+        candado.readLock().lock();
+        try {
+            copiaSucursales = List.copyOf(sucursales);
+            llaves = Arrays.copyOf(filas.llaves, filas.total);
+            cantidades = Arrays.copyOf(filas.cantidades, filas.total);
+            centavos = Arrays.copyOf(filas.centavos, filas.total);
+            idsOrden = new long[ordenes.size()];
+            copiaOrdenes = new OrdenVenta[ordenes.size()];
+            int i = 0;
+            for (Map.Entry<Long, OrdenVenta> e : ordenes.entrySet()) {
+                idsOrden[i] = e.getKey();
+                copiaOrdenes[i++] = e.getValue().copia();
+            }
+        } finally {
+            candado.readLock().unlock();
+        }
+
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal), 1 << 16))) {
+            out.writeInt(VERSION_RESPALDO);
+            out.writeInt(copiaSucursales.size());
+            for (String s : copiaSucursales) {
+                out.writeUTF(s);
+            }
+            out.writeInt(llaves.length);
+            for (int f = 0; f < llaves.length; f++) {
+                out.writeLong(llaves[f]);
+                out.writeLong(cantidades[f]);
+                out.writeLong(centavos[f]);
+            }
+            out.writeInt(copiaOrdenes.length);
+            for (int i = 0; i < copiaOrdenes.length; i++) {
+                OrdenVenta o = copiaOrdenes[i];
+                out.writeLong(idsOrden[i]);
+                out.writeInt(o.sucursal);
+                out.writeInt(o.hora);
+                out.writeBoolean(o.anulada);
+                out.writeLong(o.pagado);
+                out.writeInt(o.pagos);
+                out.writeInt(o.lineas);
+                for (int l = 0; l < o.lineas; l++) {
+                    out.writeLong(o.productos[l]);
+                    out.writeInt(o.cantidades[l]);
+                    out.writeLong(o.montos[l]);
+                }
+            }
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Ventas cargar(Path archivo) throws IOException {
+        Ventas ventas = new Ventas();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo), 1 << 16))) {
+            int version = in.readInt();
+            if (version < 1 || version > VERSION_RESPALDO) {
+                throw new IOException("version de respaldo desconocida: " + archivo);
+            }
+            int totalSucursales = in.readInt();
+            for (int i = 0; i < totalSucursales; i++) {
+                ventas.sucursal(in.readUTF());
+            }
+            int totalFilas = in.readInt();
+            for (int f = 0; f < totalFilas; f++) {
+                ventas.filas.sumar(in.readLong(), in.readLong(), in.readLong());
+            }
+            int totalOrdenes = in.readInt();
+            for (int i = 0; i < totalOrdenes; i++) {
+                long idOrden = in.readLong();
+                OrdenVenta o = new OrdenVenta(in.readInt(), in.readInt());
+                o.anulada = in.readBoolean();
+                o.pagado = in.readLong();
+                // la version 1 no guardaba los pagos; se cuenta uno como entonces
+                o.pagos = version >= 2 ? in.readInt() : (o.pagado != 0 ? 1 : 0);
+                int lineas = in.readInt();
+                for (int l = 0; l < lineas; l++) {
+                    o.agregar(in.readLong(), in.readInt(), in.readLong());
+                }
+                ventas.ordenes.put(idOrden, o);
+            }
+        }
+        return ventas;
+    }
+
+    /**
+     * Respaldo periodico en el {@code executor} indicado. Un fallo de
+     * escritura no detiene las siguientes corridas.
+     */
+    public ScheduledFuture<?> programarRespaldo(ScheduledExecutorService executor, Path archivo, Duration cada) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                guardar(archivo);
+            } catch (IOException e) {
+                System.getLogger(Ventas.class.getName()).log(System.Logger.Level.WARNING, "no se pudo respaldar " + archivo, e);
+            }
+        }, cada.toMillis(), cada.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public static String aJson(List<Total> totales) {
+        JsonArrayBuilder arreglo = Json.createArrayBuilder();
+        for (Total t : totales) {
+            arreglo.add(Json.createObjectBuilder().add("idProducto", t.idProducto()).add("cantidad", t.cantidad())
+                    .add("monto", BigDecimal.valueOf(t.centavos(), Pago.ESCALA)));
+        }
+        return arreglo.build().toString();
+    }
+
+    public static String aJson(LocalDate desde, long[] porDia) {
+        JsonArrayBuilder arreglo = Json.createArrayBuilder();
+        for (int i = 0; i < porDia.length; i++) {
+            arreglo.add(Json.createObjectBuilder().add("fecha", desde.plusDays(i).toString())
+                    .add("monto", BigDecimal.valueOf(porDia[i], Pago.ESCALA)));
+        }
+        return arreglo.build().toString();
+    }
+
+    /**
+     * Suma sobre las filas del rango en {@code salida}: por hora del dia si
+     * {@code horasPorCelda} es 0, por dia si es 24. Suma centavos o, con
+     * {@code cantidades}, la columna de cantidades.
+     */
+    private void acumular(String sucursal, LocalDate desde, LocalDate hasta, boolean cobros, boolean cantidades, long[] salida, int horasPorCelda) {
+        int inicio = hora(desde.atStartOfDay());
+        int fin = hora(hasta.plusDays(1).atStartOfDay());
+        candado.readLock().lock();
+        try {
+            int filtro = filtroSucursal(sucursal);
+            if (filtro == -2) {
+                return;
+            }
+            for (int f = 0; f < filas.total; f++) {
+                long llave = filas.llaves[f];
+                int h = horaDe(llave);
+                if (h < inicio || h >= fin || (productoDe(llave) == SIN_PRODUCTO) != cobros || (filtro >= 0 && sucursalDe(llave) != filtro)) {
+                    continue;
+                }
+                int celda = horasPorCelda == 0 ? (h - inicio) % 24 : (h - inicio) / horasPorCelda;
+                salida[celda] += cantidades ? filas.cantidades[f] : filas.centavos[f];
+            }
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    // -1: todas las sucursales, -2: sucursal desconocida
+    private int filtroSucursal(String sucursal) {
+        if (sucursal == null) {
+            return -1;
+        }
+        Integer id = idsSucursal.get(sucursal);
+        return id == null ? -2 : id;
+    }
+
+    private int sucursal(String sucursal) {
+        String nombre = sucursal == null ? "" : sucursal;
+        Integer id = idsSucursal.get(nombre);
+        if (id == null) {
+            if (sucursales.size() == 0xFF) {
+                throw new IllegalStateException("demasiadas sucursales");
+            }
+            id = sucursales.size();
+            sucursales.add(nombre);
+            idsSucursal.put(nombre, id);
+        }
+        return id;
+    }
+
+    private OrdenVenta orden(long idOrden) {
+        OrdenVenta orden = ordenes.get(idOrden);
+        if (orden == null) {
+            throw new IllegalArgumentException("La orden " + idOrden + " no esta registrada");
+        }
+        return orden;
+    }
+
+    static int hora(LocalDateTime momento) {
+        return (int) (momento.toEpochSecond(ZoneOffset.UTC) / 3600);
+    }
+
+    // llave de fila: 8 bits de sucursal, 32 de producto y 24 de hora desde 1970
+    static long llave(int sucursal, long idProducto, int hora) {
+        if (idProducto >>> 32 != 0) {
+            throw new IllegalArgumentException("idProducto fuera de rango: " + idProducto);
+        }
+        return ((long) sucursal << 56) | (idProducto << 24) | hora;
+    }
+
+    static int sucursalDe(long llave) {
+        return (int) (llave >>> 56);
+    }
+
+    static long productoDe(long llave) {
+        return (llave >>> 24) & 0xFFFF_FFFFL;
+    }
+
+    static int horaDe(long llave) {
+        return (int) (llave & 0xFF_FFFF);
+    }
+
+    private static final class OrdenVenta {
+        final int sucursal;
+        final int hora;
+        long[] productos = new long[4];
+        int[] cantidades = new int[4];
+        long[] montos = new long[4];
+        int lineas;
+        long pagado;
+        int pagos;
+        boolean anulada;
+
+        OrdenVenta(int sucursal, int hora) {
+            this.sucursal = sucursal;
+            this.hora = hora;
+        }
+
+        void agregar(long idProducto, int cantidad, long monto) {
+            if (lineas == productos.length) {
+                productos = Arrays.copyOf(productos, lineas * 2);
+                cantidades = Arrays.copyOf(cantidades, lineas * 2);
+                montos = Arrays.copyOf(montos, lineas * 2);
+            }
+            productos[lineas] = idProducto;
+            cantidades[lineas] = cantidad;
+            montos[lineas] = monto;
+            lineas++;
+        }
+
+        OrdenVenta copia() {
+            OrdenVenta copia = new OrdenVenta(sucursal, hora);
+            copia.productos = productos.clone();
+            copia.cantidades = cantidades.clone();
+            copia.montos = montos.clone();
+            copia.lineas = lineas;
+            copia.pagado = pagado;
+            copia.pagos = pagos;
+            copia.anulada = anulada;
+            return copia;
+        }
+    }
+
+    /**
+     * Filas por columnas con un hash de direccionamiento abierto de llave a
+     * posicion. Las filas nunca se borran: una anulacion deja la fila en cero.
+     */
+    private static final class Columnas {
+        long[] llaves = new long[1024];
+        long[] cantidades = new long[1024];
+        long[] centavos = new long[1024];
+        int total;
+
+        // posicion + 1; 0 es celda libre
+        int[] tabla = new int[2048];
+
+        void sumar(long llave, long cantidad, long monto) {
+            int mascara = tabla.length - 1;
+            int i = mezclar(llave) & mascara;
+            while (tabla[i] != 0) {
+                int f = tabla[i] - 1;
+                if (llaves[f] == llave) {
+                    cantidades[f] += cantidad;
+                    centavos[f] = Math.addExact(centavos[f], monto);
+                    return;
+                }
+                i = (i + 1) & mascara;
+            }
+            if (total == llaves.length) {
+                llaves = Arrays.copyOf(llaves, total * 2);
+                cantidades = Arrays.copyOf(cantidades, total * 2);
+                centavos = Arrays.copyOf(centavos, total * 2);
+            }
+            llaves[total] = llave;
+            cantidades[total] = cantidad;
+            centavos[total] = monto;
+            tabla[i] = ++total;
+            if (total * 2 > tabla.length) {
+                reindexar();
+            }
+        }
+
+        private void reindexar() {
+            tabla = new int[tabla.length * 2];
+            int mascara = tabla.length - 1;
+            for (int f = 0; f < total; f++) {
+                int i = mezclar(llaves[f]) & mascara;
+                while (tabla[i] != 0) {
+                    i = (i + 1) & mascara;
+                }
+                tabla[i] = f + 1;
+            }
+        }
+
+        private static int mezclar(long llave) {
+            long h = llave * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.CacheCatalogo;
+import org.example.CacheCatalogo.Region;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CacheCatalogoTest {
+
+    // usuarios y duracion de la carga REST, -Dcache.clientes=256
+    static int clientes = Integer.getInteger("cache.clientes", 8);
+    static int segundos = Integer.getInteger("cache.segundos", 3);
+    // una edicion del catalogo cada tantos GET del menu, no por reloj: la proporcion no depende de la maquina
+    static int lecturasPorEdicion = Integer.getInteger("cache.lecturasPorEdicion", 100);
+    // paginas distintas del menu en CargaRest.sesion: first 0, 10 y 20 por tres tipos
+    static final int PAGINAS_MENU = 9;
+
+    @Test
+    public void testEtagTtlEInvalidacion() {
+        System.out.println("test ETag, 304, TTL y tamano");
+        AtomicLong reloj = new AtomicLong();
+        CacheCatalogo cache = new CacheCatalogo(2, 60, 30, reloj::get);
+        int[] cargas = {0};
+
+        CacheCatalogo.Respuesta primera = cache.obtener(Region.PRODUCTO, "producto?first=0&max=20", null, () -> "p" + ++cargas[0]);
+        Assertions.assertEquals(200, primera.status());
+        Assertions.assertEquals("public, max-age=30, must-revalidate", primera.cacheControl());
+        Assertions.assertEquals(304, cache.obtener(Region.PRODUCTO, "producto?first=0&max=20", "W/" + primera.etag(), () -> "x").status());
+        Assertions.assertEquals("p1", cache.obtener(Region.PRODUCTO, "producto?first=0&max=20", "\"otro\"", () -> "x").cuerpo());
+        Assertions.assertEquals(1, cargas[0]);
+
+        // un precio nuevo cambia el ETag de productoPrecio y de combo, no el de producto
+        String combo = cache.etag(Region.COMBO);
+        cache.invalidar(Region.PRODUCTO_PRECIO);
+        Assertions.assertNotEquals(combo, cache.etag(Region.COMBO));
+        Assertions.assertEquals(primera.etag(), cache.etag(Region.PRODUCTO));
+
+        cache.invalidar(Region.PRODUCTO);
+        CacheCatalogo.Respuesta cambio = cache.obtener(Region.PRODUCTO, "producto?first=0&max=20", primera.etag(), () -> "p" + ++cargas[0]);
+        Assertions.assertEquals(200, cambio.status());
+        Assertions.assertEquals("p2", cambio.cuerpo());
+
+        reloj.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        Assertions.assertEquals("p3", cache.obtener(Region.PRODUCTO, "producto?first=0&max=20", null, () -> "p" + ++cargas[0]).cuerpo());
+
+        cache.obtener(Region.TIPO_PRODUCTO, "tipoProducto", null, () -> "t");
+        cache.obtener(Region.COMBO, "combo", null, () -> "c");
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertTrue(CacheCatalogo.coincide("\"a\", *", "\"b\""));
+    }
+
+    @Test
+    public void testEtagPorArranque() {
+        System.out.println("test ETag de otro arranque no da 304");
+        CacheCatalogo antes = new CacheCatalogo(10, 60, 30);
+        CacheCatalogo despues = new CacheCatalogo(10, 60, 30);
+        // misma region y misma version, pero otra instancia (reinicio u otro nodo)
+        Assertions.assertEquals(antes.version(Region.PRODUCTO), despues.version(Region.PRODUCTO));
+        String etag = antes.obtener(Region.PRODUCTO, "producto", null, () -> "viejo").etag();
+        CacheCatalogo.Respuesta respuesta = despues.obtener(Region.PRODUCTO, "producto", etag, () -> "nuevo");
+        Assertions.assertEquals(200, respuesta.status());
+        Assertions.assertEquals("nuevo", respuesta.cuerpo());
+        Assertions.assertNotEquals(etag, respuesta.etag());
+    }
+
+    /**
+     * {@link CargaRest} contra un servidor de pruebas cuyo
+     * {@code ProductoResource.findRange} pasa por la cache: cada usuario
+     * revalida sus paginas del menu con If-None-Match mientras se editan
+     * productos. Ninguna respuesta 200 puede traer una version vieja.
+     */
+    @Test
+    public void testTasaAciertosBajoCarga() throws Exception {
+        System.out.println("test tasa de aciertos y 304 bajo carga REST");
+        CacheCatalogo cache = new CacheCatalogo(256, 300, 30);
+        LongAdder consultasJpa = new LongAdder();
+        LongAdder viejas = new LongAdder();
+        LongAdder ediciones = new LongAdder();
+        HttpServer servidor = servidor(cache, consultasJpa, viejas, ediciones);
+        servidor.start();
+        CargaRest carga = new CargaRest("http://localhost:" + servidor.getAddress().getPort() + "/v1/");
+        CargaRest.Resultado resultado;
+        try {
+            resultado = carga.cerrado(clientes, segundos);
+        } finally {
+            carga.close();
+            servidor.stop(0);
+        }
+
+        long menu = resultado.latencias().get(CargaRest.PRODUCTOS).cantidad();
+        double tasa304 = (double) resultado.noModificados() / menu;
+        long versiones = ediciones.sum() + 1;
+        System.out.printf("peticiones menu=%d ediciones=%d aciertos=%d 304=%d consultas JPA=%d tasa aciertos=%.3f tasa 304=%.3f%n",
+                menu, ediciones.sum(), cache.aciertos(), cache.noModificados(), consultasJpa.sum(), cache.tasaAciertos(), tasa304);
+
+        Assertions.assertEquals(0, resultado.errores());
+        Assertions.assertEquals(menu, cache.aciertos() + cache.fallos() + cache.noModificados());
+        Assertions.assertEquals(cache.noModificados(), resultado.noModificados());
+        Assertions.assertEquals(0, viejas.sum(), "se sirvio una version invalidada");
+        Assertions.assertEquals(cache.fallos(), consultasJpa.sum());
+        Assertions.assertTrue(cache.tasaAciertos() > 0.8, "tasa de aciertos baja: " + cache.tasaAciertos());
+        // con su ETag un usuario descarga cada pagina a lo sumo una vez por version; el resto son 304
+        Assertions.assertTrue(resultado.noModificados() > 0);
+        Assertions.assertTrue(menu - resultado.noModificados() <= (long) clientes * PAGINAS_MENU * versiones,
+                "descargas completas de mas: " + (menu - resultado.noModificados()));
+    }
+
+    /**
+     * Endpoints del flujo de {@link CargaRest}; solo el menu pasa por la
+     * cache y su cuerpo lleva la version con la que se cargo.
+     */
+    static HttpServer servidor(CacheCatalogo cache, LongAdder consultasJpa, LongAdder viejas, LongAdder ediciones) throws IOException {
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        servidor.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        AtomicLong ids = new AtomicLong(1000);
+        AtomicLong lecturas = new AtomicLong();
+        servidor.createContext("/v1/producto", e -> {
+            if (lecturas.incrementAndGet() % lecturasPorEdicion == 0) {
+                // ProductoResource.update: invalida despues del commit
+                cache.invalidar(Region.PRODUCTO);
+                ediciones.increment();
+            }
+            try (e) {
+                long version = cache.version(Region.PRODUCTO);
+                CacheCatalogo.Respuesta respuesta = cache.obtener(Region.PRODUCTO, "producto?" + e.getRequestURI().getRawQuery(),
+                        e.getRequestHeaders().getFirst(CacheCatalogo.IF_NONE_MATCH), () -> {
+                            consultasJpa.increment();
+                            return "[\"producto@" + cache.version(Region.PRODUCTO) + "\"]";
+                        });
+                e.getResponseHeaders().set(CacheCatalogo.ETAG, respuesta.etag());
+                e.getResponseHeaders().set(CacheCatalogo.CACHE_CONTROL, respuesta.cacheControl());
+                if (respuesta.status() == 304) {
+                    e.sendResponseHeaders(304, -1);
+                    return;
+                }
+                String cuerpo = respuesta.cuerpo();
+                if (Long.parseLong(cuerpo.substring(cuerpo.indexOf('@') + 1, cuerpo.lastIndexOf('"'))) < version) {
+                    viejas.increment();
+                }
+                responder(e, 200, null, cuerpo);
+            }
+        });
+        servidor.createContext("/v1/orden", e -> responder(e, 201, "/v1/orden/" + ids.incrementAndGet(), "{}"));
+        servidor.createContext("/v1/ordenDetalle/mixto", e -> responder(e, 200, null, "[]"));
+        servidor.createContext("/v1/pago", e -> responder(e, 201, "/v1/pago/" + ids.incrementAndGet(), "{}"));
+        servidor.createContext("/v1/pagoDetalle", e -> responder(e, 201, null, "{}"));
+        return servidor;
+    }
+
+    static void responder(HttpExchange intercambio, int status, String ubicacion, String cuerpo) throws IOException {
+        try (intercambio) {
+            intercambio.getRequestBody().readAllBytes();
+            if (ubicacion != null) {
+                intercambio.getResponseHeaders().set("Location", "http://localhost" + ubicacion);
+            }
+            intercambio.getResponseHeaders().set("Content-Type", "application/json");
+            byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+            intercambio.sendResponseHeaders(status, bytes.length);
+            intercambio.getResponseBody().write(bytes);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.example.CacheCatalogo;
+import org.example.Histograma;
+import org.example.Metricas;
+import org.glassfish.jersey.client.ClientProperties;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generador de carga REST para el flujo menu -> orden -> pago contra el
+ * Liberty levantado por Testcontainers.
+ * <p>
+ * Una sesion navega el menu con {@code ProductoResource.findRange}, crea la
+ * orden, agrega lineas con {@code OrdenDetalleResource.generarOrdenDetalleMixto}
+ * y paga con {@code PagoResouce.create} + {@code PagoDetalleResource.create}.
+ * Como un navegador, cada usuario guarda el ETag de cada pagina del menu y la
+ * revalida con {@code If-None-Match}; un 304 cuenta en
+ * {@link Resultado#noModificados()}. Hay dos modos:
+ * <ul>
+ *     <li>cerrado: N usuarios en hilos virtuales repitiendo sesiones sin pausa,
+ *     cada uno con sus ETags de una sesion a la siguiente.</li>
+ *     <li>abierto: sesiones que llegan a tasa fija sin importar lo que tarde el
+ *     servidor; la latencia se mide desde el instante planeado para no ocultar
+ *     la cola (coordinated omission). Cada sesion es un visitante nuevo, sin
+ *     ETags.</li>
+ * </ul>
+ */
+public class CargaRest {
+
+    public static final String PRODUCTOS = "GET producto";
+    public static final String ORDEN = "POST orden";
+    public static final String MIXTO = "POST ordenDetalle/mixto";
+    public static final String PAGO = "POST pago";
+    public static final String PAGO_DETALLE = "POST pagoDetalle";
+    public static final String SESION = "sesion";
+
+    static final long[] PRODUCTOS_SEED = {1001, 1002, 1003, 1005, 1006, 1007, 1008, 1009, 1010, 1011, 1012, 1013, 1014};
+    static final long[] COMBOS_SEED = {1001, 1002, 1004, 1005, 1006, 1008, 1009, 1010};
+    static final String[] SUCURSALES = {"Zarsa", "S-Ana", "SS"};
+
+    public record Resultado(String modo, double objetivo, long sesiones, long peticiones, long errores,
+                            long noModificados, double segundos, Map<String, Histograma> latencias) {
+
+        public double sesionesPorSegundo() {
+            return sesiones / segundos;
+        }
+
+        public double peticionesPorSegundo() {
+            return peticiones / segundos;
+        }
+    }
+
+    private final Client client;
+    private final WebTarget base;
+    private final Map<String, Histograma> latencias = new LinkedHashMap<>();
+    private final LongAdder peticiones = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder noModificados = new LongAdder();
+    private final LongAdder sesiones = new LongAdder();
+
+    public CargaRest(String urlBase) {
+        this.client = ClientBuilder.newBuilder()
+                .property(ClientProperties.CONNECT_TIMEOUT, 5000)
+                .property(ClientProperties.READ_TIMEOUT, 30000)
+                .build();
+        this.base = client.target(urlBase);
+        reiniciar();
+    }
+
+    /**
+     * Modo cerrado: {@code usuarios} hilos virtuales ejecutando sesiones
+     * durante {@code segundos}.
+     */
+    public Resultado cerrado(int usuarios, int segundos) throws InterruptedException {
+        reiniciar();
+        AtomicBoolean activo = new AtomicBoolean(true);
+        long inicio = System.nanoTime();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int u = 0; u < usuarios; u++) {
+                hilos.submit(() -> {
+                    Map<String, String> etags = new HashMap<>();
+                    while (activo.get()) {
+                        sesion(System.nanoTime(), etags);
+                    }
+                });
+            }
+            try {
+                TimeUnit.SECONDS.sleep(segundos);
+            } finally {
+                // si no, una interrupcion deja a los usuarios en el ciclo y el close del executor no termina
+                activo.set(false);
+            }
+        }
+        return resultado("cerrado", usuarios, inicio);
+    }
+
+    /**
+     * Modo abierto: {@code sesionesPorSegundo} sesiones nuevas por segundo,
+     * cada una en su propio hilo virtual.
+     */
+    public Resultado abierto(double sesionesPorSegundo, int segundos) {
+        reiniciar();
+        long intervalo = (long) (1_000_000_000L / sesionesPorSegundo);
+        long inicio = System.nanoTime();
+        long fin = inicio + TimeUnit.SECONDS.toNanos(segundos);
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long planeado = inicio; planeado < fin; planeado += intervalo) {
+                long espera = planeado - System.nanoTime();
+                if (espera > 0) {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                }
+                final long llegada = planeado;
+                hilos.submit(() -> sesion(llegada, new HashMap<>()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return resultado("abierto", sesionesPorSegundo, inicio);
+    }
+
+    /**
+     * Curva rendimiento vs concurrencia en modo cerrado.
+     */
+    public List<Resultado> curva(int[] niveles, int segundosPorNivel) throws InterruptedException {
+        List<Resultado> curva = new ArrayList<>();
+        for (int usuarios : niveles) {
+            curva.add(cerrado(usuarios, segundosPorNivel));
+        }
+        return curva;
+    }
+
+    /**
+     * {@code etags}: pagina del menu -> ultimo ETag recibido, la cache del
+     * navegador de este usuario.
+     */
+    void sesion(long llegada, Map<String, String> etags) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // todas las peticiones de la sesion viajan con el mismo X-Request-ID
+        String idSesion = "carga-" + Long.toHexString(random.nextLong());
+        try {
+            int paginas = 1 + random.nextInt(3);
+            for (int p = 0; p < paginas; p++) {
+                WebTarget pagina = base.path("producto")
+                        .queryParam("first", p * 10).queryParam("max", 10)
+                        .queryParam("idTipoProducto", 1001 + random.nextInt(3))
+                        .queryParam("activo", true);
+                String url = pagina.getUri().toString();
+                Response respuesta = medir(PRODUCTOS, () -> pagina.request(MediaType.APPLICATION_JSON).header(Metricas.X_REQUEST_ID, idSesion)
+                        .header(CacheCatalogo.IF_NONE_MATCH, etags.get(url)).get());
+                String etag = respuesta == null ? null : respuesta.getHeaderString(CacheCatalogo.ETAG);
+                if (etag != null) {
+                    etags.put(url, etag);
+                }
+            }
+            String sucursal = SUCURSALES[random.nextInt(SUCURSALES.length)];
+            Long idOrden = medirCreacion(ORDEN, () -> base.path("orden").request(MediaType.APPLICATION_JSON).header(Metricas.X_REQUEST_ID, idSesion)
+                    .post(Entity.json("{\"sucursal\":\"" + sucursal + "\",\"anulada\":false}")));
+            if (idOrden == null) {
+                return;
+            }
+            medir(MIXTO, () -> base.path("ordenDetalle").path("mixto").queryParam("idOrden", idOrden)
+                    .request(MediaType.APPLICATION_JSON).header(Metricas.X_REQUEST_ID, idSesion).post(Entity.json(lineas(random))));
+            Long idPago = medirCreacion(PAGO, () -> base.path("pago").request(MediaType.APPLICATION_JSON).header(Metricas.X_REQUEST_ID, idSesion)
+                    .post(Entity.json("{\"metodoPago\":\"" + (random.nextBoolean() ? "EFECTIVO" : "TARJETA")
+                            + "\",\"idOrden\":{\"idOrden\":" + idOrden + "}}")));
+            if (idPago == null) {
+                return;
+            }
+            medir(PAGO_DETALLE, () -> base.path("pagoDetalle").path(String.valueOf(idPago))
+                    .request(MediaType.APPLICATION_JSON).header(Metricas.X_REQUEST_ID, idSesion).post(Entity.json("{\"observaciones\":\"carga\"}")));
+            sesiones.increment();
+        } finally {
+            latencias.get(SESION).registrar(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - llegada));
+        }
+    }
+
+    static String lineas(ThreadLocalRandom random) {
+        StringBuilder sb = new StringBuilder("{\"productoList\":[");
+        int productos = 1 + random.nextInt(4);
+        for (int i = 0; i < productos; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"idProducto\":").append(PRODUCTOS_SEED[random.nextInt(PRODUCTOS_SEED.length)])
+                    .append(",\"cantidad\":").append(1 + random.nextInt(3)).append('}');
+        }
+        sb.append("],\"comboList\":[");
+        if (random.nextInt(3) == 0) {
+            sb.append("{\"idCombo\":").append(COMBOS_SEED[random.nextInt(COMBOS_SEED.length)]).append(",\"cantidad\":1}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private interface Llamada {
+        Response ejecutar();
+    }
+
+    private Response medir(String endpoint, Llamada llamada) {
+        long inicio = System.nanoTime();
+        Response respuesta = null;
+        try {
+            respuesta = llamada.ejecutar();
+            respuesta.bufferEntity();
+            if (respuesta.getStatus() >= 400) {
+                errores.increment();
+            } else if (respuesta.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                noModificados.increment();
+            }
+            return respuesta;
+        } catch (RuntimeException e) {
+            errores.increment();
+            return null;
+        } finally {
+            peticiones.increment();
+            latencias.get(endpoint).registrar(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicio));
+            if (respuesta != null) {
+                respuesta.close();
+            }
+        }
+    }
+
+    /**
+     * Ejecuta un POST de creacion y devuelve el id del header Location.
+     */
+    private Long medirCreacion(String endpoint, Llamada llamada) {
+        Response respuesta = medir(endpoint, llamada);
+        if (respuesta == null || respuesta.getStatus() != 201 || respuesta.getLocation() == null) {
+            return null;
+        }
+        String path = respuesta.getLocation().getPath();
+        try {
+            return Long.valueOf(path.substring(path.lastIndexOf('/') + 1));
+        } catch (NumberFormatException e) {
+            errores.increment();
+            return null;
+        }
+    }
+
+    private void reiniciar() {
+        latencias.clear();
+        for (String endpoint : new String[]{PRODUCTOS, ORDEN, MIXTO, PAGO, PAGO_DETALLE, SESION}) {
+            latencias.put(endpoint, new Histograma());
+        }
+        peticiones.reset();
+        errores.reset();
+        noModificados.reset();
+        sesiones.reset();
+    }
+
+    private Resultado resultado(String modo, double objetivo, long inicio) {
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        return new Resultado(modo, objetivo, sesiones.sum(), peticiones.sum(), errores.sum(), noModificados.sum(), segundos, new LinkedHashMap<>(latencias));
+    }
+
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * Reporte JSON: percentiles por endpoint de cada corrida y la curva
+     * rendimiento vs concurrencia.
+     */
+    public static String reporte(List<Resultado> resultados) {
+        StringBuilder sb = new StringBuilder("{\"corridas\":[");
+        for (int i = 0; i < resultados.size(); i++) {
+            Resultado r = resultados.get(i);
+            sb.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                    "{\"modo\":\"%s\",\"objetivo\":%.2f,\"sesiones\":%d,\"peticiones\":%d,\"errores\":%d,\"noModificados\":%d,\"sesionesPorSegundo\":%.2f,\"peticionesPorSegundo\":%.2f,\"endpoints\":{",
+                    r.modo(), r.objetivo(), r.sesiones(), r.peticiones(), r.errores(), r.noModificados(), r.sesionesPorSegundo(), r.peticionesPorSegundo()));
+            int j = 0;
+            for (Map.Entry<String, Histograma> e : r.latencias().entrySet()) {
+                Histograma h = e.getValue();
+                sb.append(j++ == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                        "\"%s\":{\"n\":%d,\"p50us\":%d,\"p99us\":%d,\"p999us\":%d}",
+                        e.getKey(), h.cantidad(), h.percentil(0.50), h.percentil(0.99), h.percentil(0.999)));
+            }
+            sb.append("}}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    public static void guardar(List<Resultado> resultados, Path archivo) throws IOException {
+        Files.createDirectories(archivo.getParent());
+        Files.writeString(archivo, reporte(resultados));
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.*;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.MountableFile;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class CargaRestTest {
+
+    static MountableFile war = MountableFile.forHostPath(Paths.get("src/test/resources/PupaSv-1.0-SNAPSHOT.war").toAbsolutePath());
+    static Network red = Network.newNetwork();
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+    static int dbPort = 5432;
+
+    // duracion por nivel y niveles de concurrencia, ajustables con -Dcarga.segundos=60 -Dcarga.niveles=1,8,64,256
+    static int segundos = Integer.getInteger("carga.segundos", 15);
+    static String niveles = System.getProperty("carga.niveles", "1,2,4,8,16,32");
+    static double tasa = Double.parseDouble(System.getProperty("carga.tasa", "10"));
+    static String contexto = System.getProperty("carga.contexto", "PupaSv-1.0-SNAPSHOT/v1/");
+
+    @Container
+    static GenericContainer postgres = new PostgreSQLContainer("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql").withExposedPorts(dbPort).withNetwork(red).withNetworkAliases("db16_tpi");
+
+    @Container
+    static GenericContainer servidorDeAplicaion = new GenericContainer("liberty_app").withCopyFileToContainer(war, "/config/dropins/PupaSv-1.0-SNAPSHOT.war").withExposedPorts(9080).withNetwork(red).withNetworkAliases("backendapp")
+            .withEnv("DB_PASSWORD", dbPassword).withEnv("DB_USER", dbUser).withEnv("DB_NAME", dbName).withEnv("DB_PORT", String.valueOf(dbPort)).withEnv("DB_HOST", "db16_tpi").dependsOn(postgres)
+            .waitingFor(Wait.forHttp("/" + contexto + "producto?first=0&max=1").forPort(9080).forStatusCode(200).withStartupTimeout(Duration.ofMinutes(3)));
+
+    CargaRest carga;
+    List<CargaRest.Resultado> resultados = new ArrayList<>();
+
+    @BeforeAll
+    public void inicializar() {
+        String url = "http://" + servidorDeAplicaion.getHost() + ":" + servidorDeAplicaion.getMappedPort(9080) + "/" + contexto;
+        carga = new CargaRest(url);
+    }
+
+    @AfterAll
+    public void tearDown() throws Exception {
+        CargaRest.guardar(resultados, Paths.get("target", "carga-rest.json"));
+        System.out.println(CargaRest.reporte(resultados));
+        carga.close();
+    }
+
+    @Test
+    @Order(1)
+    public void testCurvaConcurrencia() throws InterruptedException {
+        System.out.println("test carga modo cerrado, rendimiento vs concurrencia");
+        int[] usuarios = java.util.Arrays.stream(niveles.split(",")).mapToInt(Integer::parseInt).toArray();
+        List<CargaRest.Resultado> curva = carga.curva(usuarios, segundos);
+        resultados.addAll(curva);
+        for (CargaRest.Resultado r : curva) {
+            System.out.printf("usuarios=%.0f sesiones/s=%.1f p99 sesion=%dms%n", r.objetivo(), r.sesionesPorSegundo(),
+                    r.latencias().get(CargaRest.SESION).percentil(0.99) / 1000);
+            Assertions.assertTrue(r.sesiones() > 0);
+            Assertions.assertTrue(r.errores() <= r.peticiones() / 100, "mas de 1% de errores con " + r.objetivo() + " usuarios");
+        }
+    }
+
+    @Test
+    @Order(2)
+    public void testTasaFija() {
+        System.out.println("test carga modo abierto a tasa fija");
+        CargaRest.Resultado r = carga.abierto(tasa, segundos);
+        resultados.add(r);
+        Assertions.assertTrue(r.sesiones() > 0);
+        Assertions.assertTrue(r.errores() <= r.peticiones() / 100, "mas de 1% de errores a " + tasa + " sesiones/s");
+        Assertions.assertTrue(r.latencias().get(CargaRest.PRODUCTOS).percentil(0.999) > 0);
+    }
+}
@@ -0,0 +1,236 @@
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import org.example.CacheCatalogo;
+import org.example.CatalogoVersionado;
+import org.example.ProductoPrecio;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class CatalogoVersionadoTest {
+
+    static final LocalDate HOY = LocalDate.parse("2025-06-01");
+    static final String[] SECCIONES = {"tipos", "productos", "precios", "combos"};
+    static final JsonBuilderFactory CONSTRUCTORES = Json.createBuilderFactory(null);
+
+    static int tipos = 8;
+    static int productos = Integer.getInteger("catalogo.productos", 400);
+    static int combos = 40;
+    // lo que muestra el frontend por pagina (ProductoTest.testMenuProductosListados)
+    static int porPagina = 10;
+
+    static CatalogoVersionado catalogo() {
+        CatalogoVersionado catalogo = new CatalogoVersionado(new ProductoPrecio(), HOY);
+        for (int t = 1; t <= tipos; t++) {
+            catalogo.guardarTipo(t, "tipo " + t, true);
+        }
+        for (int p = 1; p <= productos; p++) {
+            catalogo.guardarProducto(1000 + p, "producto " + p, true, "https://pupasv/" + p + ".png", 1 + p % tipos);
+            catalogo.registrarPrecio(5000 + p, 1000 + p, HOY.minusDays(30), null, BigDecimal.valueOf(50 + p % 300, 2));
+        }
+        for (int c = 1; c <= combos; c++) {
+            catalogo.guardarCombo(c, "combo " + c, true, "combo de la casa " + c, null);
+            for (int m = 0; m < 3; m++) {
+                catalogo.guardarDetalle(c, 1001 + (c * 7 + m * 13) % productos, 1 + m);
+            }
+        }
+        return catalogo;
+    }
+
+    @Test
+    public void testDeltaReproduceElCompleto() {
+        System.out.println("test completo + deltas = completo actual");
+        CatalogoVersionado catalogo = catalogo();
+        JsonObject inicial = leer(catalogo.completo());
+        Assertions.assertTrue(inicial.getBoolean("completo"));
+        Map<String, Map<Long, JsonValue>> cliente = estado(inicial);
+        String version = inicial.getString("version");
+        Assertions.assertEquals(productos, cliente.get("precios").size());
+
+        Random azar = new Random(135);
+        long siguientePrecio = 90_000;
+        for (int ronda = 0; ronda < 30; ronda++) {
+            for (int e = 0; e < 6; e++) {
+                long producto = 1001 + azar.nextInt(productos);
+                long combo = 1 + azar.nextInt(combos);
+                switch (azar.nextInt(9)) {
+                    case 0, 1 -> catalogo.registrarPrecio(siguientePrecio++, producto, HOY.minusDays(azar.nextInt(3)), null, BigDecimal.valueOf(100 + azar.nextInt(900), 2));
+                    case 2 -> catalogo.guardarProducto(producto, "renombrado " + ronda, true, null, 1 + azar.nextInt(tipos));
+                    case 3 -> catalogo.guardarProducto(producto, "inactivo", azar.nextBoolean(), null, 1);
+                    case 4 -> catalogo.eliminar(CacheCatalogo.Region.PRODUCTO, producto);
+                    case 5 -> catalogo.guardarDetalle(combo, producto, 1 + azar.nextInt(4));
+                    case 6 -> catalogo.eliminarDetalle(combo, 1001 + (combo * 7) % productos);
+                    case 7 -> catalogo.guardarCombo(combo, "combo " + combo, azar.nextInt(4) > 0, "otra descripcion " + ronda, null);
+                    default -> catalogo.guardarTipo(1 + azar.nextInt(tipos + 2), "tipo " + ronda, azar.nextInt(4) > 0);
+                }
+            }
+            if (ronda == 15) {
+                // el dia siguiente: precios con rangos que empiezan manana
+                catalogo.registrarPrecio(siguientePrecio++, 1001, HOY.plusDays(1), null, new BigDecimal("9.99"));
+                catalogo.cambiarFecha(HOY.plusDays(1));
+            }
+            JsonObject delta = leer(catalogo.delta(version));
+            Assertions.assertFalse(delta.getBoolean("completo"));
+            Assertions.assertEquals(version, delta.getString("desde"));
+            aplicar(cliente, delta);
+            version = delta.getString("version");
+            Assertions.assertEquals(estado(leer(catalogo.completo())), cliente, "ronda " + ronda);
+        }
+        // sin cambios el delta viene vacio
+        JsonObject vacio = leer(catalogo.delta(version));
+        for (String seccion : SECCIONES) {
+            Assertions.assertTrue(vacio.getJsonArray(seccion).isEmpty());
+            Assertions.assertTrue(vacio.getJsonObject("eliminados").getJsonArray(seccion).isEmpty());
+        }
+    }
+
+    @Test
+    public void testPrecioActualizaCombos() {
+        System.out.println("test cambio de precio en el delta de precios y combos");
+        CatalogoVersionado catalogo = catalogo();
+        String version = catalogo.token();
+        long miembro = 1001 + (7 % productos);
+        catalogo.registrarPrecio(80_000, miembro, HOY, null, new BigDecimal("3.00"));
+        JsonObject delta = leer(catalogo.delta(version));
+        Assertions.assertEquals(1, delta.getJsonArray("precios").size());
+        Assertions.assertEquals(new BigDecimal("3.00"), delta.getJsonArray("precios").getJsonArray(0).getJsonNumber(2).bigDecimalValue());
+        // el combo 1 tiene ese producto con cantidad 1
+        Assertions.assertTrue(delta.getJsonArray("combos").stream().anyMatch(c -> c.asJsonArray().getJsonNumber(0).longValue() == 1));
+        Assertions.assertTrue(delta.getJsonArray("productos").isEmpty());
+        // el mismo rango no cambia nada
+        long despues = catalogo.version();
+        catalogo.registrarPrecio(80_000, miembro, HOY, null, new BigDecimal("3.00"));
+        Assertions.assertEquals(despues, catalogo.version());
+    }
+
+    @Test
+    public void testCompactarYVersionDesconocida() {
+        System.out.println("test delta fuera del horizonte devuelve el completo");
+        CatalogoVersionado catalogo = catalogo();
+        String inicial = catalogo.token();
+        catalogo.eliminar(CacheCatalogo.Region.COMBO, 3);
+        JsonObject delta = leer(catalogo.delta(inicial));
+        Assertions.assertEquals(List.of(3L), delta.getJsonObject("eliminados").getJsonArray("combos").getValuesAs(v -> ((jakarta.json.JsonNumber) v).longValue()));
+
+        Assertions.assertEquals(1, catalogo.compactar(catalogo.version()));
+        Assertions.assertTrue(leer(catalogo.delta(inicial)).getBoolean("completo"));
+        Assertions.assertTrue(leer(catalogo.delta(inicial.substring(0, inicial.lastIndexOf('-') + 1) + (catalogo.version() + 100))).getBoolean("completo"));
+        Assertions.assertFalse(leer(catalogo.delta(catalogo.token())).getBoolean("completo"));
+        // el completo se serializa una vez por version
+        Assertions.assertSame(catalogo.completo(), catalogo.completo());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> catalogo.compactar(catalogo.version() + 1));
+    }
+
+    @Test
+    public void testTokenDeOtroArranque() {
+        System.out.println("test token de otro arranque o mal formado devuelve el completo");
+        CatalogoVersionado antes = catalogo();
+        CatalogoVersionado despues = catalogo();
+        // mismas escrituras: los dos catalogos llegan al mismo numero de version
+        Assertions.assertEquals(antes.version(), despues.version());
+        Assertions.assertNotEquals(antes.token(), despues.token());
+        despues.guardarTipo(1, "renombrado", true);
+
+        Assertions.assertTrue(leer(despues.delta(antes.token())).getBoolean("completo"));
+        Assertions.assertFalse(leer(despues.delta(despues.token())).getBoolean("completo"));
+        for (String token : new String[]{null, "", "12", "-5", despues.token() + "x"}) {
+            Assertions.assertTrue(leer(despues.delta(token)).getBoolean("completo"), String.valueOf(token));
+        }
+    }
+
+    /**
+     * Menu completo con la API paginada de hoy (productos por tipo de 10 en
+     * 10, combos de 10 en 10 y el precio de cada producto) contra un
+     * completo, y un cambio de precios contra su delta.
+     */
+    @Test
+    public void testPeticionesYBytesContraPaginado() {
+        System.out.println("test tamano y peticiones del menu: paginado contra catalogo versionado");
+        CatalogoVersionado catalogo = catalogo();
+        int peticiones = 0;
+        long bytes = 0;
+        Map<Integer, List<Integer>> porTipo = new TreeMap<>();
+        for (int p = 1; p <= productos; p++) {
+            porTipo.computeIfAbsent(1 + p % tipos, k -> new java.util.ArrayList<>()).add(p);
+        }
+        for (List<Integer> suyos : porTipo.values()) {
+            for (int desde = 0; desde < suyos.size(); desde += porPagina) {
+                var pagina = CONSTRUCTORES.createArrayBuilder();
+                for (int p : suyos.subList(desde, Math.min(desde + porPagina, suyos.size()))) {
+                    pagina.add(CONSTRUCTORES.createObjectBuilder().add("idProducto", 1000 + p).add("nombre", "producto " + p)
+                            .add("activo", true).addNull("observaciones").add("url", "https://pupasv/" + p + ".png"));
+                }
+                peticiones++;
+                bytes += pagina.build().toString().getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        for (int desde = 0; desde < combos; desde += porPagina) {
+            var pagina = CONSTRUCTORES.createArrayBuilder();
+            for (int c = desde + 1; c <= Math.min(desde + porPagina, combos); c++) {
+                pagina.add(CONSTRUCTORES.createObjectBuilder().add("idCombo", c).add("nombre", "combo " + c).add("activo", true)
+                        .add("descripcionPublica", "combo de la casa " + c).addNull("url").add("precio", new BigDecimal("5.25")));
+            }
+            peticiones++;
+            bytes += pagina.build().toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (int p = 1; p <= productos; p++) {
+            peticiones++;
+            bytes += CONSTRUCTORES.createArrayBuilder().add(CONSTRUCTORES.createObjectBuilder().add("idProductoPrecio", 5000 + p)
+                    .add("fechaDesde", HOY.minusDays(30).toString()).addNull("fechaHasta").add("precioSugerido", BigDecimal.valueOf(50 + p % 300, 2)))
+                    .build().toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        byte[] completo = catalogo.completo();
+        String version = catalogo.token();
+        for (int p = 1; p <= 5; p++) {
+            catalogo.registrarPrecio(70_000 + p, 1000 + p * 11, HOY, null, new BigDecimal("1.25"));
+        }
+        byte[] delta = catalogo.delta(version);
+        System.out.printf("paginado: peticiones=%d bytes=%d | completo: 1 peticion bytes=%d | delta 5 precios: bytes=%d%n",
+                peticiones, bytes, completo.length, delta.length);
+        Assertions.assertTrue(completo.length < bytes, "el completo pesa mas que las paginas");
+        Assertions.assertTrue(delta.length * 20 < completo.length, "el delta no es mucho menor que el completo");
+    }
+
+    static JsonObject leer(byte[] json) {
+        try (var lector = Json.createReader(new ByteArrayInputStream(json))) {
+            return lector.readObject();
+        }
+    }
+
+    static Map<String, Map<Long, JsonValue>> estado(JsonObject documento) {
+        Map<String, Map<Long, JsonValue>> estado = new HashMap<>();
+        for (String seccion : SECCIONES) {
+            estado.put(seccion, new HashMap<>());
+        }
+        aplicar(estado, documento);
+        return estado;
+    }
+
+    // lo que haria el kiosko: reemplazar filas por id y quitar los eliminados
+    static void aplicar(Map<String, Map<Long, JsonValue>> estado, JsonObject documento) {
+        for (String seccion : SECCIONES) {
+            for (JsonValue fila : documento.getJsonArray(seccion)) {
+                estado.get(seccion).put(fila.asJsonArray().getJsonNumber(0).longValue(), fila);
+            }
+            if (documento.containsKey("eliminados")) {
+                JsonArray eliminados = documento.getJsonObject("eliminados").getJsonArray(seccion);
+                for (int i = 0; i < eliminados.size(); i++) {
+                    estado.get(seccion).remove(eliminados.getJsonNumber(i).longValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import jakarta.persistence.NamedQuery;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Liga el SQL escrito a mano de {@link PlanesConsultaTest} con los
+ * {@code @NamedQuery} del WAR: el JPQL del que se escribio cada consulta esta
+ * en {@code planes-jpql.properties}; si el WAR lo cambia o quita la consulta,
+ * hay que reescribir el SQL y actualizar el archivo.
+ */
+public class ConsultasWarTest {
+
+    static Path war = Paths.get("src/test/resources/PupaSv-1.0-SNAPSHOT.war");
+    static final String ENTIDADES = "WEB-INF/classes/sv/edu/ues/occ/ingenieria/tpi135_2025/entity/";
+
+    @Test
+    public void testSqlEscritoDelJpqlVigente() throws Exception {
+        System.out.println("test consultas de PlanesConsultaTest contra los @NamedQuery del WAR");
+        Map<String, String> delWar = jpqlDelWar();
+        Properties escrito = new Properties();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("planes-jpql.properties")) {
+            Assertions.assertNotNull(in, "falta planes-jpql.properties");
+            escrito.load(in);
+        }
+        List<String> fallas = new ArrayList<>();
+        for (PlanesConsultaTest.Consulta consulta : PlanesConsultaTest.CONSULTAS) {
+            if (consulta.nombre().startsWith(PlanesConsultaTest.ABSTRACT_DATA_ACCESS)) {
+                continue;
+            }
+            String actual = delWar.get(consulta.nombre());
+            String anterior = escrito.getProperty(consulta.nombre());
+            if (actual == null) {
+                fallas.add(consulta.nombre() + ": ya no es un @NamedQuery del WAR");
+            } else if (anterior == null) {
+                fallas.add(consulta.nombre() + ": falta en planes-jpql.properties");
+            } else if (!anterior.equals(actual)) {
+                fallas.add(consulta.nombre() + ": el JPQL cambio, reescribir el SQL\n  antes: " + anterior + "\n  ahora: " + actual);
+            }
+        }
+        Assertions.assertTrue(fallas.isEmpty(), String.join("\n", fallas));
+    }
+
+    /**
+     * Nombre y JPQL de los {@code @NamedQuery} de las entidades del WAR.
+     */
+    static Map<String, String> jpqlDelWar() throws Exception {
+        Map<String, String> consultas = new HashMap<>();
+        URL clases = new URL("jar:" + war.toAbsolutePath().toUri() + "!/WEB-INF/classes/");
+        try (JarFile jar = new JarFile(war.toFile());
+             URLClassLoader cargador = new URLClassLoader(new URL[]{clases}, ConsultasWarTest.class.getClassLoader())) {
+            for (JarEntry entrada : jar.stream().toList()) {
+                String nombre = entrada.getName();
+                if (!nombre.startsWith(ENTIDADES) || !nombre.endsWith(".class") || nombre.contains("$")) {
+                    continue;
+                }
+                String clase = nombre.substring("WEB-INF/classes/".length(), nombre.length() - ".class".length()).replace('/', '.');
+                for (NamedQuery consulta : Class.forName(clase, false, cargador).getAnnotationsByType(NamedQuery.class)) {
+                    consultas.put(consulta.name(), consulta.query());
+                }
+            }
+        }
+        return consultas;
+    }
+}
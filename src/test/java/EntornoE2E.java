@@ -0,0 +1,411 @@
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.BrowserWebDriverContainer;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.VncRecordingContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.lifecycle.Startable;
+import org.testcontainers.lifecycle.Startables;
+import org.testcontainers.lifecycle.TestDescription;
+import org.testcontainers.utility.MountableFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pila E2E compartida por toda la JVM: un Postgres y {@code e2e.slots}
+ * juegos de Liberty ({@code liberty_app}) + {@code fronted-test} + Chrome.
+ * <p>
+ * {@code tipicos_tpi135_2025.sql} se carga una sola vez en la base
+ * {@value #PLANTILLA}. Antes de cada prueba se clona con
+ * {@code CREATE DATABASE ... TEMPLATE}, la prueba toma un slot libre y la
+ * copia pasa a llamarse como la base del datasource de ese Liberty
+ * ({@code DB_NAME=tipicos_<slot>}), que no cambia de configuracion: solo
+ * descarta las conexiones viejas. Asi cada prueba empieza con las secuencias
+ * y los datos del script, aunque JUnit corra varias a la vez. La cache
+ * compartida de EclipseLink se apaga en esos Liberty ({@link #SIN_CACHE}):
+ * si no, las entidades de la base anterior seguirian en memoria.
+ * <p>
+ * Las clases la usan con {@code @ExtendWith(EntornoE2E.class)} y reciben
+ * una {@link Sesion} como parametro de {@code @BeforeEach} o de la prueba.
+ * El video de Chrome solo se guarda en {@code target/} si la prueba falla,
+ * pero cada slot tiene un solo Chrome y una sola grabacion desde que arranca:
+ * el video de una falla trae tambien las pruebas anteriores de ese slot. Por
+ * eso al fallar se imprime el segundo del video en que empezo la prueba.
+ * Al final se escribe {@code target/e2e-tiempos.json} con la duracion de
+ * cada prueba y una estimacion de lo que tardaria con una pila por clase y
+ * las pruebas en serie; es solo una cuenta, no una medicion. La aceleracion
+ * solo se informa contra {@code -De2e.lineaBaseMs}, el {@code paredMs} medido
+ * de una corrida en serie ({@code mvn -Pe2e test -De2e.slots=1 -De2e.hilos=1}).
+ */
+public class EntornoE2E implements BeforeEachCallback, AfterEachCallback, AfterAllCallback, ParameterResolver {
+
+    static final String PLANTILLA = "tipicos_plantilla";
+    static final String DB_USER = "postgres";
+    static final String DB_PASSWORD = "12345";
+    static final int DB_PORT = 5432;
+    static final String CONTEXTO = System.getProperty("carga.contexto", "PupaSv-1.0-SNAPSHOT/v1/");
+
+    static final int SLOTS = Integer.getInteger("e2e.slots", 2);
+    static final long LINEA_BASE_MS = Long.getLong("e2e.lineaBaseMs", 0);
+
+    // configDropins/overrides del Liberty de cada slot
+    static final String SIN_CACHE = """
+            <server>
+                <jpa>
+                    <defaultProperties>
+                        <property name="eclipselink.cache.shared.default" value="false"/>
+                    </defaultProperties>
+                </jpa>
+            </server>
+            """;
+
+    private static final ExtensionContext.Namespace NS = ExtensionContext.Namespace.create(EntornoE2E.class);
+
+    /**
+     * Lo que recibe una prueba: su slot y la base clonada que ese Liberty
+     * esta usando.
+     */
+    public record Sesion(WebDriver driver, String frontend, String backend, String baseDatos, PGSimpleDataSource dataSource, RendimientoUi ui) {
+    }
+
+    record Tiempo(String clase, String prueba, int slot, long clonarMs, long esperaSlotMs, long duracionMs, boolean exitosa) {
+    }
+
+    static final class Slot {
+        final int numero;
+        final String baseDatos;
+        final String backend;
+        final String frontend;
+        final GenericContainer<?> servidor;
+        final GenericContainer<?> fronted;
+        final BrowserWebDriverContainer<?> chrome;
+
+        Slot(int numero, Network red, GenericContainer<?> postgres) {
+            this.numero = numero;
+            this.baseDatos = "tipicos_" + numero;
+            this.backend = "backendapp-" + numero + ":9080";
+            this.frontend = "http://frontendapp-" + numero + ":80";
+            MountableFile war = MountableFile.forHostPath(Paths.get("src/test/resources/PupaSv-1.0-SNAPSHOT.war").toAbsolutePath());
+            servidor = new GenericContainer<>("liberty_app").withCopyFileToContainer(war, "/config/dropins/PupaSv-1.0-SNAPSHOT.war").withExposedPorts(9080)
+                    .withCopyToContainer(Transferable.of(SIN_CACHE), "/config/configDropins/overrides/e2e-jpa.xml")
+                    .withNetwork(red).withNetworkAliases("backendapp-" + numero)
+                    .withEnv("DB_PASSWORD", DB_PASSWORD).withEnv("DB_USER", DB_USER).withEnv("DB_NAME", baseDatos).withEnv("DB_PORT", String.valueOf(DB_PORT)).withEnv("DB_HOST", "db16_tpi")
+                    .dependsOn(postgres)
+                    .waitingFor(Wait.forHttp("/" + CONTEXTO + "producto?first=0&max=1").forPort(9080).forStatusCode(200).withStartupTimeout(Duration.ofMinutes(3)));
+            fronted = new GenericContainer<>("fronted-test").withExposedPorts(80).withNetwork(red).withEnv("HOST", "backendapp-" + numero).withEnv("PORT", "9080")
+                    .withNetworkAliases("frontendapp-" + numero).dependsOn(servidor);
+            chrome = new BrowserWebDriverContainer<>("selenium/standalone-chrome:125.0").withCapabilities(new ChromeOptions().addArguments("--ignore-certificate-errors")
+                            .addArguments("--disable-web-security")
+                            .addArguments("--allow-insecure-localhost")
+                            .addArguments("--allow-running-insecure-content")).withNetwork(red)
+                    .withRecordingMode(BrowserWebDriverContainer.VncRecordingMode.RECORD_FAILING, new File("target"), VncRecordingContainer.VncRecordingFormat.MP4);
+        }
+
+        /**
+         * Segundos desde que arranco Chrome, que es cuando empieza su video.
+         */
+        long segundoDelVideo() {
+            return Duration.between(Instant.parse(chrome.getContainerInfo().getState().getStartedAt()), Instant.now()).toSeconds();
+        }
+
+        String urlServidor() {
+            return "http://" + servidor.getHost() + ":" + servidor.getMappedPort(9080) + "/" + CONTEXTO;
+        }
+    }
+
+    /**
+     * La pila; vive en el store raiz de JUnit, asi se crea una vez y se
+     * cierra cuando terminan todas las pruebas.
+     */
+    static final class Pila implements ExtensionContext.Store.CloseableResource {
+        final Network red = Network.newNetwork();
+        final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(PLANTILLA).withPassword(DB_PASSWORD).withUsername(DB_USER)
+                .withInitScript("tipicos_tpi135_2025.sql").withNetwork(red).withNetworkAliases("db16_tpi");
+        final List<Slot> slots = new ArrayList<>();
+        final BlockingQueue<Slot> libres = new LinkedBlockingQueue<>();
+        final PGSimpleDataSource administracion = new PGSimpleDataSource();
+        final ReentrantLock clonando = new ReentrantLock();
+        final AtomicInteger clones = new AtomicInteger();
+        final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        final Queue<Tiempo> tiempos = new ConcurrentLinkedQueue<>();
+        final Map<String, Queue<RendimientoUi.Medicion>> mediciones = new ConcurrentHashMap<>();
+        final Map<String, String> backends = new ConcurrentHashMap<>();
+        final long inicio = System.nanoTime();
+        final long arranqueMs;
+
+        Pila() throws SQLException {
+            postgres.start();
+            administracion.setUrl(postgres.getJdbcUrl().replace("/" + PLANTILLA, "/postgres"));
+            administracion.setUser(DB_USER);
+            administracion.setPassword(DB_PASSWORD);
+            ejecutar("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE datname = '" + PLANTILLA + "' AND pid <> pg_backend_pid()",
+                    "ALTER DATABASE " + PLANTILLA + " WITH IS_TEMPLATE true ALLOW_CONNECTIONS false");
+            List<Startable> contenedores = new ArrayList<>();
+            for (int i = 0; i < SLOTS; i++) {
+                Slot slot = new Slot(i, red, postgres);
+                // Liberty valida el datasource al desplegar: su base tiene que existir
+                ejecutar("CREATE DATABASE " + slot.baseDatos + " TEMPLATE " + PLANTILLA);
+                slots.add(slot);
+                contenedores.add(slot.fronted);
+                contenedores.add(slot.chrome);
+            }
+            Startables.deepStart(contenedores).join();
+            libres.addAll(slots);
+            arranqueMs = (System.nanoTime() - inicio) / 1_000_000;
+            System.out.printf("pila E2E lista: slots=%d arranque=%dms%n", SLOTS, arranqueMs);
+        }
+
+        String clonar() throws SQLException {
+            String base = "e2e_" + clones.incrementAndGet();
+            // dos CREATE DATABASE de la misma plantilla a la vez pueden fallar por "being accessed by other users"
+            clonando.lock();
+            try {
+                ejecutar("CREATE DATABASE " + base + " TEMPLATE " + PLANTILLA);
+            } finally {
+                clonando.unlock();
+            }
+            return base;
+        }
+
+        /**
+         * La copia toma el nombre de la base del slot; las conexiones que
+         * Liberty tenia a la anterior se cortan y el pool las descarta en la
+         * primera peticion, que se hace aqui.
+         */
+        void asignar(Slot slot, String base) throws Exception {
+            ejecutar("DROP DATABASE IF EXISTS " + slot.baseDatos + " WITH (FORCE)",
+                    "ALTER DATABASE " + base + " RENAME TO " + slot.baseDatos);
+            HttpRequest peticion = HttpRequest.newBuilder(URI.create(slot.urlServidor() + "producto?first=0&max=1")).timeout(Duration.ofSeconds(10)).build();
+            long limite = System.nanoTime() + 30_000_000_000L;
+            int seguidas = 0;
+            while (seguidas < 2) {
+                if (System.nanoTime() > limite) {
+                    throw new IllegalStateException("Liberty del slot " + slot.numero + " no responde con la base " + base);
+                }
+                try {
+                    seguidas = http.send(peticion, HttpResponse.BodyHandlers.discarding()).statusCode() == 200 ? seguidas + 1 : 0;
+                } catch (IOException e) {
+                    seguidas = 0;
+                }
+                if (seguidas == 0) {
+                    Thread.sleep(100);
+                }
+            }
+        }
+
+        /**
+         * La base de una prueba fallida se conserva con otro nombre para
+         * revisarla.
+         */
+        void conservar(Slot slot, String base) {
+            try {
+                ejecutar("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE datname = '" + slot.baseDatos + "'",
+                        "ALTER DATABASE " + slot.baseDatos + " RENAME TO " + base + "_fallo");
+                System.out.println("base de la prueba fallida: " + base + "_fallo");
+            } catch (SQLException e) {
+                // Liberty alcanzo a reconectarse; la siguiente prueba la descarta
+                System.out.println("no se pudo conservar la base " + base + ": " + e.getMessage());
+            }
+        }
+
+        void ejecutar(String... sentencias) throws SQLException {
+            try (Connection c = administracion.getConnection(); Statement st = c.createStatement()) {
+                for (String sql : sentencias) {
+                    st.execute(sql);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            escribirTiempos(Paths.get("target", "e2e-tiempos.json"));
+            for (Slot slot : slots) {
+                slot.chrome.stop();
+                slot.fronted.stop();
+                slot.servidor.stop();
+            }
+            postgres.stop();
+            red.close();
+        }
+
+        void escribirTiempos(Path archivo) throws IOException {
+            long paredMs = (System.nanoTime() - inicio) / 1_000_000;
+            long sumaMs = tiempos.stream().mapToLong(t -> t.clonarMs() + t.duracionMs()).sum();
+            long clases = tiempos.stream().map(Tiempo::clase).distinct().count();
+            // antes: cada clase levantaba su propia pila y corria sus pruebas una tras otra
+            long estimadoMs = clases * arranqueMs + tiempos.stream().mapToLong(Tiempo::duracionMs).sum();
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "{\"slots\":%d,\"pruebas\":%d,\"clases\":%d,\"arranqueMs\":%d,\"paredMs\":%d,\"sumaPruebasMs\":%d,\"estimadoAnteriorMs\":%d,\"aceleracionEstimada\":%.2f",
+                    SLOTS, tiempos.size(), clases, arranqueMs, paredMs, sumaMs, estimadoMs, (double) estimadoMs / paredMs));
+            if (LINEA_BASE_MS > 0) {
+                sb.append(String.format(Locale.ROOT, ",\"lineaBaseMs\":%d,\"aceleracion\":%.2f", LINEA_BASE_MS, (double) LINEA_BASE_MS / paredMs));
+            }
+            sb.append(",\"detalle\":[");
+            int i = 0;
+            for (Tiempo t : tiempos) {
+                sb.append(i++ == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                        "{\"clase\":\"%s\",\"prueba\":\"%s\",\"slot\":%d,\"clonarMs\":%d,\"esperaSlotMs\":%d,\"duracionMs\":%d,\"exitosa\":%b}",
+                        t.clase(), t.prueba(), t.slot(), t.clonarMs(), t.esperaSlotMs(), t.duracionMs(), t.exitosa()));
+            }
+            sb.append("]}");
+            Files.createDirectories(archivo.getParent());
+            Files.writeString(archivo, sb);
+            System.out.printf(Locale.ROOT, "E2E: pruebas=%d pared=%dms estimado (no medido) con una pila por clase en serie=%dms%n",
+                    tiempos.size(), paredMs, estimadoMs);
+            if (LINEA_BASE_MS > 0) {
+                System.out.printf(Locale.ROOT, "E2E: aceleracion contra la linea base medida de %dms=%.2fx%n", LINEA_BASE_MS, (double) LINEA_BASE_MS / paredMs);
+            }
+        }
+    }
+
+    private record EnCurso(Slot slot, String base, Sesion sesion, long clonarMs, long esperaSlotMs, long inicio, long segundoDelVideo) {
+    }
+
+    static Pila pila(ExtensionContext context) {
+        return context.getRoot().getStore(NS).getOrComputeIfAbsent(Pila.class, k -> {
+            try {
+                return new Pila();
+            } catch (SQLException e) {
+                throw new IllegalStateException("No se pudo preparar la plantilla", e);
+            }
+        }, Pila.class);
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) throws Exception {
+        Pila pila = pila(context);
+        long t0 = System.nanoTime();
+        String base = pila.clonar();
+        long t1 = System.nanoTime();
+        Slot slot = pila.libres.take();
+        long t2 = System.nanoTime();
+        try {
+            pila.asignar(slot, base);
+            WebDriver driver = slot.chrome.getWebDriver();
+            // lo que dejo la prueba anterior en el navegador
+            driver.manage().deleteAllCookies();
+            driver.get(slot.frontend);
+            ((JavascriptExecutor) driver).executeScript("window.localStorage.clear(); window.sessionStorage.clear();");
+            PGSimpleDataSource dataSource = new PGSimpleDataSource();
+            dataSource.setUrl(pila.postgres.getJdbcUrl().replace("/" + PLANTILLA, "/" + slot.baseDatos));
+            dataSource.setUser(DB_USER);
+            dataSource.setPassword(DB_PASSWORD);
+            String clase = context.getRequiredTestClass().getSimpleName();
+            Sesion sesion = new Sesion(driver, slot.frontend, slot.backend, slot.baseDatos, dataSource, new RendimientoUi(driver, clase, slot.backend));
+            pila.backends.put(clase, slot.backend);
+            context.getStore(NS).put(EnCurso.class, new EnCurso(slot, base, sesion, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, System.nanoTime(), slot.segundoDelVideo()));
+        } catch (Exception | Error e) {
+            pila.libres.add(slot);
+            throw e;
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) throws Exception {
+        EnCurso enCurso = context.getStore(NS).remove(EnCurso.class, EnCurso.class);
+        if (enCurso == null) {
+            return;
+        }
+        Pila pila = pila(context);
+        Optional<Throwable> error = context.getExecutionException();
+        try {
+            long duracionMs = (System.nanoTime() - enCurso.inicio()) / 1_000_000;
+            String clase = context.getRequiredTestClass().getSimpleName();
+            pila.tiempos.add(new Tiempo(clase, context.getRequiredTestMethod().getName(), enCurso.slot().numero,
+                    enCurso.clonarMs(), enCurso.esperaSlotMs(), duracionMs, error.isEmpty()));
+            pila.mediciones.computeIfAbsent(clase, k -> new ConcurrentLinkedQueue<>()).addAll(enCurso.sesion().ui().mediciones());
+            enCurso.slot().chrome.afterTest(new TestDescription() {
+                @Override
+                public String getTestId() {
+                    return context.getUniqueId();
+                }
+
+                @Override
+                public String getFilesystemFriendlyName() {
+                    return clase + "-" + context.getRequiredTestMethod().getName();
+                }
+            }, error);
+            if (error.isPresent()) {
+                System.out.println("video de " + clase + "-" + context.getRequiredTestMethod().getName() + " en target/: la prueba empieza cerca del segundo "
+                        + enCurso.segundoDelVideo() + ", lo anterior son otras pruebas del slot " + enCurso.slot().numero);
+                pila.conservar(enCurso.slot(), enCurso.base());
+            }
+        } finally {
+            pila.libres.add(enCurso.slot());
+        }
+    }
+
+    /**
+     * {@code target/rendimiento-ui/<clase>.json} con los flujos de todas las
+     * pruebas de la clase.
+     */
+    @Override
+    public void afterAll(ExtensionContext context) throws Exception {
+        Pila pila = context.getRoot().getStore(NS).get(Pila.class, Pila.class);
+        if (pila == null) {
+            return;
+        }
+        String clase = context.getRequiredTestClass().getSimpleName();
+        Queue<RendimientoUi.Medicion> mediciones = pila.mediciones.remove(clase);
+        if (mediciones == null) {
+            return;
+        }
+        Path archivo = Paths.get("target", "rendimiento-ui", clase + ".json");
+        Files.createDirectories(archivo.getParent());
+        try (Writer out = Files.newBufferedWriter(archivo)) {
+            RendimientoUi.escribir(clase, pila.backends.getOrDefault(clase, RendimientoUi.BACKEND), new ArrayList<>(mediciones), out);
+        }
+        System.out.println("reporte de rendimiento: " + archivo);
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == Sesion.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        EnCurso enCurso = extensionContext.getStore(NS).get(EnCurso.class, EnCurso.class);
+        if (enCurso == null) {
+            throw new IllegalStateException("La sesion E2E solo esta disponible en @BeforeEach y en las pruebas");
+        }
+        return enCurso.sesion();
+    }
+}
@@ -0,0 +1,92 @@
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import org.example.ExportacionJson;
+import org.example.Paginacion;
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * {@link ExportacionJson#exportar} contra Postgres: cursor, limite y como
+ * salen las fechas, los decimales y los nulos leidos por JDBC.
+ */
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ExportacionJsonBaseTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    PGSimpleDataSource dataSource;
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            // despues de los precios 1001-1020 del script; 2003 sin producto, sin fin y sin precio
+            st.execute("INSERT INTO producto_precio VALUES (2001, 1001, '2025-06-01', '2025-06-30', 12.50), (2002, 1002, '2025-06-01', '2025-12-31', 0.05),"
+                    + " (2003, NULL, '2025-07-15', NULL, NULL), (2004, 1004, '2025-08-01', NULL, 1000.00), (2005, 1005, '2025-09-01', NULL, 3.10),"
+                    + " (2006, 1006, '2025-10-01', NULL, 7.77)");
+        }
+    }
+
+    @Test
+    public void testExportarConCursorYMaximo() throws Exception {
+        System.out.println("test exportar por JDBC desde un cursor con maximo");
+        ExportacionJson.Proyeccion proyeccion = ExportacionJson.proyeccion("ProductoPrecio");
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            String cursor = Paginacion.codificar(proyeccion.llave(), 1020);
+
+            ByteArrayOutputStream salida = new ByteArrayOutputStream();
+            Assertions.assertEquals(4, ExportacionJson.exportar(c, proyeccion, cursor, 4, salida));
+            JsonArray arreglo = Json.createReader(new StringReader(salida.toString())).readArray();
+            Assertions.assertEquals(4, arreglo.size());
+            for (int i = 0; i < arreglo.size(); i++) {
+                Assertions.assertEquals(2001 + i, arreglo.getJsonObject(i).getJsonNumber("idProductoPrecio").longValue());
+            }
+
+            JsonObject primero = arreglo.getJsonObject(0);
+            Assertions.assertEquals(1001, primero.getJsonNumber("idProducto").longValue());
+            Assertions.assertEquals("2025-06-01", primero.getString("fechaDesde"));
+            Assertions.assertEquals("2025-06-30", primero.getString("fechaHasta"));
+            Assertions.assertEquals(new BigDecimal("12.50"), primero.getJsonNumber("precioSugerido").bigDecimalValue());
+            Assertions.assertEquals(new BigDecimal("0.05"), arreglo.getJsonObject(1).getJsonNumber("precioSugerido").bigDecimalValue());
+
+            JsonObject nulos = arreglo.getJsonObject(2);
+            Assertions.assertTrue(nulos.isNull("idProducto"));
+            Assertions.assertTrue(nulos.isNull("fechaHasta"));
+            Assertions.assertTrue(nulos.isNull("precioSugerido"));
+            Assertions.assertEquals("2025-07-15", nulos.getString("fechaDesde"));
+            Assertions.assertEquals("1000.00", arreglo.getJsonObject(3).getJsonNumber("precioSugerido").toString());
+
+            // sin maximo sigue hasta el final desde la ultima fila exportada
+            salida.reset();
+            Assertions.assertEquals(2, ExportacionJson.exportar(c, proyeccion, Paginacion.codificar(proyeccion.llave(), 2004), 0, salida));
+            JsonArray resto = Json.createReader(new StringReader(salida.toString())).readArray();
+            Assertions.assertEquals(2005, resto.getJsonObject(0).getJsonNumber("idProductoPrecio").longValue());
+            Assertions.assertEquals(2006, resto.getJsonObject(1).getJsonNumber("idProductoPrecio").longValue());
+
+            salida.reset();
+            Assertions.assertEquals(0, ExportacionJson.exportar(c, proyeccion, Paginacion.codificar(proyeccion.llave(), 2006), 10, salida));
+            Assertions.assertEquals("[]", salida.toString());
+            c.rollback();
+        }
+    }
+}
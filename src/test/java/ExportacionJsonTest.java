@@ -0,0 +1,132 @@
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import org.example.ExportacionBenchmark;
+import org.example.ExportacionJson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ExportacionJsonTest {
+
+    static int exportadas = Integer.getInteger("exportacion.filas", 200_000);
+
+    static final ExportacionJson.Proyeccion PRODUCTO_PRECIO = ExportacionJson.proyeccion("ProductoPrecio");
+
+    @Test
+    public void testConsultasDeProyeccion() {
+        System.out.println("test JPQL y SQL de las proyecciones");
+        Assertions.assertEquals("SELECT e.idPago, e.idOrden.idOrden, e.fecha, e.metodoPago, e.referencia FROM Pago e ORDER BY e.idPago",
+                ExportacionJson.proyeccion("Pago").jpql());
+        Assertions.assertEquals("SELECT e.ordenDetallePK.idOrden, e.ordenDetallePK.idProductoPrecio, e.cantidad, e.precio, e.observaciones"
+                + " FROM OrdenDetalle e ORDER BY e.ordenDetallePK.idOrden, e.ordenDetallePK.idProductoPrecio", ExportacionJson.proyeccion("OrdenDetalle").jpql());
+        Assertions.assertEquals("SELECT id_producto_precio, id_producto, fecha_desde, fecha_hasta, precio_sugerido FROM producto_precio"
+                + " WHERE (id_producto_precio) > (?) ORDER BY id_producto_precio LIMIT ?", PRODUCTO_PRECIO.sql(true));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExportacionJson.proyeccion("Nada"));
+    }
+
+    @Test
+    public void testEscribirTuplas() {
+        System.out.println("test tuplas escritas como arreglo JSON");
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        long escritas = ExportacionJson.escribir(PRODUCTO_PRECIO, Stream.of(
+                new Object[]{1L, 10L, LocalDate.parse("2025-01-01"), null, new BigDecimal("1.50")},
+                new Object[]{2L, null, java.sql.Date.valueOf("2025-02-01"), LocalDate.parse("2025-03-01"), new BigDecimal("12.00")}), salida);
+        Assertions.assertEquals(2, escritas);
+        JsonArray arreglo = Json.createReader(new StringReader(salida.toString())).readArray();
+        Assertions.assertEquals(2, arreglo.size());
+        JsonObject primero = arreglo.getJsonObject(0);
+        Assertions.assertEquals(10, primero.getJsonNumber("idProducto").longValue());
+        Assertions.assertEquals("2025-01-01", primero.getString("fechaDesde"));
+        Assertions.assertTrue(primero.isNull("fechaHasta"));
+        Assertions.assertEquals(new BigDecimal("1.50"), primero.getJsonNumber("precioSugerido").bigDecimalValue());
+        Assertions.assertTrue(arreglo.getJsonObject(1).isNull("idProducto"));
+        Assertions.assertEquals("2025-02-01", arreglo.getJsonObject(1).getString("fechaDesde"));
+
+        Assertions.assertEquals("[]", escribir(Stream.empty()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> escribir(Stream.<Object[]>of(new Object[]{1L})));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> escribir(Stream.<Object[]>of(new Object[]{1L, 1L, new Object(), null, null})));
+    }
+
+    /**
+     * Heap retenido a mitad de una exportacion: en streaming no crece con las
+     * filas ya escritas; por {@code findRange} las entidades con sus precios
+     * siguen vivas hasta terminar de serializar. Se mide el heap usado
+     * despues de un GC. {@code -Dexportacion.filas} cambia el tamano.
+     */
+    @Test
+    public void testHeapRetenido() {
+        System.out.println("test heap retenido a mitad de la exportacion en streaming contra entidades");
+        ExportacionBenchmark benchmark = benchmark(exportadas);
+
+        long base = usado();
+        long[] aMitad = new long[1];
+        long escritas = ExportacionJson.escribir(PRODUCTO_PRECIO, benchmark.tuplas().peek(fila -> {
+            if ((Long) fila[0] == exportadas / 2) {
+                aMitad[0] = usado();
+            }
+        }), OutputStream.nullOutputStream());
+        long streaming = Math.max(0, aMitad[0] - base);
+
+        base = usado();
+        List<ExportacionBenchmark.Producto> productos = benchmark.productos();
+        long entidades = usado() - base;
+        Assertions.assertEquals(exportadas, ExportacionBenchmark.serializar(productos, OutputStream.nullOutputStream()));
+
+        System.out.printf("filas=%d heap retenido streaming=%dKB entidades=%dKB (%d bytes/fila)%n",
+                exportadas, streaming / 1024, entidades / 1024, entidades / exportadas);
+        Assertions.assertEquals(exportadas, escritas);
+        // la mitad de las filas retenidas costaria mas de 20 bytes por fila
+        Assertions.assertTrue(streaming < exportadas * 10L, "streaming retiene " + streaming + " bytes");
+        Assertions.assertTrue(entidades > streaming * 10, "las entidades no retienen mas que el streaming");
+    }
+
+    @Test
+    public void testSerializarEntidades() {
+        System.out.println("test entidades del benchmark serializadas por getters");
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ExportacionBenchmark benchmark = benchmark(6);
+        Assertions.assertEquals(6, ExportacionBenchmark.serializar(benchmark.productos(), salida));
+        JsonArray productos = Json.createReader(new StringReader(salida.toString())).readArray();
+        Assertions.assertEquals(2, productos.size());
+        JsonObject primero = productos.getJsonObject(0);
+        Assertions.assertEquals(100_000, primero.getJsonNumber("idProducto").longValue());
+        // @JsonbTransient: ni el detalle ni la referencia de vuelta al producto
+        Assertions.assertFalse(primero.containsKey("productoDetalleList"));
+        JsonArray precios = primero.getJsonArray("productoPrecioList");
+        Assertions.assertEquals(5, precios.size());
+        Assertions.assertFalse(precios.getJsonObject(0).containsKey("idProducto"));
+        Assertions.assertEquals(new BigDecimal("1.51"), precios.getJsonObject(0).getJsonNumber("precioSugerido").bigDecimalValue());
+        Assertions.assertTrue(precios.getJsonObject(0).isNull("fechaHasta"));
+    }
+
+    static String escribir(Stream<Object[]> filas) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ExportacionJson.escribir(PRODUCTO_PRECIO, filas, salida);
+        return salida.toString();
+    }
+
+    static ExportacionBenchmark benchmark(int filas) {
+        ExportacionBenchmark benchmark = new ExportacionBenchmark();
+        benchmark.filas = filas;
+        benchmark.preparar();
+        return benchmark;
+    }
+
+    static long usado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 2; i++) {
+            memoria.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,620 @@
+import org.example.ProductoPrecio;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generador determinista de datos sinteticos para el esquema de
+ * {@code tipicos_tpi135_2025.sql}, cargado con {@code COPY ... FROM STDIN}
+ * por el {@code CopyManager} del driver.
+ * <p>
+ * El catalogo (productos, tipos, varios rangos de precio traslapados por
+ * producto y combos) se arma en memoria porque es chico. Las ordenes no: cada
+ * orden se deriva solo de {@code (semilla, posicion)}, asi cada tabla y cada
+ * rango de ordenes se genera por separado, en paralelo y sin guardar nada, y
+ * la memoria no depende de cuantas lineas se cargan. Las filas se escriben
+ * en texto ASCII en un buffer de bytes reutilizado.
+ * <p>
+ * Distribuciones: popularidad de productos Zipf, mas ordenes en fin de
+ * semana, hora con picos de almuerzo y cena (las ordenes de esas horas son
+ * mas grandes; el esquema solo guarda la fecha), sucursales y
+ * {@code metodo_pago} con pesos distintos, 2% de ordenes anuladas sin pago y
+ * algunos pagos divididos en dos {@code pago_detalle}.
+ */
+public class GeneradorDatos {
+
+    public record Config(long semilla, int productos, int tipos, int combos, long ordenes, LocalDate desde, int dias, int hilos) {
+
+        public static Config defecto(long ordenes) {
+            return new Config(135, 2000, 25, 300, ordenes, LocalDate.parse("2025-01-01"), 180, 4);
+        }
+    }
+
+    public record Resumen(long productos, long precios, long combos, long ordenes, long lineas, long pagos,
+                          long detallesPago, double segundos) {
+    }
+
+    // por encima de los ids del script de semilla
+    static final long BASE_PRODUCTO = 100_000;
+    static final long BASE_PRECIO = 100_000;
+    static final long BASE_COMBO = 100_000;
+    static final long BASE_ORDEN = 1_000_000;
+    static final int BASE_TIPO = 2_000;
+
+    static final String[] SUCURSALES = {"SS", "Zarsa", "S-Ana", "SM", "LL"};
+    static final double[] PESO_SUCURSAL = {0.35, 0.25, 0.2, 0.12, 0.08};
+    static final String[] METODOS_PAGO = {"EFECTIVO", "TARJETA", "CHIVO"};
+    static final double[] PESO_METODO = {0.55, 0.35, 0.10};
+    // de 6 a 21 horas, con almuerzo (11-14) y cena (18-20)
+    static final double[] PESO_HORA = {0, 0, 0, 0, 0, 0, 2, 4, 4, 3, 3, 8, 12, 11, 6, 3, 3, 4, 8, 9, 6, 2, 0, 0};
+
+    static final double ZIPF = 1.1;
+    static final double ANULADAS = 0.02;
+    static final double CON_COMBO = 0.15;
+    static final double PAGO_DIVIDIDO = 0.10;
+    static final int MAXIMO_LINEAS = 32;
+    // fecha_hasta nulo
+    static final int SIN_FIN = Integer.MAX_VALUE;
+
+    private final Config config;
+
+    // catalogo
+    private final double[] acumuladoProductos;
+    private final long[] precioIds;
+    private final long[] precioProducto;
+    private final int[] precioDesde;
+    private final int[] precioHasta;
+    private final long[] precioCentavos;
+    private final long[][] comboMiembros;
+    private final int[][] comboCantidades;
+    // precio vigente por (producto, dia): id_producto_precio y centavos
+    private final long[] vigenteId;
+    private final long[] vigenteCentavos;
+
+    // ordenes acumuladas antes de cada dia
+    private final long[] ordenesAntesDe;
+    private final String[] fechas;
+
+    private final double[] acumuladoSucursal = acumulado(PESO_SUCURSAL);
+    private final double[] acumuladoMetodo = acumulado(PESO_METODO);
+    private final double[] acumuladoHora = acumulado(PESO_HORA);
+
+    public GeneradorDatos(Config config) {
+        if (config.productos() <= 0 || config.ordenes() <= 0 || config.dias() <= 0 || config.hilos() <= 0) {
+            throw new IllegalArgumentException("productos, ordenes, dias e hilos deben ser mayores a cero");
+        }
+        this.config = config;
+        Azar azar = new Azar();
+        azar.reiniciar(config.semilla());
+
+        double[] pesos = new double[config.productos()];
+        for (int p = 0; p < pesos.length; p++) {
+            pesos[p] = 1 / Math.pow(p + 1, ZIPF);
+        }
+        acumuladoProductos = acumulado(pesos);
+
+        // un rango base abierto y de 2 a 4 promociones o ajustes que se traslapan
+        int inicio = (int) config.desde().toEpochDay();
+        List<long[]> rangos = new ArrayList<>();
+        ProductoPrecio precios = new ProductoPrecio();
+        long idPrecio = BASE_PRECIO;
+        for (int p = 0; p < config.productos(); p++) {
+            long producto = BASE_PRODUCTO + p + 1;
+            long base = 25 + (long) (Math.exp(azar.siguienteDouble() * 4) * 25);
+            rangos.add(new long[]{++idPrecio, producto, inicio - 365, SIN_FIN, base});
+            for (int r = 2 + azar.siguiente(3); r > 0; r--) {
+                long desde = inicio - 30 + azar.siguiente(config.dias() + 30);
+                long hasta = desde + 7 + azar.siguiente(84);
+                long centavos = Math.max(10, Math.round(base * (0.8 + 0.4 * azar.siguienteDouble())));
+                rangos.add(new long[]{++idPrecio, producto, desde, hasta, centavos});
+            }
+        }
+        precioIds = new long[rangos.size()];
+        precioProducto = new long[rangos.size()];
+        precioDesde = new int[rangos.size()];
+        precioHasta = new int[rangos.size()];
+        precioCentavos = new long[rangos.size()];
+        for (int i = 0; i < rangos.size(); i++) {
+            long[] r = rangos.get(i);
+            precioIds[i] = r[0];
+            precioProducto[i] = r[1];
+            precioDesde[i] = (int) r[2];
+            precioHasta[i] = (int) r[3];
+            precioCentavos[i] = r[4];
+            precios.registrar(r[0], r[1], LocalDate.ofEpochDay(r[2]), r[3] == SIN_FIN ? null : LocalDate.ofEpochDay(r[3]),
+                    BigDecimal.valueOf(r[4], 2));
+        }
+        vigenteId = new long[config.productos() * config.dias()];
+        vigenteCentavos = new long[vigenteId.length];
+        for (int p = 0; p < config.productos(); p++) {
+            for (int d = 0; d < config.dias(); d++) {
+                ProductoPrecio.Vigente v = precios.vigente(BASE_PRODUCTO + p + 1, config.desde().plusDays(d));
+                vigenteId[p * config.dias() + d] = v.idProductoPrecio();
+                vigenteCentavos[p * config.dias() + d] = v.centavos();
+            }
+        }
+
+        comboMiembros = new long[config.combos()][];
+        comboCantidades = new int[config.combos()][];
+        for (int c = 0; c < config.combos(); c++) {
+            int miembros = 2 + azar.siguiente(4);
+            long[] ids = new long[miembros];
+            int[] cantidades = new int[miembros];
+            for (int m = 0; m < miembros; m++) {
+                long producto;
+                do {
+                    producto = BASE_PRODUCTO + 1 + elegir(acumuladoProductos, azar.siguienteDouble());
+                } while (contiene(ids, m, producto));
+                ids[m] = producto;
+                cantidades[m] = 1 + azar.siguiente(m == 0 ? 10 : 3);
+            }
+            comboMiembros[c] = ids;
+            comboCantidades[c] = cantidades;
+        }
+
+        double[] pesoDia = new double[config.dias()];
+        for (int d = 0; d < pesoDia.length; d++) {
+            DayOfWeek dia = config.desde().plusDays(d).getDayOfWeek();
+            pesoDia[d] = dia == DayOfWeek.SATURDAY || dia == DayOfWeek.SUNDAY ? 1.4 : 1.0;
+        }
+        double[] acumuladoDia = acumulado(pesoDia);
+        fechas = new String[config.dias()];
+        for (int d = 0; d < fechas.length; d++) {
+            fechas[d] = config.desde().plusDays(d).toString();
+        }
+        ordenesAntesDe = new long[config.dias() + 1];
+        for (int d = 1; d <= config.dias(); d++) {
+            ordenesAntesDe[d] = d == config.dias() ? config.ordenes() : Math.round(acumuladoDia[d - 1] * config.ordenes());
+        }
+    }
+
+    /**
+     * Carga todo en la base: catalogo, luego ordenes, luego lineas y pagos,
+     * luego detalles de pago (el orden lo piden las llaves foraneas). Cada
+     * tabla de ordenes se divide en {@code hilos} rangos, cada uno en su
+     * propia conexion y su propio {@code COPY}.
+     */
+    public Resumen cargar(DataSource dataSource) throws SQLException, IOException, InterruptedException {
+        long inicio = System.nanoTime();
+        try (Connection conexion = dataSource.getConnection()) {
+            copiar(conexion, "tipo_producto(id_tipo_producto, nombre, activo, observaciones)", this::tipos);
+            copiar(conexion, "producto(id_producto, nombre, activo, observaciones, url)", this::productos);
+            copiar(conexion, "producto_detalle(id_tipo_producto, id_producto, activo, observaciones)", this::productoDetalle);
+            copiar(conexion, "producto_precio(id_producto_precio, id_producto, fecha_desde, fecha_hasta, precio_sugerido)", this::productoPrecio);
+            copiar(conexion, "combo(id_combo, nombre, activo, descripcion_publica, url)", this::combos);
+            copiar(conexion, "combo_detalle(id_combo, id_producto, cantidad, activo)", this::comboDetalle);
+        }
+        long[] totales = new long[Tabla.values().length];
+        ExecutorService hilos = Executors.newFixedThreadPool(config.hilos());
+        try {
+            for (Tabla[] fase : new Tabla[][]{{Tabla.ORDEN}, {Tabla.ORDEN_DETALLE, Tabla.PAGO}, {Tabla.PAGO_DETALLE}}) {
+                List<Future<Long>> tareas = new ArrayList<>();
+                List<Tabla> tablas = new ArrayList<>();
+                for (Tabla tabla : fase) {
+                    for (int h = 0; h < config.hilos(); h++) {
+                        long desde = config.ordenes() * h / config.hilos();
+                        long hasta = config.ordenes() * (h + 1) / config.hilos();
+                        tablas.add(tabla);
+                        tareas.add(hilos.submit(() -> {
+                            try (Connection conexion = dataSource.getConnection()) {
+                                long[] filas = {0};
+                                copiar(conexion, tabla.copia, salida -> filas[0] = ordenes(tabla, desde, hasta, salida));
+                                return filas[0];
+                            }
+                        }));
+                    }
+                }
+                for (int i = 0; i < tareas.size(); i++) {
+                    totales[tablas.get(i).ordinal()] += tareas.get(i).get();
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException s) {
+                throw s;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            hilos.shutdown();
+        }
+        try (Connection conexion = dataSource.getConnection(); Statement st = conexion.createStatement()) {
+            for (String[] secuencia : new String[][]{{"producto_id_producto_seq", "producto", "id_producto"},
+                    {"producto_precio_id_producto_precio_seq", "producto_precio", "id_producto_precio"},
+                    {"tipo_producto_id_tipo_producto_seq", "tipo_producto", "id_tipo_producto"},
+                    {"combo_id_combo_seq", "combo", "id_combo"},
+                    {"orden_id_orden_seq", "orden", "id_orden"},
+                    {"pago_id_pago_seq", "pago", "id_pago"},
+                    {"pago_detalle_id_pago_detalle_seq", "pago_detalle", "id_pago_detalle"}}) {
+                st.execute("SELECT setval('" + secuencia[0] + "', (SELECT MAX(" + secuencia[2] + ") FROM " + secuencia[1] + "))");
+            }
+            st.execute("ANALYZE");
+        }
+        return new Resumen(config.productos(), precioIds.length, config.combos(), totales[Tabla.ORDEN.ordinal()],
+                totales[Tabla.ORDEN_DETALLE.ordinal()], totales[Tabla.PAGO.ordinal()], totales[Tabla.PAGO_DETALLE.ordinal()],
+                (System.nanoTime() - inicio) / 1e9);
+    }
+
+    public enum Tabla {
+        ORDEN("orden(id_orden, fecha, sucursal, anulada)"),
+        ORDEN_DETALLE("orden_detalle(id_orden, id_producto_precio, cantidad, precio, observaciones)"),
+        PAGO("pago(id_pago, id_orden, fecha, metodo_pago, referencia)"),
+        PAGO_DETALLE("pago_detalle(id_pago_detalle, id_pago, monto, observaciones)");
+
+        final String copia;
+
+        Tabla(String copia) {
+            this.copia = copia;
+        }
+    }
+
+    /**
+     * Escribe las filas de {@code tabla} para las ordenes en posicion
+     * {@code [desde, hasta)} en formato texto de {@code COPY}. Devuelve
+     * cuantas filas escribio.
+     */
+    public long ordenes(Tabla tabla, long desde, long hasta, OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        Orden orden = new Orden();
+        long total = 0;
+        for (long i = desde; i < hasta; i++) {
+            generar(i, orden);
+            switch (tabla) {
+                case ORDEN -> {
+                    filas.numero(orden.id).tab().texto(orden.fecha).tab().texto(SUCURSALES[orden.sucursal]).tab().texto(orden.anulada ? "t" : "f").fin();
+                    total++;
+                }
+                case ORDEN_DETALLE -> {
+                    for (int l = 0; l < orden.lineas; l++) {
+                        filas.numero(orden.id).tab().numero(orden.precios[l]).tab().numero(orden.cantidades[l]).tab()
+                                .centavos(orden.centavos[l]).tab().nulo().fin();
+                    }
+                    total += orden.lineas;
+                }
+                case PAGO -> {
+                    if (!orden.anulada) {
+                        filas.numero(orden.id).tab().numero(orden.id).tab().texto(orden.fecha).tab()
+                                .texto(METODOS_PAGO[orden.metodo]).tab().nulo().fin();
+                        total++;
+                    }
+                }
+                case PAGO_DETALLE -> {
+                    if (!orden.anulada) {
+                        long primero = orden.dividido ? orden.total / 2 : orden.total;
+                        filas.numero(orden.id * 2).tab().numero(orden.id).tab().centavos(primero).tab().nulo().fin();
+                        total++;
+                        if (orden.dividido) {
+                            filas.numero(orden.id * 2 + 1).tab().numero(orden.id).tab().centavos(orden.total - primero).tab().texto("segundo pago").fin();
+                            total++;
+                        }
+                    }
+                }
+            }
+        }
+        filas.vaciar();
+        return total;
+    }
+
+    /**
+     * Orden en posicion {@code i}; solo depende de la semilla y de {@code i}.
+     */
+    void generar(long i, Orden orden) {
+        Azar azar = orden.azar;
+        azar.reiniciar(config.semilla() * 0x9E3779B97F4A7C15L + i);
+        orden.id = BASE_ORDEN + i + 1;
+        int dia = Arrays.binarySearch(ordenesAntesDe, i + 1);
+        dia = (dia < 0 ? -dia - 1 : dia) - 1;
+        orden.dia = dia;
+        orden.fecha = fechas[dia];
+        orden.sucursal = elegir(acumuladoSucursal, azar.siguienteDouble());
+        orden.hora = elegir(acumuladoHora, azar.siguienteDouble());
+        orden.anulada = azar.siguienteDouble() < ANULADAS;
+        orden.metodo = elegir(acumuladoMetodo, azar.siguienteDouble());
+        orden.dividido = azar.siguienteDouble() < PAGO_DIVIDIDO;
+
+        boolean pico = PESO_HORA[orden.hora] >= 8;
+        orden.lineas = 0;
+        for (int l = 1 + azar.siguiente(pico ? 6 : 3); l > 0; l--) {
+            orden.agregar(producto(azar.siguienteDouble()), 1 + azar.siguiente(4));
+        }
+        if (azar.siguienteDouble() < CON_COMBO) {
+            int combo = azar.siguiente(comboMiembros.length);
+            for (int m = 0; m < comboMiembros[combo].length; m++) {
+                orden.agregar((int) (comboMiembros[combo][m] - BASE_PRODUCTO - 1), comboCantidades[combo][m]);
+            }
+        }
+        orden.total = 0;
+        for (int l = 0; l < orden.lineas; l++) {
+            int celda = orden.productos[l] * config.dias() + dia;
+            orden.precios[l] = vigenteId[celda];
+            orden.centavos[l] = vigenteCentavos[celda];
+            orden.total += orden.centavos[l] * orden.cantidades[l];
+        }
+    }
+
+    private void tipos(OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        for (int t = 1; t <= config.tipos(); t++) {
+            filas.numero(BASE_TIPO + t).tab().texto("tipo ").numero(t).tab().texto("t").tab().nulo().fin();
+        }
+        filas.vaciar();
+    }
+
+    private void productos(OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        for (int p = 1; p <= config.productos(); p++) {
+            filas.numero(BASE_PRODUCTO + p).tab().texto("producto sintetico ").numero(p).tab().texto(p % 50 == 0 ? "f" : "t").tab()
+                    .texto("generado").tab().nulo().fin();
+        }
+        filas.vaciar();
+    }
+
+    private void productoDetalle(OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        for (int p = 1; p <= config.productos(); p++) {
+            int tipo = 1 + p % config.tipos();
+            filas.numero(BASE_TIPO + tipo).tab().numero(BASE_PRODUCTO + p).tab().texto("t").tab().nulo().fin();
+            // uno de cada cinco productos tiene un segundo tipo
+            if (p % 5 == 0 && config.tipos() > 1) {
+                filas.numero(BASE_TIPO + 1 + tipo % config.tipos()).tab().numero(BASE_PRODUCTO + p).tab().texto("t").tab().nulo().fin();
+            }
+        }
+        filas.vaciar();
+    }
+
+    private void productoPrecio(OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        for (int i = 0; i < precioIds.length; i++) {
+            filas.numero(precioIds[i]).tab().numero(precioProducto[i]).tab().texto(LocalDate.ofEpochDay(precioDesde[i]).toString()).tab();
+            if (precioHasta[i] == SIN_FIN) {
+                filas.nulo();
+            } else {
+                filas.texto(LocalDate.ofEpochDay(precioHasta[i]).toString());
+            }
+            filas.tab().centavos(precioCentavos[i]).fin();
+        }
+        filas.vaciar();
+    }
+
+    private void combos(OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        for (int c = 1; c <= config.combos(); c++) {
+            filas.numero(BASE_COMBO + c).tab().texto("combo sintetico ").numero(c).tab().texto("t").tab()
+                    .texto("combo generado ").numero(c).tab().nulo().fin();
+        }
+        filas.vaciar();
+    }
+
+    private void comboDetalle(OutputStream destino) throws IOException {
+        Filas filas = new Filas(destino);
+        for (int c = 0; c < comboMiembros.length; c++) {
+            for (int m = 0; m < comboMiembros[c].length; m++) {
+                filas.numero(BASE_COMBO + c + 1).tab().numero(comboMiembros[c][m]).tab().numero(comboCantidades[c][m]).tab().texto("t").fin();
+            }
+        }
+        filas.vaciar();
+    }
+
+    @FunctionalInterface
+    interface Escritura {
+        void escribir(OutputStream destino) throws IOException;
+    }
+
+    static void copiar(Connection conexion, String tabla, Escritura escritura) throws SQLException, IOException {
+        CopyIn copia = conexion.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY " + tabla + " FROM STDIN");
+        try {
+            escritura.escribir(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    try {
+                        copia.writeToCopy(b, off, len);
+                    } catch (SQLException e) {
+                        throw new IOException(e);
+                    }
+                }
+            });
+            copia.endCopy();
+        } finally {
+            if (copia.isActive()) {
+                copia.cancelCopy();
+            }
+        }
+    }
+
+    int producto(double u) {
+        return elegir(acumuladoProductos, u);
+    }
+
+    static int elegir(double[] acumulado, double u) {
+        int pos = Arrays.binarySearch(acumulado, u);
+        pos = pos < 0 ? -pos - 1 : pos + 1;
+        return Math.min(pos, acumulado.length - 1);
+    }
+
+    static double[] acumulado(double[] pesos) {
+        double suma = 0;
+        for (double p : pesos) {
+            suma += p;
+        }
+        double[] acumulado = new double[pesos.length];
+        double parcial = 0;
+        for (int i = 0; i < pesos.length; i++) {
+            parcial += pesos[i];
+            acumulado[i] = parcial / suma;
+        }
+        return acumulado;
+    }
+
+    private static boolean contiene(long[] valores, int n, long buscado) {
+        for (int i = 0; i < n; i++) {
+            if (valores[i] == buscado) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orden reutilizada entre posiciones; las lineas del mismo producto se
+     * juntan porque {@code orden_detalle} tiene llave {@code (id_orden, id_producto_precio)}.
+     */
+    static final class Orden {
+        final Azar azar = new Azar();
+        final int[] productos = new int[MAXIMO_LINEAS];
+        final int[] cantidades = new int[MAXIMO_LINEAS];
+        final long[] precios = new long[MAXIMO_LINEAS];
+        final long[] centavos = new long[MAXIMO_LINEAS];
+        long id;
+        int dia;
+        String fecha;
+        int sucursal;
+        int hora;
+        int metodo;
+        boolean anulada;
+        boolean dividido;
+        int lineas;
+        long total;
+
+        void agregar(int producto, int cantidad) {
+            for (int l = 0; l < lineas; l++) {
+                if (productos[l] == producto) {
+                    cantidades[l] += cantidad;
+                    return;
+                }
+            }
+            productos[lineas] = producto;
+            cantidades[lineas] = cantidad;
+            lineas++;
+        }
+    }
+
+    /**
+     * SplitMix64: reiniciar con otra semilla no reserva memoria.
+     */
+    static final class Azar {
+        private long estado;
+
+        void reiniciar(long semilla) {
+            estado = semilla;
+        }
+
+        long siguienteLong() {
+            long z = (estado += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        double siguienteDouble() {
+            return (siguienteLong() >>> 11) * 0x1.0p-53;
+        }
+
+        int siguiente(int limite) {
+            return (int) ((siguienteLong() >>> 33) % limite);
+        }
+    }
+
+    /**
+     * Filas de {@code COPY} en texto: columnas separadas por tabulador,
+     * {@code \N} para nulos. Solo se escriben textos ASCII sin tabuladores ni
+     * saltos de linea, asi no hace falta escapar.
+     */
+    static final class Filas {
+        private final OutputStream destino;
+        private final byte[] buffer = new byte[1 << 16];
+        private int pos;
+
+        Filas(OutputStream destino) {
+            this.destino = destino;
+        }
+
+        Filas numero(long valor) throws IOException {
+            reservar(20);
+            if (valor < 0) {
+                buffer[pos++] = '-';
+                valor = -valor;
+            }
+            int inicio = pos;
+            do {
+                buffer[pos++] = (byte) ('0' + valor % 10);
+                valor /= 10;
+            } while (valor != 0);
+            for (int i = inicio, j = pos - 1; i < j; i++, j--) {
+                byte b = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = b;
+            }
+            return this;
+        }
+
+        Filas centavos(long valor) throws IOException {
+            numero(valor / 100);
+            reservar(3);
+            long resto = Math.abs(valor % 100);
+            buffer[pos++] = '.';
+            buffer[pos++] = (byte) ('0' + resto / 10);
+            buffer[pos++] = (byte) ('0' + resto % 10);
+            return this;
+        }
+
+        Filas texto(String valor) throws IOException {
+            reservar(valor.length());
+            for (int i = 0; i < valor.length(); i++) {
+                buffer[pos++] = (byte) valor.charAt(i);
+            }
+            return this;
+        }
+
+        Filas nulo() throws IOException {
+            reservar(2);
+            buffer[pos++] = '\\';
+            buffer[pos++] = 'N';
+            return this;
+        }
+
+        Filas tab() throws IOException {
+            reservar(1);
+            buffer[pos++] = '\t';
+            return this;
+        }
+
+        void fin() throws IOException {
+            reservar(1);
+            buffer[pos++] = '\n';
+        }
+
+        void vaciar() throws IOException {
+            if (pos > 0) {
+                destino.write(buffer, 0, pos);
+                pos = 0;
+            }
+            destino.flush();
+        }
+
+        private void reservar(int bytes) throws IOException {
+            if (pos + bytes > buffer.length) {
+                destino.write(buffer, 0, pos);
+                pos = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class GeneradorDatosTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    // -Ddatos.ordenes=3200000 genera unas 10M lineas de orden_detalle
+    static long ordenes = Long.getLong("datos.ordenes", 100_000);
+    // solo con -Ddatos.ordenes: en la carga por defecto pesan mas el catalogo y el ANALYZE que el COPY
+    static long lineasPorSegundo = Long.getLong("datos.lineasPorSegundo", 100_000);
+    // heap muestreado cada tantos bytes escritos
+    static final long MUESTRA_BYTES = 1 << 20;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    PGSimpleDataSource dataSource;
+    GeneradorDatos.Resumen resumen;
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        resumen = new GeneradorDatos(GeneradorDatos.Config.defecto(ordenes)).cargar(dataSource);
+        System.out.printf("ordenes=%d lineas=%d pagos=%d segundos=%.1f lineas/s=%.0f%n", resumen.ordenes(), resumen.lineas(),
+                resumen.pagos(), resumen.segundos(), resumen.lineas() / resumen.segundos());
+    }
+
+    @Test
+    @Order(1)
+    public void testDeterminista() throws Exception {
+        System.out.println("test misma semilla, mismas filas");
+        GeneradorDatos.Config config = GeneradorDatos.Config.defecto(20_000);
+        for (GeneradorDatos.Tabla tabla : GeneradorDatos.Tabla.values()) {
+            // el mismo rango generado de una vez o en dos partes da los mismos bytes
+            CRC32 completo = new CRC32();
+            new GeneradorDatos(config).ordenes(tabla, 0, 20_000, crc(completo));
+            CRC32 partido = new CRC32();
+            GeneradorDatos otro = new GeneradorDatos(config);
+            otro.ordenes(tabla, 0, 7_000, crc(partido));
+            otro.ordenes(tabla, 7_000, 20_000, crc(partido));
+            Assertions.assertEquals(completo.getValue(), partido.getValue(), tabla.name());
+        }
+    }
+
+    @Test
+    @Order(2)
+    public void testConteosYConsistencia() throws Exception {
+        System.out.println("test conteos y consistencia de la carga");
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            Assertions.assertEquals(resumen.ordenes(), uno(st, "SELECT COUNT(*) FROM orden WHERE id_orden > " + GeneradorDatos.BASE_ORDEN));
+            Assertions.assertEquals(resumen.lineas(), uno(st, "SELECT COUNT(*) FROM orden_detalle WHERE id_orden > " + GeneradorDatos.BASE_ORDEN));
+            Assertions.assertEquals(resumen.pagos(), uno(st, "SELECT COUNT(*) FROM pago WHERE id_pago > " + GeneradorDatos.BASE_ORDEN));
+            // el precio de cada linea es el del rango de producto_precio que referencia y ese rango cubre la fecha
+            Assertions.assertEquals(0, uno(st, """
+                    SELECT COUNT(*) FROM orden_detalle od JOIN orden o ON o.id_orden = od.id_orden
+                    JOIN producto_precio pp ON pp.id_producto_precio = od.id_producto_precio
+                    WHERE o.id_orden > %d AND (od.precio <> pp.precio_sugerido OR o.fecha < pp.fecha_desde
+                       OR o.fecha > COALESCE(pp.fecha_hasta, 'infinity'::date))""".formatted(GeneradorDatos.BASE_ORDEN)));
+            // lo pagado es la suma de las lineas y las anuladas no tienen pago
+            Assertions.assertEquals(0, uno(st, """
+                    SELECT COUNT(*) FROM (SELECT od.id_orden, SUM(od.precio * od.cantidad) total FROM orden_detalle od
+                    WHERE od.id_orden > %d GROUP BY od.id_orden) l
+                    LEFT JOIN (SELECT p.id_orden, SUM(pd.monto) pagado FROM pago p JOIN pago_detalle pd ON pd.id_pago = p.id_pago GROUP BY p.id_orden) g
+                      ON g.id_orden = l.id_orden
+                    JOIN orden o ON o.id_orden = l.id_orden
+                    WHERE (o.anulada AND g.pagado IS NOT NULL) OR (NOT o.anulada AND g.pagado IS DISTINCT FROM l.total)""".formatted(GeneradorDatos.BASE_ORDEN)));
+            Assertions.assertEquals(0, uno(st, "SELECT COUNT(*) FROM orden_detalle WHERE precio IS NULL OR cantidad <= 0"));
+        }
+    }
+
+    @Test
+    @Order(3)
+    public void testDistribuciones() throws Exception {
+        System.out.println("test distribuciones realistas");
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            // 20 de 2000 productos se llevan buena parte de las lineas
+            long top = uno(st, """
+                    SELECT SUM(n) FROM (SELECT COUNT(*) n FROM orden_detalle od JOIN producto_precio pp ON pp.id_producto_precio = od.id_producto_precio
+                    WHERE od.id_orden > %d GROUP BY pp.id_producto ORDER BY n DESC LIMIT 20) t""".formatted(GeneradorDatos.BASE_ORDEN));
+            Assertions.assertTrue(top * 100 / resumen.lineas() >= 40, "popularidad poco sesgada: " + top);
+            Assertions.assertEquals(GeneradorDatos.SUCURSALES.length, uno(st, "SELECT COUNT(DISTINCT sucursal) FROM orden WHERE id_orden > " + GeneradorDatos.BASE_ORDEN));
+            Assertions.assertEquals(GeneradorDatos.METODOS_PAGO.length, uno(st, "SELECT COUNT(DISTINCT metodo_pago) FROM pago WHERE id_pago > " + GeneradorDatos.BASE_ORDEN));
+            // cada producto tiene varios rangos y algunos se traslapan
+            Assertions.assertTrue(uno(st, """
+                    SELECT COUNT(*) FROM producto_precio a JOIN producto_precio b ON a.id_producto = b.id_producto AND a.id_producto_precio < b.id_producto_precio
+                    WHERE a.id_producto > %d AND a.fecha_desde <= COALESCE(b.fecha_hasta, 'infinity'::date) AND b.fecha_desde <= COALESCE(a.fecha_hasta, 'infinity'::date)"""
+                    .formatted(GeneradorDatos.BASE_PRODUCTO)) > 0);
+            Assertions.assertTrue(uno(st, "SELECT COUNT(*) FROM orden WHERE anulada AND id_orden > " + GeneradorDatos.BASE_ORDEN) > 0);
+        }
+    }
+
+    @Test
+    @Order(4)
+    public void testLineasPorSegundo() {
+        System.out.println("test lineas de orden_detalle por segundo en la carga");
+        Assumptions.assumeTrue(System.getProperty("datos.ordenes") != null, "solo con -Ddatos.ordenes");
+        double medidas = resumen.lineas() / resumen.segundos();
+        Assertions.assertTrue(medidas >= lineasPorSegundo, String.format("%.0f lineas/s, minimo %d", medidas, lineasPorSegundo));
+    }
+
+    /**
+     * La memoria no depende de cuantas lineas se generan: el heap usado
+     * despues de un GC no crece mientras se escribe {@code orden_detalle}
+     * para todas las ordenes de la corrida.
+     */
+    @Test
+    @Order(5)
+    public void testHeapAcotado() throws Exception {
+        System.out.println("test heap del generador constante con las lineas escritas");
+        List<Long> muestras = new ArrayList<>();
+        long[] bytes = {0};
+        OutputStream destino = new OutputStream() {
+            @Override
+            public void write(int b) {
+                contar(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                contar(len);
+            }
+
+            void contar(int n) {
+                long antes = bytes[0];
+                bytes[0] += n;
+                if (antes / MUESTRA_BYTES != bytes[0] / MUESTRA_BYTES) {
+                    muestras.add(usado());
+                }
+            }
+        };
+        long lineas = new GeneradorDatos(GeneradorDatos.Config.defecto(ordenes)).ordenes(GeneradorDatos.Tabla.ORDEN_DETALLE, 0, ordenes, destino);
+        Assertions.assertTrue(muestras.size() >= 3, "muy pocas lineas para muestrear");
+        // la primera muestra todavia incluye la carga de clases y el JIT
+        long crecimiento = muestras.get(muestras.size() - 1) - muestras.get(1);
+        System.out.printf("lineas=%d MB=%d heap despues de GC al segundo MB=%dKB al final=%dKB%n", lineas, bytes[0] >> 20,
+                muestras.get(1) >> 10, muestras.get(muestras.size() - 1) >> 10);
+        Assertions.assertTrue(crecimiento < 256 * 1024, "el heap crecio " + (crecimiento >> 10) + "KB con " + lineas + " lineas");
+    }
+
+    static long usado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 2; i++) {
+            memoria.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+
+    static long uno(Statement st, String sql) throws Exception {
+        try (ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    static OutputStream crc(CRC32 crc) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                crc.update(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                crc.update(b, off, len);
+            }
+        };
+    }
+}
@@ -0,0 +1,369 @@
+import org.example.Histograma;
+import org.example.LiquidacionPagos;
+import org.example.OrdenIngesta;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class LiquidacionPagosTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    // pagos por camino (sincrono y asincrono) en la prueba de carga
+    static int pagos = Integer.getInteger("liquidacion.pagos", 2000);
+    static int cajas = Integer.getInteger("liquidacion.cajas", 32);
+
+    static final long[] PRODUCTOS = {1001, 1002, 1003, 1005, 1006, 1007, 1008};
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    @TempDir
+    Path directorio;
+
+    PGSimpleDataSource dataSource;
+    // {idPago, idOrden} listos para liquidar
+    List<long[]> disponibles = new ArrayList<>();
+    AtomicInteger siguiente = new AtomicInteger();
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        dataSource.setReWriteBatchedInserts(true);
+        // uq_pago_detalle_liquidacion
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("indices_tpi135_2025.sql");
+             Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            String script = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^--.*$", "");
+            for (String sentencia : script.split(";")) {
+                if (!sentencia.isBlank()) {
+                    st.execute(sentencia);
+                }
+            }
+        }
+        StringBuilder ndjson = new StringBuilder();
+        Random azar = new Random(135);
+        for (int i = 0; i < pagos * 2 + 500; i++) {
+            ndjson.append("{\"sucursal\":\"SS\",\"fecha\":\"2025-06-01\",\"productoList\":[");
+            for (int l = 0, n = 1 + azar.nextInt(4); l < n; l++) {
+                ndjson.append(l == 0 ? "" : ",").append("{\"idProducto\":").append(PRODUCTOS[(i + l) % PRODUCTOS.length])
+                        .append(",\"cantidad\":").append(1 + azar.nextInt(3)).append('}');
+            }
+            ndjson.append("]}\n");
+        }
+        List<Long> ordenes = new ArrayList<>();
+        OrdenIngesta.crear(dataSource, OrdenIngesta.LOTE_DEFECTO).ingerir(new StringReader(ndjson.toString()), r -> {
+            Assertions.assertTrue(r.exitoso(), r.error());
+            synchronized (ordenes) {
+                ordenes.add(r.idOrden());
+            }
+        });
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO pago (id_orden, fecha, metodo_pago) SELECT o, CURRENT_DATE, 'EFECTIVO' FROM unnest(?) o RETURNING id_pago, id_orden")) {
+            ps.setArray(1, c.createArrayOf("bigint", ordenes.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    disponibles.add(new long[]{rs.getLong(1), rs.getLong(2)});
+                }
+            }
+        }
+    }
+
+    long[] tomar() {
+        return disponibles.get(siguiente.getAndIncrement());
+    }
+
+    /**
+     * Lo que hace hoy la caja: calculo del total y {@code pago_detalle} en
+     * una transaccion por pago, esperando el commit.
+     */
+    void sincrono(long idPago, long idOrden) throws Exception {
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            BigDecimal total;
+            try (PreparedStatement ps = c.prepareStatement("SELECT SUM(precio * cantidad) FROM orden_detalle WHERE id_orden = ?")) {
+                ps.setLong(1, idOrden);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    total = rs.getBigDecimal(1);
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO pago_detalle (id_pago, monto) VALUES (?, ?)")) {
+                ps.setLong(1, idPago);
+                ps.setBigDecimal(2, total);
+                ps.executeUpdate();
+            }
+            c.commit();
+        }
+    }
+
+    @Test
+    @Order(1)
+    public void testP99ContraSincrono() throws Exception {
+        System.out.println("test p99 del cobro: sincrono contra liquidacion asincrona");
+        Histograma sincrono = new Histograma();
+        Histograma asincrono = new Histograma();
+        List<long[]> asincronos = new ArrayList<>();
+        for (int i = 0; i < pagos; i++) {
+            asincronos.add(tomar());
+        }
+        List<long[]> sincronos = new ArrayList<>();
+        for (int i = 0; i < pagos; i++) {
+            sincronos.add(tomar());
+        }
+
+        correr(sincronos, p -> {
+            long inicio = System.nanoTime();
+            sincrono(p[0], p[1]);
+            sincrono.registrar((System.nanoTime() - inicio) / 1000);
+        });
+        try (LiquidacionPagos liquidacion = LiquidacionPagos.abrir(dataSource, directorio.resolve("carga.diario"), pagos, 4, 64)) {
+            liquidacion.iniciar();
+            correr(asincronos, p -> {
+                long inicio = System.nanoTime();
+                LiquidacionPagos.Respuesta r = liquidacion.aceptar(new LiquidacionPagos.Solicitud("pago-" + p[0], p[0], p[1]));
+                asincrono.registrar((System.nanoTime() - inicio) / 1000);
+                Assertions.assertEquals(202, r.status());
+            });
+            esperar(liquidacion, pagos);
+            System.out.printf("sincrono p50=%dus p99=%dus | asincrono p50=%dus p99=%dus | pagos por transaccion=%.1f%n",
+                    sincrono.percentil(0.5), sincrono.percentil(0.99), asincrono.percentil(0.5), asincrono.percentil(0.99), liquidacion.promedioLote());
+            Assertions.assertEquals(0, liquidacion.fallidos());
+            Assertions.assertTrue(liquidacion.promedioLote() > 1, "no hubo group commit");
+        }
+        Assertions.assertTrue(asincrono.percentil(0.99) < sincrono.percentil(0.99), "el p99 asincrono no mejora al sincrono");
+
+        // cada pago asincrono tiene un solo detalle y su monto es el total de la orden
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("""
+                     SELECT COUNT(*), COUNT(*) FILTER (WHERE pd.monto = t.total) FROM pago_detalle pd JOIN pago p ON p.id_pago = pd.id_pago
+                     JOIN (SELECT id_orden, SUM(precio * cantidad) total FROM orden_detalle GROUP BY id_orden) t ON t.id_orden = p.id_orden
+                     WHERE pd.observaciones LIKE 'liquidacion:%'""")) {
+            rs.next();
+            Assertions.assertEquals(pagos, rs.getLong(1));
+            Assertions.assertEquals(pagos, rs.getLong(2));
+        }
+    }
+
+    @Test
+    @Order(2)
+    public void testIdempotenciaYContrapresion() throws Exception {
+        System.out.println("test llave repetida y cola llena");
+        try (LiquidacionPagos liquidacion = LiquidacionPagos.abrir(dataSource, directorio.resolve("cola.diario"), 4, 2, 8)) {
+            List<long[]> usados = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                long[] p = tomar();
+                usados.add(p);
+                Assertions.assertEquals(202, liquidacion.aceptar(new LiquidacionPagos.Solicitud("cola-" + p[0], p[0], p[1])).status());
+            }
+            long[] primero = usados.get(0);
+            LiquidacionPagos.Respuesta repetida = liquidacion.aceptar(new LiquidacionPagos.Solicitud("cola-" + primero[0], primero[0], primero[1]));
+            Assertions.assertEquals(202, repetida.status());
+            Assertions.assertEquals(LiquidacionPagos.RUTA + "cola-" + primero[0], repetida.ubicacion());
+            long[] otro = tomar();
+            Assertions.assertEquals(503, liquidacion.aceptar(new LiquidacionPagos.Solicitud("cola-" + otro[0], otro[0], otro[1])).status());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> liquidacion.aceptar(new LiquidacionPagos.Solicitud("cola-" + primero[0], otro[0], otro[1])));
+
+            liquidacion.iniciar();
+            esperar(liquidacion, 4);
+            LiquidacionPagos.Respuesta terminada = liquidacion.aceptar(new LiquidacionPagos.Solicitud("cola-" + primero[0], primero[0], primero[1]));
+            Assertions.assertEquals(200, terminada.status());
+            Assertions.assertEquals(LiquidacionPagos.Estado.LIQUIDADO, terminada.seguimiento().estado());
+            Assertions.assertTrue(LiquidacionPagos.aJson(terminada.seguimiento()).contains("\"estado\":\"LIQUIDADO\""));
+            Assertions.assertEquals(1, detalles(primero[0]));
+        }
+    }
+
+    @Test
+    @Order(3)
+    public void testReinicioReproduceElDiario() throws Exception {
+        System.out.println("test caida y reinicio con el diario");
+        Path archivo = directorio.resolve("reinicio.diario");
+        List<long[]> usados = new ArrayList<>();
+        LiquidacionPagos antes = LiquidacionPagos.abrir(dataSource, archivo, 100, 2, 16);
+        for (int i = 0; i < 50; i++) {
+            long[] p = tomar();
+            usados.add(p);
+            Assertions.assertEquals(202, antes.aceptar(new LiquidacionPagos.Solicitud("reinicio-" + p[0], p[0], p[1])).status());
+        }
+        antes.detener();
+        // una linea a medio escribir al momento de la caida
+        Files.writeString(archivo, "A\treinicio-x\t1", StandardOpenOption.APPEND);
+
+        try (LiquidacionPagos despues = LiquidacionPagos.abrir(dataSource, archivo, 100, 2, 16)) {
+            Assertions.assertEquals(50, despues.pendientes());
+            Assertions.assertEquals(LiquidacionPagos.Estado.PENDIENTE, despues.estado("reinicio-" + usados.get(0)[0]).estado());
+            despues.iniciar();
+            esperar(despues, 50);
+        }
+        // se perdieron las marcas de liquidado: se vuelve a procesar y la base no duplica
+        StringBuilder perdidas = new StringBuilder();
+        for (long[] p : usados.subList(0, 10)) {
+            perdidas.append("A\treinicio-").append(p[0]).append('\t').append(p[0]).append('\t').append(p[1]).append('\n');
+        }
+        Files.writeString(archivo, perdidas, StandardOpenOption.APPEND);
+        try (LiquidacionPagos otraVez = LiquidacionPagos.abrir(dataSource, archivo, 100, 2, 16)) {
+            Assertions.assertEquals(10, otraVez.pendientes());
+            otraVez.iniciar();
+            esperar(otraVez, 10);
+        }
+        for (long[] p : usados) {
+            Assertions.assertEquals(1, detalles(p[0]), "pago " + p[0]);
+        }
+        try (LiquidacionPagos vacio = LiquidacionPagos.abrir(dataSource, archivo, 100, 2, 16)) {
+            Assertions.assertEquals(0, vacio.pendientes());
+        }
+    }
+
+    /**
+     * Caida con la cola llena y lotes en vuelo: el diario tiene mas pendientes
+     * que la capacidad y aun asi el servicio arranca y los liquida todos.
+     */
+    @Test
+    @Order(4)
+    public void testReinicioConMasPendientesQueCapacidad() throws Exception {
+        System.out.println("test reinicio con mas pendientes que capacidad");
+        Path archivo = directorio.resolve("desborde.diario");
+        List<long[]> usados = new ArrayList<>();
+        LiquidacionPagos antes = LiquidacionPagos.abrir(dataSource, archivo, 30, 2, 8);
+        for (int i = 0; i < 30; i++) {
+            long[] p = tomar();
+            usados.add(p);
+            Assertions.assertEquals(202, antes.aceptar(new LiquidacionPagos.Solicitud("desborde-" + p[0], p[0], p[1])).status());
+        }
+        antes.detener();
+        // lo que los trabajadores ya habian sacado de la cola (2 x 8) cuando se cayo
+        StringBuilder enVuelo = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            long[] p = tomar();
+            usados.add(p);
+            enVuelo.append("A\tdesborde-").append(p[0]).append('\t').append(p[0]).append('\t').append(p[1]).append('\n');
+        }
+        Files.writeString(archivo, enVuelo, StandardOpenOption.APPEND);
+
+        try (LiquidacionPagos despues = LiquidacionPagos.abrir(dataSource, archivo, 30, 2, 8)) {
+            Assertions.assertEquals(46, despues.pendientes());
+            long[] otro = tomar();
+            Assertions.assertEquals(503, despues.aceptar(new LiquidacionPagos.Solicitud("desborde-" + otro[0], otro[0], otro[1])).status());
+            despues.iniciar();
+            esperar(despues, 46);
+            Assertions.assertEquals(0, despues.fallidos());
+        }
+        for (long[] p : usados) {
+            Assertions.assertEquals(1, detalles(p[0]), "pago " + p[0]);
+        }
+    }
+
+    /**
+     * La base rechaza las primeras conexiones: el pago espera y se liquida.
+     * Un pago que no existe viola la llave foranea y ese si falla, sin
+     * arrastrar al resto del lote.
+     */
+    @Test
+    @Order(5)
+    public void testTransitorioReintentaYDefinitivoFalla() throws Exception {
+        System.out.println("test errores transitorios reintentados, llave foranea fallida");
+        AtomicInteger caidas = new AtomicInteger(3);
+        PGSimpleDataSource inestable = new PGSimpleDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (caidas.getAndDecrement() > 0) {
+                    throw new SQLException("Connection refused", "08001");
+                }
+                return super.getConnection();
+            }
+        };
+        inestable.setUrl(postgres.getJdbcUrl());
+        inestable.setUser(dbUser);
+        inestable.setPassword(dbPassword);
+        long[] bueno = tomar();
+        long[] otro = tomar();
+        try (LiquidacionPagos liquidacion = LiquidacionPagos.abrir(inestable, directorio.resolve("errores.diario"), 10, 1, 8)) {
+            Assertions.assertEquals(202, liquidacion.aceptar(new LiquidacionPagos.Solicitud("errores-" + bueno[0], bueno[0], bueno[1])).status());
+            Assertions.assertEquals(202, liquidacion.aceptar(new LiquidacionPagos.Solicitud("errores-sin-pago", 999_999_999L, otro[1])).status());
+            liquidacion.iniciar();
+            esperar(liquidacion, 2);
+            Assertions.assertTrue(liquidacion.reintentos() >= 3, "reintentos=" + liquidacion.reintentos());
+            Assertions.assertEquals(LiquidacionPagos.Estado.LIQUIDADO, liquidacion.estado("errores-" + bueno[0]).estado());
+            LiquidacionPagos.Seguimiento fallido = liquidacion.estado("errores-sin-pago");
+            Assertions.assertEquals(LiquidacionPagos.Estado.FALLIDO, fallido.estado());
+            Assertions.assertNotNull(fallido.error());
+            Assertions.assertEquals(1, liquidacion.fallidos());
+        }
+        Assertions.assertEquals(1, detalles(bueno[0]));
+
+        // la misma llave insertada por fuera de la liquidacion choca con uq_pago_detalle_liquidacion
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO pago_detalle (id_pago, monto, observaciones) VALUES (?, 1.00, ?)")) {
+            ps.setLong(1, bueno[0]);
+            ps.setString(2, "liquidacion:errores-" + bueno[0]);
+            SQLException duplicado = Assertions.assertThrows(SQLException.class, ps::executeUpdate);
+            Assertions.assertEquals("23505", duplicado.getSQLState());
+        }
+    }
+
+    interface Cobro {
+        void cobrar(long[] pago) throws Exception;
+    }
+
+    static void correr(List<long[]> pagos, Cobro cobro) throws Exception {
+        List<Future<?>> tareas = new ArrayList<>();
+        try (ExecutorService hilos = Executors.newFixedThreadPool(cajas)) {
+            for (long[] p : pagos) {
+                tareas.add(hilos.submit(() -> {
+                    cobro.cobrar(p);
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        }
+    }
+
+    static void esperar(LiquidacionPagos liquidacion, long cuantos) throws InterruptedException {
+        long limite = System.nanoTime() + 60_000_000_000L;
+        while (liquidacion.liquidados() + liquidacion.fallidos() < cuantos) {
+            Assertions.assertTrue(System.nanoTime() < limite, "la liquidacion no termino");
+            Thread.sleep(20);
+        }
+    }
+
+    long detalles(long idPago) throws Exception {
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM pago_detalle WHERE id_pago = " + idPago)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
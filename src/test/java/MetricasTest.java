@@ -0,0 +1,169 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.Metricas;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MetricasTest {
+
+    static int segundos = Integer.getInteger("metricas.segundos", 3);
+    static int usuarios = Integer.getInteger("metricas.usuarios", 8);
+
+    static final Pattern CUENTA_PRODUCTO = Pattern.compile("^pupasv_recurso_segundos_count\\{metodo=\"ProductoResource.findRange\"} (\\d+)$", Pattern.MULTILINE);
+
+    @Test
+    public void testNMasUnoYFormato() {
+        System.out.println("test deteccion N+1 y formato Prometheus");
+        Metricas metricas = new Metricas(3);
+        Metricas.Temporizador recurso = metricas.recurso("OrdenResource.findById");
+        Metricas.Temporizador consulta = metricas.consulta("OrdenBean.findById");
+
+        String id = metricas.iniciar(null);
+        Assertions.assertEquals(id, metricas.idPeticion());
+        metricas.consultaEjecutada(consulta, 2_000_000);
+        Assertions.assertEquals(1, metricas.terminar(recurso, 3_000_000));
+        Assertions.assertNull(metricas.idPeticion());
+
+        Assertions.assertEquals("abc", metricas.iniciar("abc"));
+        for (int i = 0; i < 4; i++) {
+            metricas.consultaEjecutada(consulta, 1_000);
+        }
+        Assertions.assertEquals(4, metricas.terminar(recurso, 20_000_000));
+        // fuera de una peticion la consulta se mide pero no cuenta para N+1
+        metricas.consultaEjecutada(consulta, 1_000);
+
+        String texto = metricas.exportar();
+        Assertions.assertTrue(texto.contains("# TYPE pupasv_recurso_segundos histogram\n"));
+        Assertions.assertTrue(texto.contains("pupasv_recurso_segundos_bucket{metodo=\"OrdenResource.findById\",le=\"0.005\"} 1\n"));
+        Assertions.assertTrue(texto.contains("pupasv_recurso_segundos_bucket{metodo=\"OrdenResource.findById\",le=\"+Inf\"} 2\n"));
+        Assertions.assertTrue(texto.contains("pupasv_consulta_segundos_count{metodo=\"OrdenBean.findById\"} 6\n"));
+        Assertions.assertTrue(texto.contains("pupasv_n_mas_uno_total{metodo=\"OrdenResource.findById\"} 1\n"));
+        Assertions.assertTrue(texto.contains("pupasv_recurso_segundos_sum{metodo=\"OrdenResource.findById\"} 0.023000\n"));
+    }
+
+    /**
+     * Servidor de pruebas con los endpoints del flujo de {@link CargaRest}:
+     * el listado de productos hace una consulta por fila (N+1). Mientras corre
+     * la carga se raspa {@code /metrics} y las cuentas deben crecer.
+     */
+    @Test
+    public void testRaspadoDuranteCarga() throws Exception {
+        System.out.println("test raspado de /metrics durante la carga REST");
+        Metricas metricas = new Metricas(5);
+        LongAdder sinId = new LongAdder();
+        HttpServer servidor = servidor(metricas, sinId);
+        servidor.start();
+        String url = "http://localhost:" + servidor.getAddress().getPort();
+        CargaRest carga = new CargaRest(url + "/v1/");
+        HttpClient cliente = HttpClient.newHttpClient();
+        try {
+            CompletableFuture<CargaRest.Resultado> corrida = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return carga.cerrado(usuarios, segundos);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            List<Long> cuentas = new ArrayList<>();
+            HttpResponse<String> raspado = null;
+            while (!corrida.isDone()) {
+                raspado = cliente.send(HttpRequest.newBuilder(URI.create(url + "/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+                Assertions.assertEquals(200, raspado.statusCode());
+                Matcher m = CUENTA_PRODUCTO.matcher(raspado.body());
+                if (m.find()) {
+                    cuentas.add(Long.parseLong(m.group(1)));
+                }
+                Thread.sleep(200);
+            }
+            CargaRest.Resultado resultado = corrida.get();
+            raspado = cliente.send(HttpRequest.newBuilder(URI.create(url + "/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+            System.out.printf("raspados=%d peticiones=%d n+1 productos=%d%n", cuentas.size(), resultado.peticiones(),
+                    metricas.recurso("ProductoResource.findRange").getNMasUno());
+
+            Assertions.assertEquals(Metricas.TIPO_CONTENIDO, raspado.headers().firstValue("Content-Type").orElse(null));
+            Assertions.assertEquals(0, resultado.errores());
+            Assertions.assertEquals(0, sinId.sum(), "peticiones sin X-Request-ID");
+            Assertions.assertTrue(cuentas.size() >= 2);
+            for (int i = 1; i < cuentas.size(); i++) {
+                Assertions.assertTrue(cuentas.get(i) >= cuentas.get(i - 1));
+            }
+            Assertions.assertTrue(cuentas.get(cuentas.size() - 1) > cuentas.get(0));
+            Assertions.assertEquals(metricas.recurso("ProductoResource.findRange").getLatencias().cantidad(),
+                    metricas.recurso("ProductoResource.findRange").getNMasUno());
+            Assertions.assertEquals(0, metricas.recurso("OrdenResource.create").getNMasUno());
+            Assertions.assertTrue(raspado.body().contains("pupasv_consulta_segundos_count{metodo=\"ProductoBean.findRange\"}"));
+        } finally {
+            carga.close();
+            servidor.stop(0);
+        }
+    }
+
+    static HttpServer servidor(Metricas metricas, LongAdder sinId) throws IOException {
+        HttpServer servidor = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        servidor.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        AtomicLong ids = new AtomicLong(1000);
+        Metricas.Temporizador findRange = metricas.consulta("ProductoBean.findRange");
+        Metricas.Temporizador findById = metricas.consulta("ProductoPrecioBean.findByIdProducto");
+        Metricas.Temporizador create = metricas.consulta("AbstractDataAccess.create");
+
+        servidor.createContext("/metrics", metricas.manejador());
+        servidor.createContext("/v1/producto", e -> atender(metricas, sinId, e, "ProductoResource.findRange", 200, null, () -> {
+            simular(metricas, findRange);
+            for (int i = 0; i < 10; i++) {
+                simular(metricas, findById);
+            }
+        }));
+        servidor.createContext("/v1/orden", e -> atender(metricas, sinId, e, "OrdenResource.create", 201, "/v1/orden/" + ids.incrementAndGet(), () -> simular(metricas, create)));
+        servidor.createContext("/v1/ordenDetalle/mixto", e -> atender(metricas, sinId, e, "OrdenDetalleResource.generarOrdenDetalleMixto", 200, null, () -> {
+            simular(metricas, findById);
+            simular(metricas, create);
+        }));
+        servidor.createContext("/v1/pago", e -> atender(metricas, sinId, e, "PagoResource.create", 201, "/v1/pago/" + ids.incrementAndGet(), () -> simular(metricas, create)));
+        servidor.createContext("/v1/pagoDetalle", e -> atender(metricas, sinId, e, "PagoDetalleResource.create", 201, null, () -> simular(metricas, create)));
+        return servidor;
+    }
+
+    static void simular(Metricas metricas, Metricas.Temporizador consulta) {
+        long inicio = System.nanoTime();
+        Thread.onSpinWait();
+        metricas.consultaEjecutada(consulta, System.nanoTime() - inicio);
+    }
+
+    static void atender(Metricas metricas, LongAdder sinId, HttpExchange intercambio, String metodo, int status, String ubicacion, Runnable trabajo) throws IOException {
+        long inicio = System.nanoTime();
+        String recibido = intercambio.getRequestHeaders().getFirst(Metricas.X_REQUEST_ID);
+        if (recibido == null) {
+            sinId.increment();
+        }
+        try (intercambio) {
+            intercambio.getRequestBody().readAllBytes();
+            String id = metricas.iniciar(recibido);
+            trabajo.run();
+            intercambio.getResponseHeaders().set(Metricas.X_REQUEST_ID, id);
+            if (ubicacion != null) {
+                intercambio.getResponseHeaders().set("Location", "http://localhost" + ubicacion);
+            }
+            intercambio.getResponseHeaders().set("Content-Type", "application/json");
+            byte[] cuerpo = "[]".getBytes();
+            intercambio.sendResponseHeaders(status, cuerpo.length);
+            intercambio.getResponseBody().write(cuerpo);
+        } finally {
+            metricas.terminar(metricas.recurso(metodo), System.nanoTime() - inicio);
+        }
+    }
+}
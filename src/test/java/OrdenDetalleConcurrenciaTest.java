@@ -0,0 +1,134 @@
+import org.example.OrdenIngesta;
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Varias cajas agregando productos a las mismas mesas al mismo tiempo:
+ * ninguna agregada debe fallar por {@code pk_orden_detalle} ni perderse.
+ */
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OrdenDetalleConcurrenciaTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    static int agregados = Integer.getInteger("upsert.agregados", 5000);
+    static int hilos = Integer.getInteger("upsert.hilos", 32);
+    static int mesas = Integer.getInteger("upsert.mesas", 4);
+    // agregados por segundo que debe sostener con pocas mesas calientes
+    static int minimo = Integer.getInteger("upsert.minimo", 300);
+
+    static final long[] PRODUCTOS = {1001, 1002, 1003, 1005, 1006, 1007, 1008};
+    static final long PRIMERA_MESA = 900_001;
+    static final LocalDate FECHA = LocalDate.parse("2025-06-01");
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    PGSimpleDataSource dataSource;
+    OrdenIngesta ingesta;
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        ingesta = OrdenIngesta.crear(dataSource, OrdenIngesta.LOTE_DEFECTO);
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            for (int m = 0; m < mesas; m++) {
+                st.executeUpdate("INSERT INTO orden (id_orden, fecha, sucursal, anulada) VALUES (" + (PRIMERA_MESA + m) + ", '" + FECHA + "', 'SS', false)");
+            }
+        }
+    }
+
+    @Test
+    public void testAgregadosConcurrentesEnMesasCalientes() throws Exception {
+        System.out.println("test upsert concurrente de orden_detalle");
+        // unidades esperadas por mesa y producto
+        AtomicLongArray esperado = new AtomicLongArray(mesas * PRODUCTOS.length);
+        List<Future<?>> tareas = new ArrayList<>();
+        long inicio = System.nanoTime();
+        try (ExecutorService cajas = Executors.newFixedThreadPool(hilos)) {
+            for (int i = 0; i < agregados; i++) {
+                tareas.add(cajas.submit(() -> {
+                    ThreadLocalRandom azar = ThreadLocalRandom.current();
+                    int mesa = azar.nextInt(mesas);
+                    // de uno a tres productos distintos en cualquier orden, como los manda la caja
+                    List<OrdenIngesta.Linea> lineas = new ArrayList<>();
+                    int primero = azar.nextInt(PRODUCTOS.length);
+                    for (int l = 0, n = 1 + azar.nextInt(3); l < n; l++) {
+                        int p = (primero + l * 3) % PRODUCTOS.length;
+                        int cantidad = 1 + azar.nextInt(3);
+                        lineas.add(new OrdenIngesta.Linea(PRODUCTOS[p], cantidad));
+                        esperado.addAndGet(mesa * PRODUCTOS.length + p, cantidad);
+                    }
+                    ingesta.agregar(PRIMERA_MESA + mesa, FECHA, lineas, List.of());
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("agregados=%d hilos=%d mesas=%d segundos=%.2f agregados/s=%.0f%n", agregados, hilos, mesas, segundos, agregados / segundos);
+
+        Map<String, Long> guardado = new HashMap<>();
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT od.id_orden, pp.id_producto, SUM(od.cantidad), COUNT(*) FROM orden_detalle od"
+                     + " JOIN producto_precio pp ON pp.id_producto_precio = od.id_producto_precio WHERE od.id_orden >= " + PRIMERA_MESA
+                     + " GROUP BY od.id_orden, pp.id_producto")) {
+            while (rs.next()) {
+                // un solo precio vigente por producto: una linea por mesa y producto
+                Assertions.assertEquals(1, rs.getLong(4));
+                guardado.put(rs.getLong(1) + ":" + rs.getLong(2), rs.getLong(3));
+            }
+        }
+        for (int m = 0; m < mesas; m++) {
+            for (int p = 0; p < PRODUCTOS.length; p++) {
+                long unidades = esperado.get(m * PRODUCTOS.length + p);
+                Assertions.assertEquals(unidades == 0 ? null : unidades, guardado.get((PRIMERA_MESA + m) + ":" + PRODUCTOS[p]),
+                        "mesa " + (PRIMERA_MESA + m) + " producto " + PRODUCTOS[p]);
+            }
+        }
+        Assertions.assertTrue(agregados / segundos >= minimo, "agregados/s por debajo de " + minimo);
+    }
+
+    @Test
+    public void testComboSeSumaALaLineaExistente() throws Exception {
+        System.out.println("test combo acumulado sobre la linea del producto");
+        long mesa = PRIMERA_MESA + mesas + 10;
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("INSERT INTO orden (id_orden, fecha, sucursal, anulada) VALUES (" + mesa + ", '" + FECHA + "', 'SS', false)");
+        }
+        // igual que en OrdenIngestaTest: 4 pupusas sueltas mas las 10 del combo 1001
+        Assertions.assertEquals(1, ingesta.agregar(mesa, FECHA, List.of(new OrdenIngesta.Linea(1003, 4)), List.of()));
+        ingesta.agregar(mesa, FECHA, List.of(), List.of(new OrdenIngesta.Linea(1001, 1)));
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT cantidad FROM orden_detalle WHERE id_orden=" + mesa + " AND id_producto_precio=1003")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(14, rs.getInt(1));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ingesta.agregar(0, FECHA, List.of(new OrdenIngesta.Linea(1003, 1)), List.of()));
+    }
+}
@@ -0,0 +1,115 @@
+import org.example.OrdenIngesta;
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class OrdenIngestaTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    // -Dingesta.ordenes=100000 para corridas largas
+    static int ordenes = Integer.getInteger("ingesta.ordenes", 20000);
+    static int lote = Integer.getInteger("ingesta.lote", OrdenIngesta.LOTE_DEFECTO);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    PGSimpleDataSource dataSource;
+    OrdenIngesta ingesta;
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        dataSource.setReWriteBatchedInserts(true);
+        ingesta = OrdenIngesta.crear(dataSource, lote);
+    }
+
+    @Test
+    @Order(1)
+    public void testNdjsonConErroresPorOrden() throws Exception {
+        System.out.println("test ingesta NDJSON con resultado por orden");
+        String entrada = """
+                {"referencia":"a1","sucursal":"SS","fecha":"2025-06-01","productoList":[{"idProducto":1003,"cantidad":4}],"comboList":[{"idCombo":1001,"cantidad":1}]}
+                {"referencia":"a2","sucursal":"SS","fecha":"2025-06-01","productoList":[{"idProducto":999999,"cantidad":1}]}
+                {"referencia":"a3", esto no es json
+                {"referencia":"a4","sucursal":"Zarsa","fecha":"2025-06-01","productoList":[{"idProducto":1012,"cantidad":2}]}
+                """;
+        List<OrdenIngesta.Resultado> resultados = new ArrayList<>();
+        Assertions.assertEquals(4, ingesta.ingerir(new StringReader(entrada), resultados::add));
+        resultados.sort((a, b) -> Long.compare(a.posicion(), b.posicion()));
+
+        Assertions.assertTrue(resultados.get(0).exitoso());
+        Assertions.assertFalse(resultados.get(1).exitoso());
+        Assertions.assertFalse(resultados.get(2).exitoso());
+        Assertions.assertTrue(resultados.get(3).exitoso());
+        Assertions.assertTrue(OrdenIngesta.aJson(resultados.get(1)).contains("\"error\""));
+
+        // pupusas sueltas y las del combo quedan en una sola linea: 4 + 10
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT cantidad, precio FROM orden_detalle WHERE id_orden=" + resultados.get(0).idOrden() + " AND id_producto_precio=1003")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(14, rs.getInt(1));
+            Assertions.assertEquals(new java.math.BigDecimal("0.80"), rs.getBigDecimal(2));
+        }
+    }
+
+    @Test
+    @Order(2)
+    public void testRendimiento() throws Exception {
+        System.out.println("test ingesta masiva, meta 10k ordenes/minuto");
+        StringBuilder arreglo = new StringBuilder("[");
+        Random random = new Random(135);
+        long[] productos = {1001, 1002, 1003, 1005, 1006, 1007, 1008, 1009, 1010, 1011, 1012, 1013, 1014};
+        long[] combos = {1001, 1002, 1004, 1005, 1006, 1008, 1009, 1010};
+        for (int i = 0; i < ordenes; i++) {
+            arreglo.append(i == 0 ? "" : ",").append("{\"referencia\":\"agg-").append(i).append("\",\"sucursal\":\"SS\",\"fecha\":\"2025-06-01\",\"productoList\":[");
+            int lineas = 1 + random.nextInt(5);
+            for (int l = 0; l < lineas; l++) {
+                arreglo.append(l == 0 ? "" : ",").append("{\"idProducto\":").append(productos[random.nextInt(productos.length)]).append(",\"cantidad\":").append(1 + random.nextInt(3)).append('}');
+            }
+            arreglo.append("],\"comboList\":[");
+            if (random.nextInt(3) == 0) {
+                arreglo.append("{\"idCombo\":").append(combos[random.nextInt(combos.length)]).append(",\"cantidad\":1}");
+            }
+            arreglo.append("]}");
+        }
+        arreglo.append(']');
+
+        long[] exitosas = {0};
+        long inicio = System.nanoTime();
+        ingesta.ingerir(new StringReader(arreglo.toString()), r -> {
+            if (r.exitoso()) {
+                exitosas[0]++;
+            }
+        });
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        double porMinuto = exitosas[0] / segundos * 60;
+        System.out.printf("ordenes=%d lote=%d segundos=%.2f ordenes/minuto=%.0f%n", exitosas[0], lote, segundos, porMinuto);
+
+        Assertions.assertEquals(ordenes, exitosas[0]);
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM orden WHERE sucursal='SS' AND fecha='2025-06-01'")) {
+            rs.next();
+            Assertions.assertTrue(rs.getLong(1) >= ordenes);
+        }
+        Assertions.assertTrue(porMinuto >= 10_000, "ordenes/minuto por debajo de la meta: " + porMinuto);
+    }
+}
@@ -0,0 +1,120 @@
+import org.example.Paginacion;
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link Paginacion#pagina} contra Postgres: recorrido completo por llaves
+ * compuestas y el cambio de total exacto a estimado en
+ * {@link Paginacion#UMBRAL_ESTIMACION}.
+ */
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PaginacionBaseTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    // ordenes con tres lineas cada una: mas de UMBRAL_ESTIMACION filas en orden_detalle
+    static final int ORDENES = 4_000;
+    static final long PRIMERA_ORDEN = 500_000;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    PGSimpleDataSource dataSource;
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute("INSERT INTO orden (id_orden, fecha, sucursal, anulada) SELECT g, DATE '2025-06-01', 'SS', false FROM generate_series(" + PRIMERA_ORDEN + ", " + (PRIMERA_ORDEN + ORDENES - 1) + ") g");
+            st.execute("INSERT INTO orden_detalle (id_orden, id_producto_precio, cantidad, precio) SELECT o, p, 1, 1.00 FROM generate_series("
+                    + PRIMERA_ORDEN + ", " + (PRIMERA_ORDEN + ORDENES - 1) + ") o CROSS JOIN (VALUES (1001), (1003), (1007)) AS pp(p)");
+            st.execute("ANALYZE orden_detalle");
+            st.execute("ANALYZE producto_detalle");
+        }
+    }
+
+    @Test
+    public void testRecorridoLlaveCompuesta() throws Exception {
+        System.out.println("test todas las paginas de orden_detalle y producto_detalle sin huecos ni repetidos");
+        // 997 no es multiplo de 3: los cortes caen a mitad de una orden
+        recorrer(Paginacion.llave("OrdenDetalle"), "id_orden, id_producto_precio", 997);
+        recorrer(Paginacion.llave("ProductoDetalle"), "id_tipo_producto, id_producto", 2);
+    }
+
+    @Test
+    public void testTotalExactoYEstimado() throws Exception {
+        System.out.println("test total exacto debajo del umbral y estimado encima");
+        try (Connection c = dataSource.getConnection()) {
+            Paginacion.Pagina<long[]> pequena = Paginacion.pagina(c, Paginacion.llave("ProductoDetalle"), "id_tipo_producto, id_producto", null, 5, Paginacion.Total.ESTIMADO, PaginacionBaseTest::llave);
+            Assertions.assertFalse(pequena.totalEstimado());
+            Assertions.assertEquals(contar(c, "producto_detalle"), pequena.total());
+
+            long estimado = Paginacion.estimar(c, "orden_detalle");
+            Assertions.assertTrue(estimado >= Paginacion.UMBRAL_ESTIMACION, "reltuples=" + estimado);
+            Paginacion.Pagina<long[]> grande = Paginacion.pagina(c, Paginacion.llave("OrdenDetalle"), "id_orden, id_producto_precio", null, 5, Paginacion.Total.ESTIMADO, PaginacionBaseTest::llave);
+            Assertions.assertTrue(grande.totalEstimado());
+            Assertions.assertEquals(estimado, grande.total());
+
+            Paginacion.Pagina<long[]> exacta = Paginacion.pagina(c, Paginacion.llave("OrdenDetalle"), "id_orden, id_producto_precio", null, 5, Paginacion.Total.EXACTO, PaginacionBaseTest::llave);
+            Assertions.assertFalse(exacta.totalEstimado());
+            Assertions.assertEquals(contar(c, "orden_detalle"), exacta.total());
+            Assertions.assertNull(Paginacion.pagina(c, Paginacion.llave("OrdenDetalle"), "id_orden, id_producto_precio", null, 5, Paginacion.Total.NINGUNO, PaginacionBaseTest::llave).total());
+        }
+    }
+
+    void recorrer(Paginacion.Llave llave, String columnas, int max) throws Exception {
+        List<String> esperadas = new ArrayList<>();
+        List<String> vistas = new ArrayList<>();
+        try (Connection c = dataSource.getConnection()) {
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT " + columnas + " FROM " + llave.tabla() + " ORDER BY " + columnas)) {
+                while (rs.next()) {
+                    esperadas.add(rs.getLong(1) + "," + rs.getLong(2));
+                }
+            }
+            String cursor = null;
+            int paginas = 0;
+            do {
+                Paginacion.Pagina<long[]> pagina = Paginacion.pagina(c, llave, columnas, cursor, max, Paginacion.Total.NINGUNO, PaginacionBaseTest::llave);
+                Assertions.assertTrue(pagina.filas().size() <= max);
+                Assertions.assertTrue(pagina.siguiente() == null || pagina.filas().size() == max, "pagina incompleta con siguiente");
+                for (long[] fila : pagina.filas()) {
+                    vistas.add(fila[0] + "," + fila[1]);
+                }
+                cursor = pagina.siguiente();
+                paginas++;
+            } while (cursor != null);
+            Assertions.assertEquals((esperadas.size() + max - 1) / max, paginas);
+        }
+        Set<String> unicas = new HashSet<>(vistas);
+        Assertions.assertEquals(vistas.size(), unicas.size(), llave.tabla() + ": filas repetidas");
+        Assertions.assertEquals(esperadas, vistas, llave.tabla() + ": faltan filas o vienen fuera de orden");
+    }
+
+    static long[] llave(ResultSet rs) throws java.sql.SQLException {
+        return new long[]{rs.getLong(1), rs.getLong(2)};
+    }
+
+    static long contar(Connection c, String tabla) throws Exception {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + tabla)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
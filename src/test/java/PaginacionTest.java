@@ -0,0 +1,41 @@
+import org.example.Paginacion;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PaginacionTest {
+
+    @Test
+    public void testCursorIdaYVuelta() {
+        System.out.println("test cursor opaco");
+        Paginacion.Llave orden = Paginacion.llave("Orden");
+        String cursor = Paginacion.codificar(orden, 12349);
+        Assertions.assertFalse(cursor.contains("12349"));
+        Assertions.assertArrayEquals(new long[]{12349}, Paginacion.decodificar(orden, cursor));
+        Assertions.assertNull(Paginacion.decodificar(orden, null));
+
+        Paginacion.Llave detalle = Paginacion.llave("OrdenDetalle");
+        String compuesto = Paginacion.codificar(detalle, 12345, 1001);
+        Assertions.assertArrayEquals(new long[]{12345, 1001}, Paginacion.decodificar(detalle, compuesto));
+
+        // un cursor de otra entidad o alterado no se acepta
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Paginacion.decodificar(Paginacion.llave("Pago"), cursor));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Paginacion.decodificar(orden, "%%%"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Paginacion.decodificar(detalle, cursor));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Paginacion.llave("Inexistente"));
+    }
+
+    @Test
+    public void testConsultasSeek() {
+        System.out.println("test SQL y JPQL por llave");
+        Paginacion.Llave pago = Paginacion.llave("Pago");
+        Assertions.assertEquals("SELECT * FROM pago ORDER BY id_pago LIMIT ?", Paginacion.sql(pago, "*", false));
+        Assertions.assertEquals("SELECT * FROM pago WHERE (id_pago) > (?) ORDER BY id_pago LIMIT ?", Paginacion.sql(pago, "*", true));
+        Assertions.assertEquals("SELECT e FROM Pago e WHERE (e.idPago > :k0) ORDER BY e.idPago", Paginacion.jpql(pago, true));
+
+        Paginacion.Llave detalle = Paginacion.llave("ComboDetalle");
+        Assertions.assertEquals("SELECT id_combo, id_producto, cantidad FROM combo_detalle WHERE (id_combo, id_producto) > (?, ?) ORDER BY id_combo, id_producto LIMIT ?",
+                Paginacion.sql(detalle, "id_combo, id_producto, cantidad", true));
+        Assertions.assertEquals("SELECT e FROM ComboDetalle e WHERE (e.comboDetallePK.idCombo > :k0) OR (e.comboDetallePK.idCombo = :k0 AND e.comboDetallePK.idProducto > :k1) ORDER BY e.comboDetallePK.idCombo, e.comboDetallePK.idProducto",
+                Paginacion.jpql(detalle, true));
+    }
+}
@@ -0,0 +1,49 @@
+import org.example.Pago;
+import org.example.PagoBenchmark;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+public class PagoCalculoTest {
+
+    @Test
+    public void testCalculoComboIgualAlSeed() {
+        System.out.println("test calculo superCombo");
+        Pago pago = new Pago();
+        // precios de tipicos_tpi135_2025.sql
+        pago.registrarPrecio(1001, new BigDecimal("1.50"));
+        pago.registrarPrecio(1003, new BigDecimal("0.80"));
+        pago.registrarCombo(1001, new long[]{1003, 1001}, new int[]{10, 3});
+
+        Assertions.assertEquals(1250, pago.calculoCombo(1001, 1));
+        Assertions.assertEquals(new BigDecimal("25.00"), Pago.aMonto(pago.calculoCombo(1001, 2)));
+
+        // cambio de precio recalcula el combo
+        pago.registrarPrecio(1003, new BigDecimal("0.85"));
+        Assertions.assertEquals(1300, pago.calculoCombo(1001, 1));
+    }
+
+    @Test
+    public void testCalculoIgualAReferencia() {
+        System.out.println("test calculo centavos vs BigDecimal");
+        for (int lineas : new int[]{1, 10, 200}) {
+            PagoBenchmark benchmark = new PagoBenchmark();
+            benchmark.lineas = lineas;
+            benchmark.preparar();
+            BigDecimal esperado = benchmark.referenciaBigDecimal();
+            Assertions.assertEquals(esperado, BigDecimal.valueOf(benchmark.centavos(), Pago.ESCALA));
+        }
+    }
+
+    @Test
+    public void testRedondeoYDesbordeNumeric() {
+        System.out.println("test redondeo numeric(6,2)");
+        Assertions.assertEquals(101, Pago.aCentavos(new BigDecimal("1.005")));
+        Assertions.assertEquals(100, Pago.aCentavos(new BigDecimal("1.004")));
+        Assertions.assertEquals(new BigDecimal("9999.99"), Pago.aMonto(Pago.MAXIMO_CENTAVOS));
+        Assertions.assertThrows(ArithmeticException.class, () -> Pago.aMonto(Pago.MAXIMO_CENTAVOS + 1));
+        Assertions.assertEquals(850, Pago.calculoPorOrden(new long[]{150, 80}, new int[]{3, 5}, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Pago().calculoProducto(1001, 1));
+    }
+}
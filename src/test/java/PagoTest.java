@@ -1,78 +1,59 @@
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.openqa.selenium.*;
-import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.testcontainers.containers.*;
-import org.testcontainers.junit.jupiter.Container;
-import org.testcontainers.junit.jupiter.Testcontainers;
-import org.testcontainers.utility.MountableFile;
 
-import java.io.File;
-import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.List;
 
-@Testcontainers
-@TestInstance(TestInstance.Lifecycle.PER_CLASS)
-@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+/**
+ * Cada prueba corre con su propia copia de la base y su propio slot de
+ * {@link EntornoE2E}: {@link #ordenes} hace su propia compra en lugar de
+ * depender de la de {@link #testSelecionarProducto}.
+ */
+@ExtendWith(EntornoE2E.class)
 public class PagoTest {
 
-    static MountableFile war = MountableFile.forHostPath(Paths.get("src/test/resources/PupaSv-1.0-SNAPSHOT.war").toAbsolutePath());
-    static Network red = Network.newNetwork();
-
-    @Container
-    public static BrowserWebDriverContainer<?> chrome = new BrowserWebDriverContainer<>("selenium/standalone-chrome:125.0").withCapabilities(new ChromeOptions().addArguments("--ignore-certificate-errors")      // Ignora certificados inválidos
-            .addArguments("--disable-web-security")             // Desactiva seguridad CORS (¡solo para pruebas!)
-            .addArguments("--allow-insecure-localhost")         // Acepta IPs locales como seguras
-            .addArguments("--allow-running-insecure-content")).withNetwork(red).withRecordingMode(BrowserWebDriverContainer.VncRecordingMode.RECORD_ALL, new File("target"), VncRecordingContainer.VncRecordingFormat.MP4);
-
-    static String dbName = "Tipicos";
-    static String dbPassword = "12345";
-    static String dbUser = "postgres";
-    static int dbPort = 5432;
-
-    @Container
-    static GenericContainer postgres = new PostgreSQLContainer("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql").withExposedPorts(dbPort).withNetwork(red).withNetworkAliases("db16_tpi");
-
-    @Container
-    static GenericContainer servidorDeAplicaion = new GenericContainer("liberty_app").withCopyFileToContainer(war, "/config/dropins/PupaSv-1.0-SNAPSHOT.war").withExposedPorts(9080).withNetwork(red).withNetworkAliases("backendapp") // << Aquí
-            .withEnv("DB_PASSWORD", dbPassword).withEnv("DB_USER", dbUser).withEnv("DB_NAME", dbName).withEnv("DB_PORT", String.valueOf(dbPort)).withEnv("DB_HOST", "db16_tpi").dependsOn(postgres);
-
-    static GenericContainer<?> frontend;
     protected WebDriver driver;
-
-    @BeforeAll
-    public void inicializar() {
-        frontend = new GenericContainer<>("fronted-test").withExposedPorts(80).withNetwork(red).withEnv("HOST", "backendapp").withEnv("PORT", "9080").withNetworkAliases("frontendapp").dependsOn(servidorDeAplicaion);
-        driver = chrome.getWebDriver();
-        frontend.start();
-    }
-
-    @AfterAll
-    public void tearDown() {
-        if (driver != null) {
-            driver.quit(); // Cerramos la sesión cuando todos los tests hayan terminado
-        }
+    RendimientoUi ui;
+    String frontend;
+
+    static final String[] PRODUCTOS = {"#productos-container", ".list-producto-container", ".card"};
+    // orden, detalle, pago y detalle del pago mas lo que cargue la pantalla
+    static final RendimientoUi.Presupuesto PAGO = new RendimientoUi.Presupuesto(3_000, 10);
+
+    @BeforeEach
+    public void inicializar(EntornoE2E.Sesion sesion) {
+        driver = sesion.driver();
+        ui = sesion.ui();
+        frontend = sesion.frontend();
     }
 
     @Test
-    @Order(1)
-    public void testSelecionarProducto() throws InterruptedException {
+    public void testSelecionarProducto() {
         System.out.println("test comprar");
+        List<RendimientoUi.Medicion> flujos = comprar();
+        RendimientoUi.verificar(flujos.get(0));
+        RendimientoUi.verificar(flujos.get(1));
+    }
 
-        driver.get("http://frontendapp:80");
+    /**
+     * Compra dos unidades del primer producto del menu; devuelve las
+     * mediciones del menu y del pago.
+     */
+    List<RendimientoUi.Medicion> comprar() {
+        driver.get(frontend);
         JavascriptExecutor js = (JavascriptExecutor) driver;
         WebElement navBar = driver.findElement(By.id("nav-bar"));
 
-        WebElement liMenu = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "const items = root.querySelectorAll('#menu-lista li');" + "return Array.from(items).find(el => el.textContent.trim() === 'Menu');", navBar);
-
         //selecionamos menu
+        WebElement liMenu = ui.conTexto("Menu", "#nav-bar", "#menu-lista li");
+        ui.iniciar("menu", PRODUCTOS);
         liMenu.click();
-        Thread.sleep(1000);
-        WebElement productosContainer = driver.findElement(By.id("productos-container"));
-        List<WebElement> cards = (List<WebElement>) js.executeScript("const root = arguments[0].shadowRoot;" + "const section = root.querySelector('section');" + "const list = section.querySelector('.list-producto-container');" + "return Array.from(list.querySelectorAll('.card'));", productosContainer);
+        RendimientoUi.Medicion menu = ui.terminar();
+        List<WebElement> cards = ui.elementos(PRODUCTOS);
 
         // Tomar la primera card
         WebElement firstCard = cards.get(0);
@@ -80,50 +61,45 @@ public class PagoTest {
         // Hacer hover sobre la card usando Actions
         Actions actions = new Actions(driver);
         actions.moveToElement(firstCard).perform();
-        Thread.sleep(500);
 
         // Obtener el botón con ID "btnAgregar" dentro de la card usando JS
-        WebElement btnAgregar = (WebElement) js.executeScript("return arguments[0].querySelector('#btnAgregar');", firstCard);
+        WebElement btnAgregar = ui.visible((WebElement) js.executeScript("return arguments[0].querySelector('#btnAgregar');", firstCard));
 
         //selecionamos 2 productos
         btnAgregar.click();
         btnAgregar.click();
-        Thread.sleep(1000);
 
-        WebElement cartCard = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let listContainer = root.querySelector('.list-container');" + "let cartLi = listContainer.querySelector('#cartLi');" + "let botonCart = cartLi.querySelector('#boton-menu-cart');" + "let cartCard = botonCart.querySelector('#cartCard');" + "return cartCard;", navBar);
+        WebElement cartCard = ui.esperar("let root = arguments[0].shadowRoot;" + "let listContainer = root.querySelector('.list-container');" + "let cartLi = listContainer.querySelector('#cartLi');" + "let botonCart = cartLi.querySelector('#boton-menu-cart');" + "let cartCard = botonCart.querySelector('#cartCard');" + "return cartCard;", navBar);
 
-        Thread.sleep(1000);
         //selecionar la opcion de pagar en carrito
-        WebElement spanElement = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let listContainer = root.querySelector('.list-container');" + "let cartLi = listContainer.querySelector('#cartLi');" + "let botonCart = cartLi.querySelector('#boton-menu-cart');" + "let cartCardContainer = botonCart.querySelector('.cartCardContainer');" +
-                "let targetSpan = cartCardContainer.querySelector('span');" + "return targetSpan;", navBar);
+        WebElement spanElement = ui.esperar("let root = arguments[0].shadowRoot;" + "let listContainer = root.querySelector('.list-container');" + "let cartLi = listContainer.querySelector('#cartLi');" + "let botonCart = cartLi.querySelector('#boton-menu-cart');" + "let cartCardContainer = botonCart.querySelector('.cartCardContainer');" +
+                "let targetSpan = cartCardContainer.querySelector('span');" + "return targetSpan && targetSpan.textContent.trim() ? targetSpan : null;", navBar);
         actions.moveToElement(spanElement).perform();
-        Thread.sleep(500);
-        WebElement btnPagar = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let listContainer = root.querySelector('.list-container');" + "let btnPagar = listContainer.querySelector('#btnCardPagar');" + "return btnPagar;", cartCard);
+        WebElement btnPagar = ui.visible(ui.esperar("let root = arguments[0].shadowRoot;" + "let listContainer = root && root.querySelector('.list-container');" + "return listContainer && listContainer.querySelector('#btnCardPagar');", cartCard));
 
-        Thread.sleep(1000);
         btnPagar.click();
-        Thread.sleep(1000);
 
         //obtenemos zona pago ZonaPago
-        WebElement zonaPago = driver.findElement(By.id("ZonaPago"));
+        WebElement zonaPago = ui.elemento("#ZonaPago");
         zonaPago.click();
 //        container
-        //selecionamos sucursal
-        WebElement sucursales = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let select = info.querySelector('select');" + "return select;", zonaPago);
+        //selecionamos sucursal, cuando ya cargaron las opciones
+        WebElement sucursales = ui.esperar("let root = arguments[0].shadowRoot;" + "let select = root && root.querySelector('.container .resumen .info select');" + "return select && select.options.length > 1 ? select : null;", zonaPago);
+        ui.iniciar("pago", PAGO);
         js.executeScript("arguments[0].selectedIndex = 1;" + "arguments[0].dispatchEvent(new Event('change', { bubbles: true }));", sucursales);
-        Thread.sleep(1000);
 
-        WebElement btnPagarOrdenFinal = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let buttons = info.querySelectorAll('button');" + "return Array.from(buttons).find(btn => btn.textContent.trim() === 'Pagar');", zonaPago);
-        WebElement volver = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let buttons = info.querySelectorAll('button');" + "return Array.from(buttons).find(btn => btn.textContent.trim() === 'Volver');", zonaPago);
-        WebElement btnAGregar = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let buttons = info.querySelectorAll('button');" + "return Array.from(buttons).find(btn => btn.textContent.trim() === 'Agregar pago');", zonaPago);
+        String boton = "let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let buttons = info.querySelectorAll('button');" + "return Array.from(buttons).find(btn => btn.textContent.trim() === arguments[1]) || null;";
+        WebElement btnPagarOrdenFinal = ui.esperar(boton, zonaPago, "Pagar");
+        WebElement volver = ui.esperar(boton, zonaPago, "Volver");
+        WebElement btnAGregar = ui.esperar(boton, zonaPago, "Agregar pago");
 
         js.executeScript("arguments[0].scrollIntoView({behavior: 'auto', block: 'center'});", btnAGregar);
 
-        Thread.sleep(500); // deja tiempo para animaciones
+        ui.visible(btnAGregar);
         btnAGregar.click();
 
         //selecionar forma de pago
-        WebElement formasPago = (WebElement) js.executeScript("let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let selects = info.querySelectorAll('select');" + "return selects[1];", zonaPago);
+        WebElement formasPago = ui.esperar("let root = arguments[0].shadowRoot;" + "let container = root.querySelector('.container');" + "let resumen = container.querySelector('.resumen');" + "let info = resumen.querySelector('.info');" + "let selects = info.querySelectorAll('select');" + "return selects[1] || null;", zonaPago);
 
         js.executeScript("arguments[0].selectedIndex = 1;" + "arguments[0].dispatchEvent(new Event('change', { bubbles: true }));", formasPago);
 
@@ -132,25 +108,25 @@ public class PagoTest {
         WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(5));
         Alert alert = wait.until(ExpectedConditions.alertIsPresent());
         alert.accept();
-        Thread.sleep(5000);
+        RendimientoUi.Medicion pago = ui.terminar();
+        // que termine lo que el pago dejo en vuelo antes de leer la orden
+        ui.redQuieta(Duration.ofMillis(500));
+        return List.of(menu, pago);
     }
 
     @Test
-    @Order(2)
-    public void ordenes() throws InterruptedException {
+    public void ordenes() {
         System.out.println("test ordenes en localStorage");
-        driver.get("http://frontendapp:80");
+        comprar();
+        driver.get(frontend);
         JavascriptExecutor js = (JavascriptExecutor) driver;
         WebElement navBar = driver.findElement(By.id("nav-bar"));
 
-        WebElement liMenu = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "const items = root.querySelectorAll('#menu-lista li');" + "return Array.from(items).find(el => el.textContent.trim() === 'Pedidos');", navBar);
+        WebElement liMenu = ui.conTexto("Pedidos", "#nav-bar", "#menu-lista li");
+        ui.iniciar("pedidos", "#pedidosCLiente", ".ordenes", ".orden");
         liMenu.click();
-        Thread.sleep(1000);
-        WebElement pedidosCLiente = driver.findElement(By.id("pedidosCLiente"));
-        List<WebElement> cards = (List<WebElement>) js.executeScript(
-                "const root = arguments[0].shadowRoot;" +
-                        "const ordenesContainer = root.querySelector('.ordenes');"+
-                        "return Array.from(ordenesContainer.querySelectorAll('.orden'));", pedidosCLiente);
+        RendimientoUi.Medicion pedidos = ui.terminar();
+        List<WebElement> cards = ui.elementos("#pedidosCLiente", ".ordenes", ".orden");
         WebElement orden=cards.get(0);
         Assertions.assertTrue(orden.getText().toLowerCase().contains("número de orden: 1"));
         WebElement botonVolverPedir = (WebElement) js.executeScript(
@@ -159,10 +135,9 @@ public class PagoTest {
                 orden);
         Assertions.assertTrue(botonVolverPedir.getText().contains("volver a pedir"));
         botonVolverPedir.click();
-        Thread.sleep(1000);
 
 
-        WebElement spanElement = (WebElement) js.executeScript(
+        WebElement spanElement = ui.esperar(
                 "let root = arguments[0].shadowRoot;" +
                         "let listContainer = root.querySelector('.list-container');" +
                         "let cartLi = listContainer.querySelector('#cartLi');" +
@@ -170,11 +145,12 @@ public class PagoTest {
                         "let cartCardContainer = botonCart.querySelector('.cartCardContainer');" +
                         // Reemplaza '#contador' por el ID real del span que deseas obtener
                         "let targetSpan = cartCardContainer.querySelector('span');" +
-                        "return targetSpan;",
+                        "return targetSpan && targetSpan.textContent.trim() ? targetSpan : null;",
                 navBar
         );
 
         Assertions.assertNotNull(spanElement);
         Assertions.assertNotNull(spanElement.getText().contains("1"));
+        RendimientoUi.verificar(pedidos);
     }
 }
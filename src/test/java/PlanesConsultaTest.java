@@ -0,0 +1,325 @@
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Regresion de planes: cada consulta JPQL que emiten los beans de
+ * {@code sv.edu.ues.occ.ingenieria.tpi135_2025.control}, escrita como el SQL
+ * que genera EclipseLink, se ejecuta con {@code EXPLAIN (ANALYZE, BUFFERS)}
+ * sobre un volumen grande generado con {@link GeneradorDatos} y con
+ * {@code indices_tpi135_2025.sql} aplicado.
+ * <p>
+ * Falla si una consulta recorre secuencialmente una tabla grande (salvo las
+ * que por diseno leen toda la tabla) o si sus buffers empeoran contra la
+ * linea base guardada. Los buffers no dependen de la maquina; el tiempo solo
+ * se compara con {@code -Dplanes.tiempo=true}, en el mismo equipo que grabo
+ * la linea base.
+ * <p>
+ * Los recorridos secuenciales se revisan siempre. La comparacion de buffers
+ * necesita la linea base: sin ella se omite (la medicion queda en
+ * {@code target}); con ella, una consulta que no este en la linea base
+ * falla. {@code -Dplanes.actualizar=true} la graba en
+ * {@code src/test/resources} y hay que confirmarla junto con el cambio.
+ * <p>
+ * El SQL de cada {@link Consulta} esta escrito a mano a partir del JPQL del
+ * {@code @NamedQuery} del mismo nombre en las entidades del WAR
+ * ({@link Consulta#origen()}); ese JPQL esta copiado en
+ * {@code planes-jpql.properties} y {@code ConsultasWarTest} falla si el WAR
+ * lo cambia, para que el SQL se vuelva a escribir. Las de
+ * {@code AbstractDataAccess} salen de su Criteria API y no tienen nombre.
+ */
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PlanesConsultaTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    static long ordenes = Long.getLong("planes.ordenes", 300_000);
+    static boolean actualizar = Boolean.getBoolean("planes.actualizar");
+    static boolean compararTiempo = Boolean.getBoolean("planes.tiempo");
+    static Path lineaBase = Paths.get("src/test/resources/planes-linea-base.json");
+
+    // una tabla con mas filas estimadas que esto no se puede recorrer completa
+    static final long TABLA_GRANDE = 10_000;
+    // tolerancia contra la linea base; el tiempo es holgado porque cambia con la maquina
+    static final double MAS_BUFFERS = 0.25;
+    static final long BUFFERS_HOLGURA = 16;
+    static final double VECES_TIEMPO = 3;
+    static final double MS_HOLGURA = 5;
+
+    static final long ORDEN = GeneradorDatos.BASE_ORDEN + ordenes / 2;
+    static final long PRODUCTO = GeneradorDatos.BASE_PRODUCTO + 1;
+    static final long PRECIO = GeneradorDatos.BASE_PRECIO + 1;
+    static final long COMBO = GeneradorDatos.BASE_COMBO + 1;
+    static final int TIPO = GeneradorDatos.BASE_TIPO + 1;
+    // con 200 tipos el producto 200 cae en el tipo 1
+    static final long PRODUCTO_DEL_TIPO = GeneradorDatos.BASE_PRODUCTO + 200;
+
+    /**
+     * Consulta de un bean. {@code recorridos} son las tablas que puede leer
+     * completas porque la consulta pide todas (o casi todas) sus filas.
+     */
+    record Consulta(String nombre, String sql, List<Object> parametros, Set<String> recorridos) {
+
+        Consulta(String nombre, String sql, Object... parametros) {
+            this(nombre, sql, List.of(parametros), Set.of());
+        }
+
+        Consulta permitir(String... tablas) {
+            return new Consulta(nombre, sql, parametros, Set.of(tablas));
+        }
+
+        /**
+         * De donde se escribio el SQL.
+         */
+        String origen() {
+            return nombre.startsWith(ABSTRACT_DATA_ACCESS) ? "Criteria API de AbstractDataAccess" : "@NamedQuery " + nombre;
+        }
+    }
+
+    static final String ABSTRACT_DATA_ACCESS = "AbstractDataAccess.";
+
+    record Medicion(String nombre, long buffers, double ms, List<String> recorridos) {
+    }
+
+    static final String PRECIO_COMBO = "c.id_combo, c.activo, c.nombre, c.descripcion_publica, c.url, SUM(pp.precio_sugerido * cd.cantidad)"
+            + " FROM combo_detalle cd JOIN combo c ON c.id_combo = cd.id_combo JOIN producto p ON p.id_producto = cd.id_producto"
+            + " JOIN producto_precio pp ON pp.id_producto = p.id_producto";
+
+    static final List<Consulta> CONSULTAS = List.of(
+            // ComboBean
+            new Consulta("Combo.findAll", "SELECT " + PRECIO_COMBO + " GROUP BY c.id_combo, c.activo, c.nombre, c.descripcion_publica, c.url ORDER BY c.id_combo LIMIT 20")
+                    .permitir("combo_detalle", "combo"),
+            new Consulta("Combo.findByNombre", "SELECT " + PRECIO_COMBO + " WHERE LOWER(c.nombre) LIKE LOWER(?) OR LOWER(c.descripcion_publica) LIKE LOWER(?)"
+                    + " GROUP BY c.id_combo, c.activo, c.nombre, c.descripcion_publica, c.url ORDER BY c.id_combo LIMIT 20", "%sintetico 1%", "%sintetico 1%")
+                    .permitir("combo"),
+            new Consulta("Combo.countByNombre", "SELECT COUNT(DISTINCT c.id_combo) FROM combo_detalle cd JOIN combo c ON c.id_combo = cd.id_combo"
+                    + " JOIN producto p ON p.id_producto = cd.id_producto JOIN producto_precio pp ON pp.id_producto = p.id_producto"
+                    + " WHERE LOWER(c.nombre) LIKE LOWER(?) OR LOWER(c.descripcion_publica) LIKE LOWER(?)", "%sintetico 1%", "%sintetico 1%")
+                    .permitir("combo"),
+            // ComboDetalleBean
+            new Consulta("ComboDetalle.findByIdCombo", "SELECT * FROM combo_detalle WHERE id_combo = ?", COMBO),
+            new Consulta("ComboDetalle.findByIdComboAndIdProducto", "SELECT * FROM combo_detalle WHERE id_producto = ? AND id_combo = ?", PRODUCTO, COMBO),
+            new Consulta("ComboDetalle.deleteByComboDetallePK", "DELETE FROM combo_detalle WHERE id_producto = ? AND id_combo = ?", PRODUCTO, COMBO),
+            new Consulta("ComboDetalle.sumarPrecioTotalByIdCombo", "SELECT SUM(pp.precio_sugerido * cd.cantidad) FROM combo_detalle cd"
+                    + " JOIN producto_precio pp ON pp.id_producto = cd.id_producto WHERE cd.id_combo = ?", COMBO),
+            // OrdenDetalleBean
+            new Consulta("ComboDetalle.findProductoPrecioAndCantidadByIdCombo", "SELECT pp.*, cd.cantidad FROM combo_detalle cd"
+                    + " JOIN producto_precio pp ON pp.id_producto = cd.id_producto WHERE cd.id_combo = ?", COMBO),
+            new Consulta("ComboDetalle.findProductoPrecioProductoAndCantidadByIdCombo", "SELECT pp.*, p.*, cd.cantidad FROM combo_detalle cd"
+                    + " JOIN producto_precio pp ON pp.id_producto = cd.id_producto JOIN producto p ON p.id_producto = pp.id_producto WHERE cd.id_combo = ?", COMBO),
+            new Consulta("ComboDetalle.findProductoPrecioAndCantidadByIdProducto", "SELECT pp.*, p.nombre FROM producto_precio pp"
+                    + " JOIN producto p ON p.id_producto = pp.id_producto WHERE pp.id_producto = ?", PRODUCTO),
+            new Consulta("ProductoPrecio.findProductoProductoProductoByIdProducto", "SELECT pp.*, p.* FROM producto_precio pp"
+                    + " JOIN producto p ON p.id_producto = pp.id_producto WHERE pp.id_producto = ?", PRODUCTO),
+            new Consulta("Orden.findByIdOrden", "SELECT * FROM orden WHERE id_orden = ?", ORDEN),
+            new Consulta("OrdenDetalle.countByIdOrden", "SELECT COUNT(*) FROM orden_detalle WHERE id_orden = ?", ORDEN),
+            new Consulta("OrdenDetalle.findByPrecioProductoAndIdOrden", "SELECT * FROM orden_detalle WHERE id_producto_precio = ? AND id_orden = ?", PRECIO, ORDEN),
+            new Consulta("OrdenDetalle.deleteOrdenDetalleByIdOrdenAndProductoPrecio", "DELETE FROM orden_detalle WHERE id_orden = ? AND id_producto_precio = ?", ORDEN, PRECIO),
+            new Consulta("OrdenDetalle.findByIdProductoPrecio", "SELECT * FROM orden_detalle WHERE id_producto_precio = ? LIMIT 20", PRECIO + 7),
+            // PagoBean
+            new Consulta("Pago.findByIdOrden", "SELECT * FROM pago WHERE id_orden = ?", ORDEN),
+            new Consulta("Pago.countByIdOrden", "SELECT COUNT(*) FROM pago WHERE id_orden = ?", ORDEN),
+            // PagoDetalleBean
+            new Consulta("OrdenDetalle.findByIdOrden", "SELECT * FROM orden_detalle WHERE id_orden = ?", ORDEN),
+            new Consulta("PagoDetalle.findByIdPago", "SELECT * FROM pago_detalle WHERE id_pago = ?", ORDEN),
+            new Consulta("PagoDetalle.countByIdPago", "SELECT COUNT(*) FROM pago_detalle WHERE id_pago = ?", ORDEN),
+            new Consulta("ProductoPrecio.findByIdProducto", "SELECT * FROM producto_precio WHERE id_producto = ?", PRODUCTO),
+            // ProductoPrecioBean
+            new Consulta("ProductoPrecio.findByIdTipoProductoAndIdProducto", "SELECT * FROM producto_precio WHERE id_producto = ? ORDER BY id_producto_precio LIMIT 20", PRODUCTO),
+            new Consulta("ProductoPrecio.countByIdTipoProductoAndIdProducto", "SELECT COUNT(*) FROM producto_precio WHERE id_producto = ?", PRODUCTO),
+            // ProductoBean
+            new Consulta("Producto.findActivosAndIdTipoProducto", "SELECT p.* FROM producto_detalle pd JOIN producto p ON p.id_producto = pd.id_producto"
+                    + " WHERE p.activo = ? AND pd.id_tipo_producto = ? LIMIT 20", true, TIPO),
+            new Consulta("Producto.countActivosAndIdTipoProducto", "SELECT COUNT(p.id_producto) FROM producto_detalle pd JOIN producto p ON p.id_producto = pd.id_producto"
+                    + " WHERE p.activo = ? AND pd.id_tipo_producto = ?", true, TIPO),
+            new Consulta("Producto.findByAnyActivo", "SELECT * FROM producto WHERE activo = ? LIMIT 20", true).permitir("producto"),
+            new Consulta("Producto.countByAnyActivo", "SELECT COUNT(*) FROM producto WHERE activo = ?", true).permitir("producto"),
+            // LIKE '%texto%' no usa btree; la busqueda del menu va por el indice en memoria de Producto
+            new Consulta("Producto.findByNombre", "SELECT * FROM producto WHERE LOWER(nombre) LIKE LOWER(?) LIMIT 20", "%sintetico 123%").permitir("producto"),
+            new Consulta("Producto.countByNombre", "SELECT COUNT(*) FROM producto WHERE LOWER(nombre) LIKE LOWER(?)", "%sintetico 123%").permitir("producto"),
+            // ProductoDetalleBean
+            new Consulta("ProductoDetalle.findAll", "SELECT * FROM producto_detalle").permitir("producto_detalle"),
+            new Consulta("ProductoDetalle.findByIdTipoProductoAndIdProducto", "SELECT DISTINCT * FROM producto_detalle WHERE id_tipo_producto = ? AND id_producto = ?", TIPO, PRODUCTO_DEL_TIPO),
+            new Consulta("ProductoDetalle.deleteByIdProductoAndIdProducto", "DELETE FROM producto_detalle WHERE id_tipo_producto = ? AND id_producto = ?", TIPO, PRODUCTO_DEL_TIPO),
+            new Consulta("ProductoDetalle.findByIdProducto", "SELECT * FROM producto_detalle WHERE id_producto = ?", PRODUCTO),
+            // AbstractDataAccess: findById, findRange y count
+            new Consulta("AbstractDataAccess.findById(Orden)", "SELECT * FROM orden WHERE id_orden = ?", ORDEN),
+            new Consulta("AbstractDataAccess.findRange(Orden)", "SELECT * FROM orden ORDER BY id_orden LIMIT 20 OFFSET 1000"),
+            new Consulta("AbstractDataAccess.findRange(Pago)", "SELECT * FROM pago ORDER BY id_pago LIMIT 20 OFFSET 1000"),
+            new Consulta("AbstractDataAccess.count(Orden)", "SELECT COUNT(*) FROM orden").permitir("orden"));
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql");
+
+    PGSimpleDataSource dataSource;
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(dbUser);
+        dataSource.setPassword(dbPassword);
+        // suficientes productos para que los catalogos tambien sean tablas grandes
+        GeneradorDatos.Config config = new GeneradorDatos.Config(135, 50_000, 200, 2_000, ordenes, LocalDate.parse("2025-01-01"), 60, 4);
+        GeneradorDatos.Resumen resumen = new GeneradorDatos(config).cargar(dataSource);
+        System.out.printf("datos cargados: ordenes=%d lineas=%d precios=%d en %.1fs%n", resumen.ordenes(), resumen.lineas(), resumen.precios(), resumen.segundos());
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("indices_tpi135_2025.sql");
+             Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            String script = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^--.*$", "");
+            for (String sentencia : script.split(";")) {
+                if (!sentencia.isBlank()) {
+                    st.execute(sentencia);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPlanesContraLineaBase() throws Exception {
+        System.out.println("test EXPLAIN (ANALYZE, BUFFERS) de las consultas de los beans");
+        Map<String, Long> filasPorTabla = new HashMap<>();
+        List<Medicion> mediciones = new ArrayList<>();
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT relname, reltuples::bigint FROM pg_class WHERE relkind = 'r' AND relnamespace = 'public'::regnamespace")) {
+                while (rs.next()) {
+                    filasPorTabla.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+            for (Consulta consulta : CONSULTAS) {
+                Medicion medicion = null;
+                // la primera corrida calienta la cache; se guarda la mejor de las siguientes
+                for (int i = 0; i < 3; i++) {
+                    Medicion m = explicar(c, consulta);
+                    if (i > 0 && (medicion == null || m.ms() < medicion.ms())) {
+                        medicion = m;
+                    }
+                }
+                mediciones.add(medicion);
+            }
+        }
+
+        List<String> recorridos = new ArrayList<>();
+        for (int i = 0; i < CONSULTAS.size(); i++) {
+            Consulta consulta = CONSULTAS.get(i);
+            Medicion m = mediciones.get(i);
+            System.out.printf("%-60s buffers=%6d ms=%8.3f recorridos=%s%n", m.nombre(), m.buffers(), m.ms(), m.recorridos());
+            for (String tabla : m.recorridos()) {
+                if (filasPorTabla.getOrDefault(tabla, 0L) >= TABLA_GRANDE && !consulta.recorridos().contains(tabla)) {
+                    recorridos.add(m.nombre() + " (" + consulta.origen() + "): Seq Scan sobre " + tabla + " (" + filasPorTabla.get(tabla) + " filas)");
+                }
+            }
+        }
+
+        Path salida = actualizar ? lineaBase : Paths.get("target", "planes-linea-base.json");
+        guardar(mediciones, salida);
+        System.out.println("mediciones escritas en " + salida.toAbsolutePath());
+        // los recorridos no dependen de la linea base
+        Assertions.assertTrue(recorridos.isEmpty(), String.join("\n", recorridos));
+        if (actualizar) {
+            return;
+        }
+        Assumptions.assumeTrue(Files.exists(lineaBase), "sin " + lineaBase + ": grabarla con -Dplanes.actualizar=true para comparar buffers");
+
+        Map<String, JsonObject> base = leer(lineaBase);
+        List<String> fallas = new ArrayList<>();
+        for (Medicion m : mediciones) {
+            JsonObject anterior = base.get(m.nombre());
+            if (anterior == null) {
+                fallas.add(m.nombre() + ": no esta en la linea base " + lineaBase + ", grabarla con -Dplanes.actualizar=true");
+                continue;
+            }
+            long buffers = anterior.getJsonNumber("buffers").longValue();
+            double ms = anterior.getJsonNumber("ms").doubleValue();
+            if (m.buffers() > buffers * (1 + MAS_BUFFERS) + BUFFERS_HOLGURA) {
+                fallas.add(m.nombre() + ": buffers " + m.buffers() + " contra " + buffers + " en la linea base");
+            }
+            if (compararTiempo && m.ms() > ms * VECES_TIEMPO + MS_HOLGURA) {
+                fallas.add(m.nombre() + ": " + m.ms() + "ms contra " + ms + "ms en la linea base");
+            }
+        }
+        Assertions.assertTrue(fallas.isEmpty(), String.join("\n", fallas));
+    }
+
+    static Medicion explicar(Connection c, Consulta consulta) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement("EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + consulta.sql())) {
+            for (int p = 0; p < consulta.parametros().size(); p++) {
+                ps.setObject(p + 1, consulta.parametros().get(p));
+            }
+            String json;
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                json = rs.getString(1);
+            }
+            JsonObject plan;
+            try (JsonReader lector = Json.createReader(new StringReader(json))) {
+                plan = lector.readArray().getJsonObject(0);
+            }
+            JsonObject raiz = plan.getJsonObject("Plan");
+            List<String> recorridos = new ArrayList<>();
+            recorrer(raiz, recorridos);
+            long buffers = raiz.getJsonNumber("Shared Hit Blocks").longValue() + raiz.getJsonNumber("Shared Read Blocks").longValue();
+            return new Medicion(consulta.nombre(), buffers, plan.getJsonNumber("Execution Time").doubleValue(), recorridos);
+        } finally {
+            // los DELETE se ejecutan de verdad con ANALYZE
+            c.rollback();
+        }
+    }
+
+    static void recorrer(JsonObject nodo, List<String> recorridos) {
+        if ("Seq Scan".equals(nodo.getString("Node Type")) && !recorridos.contains(nodo.getString("Relation Name"))) {
+            recorridos.add(nodo.getString("Relation Name"));
+        }
+        JsonArray hijos = nodo.getJsonArray("Plans");
+        if (hijos != null) {
+            for (JsonValue hijo : hijos) {
+                recorrer(hijo.asJsonObject(), recorridos);
+            }
+        }
+    }
+
+    static Map<String, JsonObject> leer(Path archivo) throws Exception {
+        try (JsonReader lector = Json.createReader(Files.newBufferedReader(archivo))) {
+            Map<String, JsonObject> base = new HashMap<>();
+            lector.readObject().forEach((nombre, valor) -> base.put(nombre, valor.asJsonObject()));
+            return base;
+        }
+    }
+
+    static void guardar(List<Medicion> mediciones, Path archivo) throws Exception {
+        JsonObjectBuilder raiz = Json.createObjectBuilder();
+        for (Medicion m : mediciones) {
+            raiz.add(m.nombre(), Json.createObjectBuilder().add("buffers", m.buffers()).add("ms", m.ms()));
+        }
+        Files.createDirectories(archivo.toAbsolutePath().getParent());
+        Files.writeString(archivo, raiz.build().toString());
+    }
+}
@@ -0,0 +1,99 @@
+import org.example.PrecioCombo;
+import org.example.ProductoPrecio;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Random;
+
+public class PrecioComboTest {
+
+    // -Dcombo.ediciones=1000000 para corridas largas
+    static int ediciones = Integer.getInteger("combo.ediciones", 20000);
+
+    static final LocalDate HOY = LocalDate.parse("2025-06-01");
+
+    @Test
+    public void testMantenimientoIncremental() {
+        System.out.println("test precio de combo materializado");
+        ProductoPrecio precios = new ProductoPrecio();
+        precios.registrar(1001, 1001, LocalDate.parse("2025-01-01"), LocalDate.parse("2030-12-31"), new BigDecimal("1.50"));
+        precios.registrar(1003, 1003, LocalDate.parse("2025-01-01"), LocalDate.parse("2030-12-31"), new BigDecimal("0.80"));
+        PrecioCombo combos = new PrecioCombo(precios, HOY);
+        combos.guardarDetalle(1001, 1003, 10);
+        combos.guardarDetalle(1001, 1001, 3);
+        Assertions.assertEquals(1250, combos.centavos(1001));
+
+        // producto sin precio: el combo sale del listado como con el JOIN
+        combos.guardarDetalle(1001, 1020, 1);
+        Assertions.assertEquals(-1, combos.centavos(1001));
+        combos.registrarPrecio(1020, 1020, LocalDate.parse("2025-01-01"), null, new BigDecimal("2.00"));
+        Assertions.assertEquals(1450, combos.centavos(1001));
+
+        combos.guardarDetalle(1001, 1003, 5);
+        combos.eliminarDetalle(1001, 1020);
+        Assertions.assertEquals(850, combos.centavos(1001));
+
+        // promocion desde el 10 de junio: aplica al cambiar de dia
+        combos.registrarPrecio(2001, 1003, LocalDate.parse("2025-06-10"), null, new BigDecimal("0.50"));
+        Assertions.assertEquals(850, combos.centavos(1001));
+        combos.cambiarFecha(LocalDate.parse("2025-06-10"));
+        Assertions.assertEquals(700, combos.centavos(1001));
+
+        combos.eliminarDetalle(1001, 1003);
+        combos.eliminarDetalle(1001, 1001);
+        Assertions.assertEquals(0, combos.size());
+    }
+
+    /**
+     * Ediciones al azar de combo_detalle, precios nuevos y cambios de dia; la
+     * vista debe coincidir con el calculo completo despues de cada una.
+     */
+    @Test
+    public void testConsistenciaConEdicionesAlAzar() {
+        System.out.println("test vista vs recalculo completo con ediciones al azar");
+        Random random = new Random(135);
+        ProductoPrecio precios = new ProductoPrecio();
+        long idPrecio = 1;
+        for (long id = 1001; id <= 1030; id++) {
+            // algunos productos quedan sin precio a proposito
+            if (id % 7 != 0) {
+                precios.registrar(idPrecio++, id, LocalDate.parse("2025-01-01"), LocalDate.parse("2030-12-31"), BigDecimal.valueOf(50 + random.nextInt(500), 2));
+            }
+        }
+        PrecioCombo combos = new PrecioCombo(precios, HOY);
+        LocalDate fecha = HOY;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < ediciones; i++) {
+            long combo = 1001 + random.nextInt(40);
+            long producto = 1001 + random.nextInt(30);
+            int operacion = random.nextInt(100);
+            if (operacion < 50) {
+                combos.guardarDetalle(combo, producto, 1 + random.nextInt(20));
+            } else if (operacion < 80) {
+                combos.eliminarDetalle(combo, producto);
+            } else if (operacion < 97) {
+                LocalDate desde = fecha.plusDays(random.nextInt(20) - 10);
+                LocalDate hasta = random.nextBoolean() ? null : desde.plusDays(random.nextInt(15));
+                combos.registrarPrecio(idPrecio++, producto, desde, hasta, BigDecimal.valueOf(10 + random.nextInt(900), 2));
+            } else {
+                fecha = fecha.plusDays(1 + random.nextInt(3));
+                combos.cambiarFecha(fecha);
+            }
+            if (i % 10 == 0 || i == ediciones - 1) {
+                Assertions.assertEquals(combos.recalcularTodo(), combos.vista(), "la vista se desvio en la edicion " + i);
+            }
+        }
+        System.out.printf("ediciones=%d combos con precio=%d segundos=%.2f%n", ediciones, combos.size(), (System.nanoTime() - inicio) / 1e9);
+
+        long ultimo = 0;
+        int leidos = 0;
+        for (var pagina = combos.pagina(0, 7); !pagina.isEmpty(); pagina = combos.pagina(ultimo, 7)) {
+            Assertions.assertTrue(pagina.get(0).getKey() > ultimo);
+            ultimo = pagina.get(pagina.size() - 1).getKey();
+            leidos += pagina.size();
+        }
+        Assertions.assertEquals(combos.size(), leidos);
+    }
+}
@@ -0,0 +1,67 @@
+import org.example.Producto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ProductoIndiceTest {
+
+    Producto indice;
+
+    @BeforeEach
+    public void inicializar() {
+        // mismos datos que tipicos_tpi135_2025.sql
+        indice = new Producto();
+        indice.guardar(Producto.Catalogo.PRODUCTO, 1003, "pupusas");
+        indice.guardar(Producto.Catalogo.PRODUCTO, 1012, "cafe");
+        indice.guardar(Producto.Catalogo.PRODUCTO, 1013, "chocolate");
+        indice.guardar(Producto.Catalogo.PRODUCTO, 1018, "horchata");
+        indice.guardar(Producto.Catalogo.COMBO, 1001, "superCombo", "10 pupusas de cualquier especialidad y 3 cocas ");
+        indice.guardar(Producto.Catalogo.COMBO, 1004, "desayuno tradicional", "porcion huevos y casamiento junto platanos y un cafe");
+        indice.guardar(Producto.Catalogo.COMBO, 1005, "Amanecer Criollo", "porcion de casamiento, platanos y queso freso y un cafe");
+        indice.guardar(Producto.Catalogo.COMBO, 1006, "amantes de la cafeina", "3 cafes");
+        indice.guardar(Producto.Catalogo.COMBO, 1007, "tarde tradicional", "porcion de nuegados y atol");
+        indice.guardar(Producto.Catalogo.COMBO, 1010, "sabor guanaco", "2 tamales de maiz  y un cafe");
+    }
+
+    @Test
+    public void testBusquedaNombreProductos() {
+        System.out.println("test busqueda productos sin tildes ni mayusculas");
+        Producto.Pagina pagina = indice.buscar(Producto.Catalogo.PRODUCTO, "CAFÉ", 0, 10);
+        Assertions.assertEquals(1, pagina.total());
+        Assertions.assertEquals(1012, pagina.ids()[0]);
+        Assertions.assertEquals("cafe", pagina.nombres()[0]);
+
+        Assertions.assertEquals(1, indice.buscar(Producto.Catalogo.PRODUCTO, "cho", Producto.Modo.PREFIJO, 0, 10).total());
+        Assertions.assertEquals(2, indice.buscar(Producto.Catalogo.PRODUCTO, "ch", 0, 10).total());
+        Assertions.assertEquals(0, indice.buscar(Producto.Catalogo.PRODUCTO, "ata", Producto.Modo.PREFIJO, 0, 10).total());
+    }
+
+    @Test
+    public void testBusquedaNombreCombo() {
+        System.out.println("test busqueda combos por nombre y descripcion");
+        Producto.Pagina pagina = indice.buscar(Producto.Catalogo.COMBO, "cafe", 0, 10);
+        Assertions.assertEquals(4, pagina.total());
+        Assertions.assertArrayEquals(new long[]{1004, 1005, 1006, 1010}, pagina.ids());
+
+        // la pagina se corta pero el total no
+        Producto.Pagina segunda = indice.buscar(Producto.Catalogo.COMBO, "cafe", 2, 1);
+        Assertions.assertEquals(4, segunda.total());
+        Assertions.assertArrayEquals(new long[]{1006}, segunda.ids());
+    }
+
+    @Test
+    public void testActualizacionIncremental() {
+        System.out.println("test alta, cambio y baja en el indice");
+        indice.guardar(Producto.Catalogo.PRODUCTO, 1021, "Café de palo");
+        Assertions.assertEquals(2, indice.buscar(Producto.Catalogo.PRODUCTO, "cafe", 0, 10).total());
+
+        indice.guardar(Producto.Catalogo.PRODUCTO, 1021, "atol de elote");
+        Assertions.assertEquals(1, indice.buscar(Producto.Catalogo.PRODUCTO, "cafe", 0, 10).total());
+        Assertions.assertEquals(1, indice.buscar(Producto.Catalogo.PRODUCTO, "elote", 0, 10).total());
+
+        Assertions.assertTrue(indice.eliminar(Producto.Catalogo.PRODUCTO, 1021));
+        Assertions.assertFalse(indice.eliminar(Producto.Catalogo.PRODUCTO, 1021));
+        Assertions.assertEquals(0, indice.buscar(Producto.Catalogo.PRODUCTO, "elote", 0, 10).total());
+        Assertions.assertEquals(4, indice.size(Producto.Catalogo.PRODUCTO));
+    }
+}
@@ -0,0 +1,57 @@
+import org.example.ProductoPrecio;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public class ProductoPrecioTest {
+
+    @Test
+    public void testVigenteConRangosTraslapados() {
+        System.out.println("test precio vigente con rangos traslapados y abiertos");
+        ProductoPrecio precios = new ProductoPrecio();
+        precios.registrar(1003, 1003, LocalDate.parse("2025-01-01"), LocalDate.parse("2030-12-31"), new BigDecimal("0.80"));
+        // promocion de una semana dentro del rango general
+        precios.registrar(2001, 1003, LocalDate.parse("2025-06-01"), LocalDate.parse("2025-06-07"), new BigDecimal("0.50"));
+        // nuevo precio sin fecha de fin
+        precios.registrar(2002, 1003, LocalDate.parse("2026-01-01"), null, new BigDecimal("0.90"));
+
+        Assertions.assertNull(precios.vigente(1003, LocalDate.parse("2024-12-31")));
+        Assertions.assertEquals(80, precios.vigente(1003, LocalDate.parse("2025-05-31")).centavos());
+        Assertions.assertEquals(2001, precios.vigente(1003, LocalDate.parse("2025-06-07")).idProductoPrecio());
+        Assertions.assertEquals(1003, precios.vigente(1003, LocalDate.parse("2025-06-08")).idProductoPrecio());
+        Assertions.assertEquals(90, precios.vigente(1003, LocalDate.parse("2026-03-01")).centavos());
+        Assertions.assertEquals(2002, precios.vigente(1003, LocalDate.parse("2040-01-01")).idProductoPrecio());
+        Assertions.assertNull(precios.vigente(9999, LocalDate.parse("2025-06-01")));
+    }
+
+    @Test
+    public void testResolverOrdenCompleta() {
+        System.out.println("test resolver 30 lineas en una llamada");
+        ProductoPrecio precios = new ProductoPrecio();
+        for (long id = 1001; id <= 1020; id++) {
+            precios.registrar(id, id, LocalDate.parse("2025-01-01"), LocalDate.parse("2030-12-31"), BigDecimal.valueOf(id - 950, 2));
+        }
+        // mismo desde: gana el id mayor
+        precios.registrar(3001, 1001, LocalDate.parse("2025-01-01"), null, new BigDecimal("1.75"));
+
+        long[] productos = new long[30];
+        for (int i = 0; i < productos.length; i++) {
+            productos[i] = 1001 + (i % 20);
+        }
+        long[] ids = new long[30];
+        long[] centavos = new long[30];
+        precios.resolver(productos, productos.length, LocalDate.parse("2025-06-01"), ids, centavos);
+
+        Assertions.assertEquals(3001, ids[0]);
+        Assertions.assertEquals(175, centavos[0]);
+        Assertions.assertEquals(1002, ids[1]);
+        Assertions.assertEquals(52, centavos[1]);
+        Assertions.assertEquals(3001, ids[20]);
+
+        long[] sinPrecio = {1001, 7777};
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> precios.resolver(sinPrecio, 2, LocalDate.parse("2025-06-01"), new long[2], new long[2]));
+    }
+}
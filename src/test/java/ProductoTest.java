@@ -1,164 +1,97 @@
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.openqa.selenium.By;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.interactions.Actions;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import org.testcontainers.containers.*;
-import org.testcontainers.junit.jupiter.Container;
-import org.testcontainers.junit.jupiter.Testcontainers;
-import org.testcontainers.utility.MountableFile;
-
-import java.io.File;
-import java.nio.file.Paths;
-import java.time.Duration;
+
 import java.util.List;
 
-@Testcontainers
-@TestInstance(TestInstance.Lifecycle.PER_CLASS)
-@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+/**
+ * Cada prueba corre con su propia copia de la base y su propio slot de
+ * {@link EntornoE2E}, asi que no dependen del orden ni de las demas.
+ */
+@ExtendWith(EntornoE2E.class)
 public class ProductoTest {
-    static MountableFile war = MountableFile.forHostPath(Paths.get("src/test/resources/PupaSv-1.0-SNAPSHOT.war").toAbsolutePath());
-    static Network red = Network.newNetwork();
-
-    @Container
-    public static BrowserWebDriverContainer<?> chrome = new BrowserWebDriverContainer<>("selenium/standalone-chrome:125.0").withCapabilities(new ChromeOptions().addArguments("--ignore-certificate-errors")      // Ignora certificados inválidos
-            .addArguments("--disable-web-security")             // Desactiva seguridad CORS (¡solo para pruebas!)
-            .addArguments("--allow-insecure-localhost")         // Acepta IPs locales como seguras
-            .addArguments("--allow-running-insecure-content")).withNetwork(red)
-                    .withRecordingMode(BrowserWebDriverContainer.VncRecordingMode.RECORD_ALL,
-                            new File("target"),
-                    VncRecordingContainer.VncRecordingFormat.MP4);
-
-    static String dbName = "Tipicos";
-    static String dbPassword = "12345";
-    static String dbUser = "postgres";
-    static int dbPort = 5432;
-
-    @Container
-    static GenericContainer postgres = new PostgreSQLContainer("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser).withInitScript("tipicos_tpi135_2025.sql").withExposedPorts(dbPort).withNetwork(red).withNetworkAliases("db16_tpi");
-
-    @Container
-    static GenericContainer servidorDeAplicaion = new GenericContainer("liberty_app").withCopyFileToContainer(war, "/config/dropins/PupaSv-1.0-SNAPSHOT.war").withExposedPorts(9080).withNetwork(red).withNetworkAliases("backendapp") // << Aquí
-            .withEnv("DB_PASSWORD", dbPassword).withEnv("DB_USER", dbUser).withEnv("DB_NAME", dbName).withEnv("DB_PORT", String.valueOf(dbPort)).withEnv("DB_HOST", "db16_tpi").dependsOn(postgres);
-
-    static GenericContainer<?> frontend;
+
     protected  WebDriver driver;
+    RendimientoUi ui;
+    String frontend;
 
-    @BeforeAll
-    public void inicializar() {
-        frontend = new GenericContainer<>("fronted-test").withExposedPorts(80).withNetwork(red).withEnv("HOST", "backendapp").withEnv("PORT", "9080").withNetworkAliases("frontendapp").dependsOn(servidorDeAplicaion);
-        driver = chrome.getWebDriver();
-        frontend.start();
-    }
-    @AfterAll
-    public void tearDown() {
-        if (driver != null) {
-            driver.quit(); // Cerramos la sesión cuando todos los tests hayan terminado
-        }
+    static final String[] PRODUCTOS = {"#productos-container", ".list-producto-container", ".card"};
+    static final String[] COMBOS = {"#productos-container", ".list-combo-container", ".card"};
+
+    @BeforeEach
+    public void inicializar(EntornoE2E.Sesion sesion) {
+        driver = sesion.driver();
+        ui = sesion.ui();
+        frontend = sesion.frontend();
     }
 
     @Test
-    @Order(1)
-    public void testMenuProductosListados() throws InterruptedException {
+    public void testMenuProductosListados() {
         System.out.println("test Menu se renderizan card de productos por defecto");
 
         // 🔥 Clave: usar el hostname especial para apuntar a tu máquina host
-        driver.get("http://frontendapp:80");
-        JavascriptExecutor js = (JavascriptExecutor) driver;
-        WebElement navBar = driver.findElement(By.id("nav-bar"));
-
-        WebElement liMenu = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "const items = root.querySelectorAll('#menu-lista li');" + "return Array.from(items).find(el => el.textContent.trim() === 'Menu');", navBar);
+        driver.get(frontend);
+        WebElement liMenu = ui.conTexto("Menu", "#nav-bar", "#menu-lista li");
 
+        ui.iniciar("menu", PRODUCTOS);
         liMenu.click();
-        Thread.sleep(1000);
-        WebElement productosContainer = driver.findElement(By.id("productos-container"));
-        List<WebElement> cards = (List<WebElement>) js.executeScript("const root = arguments[0].shadowRoot;" + "const section = root.querySelector('section');" + "const list = section.querySelector('.list-producto-container');" + "return Array.from(list.querySelectorAll('.card'));", productosContainer);
+        RendimientoUi.Medicion menu = ui.terminar();
+        List<WebElement> cards = ui.elementos(PRODUCTOS);
 
 
         String title = driver.getTitle();
         Assertions.assertNotNull(title);
         Assertions.assertFalse(title.isBlank());
         Assertions.assertTrue(cards.size() == 10);
+        RendimientoUi.verificar(menu);
     }
 
     @Test
-    @Order(2)
-    public void testMenuOption() throws InterruptedException {
-        Thread.sleep(1000);
+    public void testMenuOption() {
         System.out.println("test opciones");
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
 
-        driver.get("http://frontendapp:80");
+        driver.get(frontend);
         JavascriptExecutor js = (JavascriptExecutor) driver;
-        WebElement navBar = driver.findElement(By.id("nav-bar"));
+        ui.conTexto("Menu", "#nav-bar", "#menu-lista li").click();
 
-        WebElement liMenu = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "const items = root.querySelectorAll('#menu-lista li');" + "return Array.from(items).find(el => el.textContent.trim() === 'Menu');", navBar);
-
-        liMenu.click();
-        WebElement articulosContainer = driver.findElement(By.id("productos-container"));
-
-        WebElement select = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "return root.querySelector('.busqueda-container select');", articulosContainer);
+        WebElement select = ui.elemento("#productos-container", ".busqueda-container select");
 
+        ui.iniciar("menu-combos", COMBOS);
         js.executeScript("arguments[0].selectedIndex = 1;" + "arguments[0].dispatchEvent(new Event('change', { bubbles: true }));", select);
 
         // 👇 Espera a que las cards aparezcan
-        wait.until(d -> {
-            JavascriptExecutor jse = (JavascriptExecutor) d;
-            Object result = jse.executeScript("const root = arguments[0].shadowRoot;" + "const sections = root.querySelectorAll('section');" + "if (!sections[1]) return false;" + "const list = sections[1].querySelector('.list-combo-container');" + "return list && list.querySelectorAll('.card').length > 0;", articulosContainer);
-            return result instanceof Boolean && (Boolean) result;
-        });
-
-        List<WebElement> cards = (List<WebElement>) js.executeScript(
-                "const root = arguments[0].shadowRoot;" + "const sections = root.querySelectorAll('section');"
-                        + "const list = sections[1].querySelector('.list-combo-container');" +
-                        "return Array.from(list.querySelectorAll('.card'));", articulosContainer);
+        RendimientoUi.Medicion combos = ui.terminar();
+        List<WebElement> cards = ui.elementos(COMBOS);
 
+        WebElement articulosContainer = driver.findElement(By.id("productos-container"));
         WebElement titulo = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "const sections = root.querySelectorAll('section');" + "const list = sections[1];" + "return list.querySelector('h1');", articulosContainer);
 
         Assertions.assertEquals("Combos", titulo.getText());
         Assertions.assertEquals(10, cards.size());
-
+        RendimientoUi.verificar(combos);
     }
 
     @Test
-    @Order(3)
-    public void testMenuBusquedaNombreProdcutos() throws InterruptedException {
-        Thread.sleep(1000);
+    public void testMenuBusquedaNombreProdcutos() {
         System.out.println("test BusquedaNombreProductos");
         String nombre = "cafe";
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
 
-        driver.get("http://frontendapp:80");
+        driver.get(frontend);
         JavascriptExecutor js = (JavascriptExecutor) driver;
 
         // Obtener el nav-bar y hacer clic en la opción "Menu"
-        WebElement navBar = driver.findElement(By.id("nav-bar"));
-        WebElement liMenu = (WebElement) js.executeScript(
-                "const root = arguments[0].shadowRoot;" +
-                        "const items = root.querySelectorAll('#menu-lista li');" +
-                        "return Array.from(items).find(el => el.textContent.trim() === 'Menu');",
-                navBar
-        );
-        liMenu.click();
-
-        // Obtener el contenedor de productos
-        WebElement articulosContainer = driver.findElement(By.id("productos-container"));
+        ui.conTexto("Menu", "#nav-bar", "#menu-lista li").click();
 
         // Esperar hasta que el <input> dentro de .busqueda-container esté disponible
-        WebElement input = wait.until(driver1 -> {
-            Object result = js.executeScript(
-                    "const root = arguments[0].shadowRoot;" +
-                            "return root && root.querySelector('.busqueda-container input');",
-                    articulosContainer
-            );
-            return (WebElement) result;
-        });
-
+        WebElement input = ui.elemento("#productos-container", ".busqueda-container input");
+        List<WebElement> antes = ui.elementos(PRODUCTOS);
 
         // Establecer el valor del input y disparar eventos necesarios
+        ui.iniciar("busqueda-productos");
         js.executeScript(
                 "arguments[0].value = arguments[1];" +
                         "arguments[0].dispatchEvent(new Event('input', { bubbles: true }));" +
@@ -166,69 +99,38 @@ public class ProductoTest {
                 input, nombre
         );
 
-        Thread.sleep(3000);
-        // Esperar hasta que el <input> dentro de .busqueda-container esté disponible
-        List<WebElement> cards = wait.until(driver1 -> {
-            Object result = js.executeScript("const root = arguments[0].shadowRoot;" +
-                    "const section = root.querySelector('section');" +
-                    "const list = section.querySelector('.list-producto-container');"
-                    + "return Array.from(list.querySelectorAll('.card'));", articulosContainer
-            );
-            return (List<WebElement>) result;
-        });
+        // Esperar a que las cards del resultado reemplacen a las del menu
+        List<WebElement> cards = ui.renovados(antes, PRODUCTOS);
+        RendimientoUi.Medicion busqueda = ui.terminar();
         Assertions.assertTrue(cards.get(0).getText().contains(nombre));
+        RendimientoUi.verificar(busqueda);
     }
 
     @Test
-    @Order(4)
-    public void testMenuBusquedaNombreCombo() throws InterruptedException {
+    public void testMenuBusquedaNombreCombo() {
         System.out.println("test Menu se renderizan card de productos por defecto");
         String nombre = "cafe";
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
 
-        driver.get("http://frontendapp:80");
+        driver.get(frontend);
         JavascriptExecutor js = (JavascriptExecutor) driver;
 
         // Obtener el nav-bar y hacer clic en la opción "Menu"
-        WebElement navBar = driver.findElement(By.id("nav-bar"));
-        WebElement liMenu = (WebElement) js.executeScript(
-                "const root = arguments[0].shadowRoot;" +
-                        "const items = root.querySelectorAll('#menu-lista li');" +
-                        "return Array.from(items).find(el => el.textContent.trim() === 'Menu');",
-                navBar
-        );
-        liMenu.click();
-
-        // Obtener el contenedor de productos
-        WebElement articulosContainer = driver.findElement(By.id("productos-container"));
+        ui.conTexto("Menu", "#nav-bar", "#menu-lista li").click();
 
         //selecionamos combos
-        WebElement select = wait.until(driver1 -> {
-            Object element = js.executeScript(
-                    "const root = arguments[0].shadowRoot;" +
-                            "return root ? root.querySelector('.busqueda-container select') : null;",
-                    articulosContainer
-            );
-            return element instanceof WebElement ? (WebElement) element : null;
-        });
+        WebElement select = ui.elemento("#productos-container", ".busqueda-container select");
         js.executeScript(
                 "arguments[0].selectedIndex = 1;" +
                         "arguments[0].dispatchEvent(new Event('change', { bubbles: true }));",
                 select
         );
-        Thread.sleep(1000);
+        List<WebElement> antes = ui.elementos(COMBOS);
 
         // Esperar hasta que el <input> dentro de .busqueda-container esté disponible
-        WebElement input = wait.until(driver1 -> {
-            Object result = js.executeScript(
-                    "const root = arguments[0].shadowRoot;" +
-                            "return root && root.querySelector('.busqueda-container input');",
-                    articulosContainer
-            );
-            return (WebElement) result;
-        });
+        WebElement input = ui.elemento("#productos-container", ".busqueda-container input");
 
         // Establecer el valor del input y disparar eventos necesarios
+        ui.iniciar("busqueda-combos");
         js.executeScript(
                 "arguments[0].value = arguments[1];" +
                         "arguments[0].dispatchEvent(new Event('input', { bubbles: true }));" +
@@ -236,34 +138,24 @@ public class ProductoTest {
                 input, nombre
         );
 
-        Thread.sleep(3000);
-        // Esperar hasta que el <input> dentro de .busqueda-container esté disponible
-        List<WebElement> cards = wait.until(driver1 -> {
-            Object result = js.executeScript(
-                    "const root = arguments[0].shadowRoot;" + "const sections = root.querySelectorAll('section');"
-                            + "const list = sections[1].querySelector('.list-combo-container');" +
-                            "return Array.from(list.querySelectorAll('.card'));", articulosContainer);
-            return (List<WebElement>) result;
-        });
+        // Esperar a que las cards del resultado reemplacen a las de combos
+        List<WebElement> cards = ui.renovados(antes, COMBOS);
+        RendimientoUi.Medicion busqueda = ui.terminar();
         Assertions.assertTrue(cards.size()==4);
+        RendimientoUi.verificar(busqueda);
     }
 
     @Test
-    @Order(5)
-    public void testSelecionarProducto() throws InterruptedException {
+    public void testSelecionarProducto() {
         System.out.println("test SelceionarProducto");
 
         // 🔥 Clave: usar el hostname especial para apuntar a tu máquina host
-        driver.get("http://frontendapp:80");
+        driver.get(frontend);
         JavascriptExecutor js = (JavascriptExecutor) driver;
         WebElement navBar = driver.findElement(By.id("nav-bar"));
 
-        WebElement liMenu = (WebElement) js.executeScript("const root = arguments[0].shadowRoot;" + "const items = root.querySelectorAll('#menu-lista li');" + "return Array.from(items).find(el => el.textContent.trim() === 'Menu');", navBar);
-
-        liMenu.click();
-        Thread.sleep(1000);
-        WebElement productosContainer = driver.findElement(By.id("productos-container"));
-        List<WebElement> cards = (List<WebElement>) js.executeScript("const root = arguments[0].shadowRoot;" + "const section = root.querySelector('section');" + "const list = section.querySelector('.list-producto-container');" + "return Array.from(list.querySelectorAll('.card'));", productosContainer);
+        ui.conTexto("Menu", "#nav-bar", "#menu-lista li").click();
+        List<WebElement> cards = ui.elementos(PRODUCTOS);
 
         // Tomar la primera card
         WebElement firstCard = cards.get(0);
@@ -271,20 +163,18 @@ public class ProductoTest {
         // Hacer hover sobre la card usando Actions
         Actions actions = new Actions(driver);
         actions.moveToElement(firstCard).perform();
-        Thread.sleep(500);
 
         // Obtener el botón con ID "btnAgregar" dentro de la card usando JS
-        WebElement btnAgregar = (WebElement) js.executeScript(
+        WebElement btnAgregar = ui.visible((WebElement) js.executeScript(
                 "return arguments[0].querySelector('#btnAgregar');",
                 firstCard
-        );
+        ));
 
         btnAgregar.click();
         btnAgregar.click();
-        Thread.sleep(1000);
 
-
-        WebElement spanElement = (WebElement) js.executeScript(
+        // el contador del carrito refleja los dos clics
+        WebElement spanElement = ui.esperar(
                 "let root = arguments[0].shadowRoot;" +
                         "let listContainer = root.querySelector('.list-container');" +
                         "let cartLi = listContainer.querySelector('#cartLi');" +
@@ -292,7 +182,7 @@ public class ProductoTest {
                         "let cartCardContainer = botonCart.querySelector('.cartCardContainer');" +
                         // Reemplaza '#contador' por el ID real del span que deseas obtener
                         "let targetSpan = cartCardContainer.querySelector('span');" +
-                        "return targetSpan;",
+                        "return targetSpan && targetSpan.textContent.includes('2') ? targetSpan : null;",
                 navBar
         );
 
@@ -302,6 +192,3 @@ public class ProductoTest {
 
 
 }
-
-
-
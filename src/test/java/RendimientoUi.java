@@ -0,0 +1,339 @@
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Medicion de rendimiento para los flujos de Selenium ({@code ProductoTest},
+ * {@code PagoTest}).
+ * <p>
+ * Un flujo empieza con {@link #iniciar} (un {@code performance.mark} en la
+ * pagina) y termina con {@link #terminar}, que junta:
+ * <ul>
+ *     <li>Navigation Timing de la pagina actual;</li>
+ *     <li>Resource Timing de las peticiones al backend ({@link #BACKEND} por
+ *     defecto): las de todo el documento ({@code llamadasApi}) y las
+ *     posteriores al inicio del flujo;</li>
+ *     <li>el tiempo hasta que aparece el primer elemento de la ruta de
+ *     {@link #iniciar} (p. ej. la primera {@code .card}), medido dentro del
+ *     navegador; sin ruta, el tiempo hasta {@link #terminar}.</li>
+ * </ul>
+ * Los presupuestos por flujo se ajustan con
+ * {@code -Dui.presupuesto.<flujo>.listoMs=800 -Dui.presupuesto.<flujo>.api=3}
+ * y los de todos con {@code -Dui.presupuesto.listoMs} y {@code -Dui.presupuesto.api};
+ * con {@code -Dui.presupuestos=false} solo se reportan.
+ * <p>
+ * Las esperas buscan a traves de los shadow roots: una ruta como
+ * {@code "#productos-container", ".list-producto-container", ".card"} busca
+ * cada selector en el arbol ligero del anterior y, si no esta, en sus shadow
+ * roots anidados.
+ */
+public class RendimientoUi {
+
+    public static final String BACKEND = System.getProperty("ui.backend", "backendapp:9080");
+    static final long LISTO_MS = Long.getLong("ui.presupuesto.listoMs", 800);
+    static final int API = Integer.getInteger("ui.presupuesto.api", 3);
+    static final boolean EXIGIR = Boolean.parseBoolean(System.getProperty("ui.presupuestos", "true"));
+    static final Duration ESPERA = Duration.ofSeconds(Long.getLong("ui.espera", 10));
+    static final Duration SONDEO = Duration.ofMillis(50);
+
+    /**
+     * {@code buscar(raiz, selector)}: coincidencias en el arbol de
+     * {@code raiz} o, si no hay, en el primer shadow root anidado que tenga.
+     * {@code ruta(selectores)}: aplica {@code buscar} selector por selector
+     * partiendo del primer resultado del anterior.
+     */
+    static final String FUNCIONES = """
+            const buscar = (raiz, sel) => {
+              const aqui = Array.from(raiz.querySelectorAll(sel));
+              if (aqui.length) return aqui;
+              const sombras = raiz.shadowRoot ? [raiz.shadowRoot] : [];
+              for (const el of raiz.querySelectorAll('*')) if (el.shadowRoot) sombras.push(el.shadowRoot);
+              for (const s of sombras) { const r = buscar(s, sel); if (r.length) return r; }
+              return [];
+            };
+            const ruta = (selectores) => {
+              let actual = [document];
+              for (const sel of selectores) { if (!actual.length) return []; actual = buscar(actual[0], sel); }
+              return actual;
+            };
+            """;
+
+    // marca el inicio y, con ruta, vigila la pagina hasta que aparezca
+    static final String INICIAR = """
+            const [flujo, selectores, limite] = arguments;
+            performance.setResourceTimingBufferSize(1000);
+            performance.clearMarks(flujo + ':inicio'); performance.clearMarks(flujo + ':listo'); performance.clearMeasures(flujo);
+            const inicio = performance.mark(flujo + ':inicio').startTime;
+            window.__rendimientoUi = {flujo, inicio, listo: null};
+            if (!selectores.length) return;
+            const vigilar = () => {
+              if (window.__rendimientoUi.flujo !== flujo) return;
+              if (ruta(selectores).length) {
+                performance.mark(flujo + ':listo');
+                window.__rendimientoUi.listo = performance.measure(flujo, flujo + ':inicio', flujo + ':listo').duration;
+              } else if (performance.now() - inicio < limite) {
+                setTimeout(vigilar, 5);
+              }
+            };
+            vigilar();
+            """;
+
+    static final String RECOLECTAR = """
+            const [backend] = arguments;
+            const estado = window.__rendimientoUi;
+            if (!estado) return null;
+            const n = performance.getEntriesByType('navigation')[0];
+            const navegacion = n ? {ttfbMs: n.responseStart, domInteractiveMs: n.domInteractive,
+              domContentLoadedMs: n.domContentLoadedEventEnd, loadMs: n.loadEventEnd, bytes: n.transferSize} : {};
+            const recursos = performance.getEntriesByType('resource').filter(e => e.name.includes(backend))
+              .map(e => ({url: e.name, tipo: e.initiatorType, inicioMs: e.startTime, duracionMs: e.duration}));
+            return {listoMs: estado.listo !== null ? estado.listo : performance.now() - estado.inicio,
+              porMarca: estado.listo !== null, inicio: estado.inicio, navegacion, recursos};
+            """;
+
+    public record Presupuesto(long listoMs, int llamadasApi) {
+
+        /**
+         * {@code defecto} con lo que digan las propiedades del flujo.
+         */
+        public static Presupuesto de(String flujo, Presupuesto defecto) {
+            return new Presupuesto(Long.getLong("ui.presupuesto." + flujo + ".listoMs", defecto.listoMs()),
+                    Integer.getInteger("ui.presupuesto." + flujo + ".api", defecto.llamadasApi()));
+        }
+    }
+
+    public record Recurso(String url, String tipo, double inicioMs, double duracionMs) {
+    }
+
+    /**
+     * @param llamadasApi peticiones al backend desde que se cargo la pagina
+     * @param porMarca    {@code listoMs} se tomo dentro del navegador al
+     *                    aparecer el elemento esperado
+     */
+    public record Medicion(String flujo, double listoMs, boolean porMarca, int llamadasApi, int llamadasFlujo,
+                           Map<String, Double> navegacion, List<Recurso> recursos, Presupuesto presupuesto) {
+
+        public List<String> excesos() {
+            List<String> excesos = new ArrayList<>();
+            if (listoMs > presupuesto.listoMs()) {
+                excesos.add(String.format(Locale.ROOT, "%s: listo en %.0f ms, presupuesto %d ms", flujo, listoMs, presupuesto.listoMs()));
+            }
+            if (llamadasApi > presupuesto.llamadasApi()) {
+                excesos.add(String.format(Locale.ROOT, "%s: %d llamadas al backend, presupuesto %d", flujo, llamadasApi, presupuesto.llamadasApi()));
+            }
+            return excesos;
+        }
+    }
+
+    private final WebDriver driver;
+    private final JavascriptExecutor js;
+    private final String nombre;
+    private final String backend;
+    private final List<Medicion> mediciones = new ArrayList<>();
+    private String flujo;
+    private Presupuesto presupuesto;
+    private boolean conRuta;
+
+    public RendimientoUi(WebDriver driver, String nombre) {
+        this(driver, nombre, BACKEND);
+    }
+
+    /**
+     * @param backend {@code host:puerto} del backend tal como lo ve el navegador
+     */
+    public RendimientoUi(WebDriver driver, String nombre, String backend) {
+        this.driver = driver;
+        this.js = (JavascriptExecutor) driver;
+        this.nombre = nombre;
+        this.backend = backend;
+    }
+
+    public void iniciar(String flujo, String... rutaListo) {
+        iniciar(flujo, new Presupuesto(LISTO_MS, API), rutaListo);
+    }
+
+    public void iniciar(String flujo, Presupuesto defecto, String... rutaListo) {
+        this.flujo = flujo;
+        this.presupuesto = Presupuesto.de(flujo, defecto);
+        this.conRuta = rutaListo.length > 0;
+        js.executeScript(FUNCIONES + INICIAR, flujo, List.of(rutaListo), ESPERA.toMillis());
+    }
+
+    /**
+     * Cierra el flujo en curso y lo agrega al reporte; si se inicio con ruta
+     * espera primero a que el navegador la marque.
+     */
+    @SuppressWarnings("unchecked")
+    public Medicion terminar() {
+        if (flujo == null) {
+            throw new IllegalStateException("No hay flujo iniciado");
+        }
+        if (conRuta) {
+            esperar("return window.__rendimientoUi && window.__rendimientoUi.listo !== null");
+        }
+        Map<String, Object> datos = (Map<String, Object>) js.executeScript(RECOLECTAR, backend);
+        if (datos == null) {
+            throw new IllegalStateException("La pagina se recargo despues de iniciar " + flujo);
+        }
+        double inicio = numero(datos.get("inicio"));
+        List<Recurso> recursos = new ArrayList<>();
+        int llamadasFlujo = 0;
+        for (Map<String, Object> r : (List<Map<String, Object>>) datos.get("recursos")) {
+            Recurso recurso = new Recurso((String) r.get("url"), (String) r.get("tipo"), numero(r.get("inicioMs")), numero(r.get("duracionMs")));
+            recursos.add(recurso);
+            if (recurso.inicioMs() >= inicio) {
+                llamadasFlujo++;
+            }
+        }
+        Map<String, Double> navegacion = new LinkedHashMap<>();
+        ((Map<String, Object>) datos.get("navegacion")).forEach((k, v) -> navegacion.put(k, numero(v)));
+        Medicion medicion = new Medicion(flujo, numero(datos.get("listoMs")), Boolean.TRUE.equals(datos.get("porMarca")),
+                recursos.size(), llamadasFlujo, navegacion, recursos, presupuesto);
+        mediciones.add(medicion);
+        System.out.printf(Locale.ROOT, "flujo=%s listo=%.0fms llamadas=%d (en el flujo %d) ttfb=%.0fms load=%.0fms%n", flujo,
+                medicion.listoMs(), medicion.llamadasApi(), llamadasFlujo, navegacion.getOrDefault("ttfbMs", 0d), navegacion.getOrDefault("loadMs", 0d));
+        flujo = null;
+        return medicion;
+    }
+
+    /**
+     * Falla la prueba si la medicion excede su presupuesto.
+     */
+    public static void verificar(Medicion medicion) {
+        List<String> excesos = medicion.excesos();
+        if (EXIGIR && !excesos.isEmpty()) {
+            Assertions.fail(String.join("; ", excesos));
+        }
+    }
+
+    /**
+     * Espera hasta que {@code script} devuelva algo distinto de
+     * {@code null}, {@code false} o una lista vacia, y lo devuelve. El script
+     * puede usar {@code buscar} y {@code ruta}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T esperar(String script, Object... argumentos) {
+        return new WebDriverWait(driver, ESPERA, SONDEO).until(d -> {
+            Object r = js.executeScript(FUNCIONES + script, argumentos);
+            if (r == null || Boolean.FALSE.equals(r) || (r instanceof List<?> lista && lista.isEmpty())) {
+                return null;
+            }
+            return (T) r;
+        });
+    }
+
+    public WebElement elemento(String... ruta) {
+        return esperar("return ruta(arguments[0])[0] || null;", List.of(ruta));
+    }
+
+    public List<WebElement> elementos(String... ruta) {
+        return esperar("return ruta(arguments[0]);", List.of(ruta));
+    }
+
+    /**
+     * El primer elemento de la ruta cuyo texto es {@code texto}, p. ej. una
+     * opcion del {@code nav-bar}.
+     */
+    public WebElement conTexto(String texto, String... ruta) {
+        return esperar("return ruta(arguments[0]).find(el => el.textContent.trim() === arguments[1]) || null;", List.of(ruta), texto);
+    }
+
+    /**
+     * Los elementos de la ruta cuando ya no son {@code antes}: cambio la
+     * cantidad o el primero se quito del documento.
+     */
+    public List<WebElement> renovados(List<WebElement> antes, String... ruta) {
+        return esperar("const r = ruta(arguments[0]);"
+                        + "return r.length && (r.length !== arguments[1] || !arguments[2] || !arguments[2].isConnected || r[0] !== arguments[2]) ? r : null;",
+                List.of(ruta), antes.size(), antes.isEmpty() ? null : antes.get(0));
+    }
+
+    /**
+     * Espera a que {@code elemento} tenga tamano y no este oculto, p. ej. un
+     * boton que aparece con hover.
+     */
+    public WebElement visible(WebElement elemento) {
+        return esperar("const e = arguments[0]; const r = e.getBoundingClientRect(); const s = getComputedStyle(e);"
+                + "return r.width > 0 && r.height > 0 && s.visibility !== 'hidden' && s.display !== 'none' && s.opacity !== '0' ? e : null;", elemento);
+    }
+
+    /**
+     * Espera a que no empiecen peticiones nuevas al backend durante
+     * {@code quieta}.
+     */
+    public void redQuieta(Duration quieta) {
+        long[] ultima = {-1, System.nanoTime()};
+        new WebDriverWait(driver, ESPERA, SONDEO).until(d -> {
+            long n = ((Number) js.executeScript("return performance.getEntriesByType('resource').filter(e => e.name.includes(arguments[0])).length;", backend)).longValue();
+            long ahora = System.nanoTime();
+            if (n != ultima[0]) {
+                ultima[0] = n;
+                ultima[1] = ahora;
+                return false;
+            }
+            return ahora - ultima[1] >= quieta.toNanos();
+        });
+    }
+
+    public List<Medicion> mediciones() {
+        return mediciones;
+    }
+
+    /**
+     * {@code target/rendimiento-ui/<nombre>.json} con cada flujo medido.
+     */
+    public Path guardar() throws IOException {
+        Path archivo = Paths.get("target", "rendimiento-ui", nombre + ".json");
+        Files.createDirectories(archivo.getParent());
+        try (Writer out = Files.newBufferedWriter(archivo)) {
+            escribir(nombre, backend, mediciones, out);
+        }
+        return archivo;
+    }
+
+    static void escribir(String nombre, String backend, List<Medicion> mediciones, Writer out) {
+        try (JsonGenerator g = Json.createGenerator(out)) {
+            g.writeStartObject().write("prueba", nombre).write("backend", backend).writeStartArray("flujos");
+            for (Medicion m : mediciones) {
+                g.writeStartObject().write("flujo", m.flujo()).write("listoMs", redondear(m.listoMs())).write("porMarca", m.porMarca())
+                        .write("llamadasApi", m.llamadasApi()).write("llamadasFlujo", m.llamadasFlujo())
+                        .writeStartObject("presupuesto").write("listoMs", m.presupuesto().listoMs()).write("api", m.presupuesto().llamadasApi()).writeEnd();
+                g.writeStartArray("excesos");
+                m.excesos().forEach(g::write);
+                g.writeEnd().writeStartObject("navegacion");
+                m.navegacion().forEach((k, v) -> g.write(k, redondear(v)));
+                g.writeEnd().writeStartArray("recursos");
+                for (Recurso r : m.recursos()) {
+                    g.writeStartObject().write("url", r.url()).write("tipo", r.tipo())
+                            .write("inicioMs", redondear(r.inicioMs())).write("duracionMs", redondear(r.duracionMs())).writeEnd();
+                }
+                g.writeEnd().writeEnd();
+            }
+            g.writeEnd().writeEnd();
+        }
+    }
+
+    static double redondear(double ms) {
+        return Math.round(ms * 10) / 10.0;
+    }
+
+    static double numero(Object valor) {
+        return valor == null ? 0 : ((Number) valor).doubleValue();
+    }
+}
@@ -0,0 +1,61 @@
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+public class RendimientoUiTest {
+
+    static RendimientoUi.Medicion medicion(String flujo, double listoMs, int llamadas, RendimientoUi.Presupuesto presupuesto) {
+        List<RendimientoUi.Recurso> recursos = java.util.stream.IntStream.range(0, llamadas)
+                .mapToObj(i -> new RendimientoUi.Recurso("http://" + RendimientoUi.BACKEND + "/PupaSv-1.0-SNAPSHOT/v1/producto?first=" + i + "&max=10", "fetch", 100 + i, 35.25))
+                .toList();
+        return new RendimientoUi.Medicion(flujo, listoMs, true, llamadas, llamadas, Map.of("ttfbMs", 12.0, "loadMs", 240.0), recursos, presupuesto);
+    }
+
+    @Test
+    public void testPresupuestos() {
+        System.out.println("test presupuestos de flujo y propiedades");
+        RendimientoUi.Presupuesto defecto = new RendimientoUi.Presupuesto(800, 3);
+        Assertions.assertTrue(medicion("menu", 640, 3, defecto).excesos().isEmpty());
+        List<String> excesos = medicion("menu", 950, 5, defecto).excesos();
+        Assertions.assertEquals(2, excesos.size());
+        Assertions.assertTrue(excesos.get(0).contains("950 ms"));
+        Assertions.assertTrue(excesos.get(1).contains("5 llamadas"));
+        if (RendimientoUi.EXIGIR) {
+            Assertions.assertThrows(AssertionFailedError.class, () -> RendimientoUi.verificar(medicion("menu", 950, 1, defecto)));
+        }
+
+        System.setProperty("ui.presupuesto.prueba-flujo.api", "7");
+        try {
+            Assertions.assertEquals(new RendimientoUi.Presupuesto(800, 7), RendimientoUi.Presupuesto.de("prueba-flujo", defecto));
+            Assertions.assertEquals(defecto, RendimientoUi.Presupuesto.de("otro-flujo", defecto));
+        } finally {
+            System.clearProperty("ui.presupuesto.prueba-flujo.api");
+        }
+    }
+
+    @Test
+    public void testReporte() {
+        System.out.println("test reporte JSON por flujo");
+        StringWriter out = new StringWriter();
+        RendimientoUi.escribir("ProductoTest", RendimientoUi.BACKEND, List.of(medicion("menu", 412.345, 2, new RendimientoUi.Presupuesto(800, 3)),
+                medicion("menu-combos", 1200, 4, new RendimientoUi.Presupuesto(800, 3))), out);
+        JsonObject reporte = Json.createReader(new StringReader(out.toString())).readObject();
+        Assertions.assertEquals("ProductoTest", reporte.getString("prueba"));
+        JsonObject menu = reporte.getJsonArray("flujos").getJsonObject(0);
+        Assertions.assertEquals(412.3, menu.getJsonNumber("listoMs").doubleValue());
+        Assertions.assertEquals(2, menu.getInt("llamadasApi"));
+        Assertions.assertEquals(2, menu.getJsonArray("recursos").size());
+        Assertions.assertTrue(menu.getJsonArray("excesos").isEmpty());
+        Assertions.assertEquals(800, menu.getJsonObject("presupuesto").getInt("listoMs"));
+        JsonObject combos = reporte.getJsonArray("flujos").getJsonObject(1);
+        Assertions.assertEquals(2, combos.getJsonArray("excesos").size());
+        Assertions.assertEquals(12.0, combos.getJsonObject("navegacion").getJsonNumber("ttfbMs").doubleValue());
+    }
+}
@@ -0,0 +1,246 @@
+import org.example.RuteoLectura;
+import org.junit.jupiter.api.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Primario y replica de streaming en dos contenedores: la replica se clona
+ * con {@code pg_basebackup -R} y arranca en hot standby.
+ */
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class RuteoLecturaTest {
+
+    static String dbName = "Tipicos";
+    static String dbPassword = "12345";
+    static String dbUser = "postgres";
+
+    static int operaciones = Integer.getInteger("ruteo.operaciones", 4000);
+    static int hilos = Integer.getInteger("ruteo.hilos", 16);
+    // porcentaje de escrituras en la carga mixta
+    static int escrituras = Integer.getInteger("ruteo.escrituras", 10);
+
+    static final long PRIMERA_ORDEN = 700_000;
+
+    static Network red = Network.newNetwork();
+
+    @Container
+    static PostgreSQLContainer<?> primario = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName(dbName).withPassword(dbPassword).withUsername(dbUser)
+            .withInitScript("tipicos_tpi135_2025.sql").withNetwork(red).withNetworkAliases("primario")
+            .withCommand("postgres", "-c", "wal_level=replica", "-c", "max_wal_senders=4", "-c", "fsync=off")
+            // la imagen solo permite replicacion desde localhost
+            .withCopyToContainer(Transferable.of("echo 'host replication all all scram-sha-256' >> \"$PGDATA/pg_hba.conf\"\n"),
+                    "/docker-entrypoint-initdb.d/00-replicacion.sh");
+
+    @Container
+    static GenericContainer<?> replica = new GenericContainer<>("postgres:16-alpine").withNetwork(red).dependsOn(primario)
+            .withEnv("PGPASSWORD", dbPassword).withExposedPorts(5432)
+            .withCreateContainerCmdModifier(cmd -> cmd.withEntrypoint("sh", "-c", """
+                    D=/var/lib/postgresql/data
+                    until pg_basebackup -h primario -U postgres -D $D -R -X stream -c fast; do rm -rf $D/*; sleep 1; done
+                    chown -R postgres:postgres $D && chmod 700 $D
+                    exec su-exec postgres postgres -D $D -c hot_standby=on
+                    """))
+            .waitingFor(Wait.forLogMessage(".*ready to accept read-only connections.*", 1).withStartupTimeout(Duration.ofMinutes(2)));
+
+    PGSimpleDataSource fuentePrimario;
+    PGSimpleDataSource fuenteReplica;
+    AtomicLong ordenes = new AtomicLong(PRIMERA_ORDEN);
+
+    @BeforeAll
+    public void inicializar() throws Exception {
+        fuentePrimario = new PGSimpleDataSource();
+        fuentePrimario.setUrl(primario.getJdbcUrl());
+        fuentePrimario.setUser(dbUser);
+        fuentePrimario.setPassword(dbPassword);
+        fuenteReplica = new PGSimpleDataSource();
+        fuenteReplica.setUrl("jdbc:postgresql://" + replica.getHost() + ":" + replica.getMappedPort(5432) + "/" + dbName);
+        fuenteReplica.setUser(dbUser);
+        fuenteReplica.setPassword(dbPassword);
+        try (Connection c = fuenteReplica.getConnection(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT pg_is_in_recovery()")) {
+            rs.next();
+            Assertions.assertTrue(rs.getBoolean(1), "la replica no esta en recuperacion");
+        }
+    }
+
+    @Test
+    @Order(1)
+    public void testLeeSuPropiaEscritura() throws Exception {
+        System.out.println("test read-your-writes en la replica");
+        Assertions.assertEquals(0x16_B374D848L, RuteoLectura.lsn("16/B374D848"));
+        // intervalo largo: sin la comparacion de LSN la sesion leeria una posicion vieja
+        RuteoLectura ruteo = new RuteoLectura(fuentePrimario, fuenteReplica, 5_000, 60_000, 30);
+        Assertions.assertEquals(RuteoLectura.Destino.PRIMARIO, ruteo.destino("create", "caja-1"));
+        for (int i = 0; i < 200; i++) {
+            long id = crear(ruteo, "caja-1");
+            Assertions.assertTrue(existe(ruteo, "caja-1", id), "la sesion no ve la orden " + id);
+        }
+        System.out.printf("replica=%d primario=%d por sesion=%d%n", ruteo.lecturasReplica(), ruteo.lecturasPrimario(), ruteo.porSesion());
+        // otra sesion sin escrituras lee de la replica
+        Assertions.assertEquals(RuteoLectura.Destino.REPLICA, ruteo.destino("findRange", "kiosko"));
+    }
+
+    @Test
+    @Order(2)
+    public void testLagAltoVuelveAlPrimario() throws Exception {
+        System.out.println("test replica atrasada, lecturas al primario");
+        RuteoLectura ruteo = new RuteoLectura(fuentePrimario, fuenteReplica, 500, 0, 30);
+        try (Connection c = fuenteReplica.getConnection(); Statement st = c.createStatement()) {
+            st.execute("SELECT pg_wal_replay_pause()");
+            try {
+                crear(ruteo, "caja-2");
+                Thread.sleep(1_500);
+                crear(ruteo, "caja-2");
+                Assertions.assertEquals(RuteoLectura.Destino.PRIMARIO, ruteo.destino("findAll", "kiosko"));
+                long id = crear(ruteo, "caja-3");
+                Assertions.assertTrue(existe(ruteo, "caja-3", id));
+                Assertions.assertTrue(ruteo.porLag() > 0);
+            } finally {
+                st.execute("SELECT pg_wal_replay_resume()");
+            }
+        }
+        long limite = System.nanoTime() + 30_000_000_000L;
+        while (ruteo.destino("findAll", "kiosko") != RuteoLectura.Destino.REPLICA) {
+            Assertions.assertTrue(System.nanoTime() < limite, "la replica no se puso al dia");
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Con el receptor detenido la replica no tiene nada "pendiente": recibido
+     * y aplicado coinciden aunque el primario siga escribiendo.
+     */
+    @Test
+    @Order(3)
+    public void testReplicacionCortadaVuelveAlPrimario() throws Exception {
+        System.out.println("test replicacion cortada, lecturas al primario");
+        RuteoLectura ruteo = new RuteoLectura(fuentePrimario, fuenteReplica, 500, 0, 30);
+        try (Connection c = fuenteReplica.getConnection(); Statement st = c.createStatement()) {
+            String conexion;
+            try (ResultSet rs = st.executeQuery("SELECT current_setting('primary_conninfo')")) {
+                rs.next();
+                conexion = rs.getString(1);
+            }
+            st.execute("ALTER SYSTEM SET primary_conninfo = ''");
+            st.execute("SELECT pg_reload_conf()");
+            try {
+                long limite = System.nanoTime() + 30_000_000_000L;
+                while (recibiendo(st)) {
+                    Assertions.assertTrue(System.nanoTime() < limite, "el receptor de WAL no se detuvo");
+                    Thread.sleep(100);
+                }
+                long id = crear(ruteo, "caja-4");
+                Assertions.assertEquals(RuteoLectura.Destino.PRIMARIO, ruteo.destino("findAll", "kiosko"));
+                Assertions.assertTrue(existe(ruteo, "kiosko", id), "un kiosko leyo de la replica desconectada");
+                Assertions.assertTrue(ruteo.porLag() > 0);
+            } finally {
+                st.execute("ALTER SYSTEM SET primary_conninfo = '" + conexion.replace("'", "''") + "'");
+                st.execute("SELECT pg_reload_conf()");
+            }
+        }
+        long limite = System.nanoTime() + 30_000_000_000L;
+        while (ruteo.destino("findAll", "kiosko") != RuteoLectura.Destino.REPLICA) {
+            Assertions.assertTrue(System.nanoTime() < limite, "la replica no se reconecto");
+            Thread.sleep(100);
+        }
+    }
+
+    static boolean recibiendo(Statement st) throws Exception {
+        try (ResultSet rs = st.executeQuery("SELECT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming')")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * Carga de cajas y kioscos: cada sesion escribe a veces y siempre ve lo
+     * suyo; la mayoria de las lecturas las atiende la replica.
+     */
+    @Test
+    @Order(4)
+    public void testCargaMixta() throws Exception {
+        System.out.println("test carga mixta, fraccion de lecturas en la replica");
+        RuteoLectura ruteo = new RuteoLectura(fuentePrimario, fuenteReplica, 1_000, 50, 30);
+        List<Future<?>> tareas = new ArrayList<>();
+        long inicio = System.nanoTime();
+        try (ExecutorService sesiones = Executors.newFixedThreadPool(hilos)) {
+            for (int s = 0; s < hilos; s++) {
+                String sesion = "sesion-" + s;
+                tareas.add(sesiones.submit(() -> {
+                    long ultima = 0;
+                    for (int i = 0; i < operaciones / hilos; i++) {
+                        if (ThreadLocalRandom.current().nextInt(100) < escrituras) {
+                            ultima = crear(ruteo, sesion);
+                        } else if (ultima > 0 && i % 5 == 0) {
+                            Assertions.assertTrue(existe(ruteo, sesion, ultima), sesion + " no ve la orden " + ultima);
+                        } else {
+                            menu(ruteo, sesion);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("operaciones=%d segundos=%.1f replica=%d primario=%d por lag=%d por sesion=%d fraccion replica=%.2f%n",
+                operaciones, segundos, ruteo.lecturasReplica(), ruteo.lecturasPrimario(), ruteo.porLag(), ruteo.porSesion(), ruteo.fraccionReplica());
+        Assertions.assertTrue(ruteo.fraccionReplica() >= 0.6, "la replica atendio menos del 60% de las lecturas");
+    }
+
+    long crear(RuteoLectura ruteo, String sesion) throws Exception {
+        long id = ordenes.incrementAndGet();
+        ruteo.escribir(sesion, c -> {
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO orden (id_orden, fecha, sucursal, anulada) VALUES (?, CURRENT_DATE, 'SS', false)")) {
+                ps.setLong(1, id);
+                return ps.executeUpdate();
+            }
+        });
+        return id;
+    }
+
+    static boolean existe(RuteoLectura ruteo, String sesion, long idOrden) throws Exception {
+        return ruteo.leer("findById", sesion, c -> {
+            try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM orden WHERE id_orden = ?")) {
+                ps.setLong(1, idOrden);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+
+    static int menu(RuteoLectura ruteo, String sesion) throws Exception {
+        return ruteo.leer("findRange", sesion, c -> {
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT id_producto, nombre FROM producto WHERE activo ORDER BY id_producto LIMIT 10")) {
+                int n = 0;
+                while (rs.next()) {
+                    n++;
+                }
+                return n;
+            }
+        });
+    }
+}
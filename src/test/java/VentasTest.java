@@ -0,0 +1,128 @@
+import org.example.Ventas;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+public class VentasTest {
+
+    // -Dventas.ordenes=5000000 para corridas largas
+    static int ordenes = Integer.getInteger("ventas.ordenes", 200000);
+
+    static final LocalDate DIA = LocalDate.parse("2025-06-01");
+
+    @Test
+    public void testAcumuladosYAnulacion(@TempDir Path carpeta) throws Exception {
+        System.out.println("test acumulados por sucursal, producto y hora");
+        Ventas ventas = new Ventas();
+        ventas.registrarOrden(1, "SS", DIA.atTime(8, 15));
+        ventas.registrarDetalle(1, 1003, 10, 80);
+        ventas.registrarDetalle(1, 1001, 3, 150);
+        ventas.registrarPago(1, 1250);
+        ventas.registrarOrden(2, "SM", DIA.atTime(12, 5));
+        ventas.registrarDetalle(2, 1003, 4, 80);
+        ventas.registrarOrden(3, "SS", DIA.plusDays(1).atTime(9, 0));
+        ventas.registrarDetalle(3, 1020, 1, 2000);
+        ventas.registrarPago(3, 2000);
+
+        List<Ventas.Total> top = ventas.topProductos(null, DIA, DIA.plusDays(1), 2);
+        Assertions.assertEquals(List.of(new Ventas.Total(1020, 1, 2000), new Ventas.Total(1003, 14, 1120)), top);
+        Assertions.assertEquals(List.of(new Ventas.Total(1003, 4, 320)), ventas.topProductos("SM", DIA, DIA, 5));
+        Assertions.assertEquals(1250, ventas.porHora("SS", DIA)[8]);
+        Assertions.assertEquals(320, ventas.porHora(null, DIA)[12]);
+        Assertions.assertArrayEquals(new long[]{1570, 2000}, ventas.porDia(null, DIA, DIA.plusDays(1)));
+        Assertions.assertArrayEquals(new long[]{1250, 2000}, ventas.cobradoPorDia("SS", DIA, DIA.plusDays(1)));
+        Assertions.assertArrayEquals(new long[]{0}, ventas.porDia("XX", DIA, DIA));
+
+        // anulada: sale completa de los acumulados y no admite mas lineas
+        Assertions.assertTrue(ventas.anular(1));
+        Assertions.assertFalse(ventas.anular(1));
+        ventas.registrarDetalle(1, 1003, 1, 80);
+        Assertions.assertArrayEquals(new long[]{320, 2000}, ventas.porDia(null, DIA, DIA.plusDays(1)));
+        Assertions.assertArrayEquals(new long[]{0, 2000}, ventas.cobradoPorDia("SS", DIA, DIA.plusDays(1)));
+        Assertions.assertEquals(List.of(new Ventas.Total(1003, 4, 320)), ventas.topProductos("SM", DIA, DIA, 5));
+        Assertions.assertTrue(Ventas.aJson(top).contains("\"monto\":20.00"));
+
+        Path respaldo = carpeta.resolve("ventas.bin");
+        ventas.guardar(respaldo);
+        Ventas recuperada = Ventas.cargar(respaldo);
+        Assertions.assertEquals(ventas.topProductos(null, DIA, DIA.plusDays(1), 10), recuperada.topProductos(null, DIA, DIA.plusDays(1), 10));
+        Assertions.assertTrue(recuperada.anular(3));
+        Assertions.assertArrayEquals(new long[]{320, 0}, recuperada.porDia(null, DIA, DIA.plusDays(1)));
+        Assertions.assertEquals(2, recuperada.purgar(DIA.plusDays(1)));
+        Assertions.assertFalse(recuperada.anular(2));
+    }
+
+    @Test
+    public void testAnularOrdenConVariosPagos(@TempDir Path carpeta) throws Exception {
+        System.out.println("test anular una orden pagada en dos partes");
+        Ventas ventas = new Ventas();
+        ventas.registrarOrden(1, "SS", DIA.atTime(10, 0));
+        ventas.registrarDetalle(1, 1003, 5, 100);
+        ventas.registrarPago(1, 300);
+        ventas.registrarPago(1, 200);
+        ventas.registrarOrden(2, "SS", DIA.atTime(10, 30));
+        ventas.registrarDetalle(2, 1001, 1, 150);
+        ventas.registrarPago(2, 150);
+        Assertions.assertArrayEquals(new long[]{3}, ventas.pagosPorDia("SS", DIA, DIA));
+        Assertions.assertArrayEquals(new long[]{650}, ventas.cobradoPorDia("SS", DIA, DIA));
+
+        // el respaldo conserva los dos pagos para una anulacion despues de cargar
+        Path respaldo = carpeta.resolve("ventas.bin");
+        ventas.guardar(respaldo);
+        for (Ventas v : List.of(ventas, Ventas.cargar(respaldo))) {
+            Assertions.assertTrue(v.anular(1));
+            Assertions.assertArrayEquals(new long[]{1}, v.pagosPorDia("SS", DIA, DIA));
+            Assertions.assertArrayEquals(new long[]{150}, v.cobradoPorDia("SS", DIA, DIA));
+        }
+    }
+
+    @Test
+    public void testConsultasEnMilisegundos() {
+        System.out.println("test consultas sobre un mes de ventas");
+        Random random = new Random(135);
+        String[] sucursales = {"SS", "SM", "SA", "LL", "US"};
+        Ventas ventas = new Ventas();
+        long esperadoDia = 0;
+        long inicio = System.nanoTime();
+        for (long id = 1; id <= ordenes; id++) {
+            LocalDateTime momento = DIA.atStartOfDay().plusMinutes(random.nextInt(30 * 24 * 60));
+            ventas.registrarOrden(id, sucursales[random.nextInt(sucursales.length)], momento);
+            long total = 0;
+            for (int l = 1 + random.nextInt(4); l > 0; l--) {
+                int cantidad = 1 + random.nextInt(5);
+                long precio = 50 + random.nextInt(300);
+                ventas.registrarDetalle(id, 1001 + random.nextInt(20), cantidad, precio);
+                total += cantidad * precio;
+            }
+            if (id % 20 == 0) {
+                ventas.anular(id);
+            } else if (momento.toLocalDate().equals(DIA)) {
+                esperadoDia += total;
+            }
+        }
+        double ingesta = (System.nanoTime() - inicio) / 1e9;
+
+        long consulta = System.nanoTime();
+        List<Ventas.Total> top = ventas.topProductos(null, DIA, DIA.plusDays(29), 5);
+        long[] dias = ventas.porDia("SS", DIA, DIA.plusDays(29));
+        long[] horas = ventas.porHora(null, DIA);
+        double milisegundos = (System.nanoTime() - consulta) / 1e6;
+        System.out.printf("ordenes=%d filas=%d ingesta=%.2fs ordenes/s=%.0f consultas=%.2fms%n",
+                ordenes, ventas.filas(), ingesta, ordenes / ingesta, milisegundos);
+
+        Assertions.assertEquals(5, top.size());
+        Assertions.assertTrue(dias[0] > 0);
+        Assertions.assertEquals(esperadoDia, java.util.Arrays.stream(horas).sum());
+        // el tiempo depende de la maquina; -Dventas.maxMs=500 lo vuelve una condicion
+        long maximo = Long.getLong("ventas.maxMs", 0);
+        if (maximo > 0) {
+            Assertions.assertTrue(milisegundos < maximo, "consultas lentas: " + milisegundos + "ms");
+        }
+    }
+}
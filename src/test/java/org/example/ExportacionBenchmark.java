@@ -0,0 +1,394 @@
+package org.example;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Asignacion por peticion de un listado de {@code ProductoPrecio}:
+ * {@link ExportacionJson} en streaming contra el camino de {@code findRange}
+ * sobre {@code Producto}: las entidades con sus {@code productoPrecioList} y
+ * {@code productoDetalleList} cargadas en una lista y luego serializadas por
+ * sus getters. Las entidades copian los campos del WAR, y {@link Transitorio}
+ * marca lo que alli es {@code @JsonbTransient}.
+ * <p>
+ * Yasson no esta entre las dependencias de prueba. {@link #serializar} hace lo
+ * mismo que su mapeo por defecto: una propiedad por getter, descriptores
+ * cacheados por clase, listas anidadas y escritura directa a un
+ * {@link JsonGenerator}.
+ * <p>
+ * La asignacion se ve con {@code -prof gc} ({@code gc.alloc.rate.norm} es
+ * bytes por peticion):
+ * {@code java -cp <classpath de test> org.openjdk.jmh.Main ExportacionBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportacionBenchmark {
+
+    // precios por producto: historico de cambios de precio
+    static final int PRECIOS_POR_PRODUCTO = 5;
+
+    static final JsonGeneratorFactory GENERADORES = Json.createGeneratorFactory(null);
+
+    static final ClassValue<List<Method>> GETTERS = new ClassValue<>() {
+        @Override
+        protected List<Method> computeValue(Class<?> tipo) {
+            List<Method> getters = new ArrayList<>();
+            for (Field campo : tipo.getDeclaredFields()) {
+                if (Modifier.isStatic(campo.getModifiers()) || campo.isAnnotationPresent(Transitorio.class)) {
+                    continue;
+                }
+                String nombre = campo.getName();
+                try {
+                    getters.add(tipo.getMethod("get" + Character.toUpperCase(nombre.charAt(0)) + nombre.substring(1)));
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(tipo.getSimpleName() + "." + nombre + " sin getter", e);
+                }
+            }
+            return getters;
+        }
+    };
+
+    @Param({"100", "10000"})
+    public int filas;
+
+    ExportacionJson.Proyeccion proyeccion;
+    TipoProducto tipo;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        proyeccion = ExportacionJson.proyeccion("ProductoPrecio");
+        tipo = new TipoProducto();
+        tipo.setIdTipoProducto(1);
+        tipo.setNombre("Bebidas");
+        tipo.setActivo(true);
+    }
+
+    // las filas salen del "ResultSet" conforme se piden, como con getResultStream()
+    public Stream<Object[]> tuplas() {
+        return LongStream.rangeClosed(1, filas).mapToObj(i -> new Object[]{i, 100_000 + (i - 1) / PRECIOS_POR_PRODUCTO, LocalDate.ofEpochDay(20_000 + i % 180), null, BigDecimal.valueOf(150 + i % 900, 2)});
+    }
+
+    @Benchmark
+    public long streaming() {
+        return ExportacionJson.escribir(proyeccion, tuplas(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long entidades() {
+        return serializar(productos(), OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Lo que deja {@code findRange} en el contexto de persistencia: cada
+     * producto con sus precios y su detalle, todos vivos hasta serializar.
+     */
+    public List<Producto> productos() {
+        List<Producto> productos = new ArrayList<>(filas / PRECIOS_POR_PRODUCTO + 1);
+        Producto producto = null;
+        for (long i = 1; i <= filas; i++) {
+            if ((i - 1) % PRECIOS_POR_PRODUCTO == 0) {
+                producto = new Producto();
+                producto.setIdProducto(100_000 + (i - 1) / PRECIOS_POR_PRODUCTO);
+                producto.setNombre("producto " + producto.getIdProducto());
+                producto.setActivo(true);
+                ProductoDetalle detalle = new ProductoDetalle();
+                detalle.setProducto(producto);
+                detalle.setTipoProducto(tipo);
+                detalle.setActivo(true);
+                producto.getProductoDetalleList().add(detalle);
+                productos.add(producto);
+            }
+            ProductoPrecio precio = new ProductoPrecio();
+            precio.setIdProductoPrecio(i);
+            precio.setIdProducto(producto);
+            precio.setFechaDesde(LocalDate.ofEpochDay(20_000 + i % 180));
+            precio.setPrecioSugerido(BigDecimal.valueOf(150 + i % 900, 2));
+            producto.getProductoPrecioList().add(precio);
+        }
+        return productos;
+    }
+
+    /**
+     * Escribe los productos como arreglo JSON; devuelve los precios escritos.
+     */
+    public static long serializar(List<Producto> productos, OutputStream salida) {
+        long precios = 0;
+        try (JsonGenerator generador = GENERADORES.createGenerator(salida)) {
+            generador.writeStartArray();
+            for (Producto producto : productos) {
+                escribir(generador, null, producto);
+                precios += producto.getProductoPrecioList().size();
+            }
+            generador.writeEnd();
+        }
+        return precios;
+    }
+
+    static void escribir(JsonGenerator generador, String nombre, Object valor) {
+        if (valor == null) {
+            if (nombre == null) {
+                generador.writeNull();
+            } else {
+                generador.writeNull(nombre);
+            }
+        } else if (valor instanceof Long || valor instanceof Integer) {
+            long numero = ((Number) valor).longValue();
+            if (nombre == null) {
+                generador.write(numero);
+            } else {
+                generador.write(nombre, numero);
+            }
+        } else if (valor instanceof BigDecimal decimal) {
+            if (nombre == null) {
+                generador.write(decimal);
+            } else {
+                generador.write(nombre, decimal);
+            }
+        } else if (valor instanceof Boolean logico) {
+            if (nombre == null) {
+                generador.write(logico);
+            } else {
+                generador.write(nombre, logico);
+            }
+        } else if (valor instanceof String || valor instanceof LocalDate || valor instanceof Date) {
+            // @JsonbDateFormat(DATE) en fechaHasta
+            String texto = valor instanceof Date fecha ? fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toString() : valor.toString();
+            if (nombre == null) {
+                generador.write(texto);
+            } else {
+                generador.write(nombre, texto);
+            }
+        } else if (valor instanceof Collection<?> coleccion) {
+            if (nombre == null) {
+                generador.writeStartArray();
+            } else {
+                generador.writeStartArray(nombre);
+            }
+            for (Object elemento : coleccion) {
+                escribir(generador, null, elemento);
+            }
+            generador.writeEnd();
+        } else {
+            if (nombre == null) {
+                generador.writeStartObject();
+            } else {
+                generador.writeStartObject(nombre);
+            }
+            for (Method getter : GETTERS.get(valor.getClass())) {
+                try {
+                    String propiedad = getter.getName().substring(3);
+                    escribir(generador, Character.toLowerCase(propiedad.charAt(0)) + propiedad.substring(1), getter.invoke(valor));
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException(getter.toString(), e);
+                }
+            }
+            generador.writeEnd();
+        }
+    }
+
+    /**
+     * Campo que el WAR marca {@code @JsonbTransient}.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    @interface Transitorio {
+    }
+
+    public static class Producto {
+        private Long idProducto;
+        private String nombre;
+        private Boolean activo;
+        private String observaciones;
+        private String url;
+        @Transitorio
+        private List<ProductoDetalle> productoDetalleList = new ArrayList<>();
+        private List<ProductoPrecio> productoPrecioList = new ArrayList<>();
+
+        public Long getIdProducto() {
+            return idProducto;
+        }
+
+        public void setIdProducto(Long idProducto) {
+            this.idProducto = idProducto;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public void setNombre(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public Boolean getActivo() {
+            return activo;
+        }
+
+        public void setActivo(Boolean activo) {
+            this.activo = activo;
+        }
+
+        public String getObservaciones() {
+            return observaciones;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public List<ProductoDetalle> getProductoDetalleList() {
+            return productoDetalleList;
+        }
+
+        public List<ProductoPrecio> getProductoPrecioList() {
+            return productoPrecioList;
+        }
+    }
+
+    public static class ProductoPrecio {
+        private Long idProductoPrecio;
+        private LocalDate fechaDesde;
+        private Date fechaHasta;
+        private BigDecimal precioSugerido;
+        @Transitorio
+        private Producto idProducto;
+
+        public Long getIdProductoPrecio() {
+            return idProductoPrecio;
+        }
+
+        public void setIdProductoPrecio(Long idProductoPrecio) {
+            this.idProductoPrecio = idProductoPrecio;
+        }
+
+        public LocalDate getFechaDesde() {
+            return fechaDesde;
+        }
+
+        public void setFechaDesde(LocalDate fechaDesde) {
+            this.fechaDesde = fechaDesde;
+        }
+
+        public Date getFechaHasta() {
+            return fechaHasta;
+        }
+
+        public BigDecimal getPrecioSugerido() {
+            return precioSugerido;
+        }
+
+        public void setPrecioSugerido(BigDecimal precioSugerido) {
+            this.precioSugerido = precioSugerido;
+        }
+
+        public Producto getIdProducto() {
+            return idProducto;
+        }
+
+        public void setIdProducto(Producto idProducto) {
+            this.idProducto = idProducto;
+        }
+    }
+
+    public static class ProductoDetalle {
+        private Boolean activo;
+        private String observaciones;
+        private Producto producto;
+        private TipoProducto tipoProducto;
+
+        public Boolean getActivo() {
+            return activo;
+        }
+
+        public void setActivo(Boolean activo) {
+            this.activo = activo;
+        }
+
+        public String getObservaciones() {
+            return observaciones;
+        }
+
+        public Producto getProducto() {
+            return producto;
+        }
+
+        public void setProducto(Producto producto) {
+            this.producto = producto;
+        }
+
+        public TipoProducto getTipoProducto() {
+            return tipoProducto;
+        }
+
+        public void setTipoProducto(TipoProducto tipoProducto) {
+            this.tipoProducto = tipoProducto;
+        }
+    }
+
+    public static class TipoProducto {
+        private Integer idTipoProducto;
+        private String nombre;
+        private Boolean activo;
+        private String observaciones;
+        @Transitorio
+        private List<ProductoDetalle> productoDetalleList = new ArrayList<>();
+
+        public Integer getIdTipoProducto() {
+            return idTipoProducto;
+        }
+
+        public void setIdTipoProducto(Integer idTipoProducto) {
+            this.idTipoProducto = idTipoProducto;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public void setNombre(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public Boolean getActivo() {
+            return activo;
+        }
+
+        public void setActivo(Boolean activo) {
+            this.activo = activo;
+        }
+
+        public String getObservaciones() {
+            return observaciones;
+        }
+
+        public List<ProductoDetalle> getProductoDetalleList() {
+            return productoDetalleList;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara {@link Pago} (centavos sobre arreglos primitivos) con el calculo
+ * actual de {@code PagoDetalleBean}: un mapa id -> precio en {@link BigDecimal}
+ * y una suma con {@code multiply/add} por linea.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PagoBenchmark {
+
+    static final int PRODUCTOS = 500;
+    static final int COMBOS = 50;
+
+    @Param({"1", "10", "200"})
+    public int lineas;
+
+    Pago pago;
+    Map<Long, BigDecimal> precios;
+    Map<Long, Map<Long, Integer>> combos;
+
+    long[] idsProducto;
+    int[] cantidadesProducto;
+    int lineasProducto;
+    long[] idsCombo;
+    int[] cantidadesCombo;
+    int lineasCombo;
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(135);
+        pago = new Pago();
+        precios = new HashMap<>();
+        combos = new HashMap<>();
+        for (long id = 1001; id < 1001 + PRODUCTOS; id++) {
+            BigDecimal precio = BigDecimal.valueOf(25 + random.nextInt(300), 2);
+            pago.registrarPrecio(id, precio);
+            precios.put(id, precio);
+        }
+        for (long id = 1001; id < 1001 + COMBOS; id++) {
+            int miembros = 1 + random.nextInt(4);
+            long[] ids = new long[miembros];
+            int[] cantidades = new int[miembros];
+            Map<Long, Integer> detalle = new HashMap<>();
+            for (int i = 0; i < miembros; i++) {
+                ids[i] = 1001 + random.nextInt(PRODUCTOS);
+                cantidades[i] = 1 + random.nextInt(10);
+                detalle.merge(ids[i], cantidades[i], Integer::sum);
+            }
+            pago.registrarCombo(id, ids, cantidades);
+            combos.put(id, detalle);
+        }
+        // una de cada cinco lineas es combo
+        lineasCombo = lineas / 5;
+        lineasProducto = lineas - lineasCombo;
+        idsProducto = new long[lineasProducto];
+        cantidadesProducto = new int[lineasProducto];
+        for (int i = 0; i < lineasProducto; i++) {
+            idsProducto[i] = 1001 + random.nextInt(PRODUCTOS);
+            cantidadesProducto[i] = 1 + random.nextInt(3);
+        }
+        idsCombo = new long[lineasCombo];
+        cantidadesCombo = new int[lineasCombo];
+        for (int i = 0; i < lineasCombo; i++) {
+            idsCombo[i] = 1001 + random.nextInt(COMBOS);
+            cantidadesCombo[i] = 1 + random.nextInt(2);
+        }
+    }
+
+    @Benchmark
+    public long centavos() {
+        return pago.calculoOrden(idsProducto, cantidadesProducto, lineasProducto, idsCombo, cantidadesCombo, lineasCombo);
+    }
+
+    @Benchmark
+    public BigDecimal referenciaBigDecimal() {
+        return referencia(precios, combos, idsProducto, cantidadesProducto, lineasProducto, idsCombo, cantidadesCombo, lineasCombo);
+    }
+
+    /**
+     * Misma logica que {@code calculoProductos} + {@code generarOrdenDetalleDesdeCombo}
+     * + redondeo de {@code numeric(6,2)} al persistir.
+     */
+    static BigDecimal referencia(Map<Long, BigDecimal> precios, Map<Long, Map<Long, Integer>> combos,
+                                 long[] idsProducto, int[] cantidadesProducto, int lineasProducto,
+                                 long[] idsCombo, int[] cantidadesCombo, int lineasCombo) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < lineasProducto; i++) {
+            total = total.add(precios.get(idsProducto[i]).multiply(BigDecimal.valueOf(cantidadesProducto[i])));
+        }
+        for (int i = 0; i < lineasCombo; i++) {
+            for (Map.Entry<Long, Integer> detalle : combos.get(idsCombo[i]).entrySet()) {
+                total = total.add(precios.get(detalle.getKey()).multiply(BigDecimal.valueOf((long) detalle.getValue() * cantidadesCombo[i])));
+            }
+        }
+        return total.setScale(Pago.ESCALA, RoundingMode.HALF_UP);
+    }
+}
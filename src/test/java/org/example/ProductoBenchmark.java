@@ -0,0 +1,126 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Busqueda por nombre: {@link Producto} contra el camino actual de
+ * {@code ProductoBean.findByNombre} + {@code countProductoByName}
+ * ({@code LOWER(nombre) LIKE LOWER(?)} paginado y un {@code COUNT} aparte)
+ * sobre un Postgres de Testcontainers con 20, 10k y 1M productos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductoBenchmark {
+
+    static final String[] BASES = {"pupusas", "cafe", "chocolate", "atol", "horchata", "tamal de elote",
+            "tamal de maiz", "empanadas de platano", "yuca frita", "casamiento", "riguas", "nuegados"};
+    static final String[] SABORES = {"revueltas", "queso", "frijol", "loroco", "ayote", "chicharron",
+            "de leche", "con canela", "de arroz", "picante"};
+
+    @Param({"20", "10000", "1000000"})
+    public int filas;
+
+    @Param({"cafe", "pupusas de loroco"})
+    public String texto;
+
+    PostgreSQLContainer<?> postgres;
+    Connection conexion;
+    PreparedStatement like;
+    PreparedStatement count;
+    Producto indice;
+
+    @Setup(Level.Trial)
+    public void preparar() throws SQLException {
+        postgres = new PostgreSQLContainer<>("postgres:16-alpine").withDatabaseName("Tipicos");
+        postgres.start();
+        conexion = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE producto (id_producto bigint PRIMARY KEY, nombre character varying(155), activo boolean DEFAULT true)");
+        }
+        indice = new Producto();
+        conexion.setAutoCommit(false);
+        try (PreparedStatement ps = conexion.prepareStatement("INSERT INTO producto (id_producto, nombre) VALUES (?, ?)")) {
+            for (String[] fila : generar(filas)) {
+                long id = Long.parseLong(fila[0]);
+                ps.setLong(1, id);
+                ps.setString(2, fila[1]);
+                ps.addBatch();
+                indice.guardar(Producto.Catalogo.PRODUCTO, id, fila[1]);
+                if (id % 1000 == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        conexion.commit();
+        conexion.setAutoCommit(true);
+        try (Statement st = conexion.createStatement()) {
+            st.execute("ANALYZE producto");
+        }
+        like = conexion.prepareStatement("SELECT id_producto, nombre FROM producto WHERE LOWER(nombre) LIKE LOWER(?) OFFSET ? LIMIT ?");
+        count = conexion.prepareStatement("SELECT COUNT(id_producto) FROM producto WHERE LOWER(nombre) LIKE LOWER(?)");
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        conexion.close();
+        postgres.stop();
+    }
+
+    @Benchmark
+    public Producto.Pagina indice() {
+        return indice.buscar(Producto.Catalogo.PRODUCTO, texto, 0, 10);
+    }
+
+    @Benchmark
+    public Producto.Pagina postgresLike() throws SQLException {
+        String patron = "%" + texto + "%";
+        like.setString(1, patron);
+        like.setInt(2, 0);
+        like.setInt(3, 10);
+        List<Long> ids = new ArrayList<>();
+        List<String> nombres = new ArrayList<>();
+        try (ResultSet rs = like.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+                nombres.add(rs.getString(2));
+            }
+        }
+        count.setString(1, patron);
+        long total;
+        try (ResultSet rs = count.executeQuery()) {
+            rs.next();
+            total = rs.getLong(1);
+        }
+        return new Producto.Pagina(ids.stream().mapToLong(Long::longValue).toArray(), nombres.toArray(new String[0]), total);
+    }
+
+    static List<String[]> generar(int filas) {
+        Random random = new Random(135);
+        List<String[]> resultado = new ArrayList<>(filas);
+        for (int i = 1; i <= filas; i++) {
+            String nombre = BASES[random.nextInt(BASES.length)] + " " + SABORES[random.nextInt(SABORES.length)];
+            if (random.nextInt(4) == 0) {
+                nombre = nombre.replace("cafe", "Café").replace("platano", "plátano");
+            }
+            resultado.add(new String[]{String.valueOf(1000 + i), nombre + " " + i});
+        }
+        return resultado;
+    }
+}
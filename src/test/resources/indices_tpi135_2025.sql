@@ -0,0 +1,26 @@
+--
+-- Indices para las consultas de los beans que filtran por llaves foraneas.
+-- Se aplica despues de tipicos_tpi135_2025.sql; es idempotente.
+-- producto_detalle(id_tipo_producto) ya esta cubierto por pk_producto_detalle
+-- (id_tipo_producto, id_producto), asi que se indexa la otra columna.
+--
+
+-- PagoBean.findByIdOrden / countByIdOrden y la llave fk_pago_orden
+CREATE INDEX IF NOT EXISTS fki_pago_orden ON public.pago USING btree (id_orden);
+
+-- PagoDetalleBean: PagoDetalle.findByIdPago / countByIdPago y la llave id_pago_detalle_pago
+CREATE INDEX IF NOT EXISTS fki_pago_detalle_pago ON public.pago_detalle USING btree (id_pago);
+
+-- LiquidacionPagos: un solo pago_detalle por llave de idempotencia aunque dos transacciones la inserten a la vez
+CREATE UNIQUE INDEX IF NOT EXISTS uq_pago_detalle_liquidacion ON public.pago_detalle USING btree (id_pago, observaciones) WHERE observaciones LIKE 'liquidacion:%';
+
+-- ProductoPrecio.findByIdProducto y los JOIN de combo_detalle con producto_precio; fecha_desde para el precio vigente
+CREATE INDEX IF NOT EXISTS idx_producto_precio_producto_fecha ON public.producto_precio USING btree (id_producto, fecha_desde);
+
+-- ProductoDetalleBean / ProductoBean por producto y la llave fk_producto_detalle_producto
+CREATE INDEX IF NOT EXISTS fki_producto_detalle_producto ON public.producto_detalle USING btree (id_producto);
+
+-- OrdenDetalle.findByIdProductoPrecio y la llave fk_orden_detalle_producto_precio al borrar un precio
+CREATE INDEX IF NOT EXISTS fki_orden_detalle_producto_precio ON public.orden_detalle USING btree (id_producto_precio);
+
+ANALYZE public.pago, public.pago_detalle, public.producto_precio, public.producto_detalle, public.orden_detalle;